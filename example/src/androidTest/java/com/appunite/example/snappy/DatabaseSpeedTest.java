@@ -23,6 +23,7 @@ import android.support.test.runner.AndroidJUnit4;
 import android.test.suitebuilder.annotation.LargeTest;
 import android.util.Log;
 
+import com.appunite.keyvalue.ByteUtils;
 import com.appunite.keyvalue.IdGenerator;
 import com.example.myapplication.Message;
 import com.google.common.base.Stopwatch;
@@ -103,7 +104,17 @@ public class DatabaseSpeedTest {
         }
         Log.i(TAG, String.format("testSpeed - deserialize %d - %s", sampleSize, stopwatch2.toString()));
 
+        // list shows only text of messages
+        final ArrayList<String> out3 = new ArrayList<>(messages.size());
+        System.gc();
+        final Stopwatch stopwatch3 = Stopwatch.createStarted();
+        for (byte[] message : out1) {
+            out3.add(new LazyMessage(ByteUtils.wrap(message)).getMessage());
+        }
+        Log.i(TAG, String.format("testSpeed - lazy read text %d - %s", sampleSize, stopwatch3.toString()));
+
         assert_().that(messages.size()).isEqualTo(out2.size());
+        assert_().that(messages.size()).isEqualTo(out3.size());
     }
 
     private void runSpeedTest(String dbName, int databaseType, int writeSample, int readSample, boolean useBatch) throws Exception {
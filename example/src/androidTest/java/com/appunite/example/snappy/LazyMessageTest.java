@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.example.snappy;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.example.myapplication.Message;
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.google.common.truth.Truth.assert_;
+
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class LazyMessageTest {
+    private final Message.CommunicationMessage message = Message.CommunicationMessage.newBuilder()
+            .setId(ByteString.copyFromUtf8("id"))
+            .setConversationId("conversationId")
+            .setMessage("message")
+            .setCreatedAtMillis(123)
+            .build();
+
+    @Test
+    public void testFieldsOfView_areEqualToParsedMessage() throws Exception {
+        final LazyMessage view = new LazyMessage(message.toByteString());
+
+        assert_().that(view.getId()).isEqualTo(ByteString.copyFromUtf8("id"));
+        assert_().that(view.getConversationId()).isEqualTo("conversationId");
+        assert_().that(view.getMessage()).isEqualTo("message");
+        assert_().that(view.getCreatedAtMillis()).isEqualTo(123);
+        assert_().that(view.toMessage()).isEqualTo(message);
+    }
+
+    @Test
+    public void testViewOfPartOfBytes_readsOnlyThatPart() throws Exception {
+        final ByteString stored = ByteString.copyFromUtf8("prefix")
+                .concat(message.toByteString())
+                .concat(ByteString.copyFromUtf8("suffix"));
+
+        final LazyMessage view = new LazyMessage(stored.substring(6, stored.size() - 6));
+
+        assert_().that(view.getMessage()).isEqualTo("message");
+        assert_().that(view.getId()).isEqualTo(ByteString.copyFromUtf8("id"));
+    }
+
+    @Test
+    public void testMergedMessages_lastFieldsWinAsInParser() throws Exception {
+        final Message.CommunicationMessage update = Message.CommunicationMessage.newBuilder(message)
+                .setMessage("updated")
+                .build();
+        final ByteString merged = message.toByteString().concat(update.toByteString());
+
+        final LazyMessage view = new LazyMessage(merged);
+
+        assert_().that(view.getMessage()).isEqualTo("updated");
+        assert_().that(view.getMessage()).isEqualTo(Message.CommunicationMessage.parseFrom(merged).getMessage());
+    }
+}
@@ -16,21 +16,69 @@
 
 package com.appunite.example.snappy;
 
+import com.appunite.keyvalue.BulkLoader;
+import com.appunite.keyvalue.ConcurrentKeyGenerator;
 import com.appunite.keyvalue.EditOperations;
-import com.appunite.keyvalue.KeyGenerator;
 import com.appunite.keyvalue.KeyValue;
 import com.appunite.keyvalue.NotFoundException;
 import com.example.myapplication.Message;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 public class DatabaseSnappy implements Database {
+    /**
+     * Page of messages as lazy views, see {@link LazyMessage}
+     */
+    public static class MessageViewResult {
+        @Nonnull
+        private final List<LazyMessage> messages;
+        @Nullable
+        private final ByteString nextToken;
+
+        MessageViewResult(@Nonnull List<LazyMessage> messages, @Nullable ByteString nextToken) {
+            this.messages = messages;
+            this.nextToken = nextToken;
+        }
+
+        public boolean isLast() {
+            return nextToken == null;
+        }
+
+        @Nonnull
+        public List<LazyMessage> getMessages() {
+            return messages;
+        }
+    }
+
+    /**
+     * Messages parsed on first access, so messages of page that are not read are not parsed
+     */
+    private static class ParsedMessages extends AbstractList<Message.CommunicationMessage> implements RandomAccess {
+        @Nonnull
+        private final List<LazyMessage> views;
+
+        ParsedMessages(@Nonnull List<LazyMessage> views) {
+            this.views = views;
+        }
+
+        @Override
+        public Message.CommunicationMessage get(int index) {
+            return views.get(index).toMessage();
+        }
+
+        @Override
+        public int size() {
+            return views.size();
+        }
+    }
 
     @Nonnull
     private final KeyValue keyValue;
@@ -47,20 +95,46 @@ public class DatabaseSnappy implements Database {
                 throw new IllegalArgumentException("Result does not have more messages");
             }
         }
+        final MessageViewResult views = fetchMessageViews(conversationId,
+                messageResultOrNull == null ? null : messageResultOrNull.<ByteString>getNextToken(), batch);
+        return new MessageResult(new ParsedMessages(views.messages), views.nextToken);
+    }
+
+    /**
+     * The same as {@link #getMessageResult(String, MessageResult, int)} but messages are not
+     * parsed, fields are read from stored bytes when accessed
+     */
+    @Nonnull
+    public MessageViewResult getMessageViews(@Nonnull String conversationId,
+                                             @Nullable MessageViewResult messageViewResultOrNull,
+                                             int batch) {
+        if (messageViewResultOrNull != null) {
+            if (messageViewResultOrNull.nextToken == null) {
+                throw new IllegalArgumentException("Result does not have more messages");
+            }
+        }
+        return fetchMessageViews(conversationId,
+                messageViewResultOrNull == null ? null : messageViewResultOrNull.nextToken, batch);
+    }
+
+    @Nonnull
+    private MessageViewResult fetchMessageViews(@Nonnull String conversationId,
+                                                @Nullable ByteString nextTokenOrNull,
+                                                int batch) {
         final ByteString messageConversationPrefix = getMessageConversationIndex(conversationId);
 
-        final KeyValue.Iterator iterator = keyValue.fetchValues(messageConversationPrefix, messageResultOrNull == null ? null : messageResultOrNull.<ByteString>getNextToken(), batch);
+        final KeyValue.Iterator iterator = keyValue.fetchValues(messageConversationPrefix, nextTokenOrNull, batch);
 
         final List<ByteString> keys = iterator.keys();
-        final ArrayList<Message.CommunicationMessage> objects = new ArrayList<>(keys.size());
+        final ArrayList<LazyMessage> views = new ArrayList<>(keys.size());
         for (ByteString key : keys) {
             try {
-                objects.add(Message.CommunicationMessage.parseFrom(keyValue.getBytes(key)));
-            } catch (InvalidProtocolBufferException | NotFoundException e) {
+                views.add(new LazyMessage(keyValue.getBytes(key)));
+            } catch (NotFoundException e) {
                 throw new RuntimeException(e);
             }
         }
-        return new MessageResult(objects, iterator.nextToken());
+        return new MessageViewResult(views, iterator.nextToken());
     }
 
     @Nonnull
@@ -73,6 +147,11 @@ public class DatabaseSnappy implements Database {
         }
     }
 
+    @Nonnull
+    public LazyMessage getMessageView(@Nonnull ByteString id) throws NotFoundException {
+        return new LazyMessage(keyValue.getBytes(getMessageKey(id)));
+    }
+
     private void addMessageOperation(@Nonnull EditOperations operations, @Nonnull Message.CommunicationMessage message) {
         final ByteString messageKey = getMessageKey(message.getId());
         final ByteString key = getMessageConversationIndex(message);
@@ -81,13 +160,15 @@ public class DatabaseSnappy implements Database {
     }
 
     private void deleteMessageOperation(@Nonnull EditOperations operations, @Nonnull Message.CommunicationMessage message) {
-        final Message.CommunicationMessage oldMessage;
+        // only fields of index key are read from old message
+        final LazyMessage oldMessage;
         try {
-            oldMessage = getMessage(message.getId());
+            oldMessage = getMessageView(message.getId());
         } catch (NotFoundException e) {
             throw new RuntimeException(e);
         }
-        operations.del(getMessageConversationIndex(oldMessage));
+        operations.del(getMessageConversationIndex(oldMessage.getConversationId(),
+                oldMessage.getCreatedAtMillis(), oldMessage.getId()));
         addMessageOperation(operations, message);
     }
 
@@ -114,6 +195,22 @@ public class DatabaseSnappy implements Database {
         batch.write();
     }
 
+    /**
+     * Import of messages that are not in database yet, e.g. first sync, entries are sorted
+     * and installed at once with {@link BulkLoader}.
+     *
+     * Unlike {@link #addMessages(List)} import is not atomic and index keys of messages
+     * that already exist are not removed.
+     */
+    public void importMessages(@Nonnull List<Message.CommunicationMessage> messages) {
+        final BulkLoader loader = new BulkLoader.Builder(keyValue).build();
+        for (Message.CommunicationMessage message : messages) {
+            loader.add(getMessageConversationIndex(message), getMessageKey(message.getId()));
+            loader.add(getMessageKey(message.getId()), message.toByteString());
+        }
+        loader.finish();
+    }
+
     @Override
     public void updateMessages(@Nonnull List<Message.CommunicationMessage> messages) {
         final KeyValue.Batch batch = keyValue.newBatch();
@@ -123,7 +220,7 @@ public class DatabaseSnappy implements Database {
         batch.write();
     }
 
-    private final KeyGenerator keyGenerator = new KeyGenerator();
+    private final ConcurrentKeyGenerator keyGenerator = new ConcurrentKeyGenerator();
 
     private static final byte[] MESSAGE = "message".getBytes();
     private static final byte[] CONVERSATION = "conversation".getBytes();
@@ -138,10 +235,18 @@ public class DatabaseSnappy implements Database {
 
     @Nonnull
     private ByteString getMessageConversationIndex(@Nonnull Message.CommunicationMessage message) {
+        return getMessageConversationIndex(message.getConversationId(), message.getCreatedAtMillis(),
+                message.getId());
+    }
+
+    @Nonnull
+    private ByteString getMessageConversationIndex(@Nonnull String conversationId,
+                                                   long createdAtMillis,
+                                                   @Nonnull ByteString id) {
         return keyGenerator.startIndex(MESSAGE)
-                .addField(CONVERSATION, message.getConversationId())
-                .addField(CREATED_AT, message.getCreatedAtMillis())
-                .buildIndex(message.getId());
+                .addField(CONVERSATION, conversationId)
+                .addField(CREATED_AT, createdAtMillis)
+                .buildIndex(id);
     }
 
     @Nonnull
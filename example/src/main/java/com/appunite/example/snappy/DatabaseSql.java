@@ -27,7 +27,7 @@ import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 
 import com.appunite.keyvalue.ByteUtils;
-import com.appunite.keyvalue.KeyGenerator;
+import com.appunite.keyvalue.ConcurrentKeyGenerator;
 import com.appunite.keyvalue.NotFoundException;
 import com.example.myapplication.Message;
 import com.google.protobuf.ByteString;
@@ -63,7 +63,7 @@ public class DatabaseSql implements Database {
         }
 
 
-        private static final KeyGenerator keyGenerator = new KeyGenerator();
+        private static final ConcurrentKeyGenerator keyGenerator = new ConcurrentKeyGenerator();
 
         public static final byte[] MESSAGE = "message".getBytes();
         public static final byte[] CREATED_AT = "created_at".getBytes();
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.example.snappy;
+
+import com.example.myapplication.Message.CommunicationMessage;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Read only view of stored {@link CommunicationMessage} that parses fields on first access.
+ *
+ * First access walks tags of stored bytes once and remembers where fields are, without
+ * decoding strings. Strings are decoded only when read and bytes fields are views of stored
+ * bytes, so list that shows only message text does not build ids, conversation ids and
+ * message objects. Not thread safe.
+ */
+public class LazyMessage {
+    private static final int ID_TAG = tag(CommunicationMessage.ID_FIELD_NUMBER,
+            WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private static final int MESSAGE_TAG = tag(CommunicationMessage.MESSAGE_FIELD_NUMBER,
+            WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private static final int CONVERSATION_ID_TAG = tag(CommunicationMessage.CONVERSATION_ID_FIELD_NUMBER,
+            WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private static final int CREATED_AT_MILLIS_TAG = tag(CommunicationMessage.CREATED_AT_MILLIS_FIELD_NUMBER,
+            WireFormat.WIRETYPE_VARINT);
+
+    @Nonnull
+    private final ByteString bytes;
+
+    private boolean indexed;
+    private int idOffset;
+    private int idLength;
+    private int messageOffset = -1;
+    private int messageLength;
+    private int conversationIdOffset = -1;
+    private int conversationIdLength;
+    private long createdAtMillis;
+
+    @Nullable
+    private String message;
+    @Nullable
+    private String conversationId;
+    @Nullable
+    private CommunicationMessage parsed;
+
+    public LazyMessage(@Nonnull ByteString bytes) {
+        this.bytes = bytes;
+    }
+
+    @Nonnull
+    public ByteString getId() {
+        index();
+        return bytes.substring(idOffset, idOffset + idLength);
+    }
+
+    @Nonnull
+    public String getMessage() {
+        if (message == null) {
+            index();
+            message = decode(messageOffset, messageLength);
+        }
+        return message;
+    }
+
+    @Nonnull
+    public String getConversationId() {
+        if (conversationId == null) {
+            index();
+            conversationId = decode(conversationIdOffset, conversationIdLength);
+        }
+        return conversationId;
+    }
+
+    public long getCreatedAtMillis() {
+        index();
+        return createdAtMillis;
+    }
+
+    /**
+     * Stored bytes
+     */
+    @Nonnull
+    public ByteString toByteString() {
+        return bytes;
+    }
+
+    /**
+     * Fully parsed message, parsed once
+     */
+    @Nonnull
+    public CommunicationMessage toMessage() {
+        if (parsed == null) {
+            try {
+                parsed = CommunicationMessage.parseFrom(bytes);
+            } catch (InvalidProtocolBufferException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return parsed;
+    }
+
+    @Nonnull
+    private String decode(int offset, int length) {
+        return offset < 0 ? "" : bytes.substring(offset, offset + length).toStringUtf8();
+    }
+
+    /**
+     * Remember offsets of length delimited fields, the last occurrence of field wins as in
+     * protobuf parser
+     */
+    private void index() {
+        if (indexed) {
+            return;
+        }
+        // reads stored array directly, without copy
+        final CodedInputStream input = bytes.newCodedInput();
+        try {
+            while (true) {
+                final int tag = input.readTag();
+                if (tag == 0) {
+                    break;
+                } else if (tag == ID_TAG) {
+                    idLength = input.readRawVarint32();
+                    idOffset = input.getTotalBytesRead();
+                    input.skipRawBytes(idLength);
+                } else if (tag == MESSAGE_TAG) {
+                    messageLength = input.readRawVarint32();
+                    messageOffset = input.getTotalBytesRead();
+                    input.skipRawBytes(messageLength);
+                } else if (tag == CONVERSATION_ID_TAG) {
+                    conversationIdLength = input.readRawVarint32();
+                    conversationIdOffset = input.getTotalBytesRead();
+                    input.skipRawBytes(conversationIdLength);
+                } else if (tag == CREATED_AT_MILLIS_TAG) {
+                    createdAtMillis = input.readInt64();
+                } else {
+                    input.skipField(tag);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        indexed = true;
+    }
+
+    private static int tag(int fieldNumber, int wireType) {
+        return fieldNumber << 3 | wireType;
+    }
+}
@@ -16,8 +16,20 @@
 
 package com.appunite.keyvalue.driver.level;
 
+import com.appunite.keyvalue.BulkLoadable;
+import com.appunite.keyvalue.ByteBufferAccess;
+import com.appunite.keyvalue.ByteBuffers;
+import com.appunite.keyvalue.ByteUtils;
+import com.appunite.keyvalue.EngineTrace;
+import com.appunite.keyvalue.KeyRange;
 import com.appunite.keyvalue.KeyValue;
 import com.appunite.keyvalue.NotFoundException;
+import com.appunite.keyvalue.PageBuffer;
+import com.appunite.keyvalue.PageScanner;
+import com.appunite.keyvalue.RangeScanner;
+import com.appunite.keyvalue.ScanOptions;
+import com.appunite.keyvalue.ScanVisitor;
+import com.appunite.keyvalue.SeekVisitor;
 import com.appunite.keyvalue.driver.level.internal.Preconditions;
 import com.appunite.leveldb.KeyNotFoundException;
 import com.appunite.leveldb.LevelDB;
@@ -28,12 +40,21 @@ import com.google.protobuf.ByteString;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-public class KeyValueLevel implements KeyValue {
+/**
+ * Native calls only read passed arrays and return new arrays, so byte strings are passed without
+ * copying when possible and returned arrays are wrapped without copying.
+ */
+public class KeyValueLevel implements KeyValue, RangeScanner, BulkLoadable, PageScanner, ByteBufferAccess {
+    private static final int BULK_BATCH_BYTES = 4 * 1024 * 1024;
+
     @Nonnull
     private final LevelDB db;
 
@@ -75,7 +96,7 @@ public class KeyValueLevel implements KeyValue {
         Preconditions.checkNotNull(key);
         Preconditions.checkNotNull(value);
         try {
-            db.putBytes(key.toByteArray(), value.toByteArray());
+            db.putBytes(ByteUtils.readOnlyArray(key), ByteUtils.readOnlyArray(value));
         } catch (LevelDBException e) {
             throw new RuntimeException(e);
         }
@@ -85,7 +106,7 @@ public class KeyValueLevel implements KeyValue {
     public void del(@Nonnull ByteString key) {
         Preconditions.checkNotNull(key);
         try {
-            db.delete(key.toByteArray());
+            db.delete(ByteUtils.readOnlyArray(key));
         } catch (LevelDBException e) {
             throw new RuntimeException(e);
         }
@@ -114,7 +135,7 @@ public class KeyValueLevel implements KeyValue {
             Preconditions.checkNotNull(key);
             Preconditions.checkNotNull(value);
             try {
-                writeBatch.putBytes(key.toByteArray(), value.toByteArray());
+                writeBatch.putBytes(ByteUtils.readOnlyArray(key), ByteUtils.readOnlyArray(value));
             } catch (LevelDBException e) {
                 throw new RuntimeException(e);
             }
@@ -124,7 +145,7 @@ public class KeyValueLevel implements KeyValue {
         public void del(@Nonnull ByteString key) {
             Preconditions.checkNotNull(key);
             try {
-                writeBatch.delete(key.toByteArray());
+                writeBatch.delete(ByteUtils.readOnlyArray(key));
             } catch (LevelDBException e) {
                 throw new RuntimeException(e);
             }
@@ -145,12 +166,72 @@ public class KeyValueLevel implements KeyValue {
         }
     }
 
+    /**
+     * Sorted entries are written in big batches, LevelDB appends them to memtable in order
+     * and flushes them into non overlapping tables
+     */
+    @Override
+    public void bulkLoad(@Nonnull java.util.Iterator<Map.Entry<ByteString, ByteString>> entries) {
+        Preconditions.checkNotNull(entries);
+        final WriteBatch writeBatch = new WriteBatch();
+        int batchBytes = 0;
+        try {
+            while (entries.hasNext()) {
+                final Map.Entry<ByteString, ByteString> entry = entries.next();
+                writeBatch.putBytes(ByteUtils.readOnlyArray(entry.getKey()),
+                        ByteUtils.readOnlyArray(entry.getValue()));
+                batchBytes += entry.getKey().size() + entry.getValue().size();
+                if (batchBytes >= BULK_BATCH_BYTES) {
+                    db.write(writeBatch);
+                    writeBatch.clear();
+                    batchBytes = 0;
+                }
+            }
+            db.write(writeBatch);
+        } catch (LevelDBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Nonnull
     @Override
     public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
         Preconditions.checkNotNull(key);
+        EngineTrace.seek();
+        try {
+            return ByteUtils.wrap(db.getBytes(ByteUtils.readOnlyArray(key)));
+        } catch (LevelDBException e) {
+            throw new RuntimeException(e);
+        } catch (KeyNotFoundException e) {
+            throw new NotFoundException();
+        }
+    }
+
+    /**
+     * Buffers that wrap whole arrays are passed to native call without copying, other buffers
+     * are copied once into arrays
+     */
+    @Override
+    public void put(@Nonnull ByteBuffer key, @Nonnull ByteBuffer value) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(value);
+        try {
+            db.putBytes(ByteBuffers.readOnlyArray(key), ByteBuffers.readOnlyArray(value));
+        } catch (LevelDBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Array returned by native call is copied straight into out
+     */
+    @Override
+    public int get(@Nonnull ByteBuffer key, @Nonnull ByteBuffer out) throws NotFoundException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(out);
+        EngineTrace.seek();
         try {
-            return ByteString.copyFrom(db.getBytes(key.toByteArray()));
+            return ByteBuffers.copyTo(db.getBytes(ByteBuffers.readOnlyArray(key)), out);
         } catch (LevelDBException e) {
             throw new RuntimeException(e);
         } catch (KeyNotFoundException e) {
@@ -167,62 +248,175 @@ public class KeyValueLevel implements KeyValue {
     @Nonnull
     @Override
     public Iterator fetchValues(@Nonnull final ByteString prefix, @Nullable final ByteString nextTokenOrNull, final int batch) {
+        final PageBuffer buffer = PageBuffer.forBatch(batch);
+        fetch(prefix, nextTokenOrNull, batch, buffer, true);
+        return new Iterator(buffer.moveToPage(), buffer.nextToken());
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchKeys(@Nonnull final ByteString prefix, @Nullable final ByteString nextTokenOrNull, final int batch) {
+        final PageBuffer buffer = PageBuffer.forBatch(batch);
+        fetch(prefix, nextTokenOrNull, batch, buffer, false);
+        return new Iterator(buffer.moveToPage(), buffer.nextToken());
+    }
+
+    @Override
+    public void fetchValues(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch,
+                            @Nonnull PageBuffer buffer) {
+        fetch(prefix, nextTokenOrNull, batch, buffer, true);
+    }
+
+    @Override
+    public void fetchKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch,
+                          @Nonnull PageBuffer buffer) {
+        fetch(prefix, nextTokenOrNull, batch, buffer, false);
+    }
+
+    /**
+     * Arrays returned by JNI are copied straight into buffer, prefix is compared on them, so
+     * ByteString is created only for next token
+     */
+    private void fetch(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch,
+                       @Nonnull PageBuffer buffer, boolean values) {
         Preconditions.checkNotNull(prefix);
+        Preconditions.checkNotNull(buffer);
         Preconditions.checkArgument(batch >= 1);
-        final int batchQuery = Math.min(batch, 1000);
-        final ArrayList<ByteString> arrayList = new ArrayList<>(batchQuery);
+        buffer.clear();
         final ByteString startWith = nextTokenOrNull == null ? prefix : nextTokenOrNull;
         try {
             final LevelIterator iterator = db.newInterator();
             //noinspection TryFinallyCanBeTryWithResources
             try {
-                iterator.seekToFirst(startWith.toByteArray());
-                for (iterator.seekToFirst(startWith.toByteArray()); iterator.isValid(); iterator.next()) {
-                    final ByteString key = ByteString.copyFrom(iterator.key());
-                    if (!key.startsWith(prefix)) {
+                final EngineTrace trace = EngineTrace.active();
+                if (trace != null) {
+                    trace.addSeeks(1);
+                }
+                for (iterator.seekToFirst(ByteUtils.readOnlyArray(startWith)); iterator.isValid(); iterator.next()) {
+                    if (trace != null) {
+                        trace.addRows(1);
+                    }
+                    final byte[] key = iterator.key();
+                    if (!ByteUtils.startsWith(key, prefix)) {
                         break;
                     }
-                    if (arrayList.size() == batch) {
-                        return new Iterator(arrayList, key);
+                    if (buffer.size() == batch) {
+                        buffer.nextToken(ByteUtils.wrap(key));
+                        return;
                     }
-                    arrayList.add(ByteString.copyFrom(iterator.value()));
+                    buffer.add(values ? iterator.value() : key);
                 }
             } finally {
                 iterator.close();
             }
-            return new Iterator(arrayList, null);
         } catch (LevelDBException e) {
             throw new RuntimeException(e);
         }
     }
 
-    @Nonnull
     @Override
-    public Iterator fetchKeys(@Nonnull final ByteString prefix, @Nullable final ByteString nextTokenOrNull, final int batch) {
-        Preconditions.checkNotNull(prefix);
-        Preconditions.checkArgument(batch >= 1);
-        final int batchQuery = Math.min(batch, 1000);
-        final ArrayList<ByteString> arrayList = new ArrayList<>(batchQuery);
-        final ByteString startWith = nextTokenOrNull == null ? prefix : nextTokenOrNull;
+    public void scan(@Nonnull KeyRange range, @Nonnull ScanVisitor visitor) {
+        scan(range, ScanOptions.DEFAULT, visitor);
+    }
+
+    @Override
+    public void scan(@Nonnull KeyRange range, @Nonnull ScanOptions options, @Nonnull ScanVisitor visitor) {
+        Preconditions.checkNotNull(range);
+        Preconditions.checkNotNull(options);
+        Preconditions.checkNotNull(visitor);
         try {
             final LevelIterator iterator = db.newInterator();
             //noinspection TryFinallyCanBeTryWithResources
             try {
-                iterator.seekToFirst(startWith.toByteArray());
-                for (iterator.seekToFirst(startWith.toByteArray()); iterator.isValid(); iterator.next()) {
-                    final ByteString key = ByteString.copyFrom(iterator.key());
-                    if (!key.startsWith(prefix)) {
+                final EngineTrace trace = EngineTrace.active();
+                if (trace != null) {
+                    trace.addSeeks(1);
+                }
+                for (iterator.seekToFirst(ByteUtils.readOnlyArray(range.start())); iterator.isValid(); iterator.next()) {
+                    if (trace != null) {
+                        trace.addRows(1);
+                    }
+                    final ByteString key = ByteUtils.wrap(iterator.key());
+                    if (range.isAfter(key)) {
                         break;
                     }
-                    if (arrayList.size() == batch) {
-                        return new Iterator(arrayList, key);
+                    if (!options.acceptKey(key)) {
+                        // value is not fetched through JNI for rejected keys
+                        continue;
+                    }
+                    final ByteString value = ByteUtils.wrap(iterator.value());
+                    if (!options.acceptEntry(key, value)) {
+                        continue;
+                    }
+                    if (!visitor.visit(key, options.project(key, value))) {
+                        break;
+                    }
+                }
+            } finally {
+                iterator.close();
+            }
+        } catch (LevelDBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void skipScan(@Nonnull KeyRange range, @Nonnull SeekVisitor visitor) {
+        Preconditions.checkNotNull(range);
+        Preconditions.checkNotNull(visitor);
+        try {
+            final LevelIterator iterator = db.newInterator();
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                final EngineTrace trace = EngineTrace.active();
+                ByteString target = range.start();
+                while (target != null) {
+                    iterator.seekToFirst(ByteUtils.readOnlyArray(target));
+                    if (trace != null) {
+                        trace.addSeeks(1);
+                    }
+                    if (!iterator.isValid()) {
+                        return;
+                    }
+                    if (trace != null) {
+                        trace.addRows(1);
                     }
-                    arrayList.add(key);
+                    final ByteString key = ByteUtils.wrap(iterator.key());
+                    if (range.isAfter(key)) {
+                        return;
+                    }
+                    target = visitor.visit(key);
+                }
+            } finally {
+                iterator.close();
+            }
+        } catch (LevelDBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public List<ByteString> splitPoints(@Nonnull KeyRange range, int parts) {
+        Preconditions.checkNotNull(range);
+        Preconditions.checkArgument(parts >= 1);
+        // leveldb-jni does not expose approximate sizes so we only know where range starts
+        try {
+            final LevelIterator iterator = db.newInterator();
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                iterator.seekToFirst(ByteUtils.readOnlyArray(range.start()));
+                if (!iterator.isValid()) {
+                    return Collections.emptyList();
+                }
+                final ByteString first = ByteUtils.wrap(iterator.key());
+                if (range.isAfter(first)) {
+                    return Collections.emptyList();
                 }
+                return KeyRange.interpolate(first, range.end(), parts);
             } finally {
                 iterator.close();
             }
-            return new Iterator(arrayList, null);
         } catch (LevelDBException e) {
             throw new RuntimeException(e);
         }
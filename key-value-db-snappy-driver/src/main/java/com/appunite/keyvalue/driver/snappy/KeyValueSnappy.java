@@ -21,6 +21,7 @@ import android.content.Context;
 import com.appunite.keyvalue.ByteUtils;
 import com.appunite.keyvalue.KeyValue;
 import com.appunite.keyvalue.NotFoundException;
+import com.appunite.keyvalue.PageBuffer;
 import com.appunite.keyvalue.driver.snappy.internal.Preconditions;
 import com.google.protobuf.ByteString;
 import com.snappydb.DB;
@@ -28,8 +29,6 @@ import com.snappydb.KeyIterator;
 import com.snappydb.SnappyDB;
 import com.snappydb.SnappydbException;
 
-import java.util.ArrayList;
-
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -73,7 +72,7 @@ public class KeyValueSnappy implements KeyValue {
         Preconditions.checkNotNull(key);
         Preconditions.checkNotNull(value);
         try {
-            db.put(ByteUtils.toString(key), value.toByteArray());
+            db.put(ByteUtils.toString(key), ByteUtils.readOnlyArray(value));
         } catch (SnappydbException e) {
             throw new RuntimeException(e);
         }
@@ -101,7 +100,7 @@ public class KeyValueSnappy implements KeyValue {
     public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
         Preconditions.checkNotNull(key);
         try {
-            return ByteString.copyFrom(db.getBytes(ByteUtils.toString(key)));
+            return ByteUtils.wrap(db.getBytes(ByteUtils.toString(key)));
         } catch (SnappydbException e) {
             if (e.getMessage().contains("NotFound")) {
                 throw new NotFoundException();
@@ -123,7 +122,7 @@ public class KeyValueSnappy implements KeyValue {
         Preconditions.checkNotNull(prefix);
         Preconditions.checkArgument(batch >= 1);
         final int batchQuery = Math.min(batch, 1000);
-        final ArrayList<ByteString> arrayList = new ArrayList<>(batchQuery);
+        final PageBuffer buffer = PageBuffer.forBatch(batch);
         final ByteString startWith = nextTokenOrNull == null ? prefix : nextTokenOrNull;
         final KeyIterator keysIterator = findKeysIterator(startWith);
         try {
@@ -136,22 +135,23 @@ public class KeyValueSnappy implements KeyValue {
                         stop = true;
                         break;
                     }
-                    if (arrayList.size() == batch) {
-                        return new Iterator(arrayList, key);
+                    if (buffer.size() == batch) {
+                        return new Iterator(buffer.moveToPage(), key);
                     }
-                    arrayList.add(getBytes(key));
+                    // value array goes straight to page, key is already in snappy format
+                    buffer.add(db.getBytes(key1));
                 }
                 if (stop) {
                     break;
                 }
 
             }
-        } catch (NotFoundException e) {
+        } catch (SnappydbException e) {
             throw new RuntimeException(e);
         } finally {
             keysIterator.close();
         }
-        return new Iterator(arrayList, null);
+        return new Iterator(buffer.moveToPage(), null);
     }
 
     @Nonnull
@@ -160,7 +160,7 @@ public class KeyValueSnappy implements KeyValue {
         Preconditions.checkNotNull(prefix);
         Preconditions.checkArgument(batch >= 1);
         final int batchQuery = Math.min(batch, 1000);
-        final ArrayList<ByteString> arrayList = new ArrayList<>(batchQuery);
+        final PageBuffer buffer = PageBuffer.forBatch(batch);
         final ByteString startWith = nextTokenOrNull == null ? prefix : nextTokenOrNull;
         final KeyIterator keysIterator = findKeysIterator(startWith);
         try {
@@ -173,10 +173,10 @@ public class KeyValueSnappy implements KeyValue {
                         stop = true;
                         break;
                     }
-                    if (arrayList.size() == batch) {
-                        return new Iterator(arrayList, key);
+                    if (buffer.size() == batch) {
+                        return new Iterator(buffer.moveToPage(), key);
                     }
-                    arrayList.add(key);
+                    buffer.add(key);
                 }
                 if (stop) {
                     break;
@@ -185,7 +185,7 @@ public class KeyValueSnappy implements KeyValue {
         } finally {
             keysIterator.close();
         }
-        return new Iterator(arrayList, null);
+        return new Iterator(buffer.moveToPage(), null);
     }
 
     @Override
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.workload;
+
+import com.appunite.keyvalue.ConcurrentKeyGenerator;
+import com.appunite.keyvalue.KeyValue;
+import com.appunite.keyvalue.NotFoundException;
+import com.google.protobuf.ByteString;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import static com.appunite.keyvalue.workload.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.workload.internal.Preconditions.checkNotNull;
+
+/**
+ * Workload of records with random values, equivalent of YCSB core workload.
+ *
+ * Records are stored under {@code value|usertable|user<hash>|} keys, scans fetch values of
+ * consecutive records with {@link KeyValue#fetchValues(ByteString, ByteString, int)}.
+ */
+public class CoreWorkload implements Workload {
+    public static final int READ = 0;
+    public static final int UPDATE = 1;
+    public static final int INSERT = 2;
+    public static final int SCAN = 3;
+    public static final int READ_MODIFY_WRITE = 4;
+
+    private static final List<String> OPERATIONS = Collections.unmodifiableList(Arrays.asList(
+            "read", "update", "insert", "scan", "read-modify-write"));
+    private static final byte[] TABLE = "usertable".getBytes();
+    private static final int LOAD_BATCH = 1000;
+
+    public enum Distribution {
+        /**
+         * Every record is equally popular
+         */
+        UNIFORM,
+        /**
+         * Few records are very popular, popular records are spread over the whole key space
+         */
+        ZIPFIAN,
+        /**
+         * Recently inserted records are the most popular
+         */
+        LATEST
+    }
+
+    public static class Builder {
+        private long recordCount = 100000;
+        @Nonnull
+        private final double[] proportions = new double[OPERATIONS.size()];
+        @Nonnull
+        private Distribution distribution = Distribution.ZIPFIAN;
+        private int minValueSize = 1000;
+        private int maxValueSize = 1000;
+        private int maxScanLength = 100;
+
+        public Builder() {
+            proportions[READ] = 0.95;
+            proportions[UPDATE] = 0.05;
+        }
+
+        /**
+         * Number of records written by {@link #load(KeyValue)}, default 100000
+         */
+        @Nonnull
+        public Builder recordCount(long recordCount) {
+            checkArgument(recordCount >= 1);
+            this.recordCount = recordCount;
+            return this;
+        }
+
+        /**
+         * Proportions of operations, they do not have to sum up to 1, default 0.95 read and
+         * 0.05 update
+         */
+        @Nonnull
+        public Builder proportions(double read, double update, double insert, double scan,
+                                   double readModifyWrite) {
+            checkArgument(read >= 0 && update >= 0 && insert >= 0 && scan >= 0 && readModifyWrite >= 0);
+            checkArgument(read + update + insert + scan + readModifyWrite > 0);
+            proportions[READ] = read;
+            proportions[UPDATE] = update;
+            proportions[INSERT] = insert;
+            proportions[SCAN] = scan;
+            proportions[READ_MODIFY_WRITE] = readModifyWrite;
+            return this;
+        }
+
+        /**
+         * Distribution of requested records, default {@link Distribution#ZIPFIAN}
+         */
+        @Nonnull
+        public Builder requestDistribution(@Nonnull Distribution distribution) {
+            this.distribution = checkNotNull(distribution);
+            return this;
+        }
+
+        /**
+         * Size of values uniformly distributed between min and max, default 1000 bytes
+         */
+        @Nonnull
+        public Builder valueSize(int min, int max) {
+            checkArgument(min >= 0 && max >= min);
+            this.minValueSize = min;
+            this.maxValueSize = max;
+            return this;
+        }
+
+        /**
+         * Maximal number of records fetched by scan, scan length is uniform, default 100
+         */
+        @Nonnull
+        public Builder maxScanLength(int maxScanLength) {
+            checkArgument(maxScanLength >= 1);
+            this.maxScanLength = maxScanLength;
+            return this;
+        }
+
+        @Nonnull
+        public CoreWorkload build() {
+            return new CoreWorkload(this);
+        }
+    }
+
+    private final long recordCount;
+    @Nonnull
+    private final double[] thresholds;
+    @Nonnull
+    private final Distribution distribution;
+    private final int minValueSize;
+    private final int maxValueSize;
+    private final int maxScanLength;
+    @Nonnull
+    private final ZipfianGenerator zipfian;
+    @Nonnull
+    private final ConcurrentKeyGenerator keys = new ConcurrentKeyGenerator();
+    // number of records, inserts append records at the end
+    @Nonnull
+    private final AtomicLong inserted = new AtomicLong();
+
+    private CoreWorkload(@Nonnull Builder builder) {
+        recordCount = builder.recordCount;
+        distribution = builder.distribution;
+        minValueSize = builder.minValueSize;
+        maxValueSize = builder.maxValueSize;
+        maxScanLength = builder.maxScanLength;
+        zipfian = new ZipfianGenerator(recordCount);
+        thresholds = cumulative(builder.proportions);
+    }
+
+    @Nonnull
+    static double[] cumulative(@Nonnull double[] proportions) {
+        double sum = 0;
+        for (double proportion : proportions) {
+            sum += proportion;
+        }
+        final double[] thresholds = new double[proportions.length];
+        double current = 0;
+        for (int i = 0; i < proportions.length; i++) {
+            current += proportions[i] / sum;
+            thresholds[i] = current;
+        }
+        return thresholds;
+    }
+
+    static int choose(@Nonnull double[] thresholds, @Nonnull Random random) {
+        final double value = random.nextDouble();
+        for (int i = 0; i < thresholds.length - 1; i++) {
+            if (value < thresholds[i]) {
+                return i;
+            }
+        }
+        return thresholds.length - 1;
+    }
+
+    @Nonnull
+    @Override
+    public List<String> operations() {
+        return OPERATIONS;
+    }
+
+    @Override
+    public void load(@Nonnull KeyValue keyValue) {
+        final Random random = new Random(0);
+        final KeyValue.Batch batch = keyValue.newBatch();
+        for (long i = 0; i < recordCount; i++) {
+            batch.put(key(i), randomValue(random));
+            if ((i + 1) % LOAD_BATCH == 0) {
+                batch.write();
+                batch.clear();
+            }
+        }
+        batch.write();
+        inserted.set(recordCount);
+    }
+
+    @Nonnull
+    @Override
+    public Session newSession(long seed) {
+        final Random random = new Random(seed);
+        return new Session() {
+            @Override
+            public int execute(@Nonnull KeyValue keyValue) {
+                final int operation = choose(thresholds, random);
+                switch (operation) {
+                    case READ:
+                        read(keyValue, key(nextRecord(random)));
+                        break;
+                    case UPDATE:
+                        keyValue.put(key(nextRecord(random)), randomValue(random));
+                        break;
+                    case INSERT:
+                        keyValue.put(key(inserted.getAndIncrement()), randomValue(random));
+                        break;
+                    case SCAN:
+                        final int length = 1 + random.nextInt(maxScanLength);
+                        keyValue.fetchValues(keys.singleValue(TABLE), key(nextRecord(random)), length);
+                        break;
+                    case READ_MODIFY_WRITE:
+                        final ByteString key = key(nextRecord(random));
+                        read(keyValue, key);
+                        keyValue.put(key, randomValue(random));
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown operation: " + operation);
+                }
+                return operation;
+            }
+        };
+    }
+
+    private long nextRecord(@Nonnull Random random) {
+        final long records = inserted.get();
+        switch (distribution) {
+            case UNIFORM:
+                return (random.nextLong() & Long.MAX_VALUE) % records;
+            case ZIPFIAN:
+                // records inserted during run are chosen only by LATEST distribution
+                return zipfian.nextScrambled(random, recordCount);
+            case LATEST:
+                return Math.max(0, records - 1 - zipfian.next(random));
+            default:
+                throw new IllegalStateException("Unknown distribution: " + distribution);
+        }
+    }
+
+    private static void read(@Nonnull KeyValue keyValue, @Nonnull ByteString key) {
+        try {
+            keyValue.getBytes(key);
+        } catch (NotFoundException ignore) {
+            // insert with greater number may finish before record is inserted
+        }
+    }
+
+    /**
+     * Key of record, hashed so inserted records do not land at the end of key space
+     */
+    @Nonnull
+    ByteString key(long record) {
+        final long hash = ZipfianGenerator.fnv(record) & Long.MAX_VALUE;
+        return keys.value(TABLE, ByteString.copyFromUtf8("user" + hash));
+    }
+
+    @Nonnull
+    private ByteString randomValue(@Nonnull Random random) {
+        final int size = minValueSize + random.nextInt(maxValueSize - minValueSize + 1);
+        final byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return ByteString.copyFrom(bytes);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.workload;
+
+import com.appunite.keyvalue.KeyValue;
+import com.appunite.keyvalue.KeyValueFrontCoded;
+import com.appunite.keyvalue.KeyValueMemory;
+import com.appunite.keyvalue.KeyValueOrderStatistic;
+import com.appunite.keyvalue.KeyValueRadix;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Command line workload runner for in-memory engines.
+ * <pre>
+ *     ./gradlew :key-value-db-workload:run -PworkloadArgs="b radix 4 100000 1000000"
+ * </pre>
+ */
+public class Main {
+    private static final String USAGE = "Usage: <workload a|b|c|d|e|f|messaging> "
+            + "[engine memory|radix|front-coded|order-statistic] [threads] [records] [operations] "
+            + "[target ops/s]";
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 6) {
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        final String engine = args.length > 1 ? args[1] : "memory";
+        final int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        final int records = args.length > 3 ? Integer.parseInt(args[3]) : 100000;
+        final long operations = args.length > 4 ? Long.parseLong(args[4]) : 1000000;
+        final double target = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+
+        final Workload workload = workload(args[0], records);
+        final KeyValue keyValue = engine(engine);
+        try {
+            final long loadStart = System.nanoTime();
+            workload.load(keyValue);
+            System.out.println("load: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart) + "ms");
+
+            final WorkloadRunner.Report report = new WorkloadRunner.Builder(workload)
+                    .threads(threads)
+                    .operations(operations)
+                    .targetOpsPerSecond(target)
+                    .listener(new WorkloadRunner.Listener() {
+                        @Override
+                        public void onInterval(@Nonnull WorkloadRunner.Report report) {
+                            System.out.println(report);
+                        }
+                    })
+                    .build()
+                    .run(keyValue);
+            System.out.println("total: " + report);
+        } finally {
+            keyValue.close();
+        }
+    }
+
+    @Nonnull
+    private static Workload workload(@Nonnull String name, int records) {
+        switch (name) {
+            case "a":
+                return Workloads.a().recordCount(records).build();
+            case "b":
+                return Workloads.b().recordCount(records).build();
+            case "c":
+                return Workloads.c().recordCount(records).build();
+            case "d":
+                return Workloads.d().recordCount(records).build();
+            case "e":
+                return Workloads.e().recordCount(records).build();
+            case "f":
+                return Workloads.f().recordCount(records).build();
+            case "messaging":
+                // records are split to conversations of 100 messages
+                return Workloads.messaging().conversations(Math.max(1, records / 100)).build();
+            default:
+                throw new IllegalArgumentException("Unknown workload: " + name + "\n" + USAGE);
+        }
+    }
+
+    @Nonnull
+    private static KeyValue engine(@Nonnull String name) {
+        switch (name) {
+            case "memory":
+                return new KeyValueMemory();
+            case "radix":
+                return new KeyValueRadix();
+            case "front-coded":
+                return new KeyValueFrontCoded();
+            case "order-statistic":
+                return new KeyValueOrderStatistic();
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + name + "\n" + USAGE);
+        }
+    }
+}
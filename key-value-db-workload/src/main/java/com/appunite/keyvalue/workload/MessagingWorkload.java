@@ -0,0 +1,316 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.workload;
+
+import com.appunite.keyvalue.ConcurrentKeyGenerator;
+import com.appunite.keyvalue.KeyValue;
+import com.appunite.keyvalue.NotFoundException;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.workload.internal.Preconditions.checkArgument;
+
+/**
+ * Workload of chat application modeled on {@code CommunicationMessage} of example application.
+ *
+ * Messages are stored like in {@code DatabaseSnappy}: message value under
+ * {@code value|message|id|} and conversation index {@code index|message|conversation|id|created|id|}
+ * with message key as value. Pages are read by fetching index page and getting every message,
+ * popularity of conversations is zipfian.
+ */
+public class MessagingWorkload implements Workload {
+    public static final int FIRST_PAGE = 0;
+    public static final int NEXT_PAGE = 1;
+    public static final int GET = 2;
+    public static final int INSERT = 3;
+    /**
+     * Get of message whose insert is not finished yet, reported apart from {@link #GET}
+     */
+    public static final int GET_MISS = 4;
+
+    private static final List<String> OPERATIONS = Collections.unmodifiableList(Arrays.asList(
+            "first-page", "next-page", "get", "insert", "get-miss"));
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+    private static final byte[] CREATED_AT = "created_at".getBytes();
+    private static final long START_MILLIS = 1420070400000L;
+    private static final int LOAD_BATCH = 1000;
+
+    public static class Builder {
+        private int conversations = 1000;
+        private int messagesPerConversation = 100;
+        private int pageSize = 20;
+        private int messageLength = 100;
+        @Nonnull
+        private final double[] proportions = {0.5, 0.2, 0.2, 0.1};
+
+        /**
+         * Number of conversations, default 1000
+         */
+        @Nonnull
+        public Builder conversations(int conversations) {
+            checkArgument(conversations >= 1);
+            this.conversations = conversations;
+            return this;
+        }
+
+        /**
+         * Number of messages in every conversation written by {@link #load(KeyValue)}, default 100
+         */
+        @Nonnull
+        public Builder messagesPerConversation(int messagesPerConversation) {
+            checkArgument(messagesPerConversation >= 1);
+            this.messagesPerConversation = messagesPerConversation;
+            return this;
+        }
+
+        /**
+         * Number of messages on page, default 20
+         */
+        @Nonnull
+        public Builder pageSize(int pageSize) {
+            checkArgument(pageSize >= 1);
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Number of characters of message text, default 100
+         */
+        @Nonnull
+        public Builder messageLength(int messageLength) {
+            checkArgument(messageLength >= 0);
+            this.messageLength = messageLength;
+            return this;
+        }
+
+        /**
+         * Proportions of operations, default 0.5 first page, 0.2 next page, 0.2 get and 0.1 insert
+         */
+        @Nonnull
+        public Builder proportions(double firstPage, double nextPage, double get, double insert) {
+            checkArgument(firstPage >= 0 && nextPage >= 0 && get >= 0 && insert >= 0);
+            checkArgument(firstPage + nextPage + get + insert > 0);
+            proportions[FIRST_PAGE] = firstPage;
+            proportions[NEXT_PAGE] = nextPage;
+            proportions[GET] = get;
+            proportions[INSERT] = insert;
+            return this;
+        }
+
+        @Nonnull
+        public MessagingWorkload build() {
+            return new MessagingWorkload(this);
+        }
+    }
+
+    private final int conversations;
+    private final int messagesPerConversation;
+    private final int pageSize;
+    private final int messageLength;
+    @Nonnull
+    private final double[] thresholds;
+    @Nonnull
+    private final ZipfianGenerator zipfian;
+    @Nonnull
+    private final ConcurrentKeyGenerator keys = new ConcurrentKeyGenerator();
+    // number of written messages of every conversation, bumped after insert is written
+    @Nonnull
+    private final AtomicIntegerArray counts;
+    // next sequence of every conversation, taken by inserts before they are written
+    @Nonnull
+    private final AtomicIntegerArray sequences;
+
+    private MessagingWorkload(@Nonnull Builder builder) {
+        conversations = builder.conversations;
+        messagesPerConversation = builder.messagesPerConversation;
+        pageSize = builder.pageSize;
+        messageLength = builder.messageLength;
+        thresholds = CoreWorkload.cumulative(builder.proportions);
+        zipfian = new ZipfianGenerator(conversations);
+        counts = new AtomicIntegerArray(conversations);
+        sequences = new AtomicIntegerArray(conversations);
+    }
+
+    @Nonnull
+    @Override
+    public List<String> operations() {
+        return OPERATIONS;
+    }
+
+    @Override
+    public void load(@Nonnull KeyValue keyValue) {
+        final Random random = new Random(0);
+        final KeyValue.Batch batch = keyValue.newBatch();
+        int pending = 0;
+        for (int conversation = 0; conversation < conversations; conversation++) {
+            for (int sequence = 0; sequence < messagesPerConversation; sequence++) {
+                putMessage(batch, conversation, sequence, random);
+                if (++pending == LOAD_BATCH) {
+                    batch.write();
+                    batch.clear();
+                    pending = 0;
+                }
+            }
+            counts.set(conversation, messagesPerConversation);
+            sequences.set(conversation, messagesPerConversation);
+        }
+        batch.write();
+    }
+
+    @Nonnull
+    @Override
+    public Session newSession(long seed) {
+        final Random random = new Random(seed);
+        return new Session() {
+            // next page token of the last read conversation
+            @Nullable
+            private ByteString nextToken;
+            private int lastConversation;
+
+            @Override
+            public int execute(@Nonnull KeyValue keyValue) {
+                int operation = CoreWorkload.choose(thresholds, random);
+                if (operation == NEXT_PAGE && nextToken == null) {
+                    operation = FIRST_PAGE;
+                }
+                switch (operation) {
+                    case FIRST_PAGE:
+                        lastConversation = nextConversation(random);
+                        nextToken = page(keyValue, lastConversation, null);
+                        break;
+                    case NEXT_PAGE:
+                        nextToken = page(keyValue, lastConversation, nextToken);
+                        break;
+                    case GET:
+                        final int conversation = nextConversation(random);
+                        final int sequence = random.nextInt(counts.get(conversation));
+                        try {
+                            keyValue.getBytes(messageKey(conversation, sequence));
+                        } catch (NotFoundException e) {
+                            // insert of lower sequence may finish after count was bumped by insert
+                            // of greater one
+                            return GET_MISS;
+                        }
+                        break;
+                    case INSERT:
+                        final int insertConversation = nextConversation(random);
+                        final KeyValue.Batch batch = keyValue.newBatch();
+                        putMessage(batch, insertConversation, sequences.getAndIncrement(insertConversation), random);
+                        batch.write();
+                        counts.incrementAndGet(insertConversation);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown operation: " + operation);
+                }
+                return operation;
+            }
+        };
+    }
+
+    private int nextConversation(@Nonnull Random random) {
+        return (int) zipfian.nextScrambled(random, conversations);
+    }
+
+    @Nullable
+    private ByteString page(@Nonnull KeyValue keyValue, int conversation, @Nullable ByteString nextToken) {
+        final ByteString prefix = keys.startIndex(MESSAGE)
+                .addField(CONVERSATION, conversationId(conversation))
+                .buildQuery();
+        final KeyValue.Iterator iterator = keyValue.fetchValues(prefix, nextToken, pageSize);
+        for (ByteString messageKey : iterator.keys()) {
+            try {
+                keyValue.getBytes(messageKey);
+            } catch (NotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return iterator.nextToken();
+    }
+
+    private void putMessage(@Nonnull KeyValue.Batch batch, int conversation, int sequence,
+                            @Nonnull Random random) {
+        final ByteString id = messageId(conversation, sequence);
+        final String conversationId = conversationId(conversation);
+        final long createdAt = START_MILLIS + sequence * 1000L;
+        final ByteString messageKey = keys.value(MESSAGE, id);
+        final ByteString index = keys.startIndex(MESSAGE)
+                .addField(CONVERSATION, conversationId)
+                .addField(CREATED_AT, createdAt)
+                .buildIndex(id);
+        batch.put(messageKey, message(id, randomText(random), conversationId, createdAt));
+        batch.put(index, messageKey);
+    }
+
+    /**
+     * Wire format of {@code CommunicationMessage}
+     */
+    @Nonnull
+    static ByteString message(@Nonnull ByteString id, @Nonnull String text,
+                              @Nonnull String conversationId, long createdAtMillis) {
+        final int size = CodedOutputStream.computeBytesSize(1, id)
+                + CodedOutputStream.computeStringSize(2, text)
+                + CodedOutputStream.computeStringSize(3, conversationId)
+                + CodedOutputStream.computeInt64Size(4, createdAtMillis);
+        final byte[] bytes = new byte[size];
+        final CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        try {
+            output.writeBytes(1, id);
+            output.writeString(2, text);
+            output.writeString(3, conversationId);
+            output.writeInt64(4, createdAtMillis);
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return ByteString.copyFrom(bytes);
+    }
+
+    @Nonnull
+    ByteString messageKey(int conversation, int sequence) {
+        return keys.value(MESSAGE, messageId(conversation, sequence));
+    }
+
+    @Nonnull
+    private static ByteString messageId(int conversation, int sequence) {
+        return ByteString.copyFromUtf8("m" + conversation + "-" + sequence);
+    }
+
+    @Nonnull
+    static String conversationId(int conversation) {
+        return "conversation" + conversation;
+    }
+
+    @Nonnull
+    private String randomText(@Nonnull Random random) {
+        final char[] text = new char[messageLength];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(text);
+    }
+}
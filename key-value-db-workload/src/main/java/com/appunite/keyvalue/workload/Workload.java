@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.workload;
+
+import com.appunite.keyvalue.KeyValue;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Data set and mix of operations executed by {@link WorkloadRunner}
+ */
+public interface Workload {
+
+    /**
+     * Names of operations, indexes of this list are returned by {@link Session#execute(KeyValue)}
+     */
+    @Nonnull
+    List<String> operations();
+
+    /**
+     * Write initial data set
+     */
+    void load(@Nonnull KeyValue keyValue);
+
+    /**
+     * Session used by one runner thread
+     */
+    @Nonnull
+    Session newSession(long seed);
+
+    interface Session {
+        /**
+         * Execute one randomly chosen operation
+         *
+         * @return index of executed operation in {@link #operations()}
+         */
+        int execute(@Nonnull KeyValue keyValue);
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.workload;
+
+import com.appunite.keyvalue.Histogram;
+import com.appunite.keyvalue.KeyValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.workload.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.workload.internal.Preconditions.checkNotNull;
+
+/**
+ * Executes {@link Workload} on any {@link KeyValue} from many threads and reports throughput
+ * and latency percentiles of every operation, in total and per interval.
+ *
+ * With target rate every thread schedules operations at fixed intervals and latency is measured
+ * from scheduled start, so stalls of engine are not hidden by operations that were not issued
+ * while waiting (coordinated omission).
+ * <pre>
+ *     final Workload workload = Workloads.b().recordCount(100000).build();
+ *     workload.load(keyValue);
+ *     final WorkloadRunner.Report report = new WorkloadRunner.Builder(workload)
+ *             .threads(4)
+ *             .build()
+ *             .run(keyValue);
+ * </pre>
+ */
+public class WorkloadRunner {
+
+    public interface Listener {
+        /**
+         * Called from reporting thread after every interval
+         */
+        void onInterval(@Nonnull Report report);
+    }
+
+    public static class Builder {
+        @Nonnull
+        private final Workload workload;
+        private int threads = 1;
+        private long operations = 100000;
+        private double targetOpsPerSecond = 0;
+        private long reportIntervalMillis = TimeUnit.SECONDS.toMillis(1);
+        @Nullable
+        private Listener listener;
+        private boolean threadSafe = false;
+
+        public Builder(@Nonnull Workload workload) {
+            this.workload = checkNotNull(workload);
+        }
+
+        /**
+         * Number of client threads, default 1
+         */
+        @Nonnull
+        public Builder threads(int threads) {
+            checkArgument(threads >= 1);
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Number of executed operations, default 100000
+         */
+        @Nonnull
+        public Builder operations(long operations) {
+            checkArgument(operations >= 1);
+            this.operations = operations;
+            return this;
+        }
+
+        /**
+         * Operations per second of all threads, default 0 - as fast as possible
+         */
+        @Nonnull
+        public Builder targetOpsPerSecond(double targetOpsPerSecond) {
+            checkArgument(targetOpsPerSecond >= 0);
+            this.targetOpsPerSecond = targetOpsPerSecond;
+            return this;
+        }
+
+        /**
+         * Interval of {@link Listener} reports, default 1s
+         */
+        @Nonnull
+        public Builder reportInterval(long interval, @Nonnull TimeUnit unit) {
+            checkArgument(interval >= 1);
+            this.reportIntervalMillis = Math.max(1, unit.toMillis(interval));
+            return this;
+        }
+
+        /**
+         * Listener of interval reports, default none
+         */
+        @Nonnull
+        public Builder listener(@Nullable Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Whether engine can be used from many threads at once, default false - operations are
+         * executed one at a time
+         */
+        @Nonnull
+        public Builder threadSafe(boolean threadSafe) {
+            this.threadSafe = threadSafe;
+            return this;
+        }
+
+        @Nonnull
+        public WorkloadRunner build() {
+            return new WorkloadRunner(this);
+        }
+    }
+
+    public static class Report {
+        private final long elapsedMillis;
+        private final long operations;
+        @Nonnull
+        private final Map<String, Histogram.Snapshot> latencies;
+
+        Report(long elapsedMillis, @Nonnull Map<String, Histogram.Snapshot> latencies) {
+            this.elapsedMillis = elapsedMillis;
+            this.latencies = Collections.unmodifiableMap(latencies);
+            long operations = 0;
+            for (Histogram.Snapshot snapshot : latencies.values()) {
+                operations += snapshot.count();
+            }
+            this.operations = operations;
+        }
+
+        public long elapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long operations() {
+            return operations;
+        }
+
+        /**
+         * Operations per second
+         */
+        public double throughput() {
+            return elapsedMillis == 0 ? 0 : operations * 1000.0 / elapsedMillis;
+        }
+
+        /**
+         * Latencies in nanoseconds by operation name, see {@link Workload#operations()}
+         */
+        @Nonnull
+        public Map<String, Histogram.Snapshot> latencies() {
+            return latencies;
+        }
+
+        @Nonnull
+        public Histogram.Snapshot latency(@Nonnull String operation) {
+            final Histogram.Snapshot snapshot = latencies.get(operation);
+            checkArgument(snapshot != null, "Unknown operation: " + operation);
+            return snapshot;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder()
+                    .append("elapsed=").append(elapsedMillis).append("ms")
+                    .append(", operations=").append(operations)
+                    .append(", throughput=").append(Math.round(throughput())).append("ops/s");
+            for (Map.Entry<String, Histogram.Snapshot> entry : latencies.entrySet()) {
+                if (entry.getValue().count() > 0) {
+                    builder.append("\n  ").append(entry.getKey()).append(" [ns]: ").append(entry.getValue());
+                }
+            }
+            return builder.toString();
+        }
+    }
+
+    @Nonnull
+    private final Workload workload;
+    private final int threads;
+    private final long operations;
+    private final double targetOpsPerSecond;
+    private final long reportIntervalMillis;
+    @Nullable
+    private final Listener listener;
+    private final boolean threadSafe;
+
+    private WorkloadRunner(@Nonnull Builder builder) {
+        workload = builder.workload;
+        threads = builder.threads;
+        operations = builder.operations;
+        targetOpsPerSecond = builder.targetOpsPerSecond;
+        reportIntervalMillis = builder.reportIntervalMillis;
+        listener = builder.listener;
+        threadSafe = builder.threadSafe;
+    }
+
+    /**
+     * Execute operations, workload should be already loaded with {@link Workload#load(KeyValue)}
+     *
+     * @return report of all operations
+     */
+    @Nonnull
+    public Report run(@Nonnull final KeyValue keyValue) {
+        checkNotNull(keyValue);
+        final List<String> names = workload.operations();
+        final Histogram[] total = histograms(names.size());
+        final Histogram[] interval = histograms(names.size());
+        final AtomicLong remaining = new AtomicLong(operations);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Object lock = new Object();
+        // 0 if not paced
+        final long periodNanos = targetOpsPerSecond == 0
+                ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) * threads / targetOpsPerSecond);
+        final long startNanos = System.nanoTime();
+
+        final List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            final Workload.Session session = workload.newSession(i);
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        long intended = startNanos;
+                        while (failure.get() == null && remaining.getAndDecrement() > 0) {
+                            if (periodNanos != 0) {
+                                intended += periodNanos;
+                                long wait;
+                                while ((wait = intended - System.nanoTime()) > 0) {
+                                    LockSupport.parkNanos(wait);
+                                }
+                            }
+                            final long start = periodNanos == 0 ? System.nanoTime() : intended;
+                            final int operation;
+                            if (threadSafe) {
+                                operation = session.execute(keyValue);
+                            } else {
+                                synchronized (lock) {
+                                    operation = session.execute(keyValue);
+                                }
+                            }
+                            final long latency = System.nanoTime() - start;
+                            total[operation].record(latency);
+                            interval[operation].record(latency);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }, "workload-runner-" + i);
+            workers.add(thread);
+            thread.start();
+        }
+
+        final Thread reporter = listener == null ? null : startReporter(names, interval, startNanos);
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            if (reporter != null) {
+                reporter.interrupt();
+                reporter.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        final Throwable throwable = failure.get();
+        if (throwable != null) {
+            throw new RuntimeException("Workload failed", throwable);
+        }
+        return report(names, total, elapsedMillis, false);
+    }
+
+    @Nonnull
+    private Thread startReporter(@Nonnull final List<String> names,
+                                 @Nonnull final Histogram[] interval,
+                                 final long startNanos) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(reportIntervalMillis);
+                long next = startNanos + intervalNanos;
+                while (true) {
+                    long wait;
+                    while ((wait = next - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                    }
+                    // values recorded between snapshot and reset are lost, intervals are estimates
+                    listener.onInterval(report(names, interval, reportIntervalMillis, true));
+                    next += intervalNanos;
+                }
+            }
+        }, "workload-runner-reporter");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    @Nonnull
+    private static Report report(@Nonnull List<String> names, @Nonnull Histogram[] histograms,
+                                 long elapsedMillis, boolean reset) {
+        final LinkedHashMap<String, Histogram.Snapshot> latencies = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            latencies.put(names.get(i), histograms[i].snapshot());
+            if (reset) {
+                histograms[i].reset();
+            }
+        }
+        return new Report(elapsedMillis, latencies);
+    }
+
+    @Nonnull
+    private static Histogram[] histograms(int size) {
+        final Histogram[] histograms = new Histogram[size];
+        for (int i = 0; i < size; i++) {
+            histograms[i] = new Histogram();
+        }
+        return histograms;
+    }
+}
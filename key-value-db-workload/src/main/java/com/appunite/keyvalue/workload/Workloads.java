@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.workload;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Standard workloads, equivalents of YCSB workloads A-F and messaging workload
+ */
+public class Workloads {
+
+    private Workloads() {
+    }
+
+    /**
+     * Update heavy: 50% reads, 50% updates, zipfian
+     */
+    @Nonnull
+    public static CoreWorkload.Builder a() {
+        return new CoreWorkload.Builder()
+                .proportions(0.5, 0.5, 0, 0, 0)
+                .requestDistribution(CoreWorkload.Distribution.ZIPFIAN);
+    }
+
+    /**
+     * Read mostly: 95% reads, 5% updates, zipfian
+     */
+    @Nonnull
+    public static CoreWorkload.Builder b() {
+        return new CoreWorkload.Builder()
+                .proportions(0.95, 0.05, 0, 0, 0)
+                .requestDistribution(CoreWorkload.Distribution.ZIPFIAN);
+    }
+
+    /**
+     * Read only, zipfian
+     */
+    @Nonnull
+    public static CoreWorkload.Builder c() {
+        return new CoreWorkload.Builder()
+                .proportions(1, 0, 0, 0, 0)
+                .requestDistribution(CoreWorkload.Distribution.ZIPFIAN);
+    }
+
+    /**
+     * Read latest: 95% reads, 5% inserts, recently inserted records are the most popular
+     */
+    @Nonnull
+    public static CoreWorkload.Builder d() {
+        return new CoreWorkload.Builder()
+                .proportions(0.95, 0, 0.05, 0, 0)
+                .requestDistribution(CoreWorkload.Distribution.LATEST);
+    }
+
+    /**
+     * Short ranges: 95% scans, 5% inserts, zipfian start of scan
+     */
+    @Nonnull
+    public static CoreWorkload.Builder e() {
+        return new CoreWorkload.Builder()
+                .proportions(0, 0, 0.05, 0.95, 0)
+                .requestDistribution(CoreWorkload.Distribution.ZIPFIAN)
+                .maxScanLength(100);
+    }
+
+    /**
+     * Read-modify-write: 50% reads, 50% read-modify-writes, zipfian
+     */
+    @Nonnull
+    public static CoreWorkload.Builder f() {
+        return new CoreWorkload.Builder()
+                .proportions(0.5, 0, 0, 0, 0.5)
+                .requestDistribution(CoreWorkload.Distribution.ZIPFIAN);
+    }
+
+    /**
+     * Conversation pages, message gets and inserts, see {@link MessagingWorkload}
+     */
+    @Nonnull
+    public static MessagingWorkload.Builder messaging() {
+        return new MessagingWorkload.Builder();
+    }
+}
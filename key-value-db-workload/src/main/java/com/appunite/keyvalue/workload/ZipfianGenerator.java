@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.workload;
+
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Zipfian distribution of numbers from 0 to items - 1, 0 is the most popular.
+ *
+ * Algorithm from "Quickly Generating Billion-Record Synthetic Databases" by Gray et al.,
+ * zeta constant is computed once in O(items).
+ */
+public class ZipfianGenerator {
+    public static final double DEFAULT_THETA = 0.99;
+
+    private final long items;
+    private final double theta;
+    private final double alpha;
+    private final double zetaN;
+    private final double eta;
+
+    public ZipfianGenerator(long items) {
+        this(items, DEFAULT_THETA);
+    }
+
+    public ZipfianGenerator(long items, double theta) {
+        if (items < 1) {
+            throw new IllegalArgumentException("Items have to be positive");
+        }
+        if (theta <= 0 || theta >= 1) {
+            throw new IllegalArgumentException("Theta has to be between 0 and 1");
+        }
+        this.items = items;
+        this.theta = theta;
+        alpha = 1 / (1 - theta);
+        zetaN = zeta(items, theta);
+        final double zeta2 = zeta(Math.min(2, items), theta);
+        eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetaN);
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    public long items() {
+        return items;
+    }
+
+    public long next(@Nonnull Random random) {
+        final double u = random.nextDouble();
+        final double uz = u * zetaN;
+        if (uz < 1) {
+            return 0;
+        }
+        if (uz < 1 + Math.pow(0.5, theta)) {
+            return Math.min(1, items - 1);
+        }
+        final long value = (long) (items * Math.pow(eta * u - eta + 1, alpha));
+        return Math.min(value, items - 1);
+    }
+
+    /**
+     * Zipfian number spread over whole range, so popular items are not next to each other
+     */
+    public long nextScrambled(@Nonnull Random random, long range) {
+        return (fnv(next(random)) & Long.MAX_VALUE) % range;
+    }
+
+    /**
+     * FNV-1a hash of 8 bytes of value
+     */
+    static long fnv(long value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < 8; i++) {
+            hash ^= value & 0xff;
+            hash *= 0x100000001B3L;
+            value >>>= 8;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.workload;
+
+import com.appunite.keyvalue.KeyGenerator;
+import com.appunite.keyvalue.KeyValueMemory;
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class WorkloadRunnerTest {
+
+    private KeyValueMemory keyValue;
+
+    @Before
+    public void setUp() throws Exception {
+        keyValue = new KeyValueMemory();
+    }
+
+    @Test
+    public void testLoad_allRecordsAreWritten() throws Exception {
+        final CoreWorkload workload = Workloads.a().recordCount(100).valueSize(10, 20).build();
+
+        workload.load(keyValue);
+
+        for (int i = 0; i < 100; i++) {
+            final ByteString value = keyValue.getBytes(workload.key(i));
+            assert_().that(value.size()).isAtLeast(10);
+            assert_().that(value.size()).isAtMost(20);
+        }
+    }
+
+    @Test
+    public void testRun_reportsEveryOperation() throws Exception {
+        final CoreWorkload workload = Workloads.a().recordCount(100).valueSize(10, 10).build();
+        workload.load(keyValue);
+
+        final WorkloadRunner.Report report = new WorkloadRunner.Builder(workload)
+                .threads(2)
+                .operations(1000)
+                .build()
+                .run(keyValue);
+
+        assert_().that(report.operations()).isEqualTo(1000L);
+        assert_().that(report.latency("read").count()).isGreaterThan(0L);
+        assert_().that(report.latency("update").count()).isGreaterThan(0L);
+        assert_().that(report.latency("scan").count()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testStandardWorkloads_runWithoutErrors() throws Exception {
+        final List<Workload> workloads = new ArrayList<>();
+        workloads.add(Workloads.a().recordCount(200).valueSize(10, 10).build());
+        workloads.add(Workloads.b().recordCount(200).valueSize(10, 10).build());
+        workloads.add(Workloads.c().recordCount(200).valueSize(10, 10).build());
+        workloads.add(Workloads.d().recordCount(200).valueSize(10, 10).build());
+        workloads.add(Workloads.e().recordCount(200).valueSize(10, 10).maxScanLength(10).build());
+        workloads.add(Workloads.f().recordCount(200).valueSize(10, 10).build());
+        workloads.add(Workloads.messaging().conversations(10).messagesPerConversation(50).build());
+
+        for (Workload workload : workloads) {
+            final KeyValueMemory keyValue = new KeyValueMemory();
+            workload.load(keyValue);
+            final WorkloadRunner.Report report = new WorkloadRunner.Builder(workload)
+                    .threads(2)
+                    .operations(500)
+                    .build()
+                    .run(keyValue);
+            assert_().that(report.operations()).isEqualTo(500L);
+        }
+    }
+
+    @Test
+    public void testInsert_newRecordsAreReadable() throws Exception {
+        final CoreWorkload workload = Workloads.d().recordCount(10).valueSize(10, 10).build();
+        workload.load(keyValue);
+
+        final WorkloadRunner.Report report = new WorkloadRunner.Builder(workload)
+                .operations(1000)
+                .build()
+                .run(keyValue);
+
+        final long inserts = report.latency("insert").count();
+        assert_().that(inserts).isGreaterThan(0L);
+        keyValue.getBytes(workload.key(10 + inserts - 1));
+    }
+
+    @Test
+    public void testMessagingPage_returnsMessagesOfConversation() throws Exception {
+        final MessagingWorkload workload = Workloads.messaging()
+                .conversations(3)
+                .messagesPerConversation(30)
+                .build();
+        workload.load(keyValue);
+
+        keyValue.getBytes(workload.messageKey(2, 29));
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final ByteString prefix = keyGenerator.startIndex("message".getBytes())
+                .addField("conversation".getBytes(), MessagingWorkload.conversationId(1))
+                .buildQuery();
+        assert_().that(keyValue.fetchValues(prefix, null, 100).keys()).hasSize(30);
+    }
+
+    @Test
+    public void testMessagingGetsAndInserts_missesAreReportedApart() throws Exception {
+        final MessagingWorkload workload = Workloads.messaging()
+                .conversations(3)
+                .messagesPerConversation(5)
+                .proportions(0, 0, 0.5, 0.5)
+                .build();
+        workload.load(keyValue);
+
+        final WorkloadRunner.Report report = new WorkloadRunner.Builder(workload)
+                .operations(1000)
+                .build()
+                .run(keyValue);
+
+        assert_().that(report.latency("get").count()).isGreaterThan(0L);
+        assert_().that(report.latency("get-miss").count()).isEqualTo(0L);
+        assert_().that(report.latency("get").count() + report.latency("insert").count())
+                .isEqualTo(1000L);
+    }
+
+    @Test
+    public void testTargetRate_operationsArePaced() throws Exception {
+        final CoreWorkload workload = Workloads.c().recordCount(10).valueSize(10, 10).build();
+        workload.load(keyValue);
+
+        final WorkloadRunner.Report report = new WorkloadRunner.Builder(workload)
+                .operations(50)
+                .targetOpsPerSecond(500)
+                .build()
+                .run(keyValue);
+
+        assert_().that(report.elapsedMillis()).isAtLeast(90L);
+    }
+
+    @Test
+    public void testListener_receivesIntervalReports() throws Exception {
+        final CoreWorkload workload = Workloads.c().recordCount(10).valueSize(10, 10).build();
+        workload.load(keyValue);
+        final List<WorkloadRunner.Report> reports = new ArrayList<>();
+
+        new WorkloadRunner.Builder(workload)
+                .operations(100)
+                .targetOpsPerSecond(1000)
+                .reportInterval(20, TimeUnit.MILLISECONDS)
+                .listener(new WorkloadRunner.Listener() {
+                    @Override
+                    public void onInterval(@Nonnull WorkloadRunner.Report report) {
+                        synchronized (reports) {
+                            reports.add(report);
+                        }
+                    }
+                })
+                .build()
+                .run(keyValue);
+
+        synchronized (reports) {
+            assert_().that(reports).isNotEmpty();
+        }
+    }
+
+    @Test
+    public void testZipfian_firstItemIsTheMostPopular() throws Exception {
+        final ZipfianGenerator generator = new ZipfianGenerator(1000);
+        final Random random = new Random(0);
+        final int[] counts = new int[1000];
+
+        for (int i = 0; i < 100000; i++) {
+            counts[(int) generator.next(random)]++;
+        }
+
+        assert_().that(counts[0]).isGreaterThan(counts[1]);
+        assert_().that(counts[1]).isGreaterThan(counts[10]);
+        assert_().that(counts[0]).isGreaterThan(100000 / 20);
+    }
+
+    @Test
+    public void testZipfianScrambled_staysInRange() throws Exception {
+        final ZipfianGenerator generator = new ZipfianGenerator(100);
+        final Random random = new Random(0);
+
+        for (int i = 0; i < 10000; i++) {
+            final long value = generator.nextScrambled(random, 100);
+            assert_().that(value).isAtLeast(0L);
+            assert_().that(value).isLessThan(100L);
+        }
+    }
+}
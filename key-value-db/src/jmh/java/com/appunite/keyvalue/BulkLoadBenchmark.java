@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold sync ingestion of message index entries in random order: batched puts vs {@link BulkLoader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BulkLoadBenchmark {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+    private static final byte[] CREATED_AT = "created_at".getBytes();
+
+    @Param({"1000000"})
+    public int entries;
+
+    @Param({"memory", "front-coded"})
+    public String engine;
+
+    private ByteString[] keys;
+    private ByteString[] values;
+
+    @Setup
+    public void setUp() {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final IdGenerator idGenerator = new IdGenerator();
+        final Random random = new Random(0);
+        keys = new ByteString[entries];
+        values = new ByteString[entries];
+        for (int i = 0; i < entries; i++) {
+            final ByteString id = idGenerator.newId();
+            keys[i] = keyGenerator.startIndex(MESSAGE)
+                    .addField(CONVERSATION, "conversation" + random.nextInt(1000))
+                    .addField(CREATED_AT, random.nextLong())
+                    .buildIndex(id);
+            values[i] = keyGenerator.value(MESSAGE, id);
+        }
+    }
+
+    private KeyValue newKeyValue() {
+        return "memory".equals(engine) ? new KeyValueMemory() : new KeyValueFrontCoded();
+    }
+
+    @Benchmark
+    public KeyValue batchedPuts() {
+        final KeyValue keyValue = newKeyValue();
+        final KeyValue.Batch batch = keyValue.newBatch();
+        for (int i = 0; i < entries; i++) {
+            batch.put(keys[i], values[i]);
+        }
+        batch.write();
+        return keyValue;
+    }
+
+    @Benchmark
+    public KeyValue bulkLoad() {
+        final KeyValue keyValue = newKeyValue();
+        // whole input fits in memory, spilling is covered by tests
+        final BulkLoader loader = new BulkLoader.Builder(keyValue)
+                .memoryLimit(1024L * 1024 * 1024)
+                .build();
+        for (int i = 0; i < entries; i++) {
+            loader.add(keys[i], values[i]);
+        }
+        loader.finish();
+        return keyValue;
+    }
+}
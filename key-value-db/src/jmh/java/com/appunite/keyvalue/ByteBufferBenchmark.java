@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payloads in direct buffers written and read through {@link ByteBuffers} vs copied to and from
+ * byte strings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ByteBufferBenchmark {
+    private static final int KEYS = 4096;
+
+    @Param({"memory", "fixed-id"})
+    public String engine;
+
+    @Param({"256"})
+    public int valueSize;
+
+    private KeyValue keyValue;
+    private ByteBuffer[] keys;
+    private ByteBuffer payload;
+    private ByteBuffer out;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        keyValue = "memory".equals(engine) ? new KeyValueMemory() : new KeyValueFixedId();
+        final IdGenerator idGenerator = new IdGenerator();
+        keys = new ByteBuffer[KEYS];
+        payload = ByteBuffer.allocateDirect(valueSize);
+        out = ByteBuffer.allocateDirect(valueSize);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = ByteBuffer.allocateDirect(FixedIdMap.ID_SIZE);
+            idGenerator.newId().copyTo(keys[i]);
+            keys[i].flip();
+            ByteBuffers.put(keyValue, keys[i], payload);
+        }
+    }
+
+    @Benchmark
+    public int getBuffer() throws NotFoundException {
+        position = (position + 1) & (KEYS - 1);
+        out.clear();
+        return ByteBuffers.get(keyValue, keys[position], out);
+    }
+
+    @Benchmark
+    public int getByteString() throws NotFoundException {
+        position = (position + 1) & (KEYS - 1);
+        out.clear();
+        final ByteString value = keyValue.getBytes(ByteString.copyFrom(keys[position].duplicate()));
+        value.copyTo(out);
+        return value.size();
+    }
+
+    @Benchmark
+    public void putBuffer() {
+        position = (position + 1) & (KEYS - 1);
+        ByteBuffers.put(keyValue, keys[position], payload);
+    }
+
+    @Benchmark
+    public void putByteString() {
+        position = (position + 1) & (KEYS - 1);
+        keyValue.put(ByteString.copyFrom(keys[position].duplicate()), ByteString.copyFrom(payload.duplicate()));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of {@link CompressingKeyValue} reads and writes vs stored bytes per message.
+ *
+ * Stored size per value is printed after setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CompressionBenchmark {
+    private static final String[] WORDS = {"hello", "how", "are", "you", "meeting", "tomorrow", "at",
+            "the", "office", "see", "thanks", "great", "sounds", "good", "call", "me", "later", "ok"};
+    private static final int MESSAGES = 100000;
+
+    @Param({"raw", "lz", "lz-dictionary"})
+    public String codec;
+
+    private KeyValueMemory memory;
+    private KeyValue keyValue;
+    private ByteString[] keys;
+    private ByteString[] values;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        memory = new KeyValueMemory();
+        keyValue = "raw".equals(codec) ? memory : new CompressingKeyValue.Builder(memory).build();
+        final Random random = new Random(0);
+        final IdGenerator idGenerator = new IdGenerator();
+        keys = new ByteString[MESSAGES];
+        values = new ByteString[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            keys[i] = idGenerator.newId();
+            values[i] = message(random, i);
+            if (i == 1000 && "lz-dictionary".equals(codec)) {
+                ((CompressingKeyValue) keyValue).train();
+            }
+            keyValue.put(keys[i], values[i]);
+        }
+        long raw = 0;
+        long stored = 0;
+        for (int i = 0; i < MESSAGES; i++) {
+            raw += values[i].size();
+            try {
+                stored += memory.getBytes(keys[i]).size();
+            } catch (NotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        System.out.printf("%n%s: %d raw bytes, %d stored bytes per value%n", codec, raw / MESSAGES, stored / MESSAGES);
+    }
+
+    /**
+     * Looks like text format of CommunicationMessage
+     */
+    private static ByteString message(Random random, int i) {
+        final StringBuilder text = new StringBuilder();
+        final int words = 3 + random.nextInt(20);
+        for (int j = 0; j < words; j++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return ByteString.copyFromUtf8("id: \"message" + i + "\"\n"
+                + "message: \"" + text + "\"\n"
+                + "conversation_id: \"conversation" + random.nextInt(100) + "\"\n"
+                + "created_at_millis: " + (1420070400000L + i * 1000L) + "\n");
+    }
+
+    @Benchmark
+    public ByteString get() throws NotFoundException {
+        position = (position + 1) % MESSAGES;
+        return keyValue.getBytes(keys[position]);
+    }
+
+    @Benchmark
+    public void put() {
+        position = (position + 1) % MESSAGES;
+        keyValue.put(keys[position], values[position]);
+    }
+}
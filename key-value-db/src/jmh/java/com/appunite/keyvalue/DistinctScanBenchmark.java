@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing conversation ids from message index: skip-scan vs reading every index key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class DistinctScanBenchmark {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+    private static final byte[] CREATED_AT = "created_at".getBytes();
+
+    @Param({"1000"})
+    public int conversations;
+
+    @Param({"10000"})
+    public int messagesPerConversation;
+
+    private KeyValueMemory keyValue;
+    private ByteString query;
+
+    @Setup
+    public void setUp() {
+        keyValue = new KeyValueMemory();
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final IdGenerator idGenerator = new IdGenerator();
+        final ByteString value = keyGenerator.value(MESSAGE, idGenerator.newId());
+        for (int conversation = 0; conversation < conversations; conversation++) {
+            final String conversationId = "conversation" + conversation;
+            for (int message = 0; message < messagesPerConversation; message++) {
+                keyValue.put(keyGenerator.startIndex(MESSAGE)
+                        .addField(CONVERSATION, conversationId)
+                        .addField(CREATED_AT, message)
+                        .buildIndex(idGenerator.newId()), value);
+            }
+        }
+        query = keyGenerator.startIndex(MESSAGE).buildFieldQuery(CONVERSATION);
+    }
+
+    @Benchmark
+    public void skipScan(Blackhole blackhole) {
+        blackhole.consume(DistinctScan.fetchAll(keyValue, query));
+    }
+
+    @Benchmark
+    public void fullKeyScan(Blackhole blackhole) {
+        ByteString previous = null;
+        ByteString nextToken = null;
+        do {
+            final KeyValue.Iterator iterator = keyValue.fetchKeys(query, nextToken, 1000);
+            for (ByteString key : iterator.keys()) {
+                int end = query.size();
+                while (key.byteAt(end) != KeyGenerator.SEPARATOR) {
+                    end++;
+                }
+                final ByteString conversation = key.substring(query.size(), end);
+                if (!conversation.equals(previous)) {
+                    blackhole.consume(conversation);
+                    previous = conversation;
+                }
+            }
+            nextToken = iterator.nextToken();
+        } while (nextToken != null);
+    }
+}
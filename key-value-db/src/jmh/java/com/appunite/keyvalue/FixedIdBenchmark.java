@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups by 16 byte id in {@link KeyValueFixedId} vs {@link KeyValueMemory}.
+ *
+ * Retained heap of both engines is printed after setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FixedIdBenchmark {
+    private static final int LOOKUP_KEYS = 4096;
+
+    @Param({"1000000"})
+    public int entries;
+
+    @Param({"memory", "fixed-id"})
+    public String engine;
+
+    private KeyValue keyValue;
+    private byte[][] lookupKeys;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        final long before = usedMemory();
+        keyValue = "memory".equals(engine) ? new KeyValueMemory() : new KeyValueFixedId();
+        final IdGenerator idGenerator = new IdGenerator();
+        final ByteString value = ByteString.copyFrom(new byte[32]);
+        lookupKeys = new byte[LOOKUP_KEYS][];
+        for (int i = 0; i < entries; i++) {
+            final ByteString id = idGenerator.newId();
+            keyValue.put(id, value);
+            if (i < LOOKUP_KEYS) {
+                lookupKeys[i] = id.toByteArray();
+            }
+        }
+        System.out.printf("%n%s: %d bytes per entry%n", engine, (usedMemory() - before) / entries);
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public ByteString get() throws NotFoundException {
+        position = (position + 1) & (LOOKUP_KEYS - 1);
+        return keyValue.getBytes(ByteString.copyFrom(lookupKeys[position]));
+    }
+}
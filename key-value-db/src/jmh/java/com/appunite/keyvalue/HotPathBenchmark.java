@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths checked by {@code jmhRegression} task against stored baseline: key building,
+ * point lookup and conversation page of {@link KeyValueMemory}.
+ *
+ * Keep benchmarks short and stable, changes of this class require new baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class HotPathBenchmark {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+    private static final byte[] CREATED_AT = "created_at".getBytes();
+    private static final int CONVERSATIONS = 64;
+    private static final int MESSAGES = 1000;
+    private static final int PAGE = 20;
+
+    private final KeyGenerator keyGenerator = new KeyGenerator();
+    private KeyValueMemory keyValue;
+    private ByteString[] messageKeys;
+    private ByteString[] conversationPrefixes;
+    private ByteString[] nextTokens;
+    private ByteString id;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        keyValue = new KeyValueMemory();
+        final IdGenerator idGenerator = new IdGenerator();
+        final ByteString value = ByteString.copyFrom(new byte[100]);
+        messageKeys = new ByteString[CONVERSATIONS * MESSAGES];
+        conversationPrefixes = new ByteString[CONVERSATIONS];
+        nextTokens = new ByteString[CONVERSATIONS];
+        for (int conversation = 0; conversation < CONVERSATIONS; conversation++) {
+            final String conversationId = "conversation" + conversation;
+            for (int message = 0; message < MESSAGES; message++) {
+                final ByteString messageId = idGenerator.newId();
+                final ByteString messageKey = keyGenerator.value(MESSAGE, messageId);
+                keyValue.put(messageKey, value);
+                keyValue.put(keyGenerator.startIndex(MESSAGE)
+                        .addField(CONVERSATION, conversationId)
+                        .addField(CREATED_AT, message)
+                        .buildIndex(messageId), messageKey);
+                messageKeys[conversation * MESSAGES + message] = messageKey;
+            }
+            conversationPrefixes[conversation] = keyGenerator.startIndex(MESSAGE)
+                    .addField(CONVERSATION, conversationId)
+                    .buildQuery();
+            // token in the middle of conversation, so next page is not the first one
+            nextTokens[conversation] = keyValue.fetchKeys(conversationPrefixes[conversation], null, MESSAGES / 2)
+                    .nextToken();
+        }
+        id = idGenerator.newId();
+    }
+
+    @Benchmark
+    public ByteString keyGeneratorValue() {
+        return keyGenerator.value(MESSAGE, id);
+    }
+
+    @Benchmark
+    public ByteString keyGeneratorIndex() {
+        return keyGenerator.startIndex(MESSAGE)
+                .addField(CONVERSATION, "conversation1")
+                .addField(CREATED_AT, 1420070400000L)
+                .buildIndex(id);
+    }
+
+    @Benchmark
+    public ByteString memoryGet() throws NotFoundException {
+        position = (position + 1) % messageKeys.length;
+        return keyValue.getBytes(messageKeys[position]);
+    }
+
+    @Benchmark
+    public KeyValue.Iterator memoryFirstPage() {
+        position = (position + 1) % CONVERSATIONS;
+        return keyValue.fetchValues(conversationPrefixes[position], null, PAGE);
+    }
+
+    @Benchmark
+    public KeyValue.Iterator memoryNextPage() {
+        position = (position + 1) % CONVERSATIONS;
+        return keyValue.fetchValues(conversationPrefixes[position], nextTokens[position], PAGE);
+    }
+}
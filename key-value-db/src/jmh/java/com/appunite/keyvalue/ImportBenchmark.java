@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Cold sync import: serialized messages (wire format of example CommunicationMessage) to committed
+ * rows, sequential parse and put vs {@link ImportPipeline} with given number of encoding threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ImportBenchmark {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+    private static final byte[] CREATED_AT = "created_at".getBytes();
+
+    @Param({"200000"})
+    public int messages;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private ArrayList<ByteString> records;
+    private ExecutorService executor;
+
+    private static final ImportPipeline.Encoder ENCODER = new ImportPipeline.Encoder() {
+        @Override
+        public void encode(@Nonnull ByteString record,
+                           @Nonnull KeyGenerator keyGenerator,
+                           @Nonnull EditOperations operations) throws Exception {
+            final CodedInputStream input = record.newCodedInput();
+            ByteString id = ByteString.EMPTY;
+            String conversationId = "";
+            long createdAt = 0;
+            for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case 1:
+                        id = input.readBytes();
+                        break;
+                    case 3:
+                        conversationId = input.readString();
+                        break;
+                    case 4:
+                        createdAt = input.readInt64();
+                        break;
+                    default:
+                        input.skipField(tag);
+                }
+            }
+            operations.put(keyGenerator.value(MESSAGE, id), record);
+            operations.put(keyGenerator.startIndex(MESSAGE)
+                    .addField(CONVERSATION, conversationId)
+                    .addField(CREATED_AT, createdAt)
+                    .buildIndex(id), id);
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(threads);
+        records = new ArrayList<>(messages);
+        final IdGenerator idGenerator = new IdGenerator();
+        final byte[] buffer = new byte[256];
+        for (int i = 0; i < messages; i++) {
+            final CodedOutputStream output = CodedOutputStream.newInstance(buffer);
+            output.writeBytes(1, idGenerator.newId());
+            output.writeString(2, "Message number " + i + " with some text");
+            output.writeString(3, "conversation" + (i % 1000));
+            output.writeInt64(4, 1420070400000L + i);
+            records.add(ByteString.copyFrom(buffer, 0, buffer.length - output.spaceLeft()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public KeyValue sequential() throws Exception {
+        final KeyValueMemory keyValue = new KeyValueMemory();
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final KeyValue.Batch batch = keyValue.newBatch();
+        for (ByteString record : records) {
+            ENCODER.encode(record, keyGenerator, batch);
+        }
+        batch.write();
+        return keyValue;
+    }
+
+    @Benchmark
+    public KeyValue pipeline() {
+        final KeyValueMemory keyValue = new KeyValueMemory();
+        final ImportPipeline pipeline = new ImportPipeline.Builder(keyValue, ENCODER, executor).build();
+        for (ByteString record : records) {
+            pipeline.add(record);
+        }
+        pipeline.finish();
+        return keyValue;
+    }
+}
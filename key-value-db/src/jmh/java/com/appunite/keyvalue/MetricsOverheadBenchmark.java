@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of {@link InstrumentedKeyValue} over {@link KeyValueMemory} for get, put and fetch,
+ * measuring every operation and every 16th operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MetricsOverheadBenchmark {
+    private static final int KEYS = 4096;
+
+    @Param({"100000"})
+    public int entries;
+
+    @Param({"plain", "instrumented", "sampled"})
+    public String mode;
+
+    private KeyValue keyValue;
+    private ByteString[] keys;
+    private ByteString prefix;
+    private ByteString value;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        final KeyValueMemory memory = new KeyValueMemory();
+        if ("plain".equals(mode)) {
+            keyValue = memory;
+        } else {
+            keyValue = new InstrumentedKeyValue.Builder(memory)
+                    .sampleEvery("sampled".equals(mode) ? 16 : 1)
+                    .build();
+        }
+        final IdGenerator idGenerator = new IdGenerator();
+        value = ByteString.copyFrom(new byte[32]);
+        keys = new ByteString[KEYS];
+        for (int i = 0; i < entries; i++) {
+            final ByteString id = idGenerator.newId();
+            keyValue.put(id, value);
+            if (i < KEYS) {
+                keys[i] = id;
+            }
+        }
+        prefix = keys[0].substring(0, 4);
+    }
+
+    @Benchmark
+    public ByteString get() throws NotFoundException {
+        position = (position + 1) & (KEYS - 1);
+        return keyValue.getBytes(keys[position]);
+    }
+
+    @Benchmark
+    public void put() {
+        position = (position + 1) & (KEYS - 1);
+        keyValue.put(keys[position], value);
+    }
+
+    @Benchmark
+    public KeyValue.Iterator fetch() {
+        return keyValue.fetchValues(prefix, null, 100);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paginated read of whole conversation from {@link KeyValueMemory} with
+ * {@link KeyValue.Iterator} pages and with reused {@link PageBuffer}.
+ *
+ * Run with {@code -prof gc} to compare allocated bytes per read conversation
+ * ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class PageScanBenchmark {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+    private static final byte[] CREATED_AT = "created_at".getBytes();
+    private static final int CONVERSATIONS = 16;
+
+    @Param({"1000"})
+    public int messages;
+
+    @Param({"20", "100"})
+    public int pageSize;
+
+    private KeyValueMemory keyValue;
+    private ByteString[] prefixes;
+    private final PageBuffer buffer = new PageBuffer();
+    private int position;
+
+    @Setup
+    public void setUp() {
+        keyValue = new KeyValueMemory();
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final IdGenerator idGenerator = new IdGenerator();
+        final ByteString value = ByteString.copyFrom(new byte[100]);
+        prefixes = new ByteString[CONVERSATIONS];
+        for (int conversation = 0; conversation < CONVERSATIONS; conversation++) {
+            final String conversationId = "conversation" + conversation;
+            for (int message = 0; message < messages; message++) {
+                keyValue.put(keyGenerator.startIndex(MESSAGE)
+                        .addField(CONVERSATION, conversationId)
+                        .addField(CREATED_AT, message)
+                        .buildIndex(idGenerator.newId()), value);
+            }
+            prefixes[conversation] = keyGenerator.startIndex(MESSAGE)
+                    .addField(CONVERSATION, conversationId)
+                    .buildQuery();
+        }
+    }
+
+    @Benchmark
+    public void iterator(Blackhole blackhole) {
+        position = (position + 1) % CONVERSATIONS;
+        ByteString nextToken = null;
+        do {
+            final KeyValue.Iterator iterator = keyValue.fetchValues(prefixes[position], nextToken, pageSize);
+            for (ByteString value : iterator.keys()) {
+                blackhole.consume(value.byteAt(0));
+            }
+            nextToken = iterator.nextToken();
+        } while (nextToken != null);
+    }
+
+    @Benchmark
+    public void buffer(Blackhole blackhole) {
+        position = (position + 1) % CONVERSATIONS;
+        ByteString nextToken = null;
+        do {
+            keyValue.fetchValues(prefixes[position], nextToken, pageSize, buffer);
+            final byte[] array = buffer.array();
+            for (int i = 0; i < buffer.size(); i++) {
+                blackhole.consume(array[buffer.offset(i)]);
+            }
+            nextToken = buffer.nextToken();
+        } while (nextToken != null);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Full scan of {@link KeyValueMemory} with growing number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelScanBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"1000000"})
+    public int entries;
+
+    private KeyValueMemory keyValue;
+    private ExecutorService pool;
+    private KeyRange range;
+
+    @Setup
+    public void setUp() {
+        keyValue = new KeyValueMemory();
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final IdGenerator idGenerator = new IdGenerator();
+        final ByteString value = ByteString.copyFrom(new byte[100]);
+        for (int i = 0; i < entries; i++) {
+            keyValue.put(keyGenerator.value("message".getBytes(), idGenerator.newId()), value);
+        }
+        range = KeyRange.prefix(keyGenerator.singleValue("message".getBytes()));
+        pool = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void sequentialFetchKeys(Blackhole blackhole) throws NotFoundException {
+        ByteString nextToken = null;
+        do {
+            final KeyValue.Iterator iterator = keyValue.fetchKeys(range.start(), nextToken, 1000);
+            for (ByteString key : iterator.keys()) {
+                blackhole.consume(keyValue.getBytes(key));
+            }
+            nextToken = iterator.nextToken();
+        } while (nextToken != null);
+    }
+
+    @Benchmark
+    public void parallelScan(final Blackhole blackhole) {
+        new ParallelScanner(keyValue, pool, threads).scan(range, new ScanVisitor() {
+            @Override
+            public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                blackhole.consume(value);
+                return true;
+            }
+        });
+    }
+}
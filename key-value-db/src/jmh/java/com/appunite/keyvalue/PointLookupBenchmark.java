@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of exact value lookups with and without hash index.
+ *
+ * Lookup keys are fresh copies, like keys built by {@link KeyGenerator} in real code, so their
+ * hash codes are not cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class PointLookupBenchmark {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final int LOOKUP_KEYS = 4096;
+
+    @Param({"1000000", "10000000"})
+    public int entries;
+
+    @Param({"false", "true"})
+    public boolean hashIndex;
+
+    private KeyValueMemory keyValue;
+    private byte[][] lookupKeys;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        keyValue = new KeyValueMemory(hashIndex);
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final IdGenerator idGenerator = new IdGenerator();
+        final ByteString value = ByteString.copyFrom(new byte[100]);
+        final Random random = new Random(0);
+        lookupKeys = new byte[LOOKUP_KEYS][];
+        for (int i = 0; i < entries; i++) {
+            final ByteString key = keyGenerator.value(MESSAGE, idGenerator.newId());
+            keyValue.put(key, value);
+            if (i < LOOKUP_KEYS) {
+                lookupKeys[i] = key.toByteArray();
+            } else if (random.nextInt(i) < LOOKUP_KEYS) {
+                lookupKeys[random.nextInt(LOOKUP_KEYS)] = key.toByteArray();
+            }
+        }
+    }
+
+    @Benchmark
+    public ByteString get() throws NotFoundException {
+        position = (position + 1) & (LOOKUP_KEYS - 1);
+        return keyValue.getBytes(ByteString.copyFrom(lookupKeys[position]));
+    }
+}
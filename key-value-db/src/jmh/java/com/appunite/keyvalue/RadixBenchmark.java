@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link KeyValueRadix} vs {@link KeyValueMemory} on message index keys produced by {@link KeyGenerator}.
+ *
+ * Retained heap of both engines is printed after setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RadixBenchmark {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+    private static final byte[] CREATED_AT = "created_at".getBytes();
+    private static final int LOOKUP_KEYS = 4096;
+
+    @Param({"1000"})
+    public int conversations;
+
+    @Param({"1000"})
+    public int messagesPerConversation;
+
+    @Param({"memory", "radix"})
+    public String engine;
+
+    private KeyValue keyValue;
+    private byte[][] lookupKeys;
+    private ByteString[] conversationQueries;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        final long before = usedMemory();
+        keyValue = "memory".equals(engine) ? new KeyValueMemory() : new KeyValueRadix();
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final IdGenerator idGenerator = new IdGenerator();
+        final ByteString value = keyGenerator.value(MESSAGE, idGenerator.newId());
+        final Random random = new Random(0);
+        lookupKeys = new byte[LOOKUP_KEYS][];
+        conversationQueries = new ByteString[conversations];
+        for (int conversation = 0; conversation < conversations; conversation++) {
+            final String conversationId = "conversation" + conversation;
+            for (int message = 0; message < messagesPerConversation; message++) {
+                final ByteString key = keyGenerator.startIndex(MESSAGE)
+                        .addField(CONVERSATION, conversationId)
+                        .addField(CREATED_AT, message)
+                        .buildIndex(idGenerator.newId());
+                keyValue.put(key, value);
+                final int slot = random.nextInt(conversations * messagesPerConversation);
+                if (slot < LOOKUP_KEYS) {
+                    lookupKeys[slot] = key.toByteArray();
+                }
+            }
+            conversationQueries[conversation] = keyGenerator.startIndex(MESSAGE)
+                    .addField(CONVERSATION, conversationId)
+                    .buildQuery();
+        }
+        for (int i = 0; i < LOOKUP_KEYS; i++) {
+            if (lookupKeys[i] == null) {
+                lookupKeys[i] = keyValue.fetchKeys(conversationQueries[i % conversations], null, 1)
+                        .keys().get(0).toByteArray();
+            }
+        }
+        final long entries = (long) conversations * messagesPerConversation;
+        System.out.printf("%n%s: %d bytes per entry%n", engine, (usedMemory() - before) / entries);
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public ByteString get() throws NotFoundException {
+        position = (position + 1) & (LOOKUP_KEYS - 1);
+        return keyValue.getBytes(ByteString.copyFrom(lookupKeys[position]));
+    }
+
+    @Benchmark
+    public KeyValue.Iterator fetchPage() {
+        position = (position + 1) % conversations;
+        return keyValue.fetchValues(conversationQueries[position], null, 100);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Scan where less than 5% of entries match, filtering in client vs pushed down to engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SelectiveScanBenchmark {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] UNREAD = "unread".getBytes();
+
+    @Param({"100000"})
+    public int entries;
+
+    /**
+     * Every n-th entry matches
+     */
+    @Param({"50"})
+    public int selectivity;
+
+    private KeyValueMemory keyValue;
+    private ByteString prefix;
+    private KeyFilter keyFilter;
+    private EntryFilter entryFilter;
+
+    @Setup
+    public void setUp() {
+        keyValue = new KeyValueMemory();
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final IdGenerator idGenerator = new IdGenerator();
+        for (int i = 0; i < entries; i++) {
+            final boolean unread = i % selectivity == 0;
+            final byte[] value = new byte[200];
+            value[0] = (byte) (unread ? 1 : 0);
+            keyValue.put(keyGenerator.startIndex(MESSAGE)
+                    .addField(UNREAD, unread)
+                    .buildIndex(idGenerator.newId()), ByteString.copyFrom(value));
+        }
+        prefix = keyGenerator.startIndex(MESSAGE).buildQuery();
+        final ByteString unreadPrefix = keyGenerator.startIndex(MESSAGE).addField(UNREAD, true).buildQuery();
+        keyFilter = new KeyFilter() {
+            @Override
+            public boolean accept(@Nonnull ByteString key) {
+                return key.startsWith(unreadPrefix);
+            }
+        };
+        entryFilter = new EntryFilter() {
+            @Override
+            public boolean accept(@Nonnull ByteString key, @Nonnull ByteString value) {
+                return value.byteAt(0) == 1;
+            }
+        };
+    }
+
+    @Benchmark
+    public void filterInClient(Blackhole blackhole) {
+        ByteString nextToken = null;
+        do {
+            final KeyValue.Iterator iterator = keyValue.fetchValues(prefix, nextToken, 100);
+            for (ByteString value : iterator.keys()) {
+                if (value.byteAt(0) == 1) {
+                    blackhole.consume(value);
+                }
+            }
+            nextToken = iterator.nextToken();
+        } while (nextToken != null);
+    }
+
+    @Benchmark
+    public void pushedDownEntryFilter(Blackhole blackhole) {
+        for (ByteString value : new LazyScan.Builder(keyValue, KeyRange.prefix(prefix))
+                .filter(entryFilter)
+                .build()
+                .values()) {
+            blackhole.consume(value);
+        }
+    }
+
+    @Benchmark
+    public void pushedDownKeyFilter(Blackhole blackhole) {
+        for (ByteString value : new LazyScan.Builder(keyValue, KeyRange.prefix(prefix))
+                .keyFilter(keyFilter)
+                .build()
+                .values()) {
+            blackhole.consume(value);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Optional interface of engines that can install big amount of sorted entries faster than
+ * by separate puts, used by {@link BulkLoader}.
+ */
+public interface BulkLoadable {
+    /**
+     * Install entries, existing values of same keys are overwritten
+     *
+     * @param entries entries with strictly increasing keys
+     */
+    void bulkLoad(@Nonnull java.util.Iterator<Map.Entry<ByteString, ByteString>> entries);
+}
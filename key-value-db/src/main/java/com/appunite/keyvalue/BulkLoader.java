@@ -0,0 +1,434 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.appunite.keyvalue.internal.KeySorter;
+import com.google.protobuf.ByteString;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+import static com.appunite.keyvalue.internal.Preconditions.checkState;
+
+/**
+ * Loads big amount of entries in any order into engine.
+ *
+ * Entries are buffered and sorted in memory, when buffer exceeds {@link Builder#memoryLimit(long)}
+ * it is written to temporary file as sorted run. {@link #finish()} merges runs and installs
+ * sorted entries in one step with {@link BulkLoadable#bulkLoad(java.util.Iterator)} or in big
+ * batches if engine does not support it. If key is added more than once last value wins.
+ * <pre>
+ *     final BulkLoader loader = new BulkLoader.Builder(keyValue).build();
+ *     for (...) {
+ *         loader.add(key, value);
+ *     }
+ *     loader.finish();
+ * </pre>
+ */
+public class BulkLoader implements Closeable {
+    // approximate memory used by buffered entry beside key and value bytes
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int FALLBACK_BATCH = 10000;
+
+    public static class Builder {
+        @Nonnull
+        private final KeyValue keyValue;
+        private long memoryLimit = 64L * 1024 * 1024;
+        @Nullable
+        private File tempDirectory;
+
+        public Builder(@Nonnull KeyValue keyValue) {
+            this.keyValue = checkNotNull(keyValue);
+        }
+
+        /**
+         * Approximate memory used for buffered entries before they are spilled to disk, default 64MB
+         */
+        @Nonnull
+        public Builder memoryLimit(long memoryLimit) {
+            checkArgument(memoryLimit > 0);
+            this.memoryLimit = memoryLimit;
+            return this;
+        }
+
+        /**
+         * Directory for sorted runs, default java.io.tmpdir
+         */
+        @Nonnull
+        public Builder tempDirectory(@Nonnull File tempDirectory) {
+            this.tempDirectory = checkNotNull(tempDirectory);
+            return this;
+        }
+
+        @Nonnull
+        public BulkLoader build() {
+            return new BulkLoader(this);
+        }
+    }
+
+    @Nonnull
+    private final KeyValue keyValue;
+    private final long memoryLimit;
+    @Nullable
+    private final File tempDirectory;
+    @Nonnull
+    private ByteString[] keys = new ByteString[1024];
+    @Nonnull
+    private ByteString[] values = new ByteString[1024];
+    private int buffered;
+    private long bufferSize;
+    @Nonnull
+    private final List<File> runs = new ArrayList<>();
+    // entries being merged by finish, closed before runs are removed
+    @Nullable
+    private SortedEntries entries;
+    private boolean finished;
+
+    private BulkLoader(@Nonnull Builder builder) {
+        keyValue = builder.keyValue;
+        memoryLimit = builder.memoryLimit;
+        tempDirectory = builder.tempDirectory;
+    }
+
+    public void add(@Nonnull ByteString key, @Nonnull ByteString value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        checkState(!finished, "Loader already finished");
+        if (buffered == keys.length) {
+            keys = Arrays.copyOf(keys, buffered * 2);
+            values = Arrays.copyOf(values, buffered * 2);
+        }
+        keys[buffered] = key;
+        values[buffered] = value;
+        buffered++;
+        bufferSize += key.size() + value.size() + ENTRY_OVERHEAD;
+        if (bufferSize >= memoryLimit) {
+            spill();
+        }
+    }
+
+    /**
+     * Install all added entries into engine and remove temporary files
+     *
+     * @return number of installed entries
+     */
+    public int finish() {
+        checkState(!finished, "Loader already finished");
+        finished = true;
+        try {
+            final SortedEntries entries = new SortedEntries(sortBuffer());
+            this.entries = entries;
+            clearBuffer();
+            final BulkLoadable loadable = ForwardingKeyValue.capability(keyValue, BulkLoadable.class);
+            if (loadable != null) {
+                loadable.bulkLoad(entries);
+            } else {
+                final KeyValue.Batch batch = keyValue.newBatch();
+                int batched = 0;
+                while (entries.hasNext()) {
+                    final Map.Entry<ByteString, ByteString> entry = entries.next();
+                    batch.put(entry.getKey(), entry.getValue());
+                    if (++batched == FALLBACK_BATCH) {
+                        batch.write();
+                        batch.clear();
+                        batched = 0;
+                    }
+                }
+                batch.write();
+            }
+            return entries.count;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Remove temporary files, loader can not be used after that
+     */
+    @Override
+    public void close() {
+        finished = true;
+        clearBuffer();
+        if (entries != null) {
+            entries.close();
+            entries = null;
+        }
+        for (File run : runs) {
+            //noinspection ResultOfMethodCallIgnored
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    private void clearBuffer() {
+        keys = new ByteString[1024];
+        values = new ByteString[1024];
+        buffered = 0;
+        bufferSize = 0;
+    }
+
+    /**
+     * Sort buffer keeping only last value of every key
+     */
+    @Nonnull
+    private List<Map.Entry<ByteString, ByteString>> sortBuffer() {
+        // equal keys are ordered by index, so the last one is the newest
+        final int[] order = KeySorter.sort(keys, buffered);
+        final ArrayList<Map.Entry<ByteString, ByteString>> out = new ArrayList<>(buffered);
+        for (int i = 0; i < buffered; i++) {
+            final int index = order[i];
+            if (i + 1 < buffered && sameKey(keys[index], keys[order[i + 1]])) {
+                continue;
+            }
+            out.add(new AbstractMap.SimpleImmutableEntry<>(keys[index], values[index]));
+        }
+        return out;
+    }
+
+    private static boolean sameKey(@Nonnull ByteString key1, @Nonnull ByteString key2) {
+        final int size = key1.size();
+        if (size != key2.size()) {
+            return false;
+        }
+        // neighbours after sorting share prefixes, so they usually differ at the end
+        for (int i = size - 1; i >= 0; i--) {
+            if (key1.byteAt(i) != key2.byteAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void spill() {
+        final List<Map.Entry<ByteString, ByteString>> sorted = sortBuffer();
+        try {
+            final File run = File.createTempFile("bulk", ".run", tempDirectory);
+            runs.add(run);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(run), 64 * 1024));
+            try {
+                for (Map.Entry<ByteString, ByteString> entry : sorted) {
+                    writeBytes(out, entry.getKey());
+                    writeBytes(out, entry.getValue());
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        clearBuffer();
+    }
+
+    private static void writeBytes(@Nonnull DataOutputStream out, @Nonnull ByteString bytes) throws IOException {
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Sorted run read one entry at a time
+     */
+    private static abstract class Run implements Comparable<Run> {
+        /**
+         * Runs created later contain newer values
+         */
+        final int age;
+        @Nullable
+        Map.Entry<ByteString, ByteString> current;
+
+        Run(int age) {
+            this.age = age;
+        }
+
+        abstract void advance();
+
+        @Override
+        public int compareTo(@Nonnull Run other) {
+            final int compare = KeyValueMemory.COMPARATOR.compare(current.getKey(), other.current.getKey());
+            return compare != 0 ? compare : other.age - age;
+        }
+    }
+
+    private static class MemoryRun extends Run {
+        @Nonnull
+        private final java.util.Iterator<Map.Entry<ByteString, ByteString>> iterator;
+
+        MemoryRun(int age, @Nonnull List<Map.Entry<ByteString, ByteString>> entries) {
+            super(age);
+            iterator = entries.iterator();
+            advance();
+        }
+
+        @Override
+        void advance() {
+            current = iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+
+    private static class FileRun extends Run {
+        @Nonnull
+        private final DataInputStream in;
+
+        FileRun(int age, @Nonnull File file) throws IOException {
+            super(age);
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            try {
+                advance();
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        void advance() {
+            try {
+                final int keySize;
+                try {
+                    keySize = in.readInt();
+                } catch (EOFException e) {
+                    current = null;
+                    close();
+                    return;
+                }
+                current = new AbstractMap.SimpleImmutableEntry<>(readBytes(keySize), readBytes(in.readInt()));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ignore) {
+            }
+        }
+
+        @Nonnull
+        private ByteString readBytes(int size) throws IOException {
+            final byte[] bytes = new byte[size];
+            in.readFully(bytes);
+            return ByteString.copyFrom(bytes);
+        }
+    }
+
+    /**
+     * Merges sorted runs, for equal keys value from newest run wins
+     */
+    private class SortedEntries implements java.util.Iterator<Map.Entry<ByteString, ByteString>> {
+        @Nonnull
+        private final PriorityQueue<Run> queue = new PriorityQueue<>();
+        @Nonnull
+        private final List<FileRun> fileRuns = new ArrayList<>();
+        @Nullable
+        private final Run single;
+        int count;
+
+        SortedEntries(@Nonnull List<Map.Entry<ByteString, ByteString>> memory) {
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    final FileRun fileRun = new FileRun(i, runs.get(i));
+                    fileRuns.add(fileRun);
+                    add(fileRun);
+                }
+            } catch (IOException e) {
+                close();
+                throw new RuntimeException(e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+            final MemoryRun memoryRun = new MemoryRun(runs.size(), memory);
+            // without spilled runs there is nothing to merge
+            single = runs.isEmpty() ? memoryRun : null;
+            add(memoryRun);
+        }
+
+        /**
+         * Close runs that were not read till the end
+         */
+        void close() {
+            for (FileRun fileRun : fileRuns) {
+                fileRun.close();
+            }
+        }
+
+        private void add(@Nonnull Run run) {
+            if (run.current != null) {
+                queue.add(run);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return single != null ? single.current != null : !queue.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<ByteString, ByteString> next() {
+            if (single != null) {
+                final Map.Entry<ByteString, ByteString> entry = single.current;
+                if (entry == null) {
+                    throw new NoSuchElementException();
+                }
+                single.advance();
+                count++;
+                return entry;
+            }
+            final Run run = queue.poll();
+            if (run == null) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<ByteString, ByteString> entry = run.current;
+            run.advance();
+            add(run);
+            // drop older values of the same key
+            while (!queue.isEmpty() && queue.peek().current.getKey().equals(entry.getKey())) {
+                final Run older = queue.poll();
+                older.advance();
+                add(older);
+            }
+            count++;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.keyvalue;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Optional interface of engines that read and write {@link ByteBuffer}s without building
+ * {@link com.google.protobuf.ByteString}s, e.g. payloads received into direct buffers.
+ *
+ * Use {@link ByteBuffers} so engines without this interface are also supported.
+ * Bytes between position and limit are key or value, positions of keys and values passed
+ * to engine are not changed.
+ */
+public interface ByteBufferAccess {
+
+    /**
+     * The same as {@link KeyValue#put(com.google.protobuf.ByteString, com.google.protobuf.ByteString)},
+     * buffers can be reused after call
+     */
+    void put(@Nonnull ByteBuffer key, @Nonnull ByteBuffer value);
+
+    /**
+     * Copy value of key into out, from its position up to its limit, position of out is advanced
+     * by copied bytes
+     *
+     * @return size of value, if it is greater than remaining bytes of out value was truncated
+     * @throws NotFoundException if key does not exist
+     */
+    int get(@Nonnull ByteBuffer key, @Nonnull ByteBuffer out) throws NotFoundException;
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * {@link ByteBuffer} access to any {@link KeyValue}.
+ *
+ * Engines implementing {@link ByteBufferAccess} are used directly. Other engines may keep
+ * passed byte strings, so keys and values are copied from buffers once, values read are copied
+ * into out buffer straight from byte string returned by engine.
+ * Scans need no engine support, visitor gets read only views of scanned byte strings.
+ * <pre>
+ *     ByteBuffers.put(keyValue, key, payload);
+ *     payload.clear();
+ *     final int size = ByteBuffers.get(keyValue, key, payload);
+ * </pre>
+ */
+public class ByteBuffers {
+
+    public static void put(@Nonnull KeyValue keyValue,
+                           @Nonnull ByteBuffer key,
+                           @Nonnull ByteBuffer value) {
+        checkNotNull(keyValue);
+        checkNotNull(key);
+        checkNotNull(value);
+        final ByteBufferAccess access = ForwardingKeyValue.capability(keyValue, ByteBufferAccess.class);
+        if (access != null) {
+            access.put(key, value);
+            return;
+        }
+        keyValue.put(copyOf(key), copyOf(value));
+    }
+
+    /**
+     * @see ByteBufferAccess#get(ByteBuffer, ByteBuffer)
+     */
+    public static int get(@Nonnull KeyValue keyValue,
+                          @Nonnull ByteBuffer key,
+                          @Nonnull ByteBuffer out) throws NotFoundException {
+        checkNotNull(keyValue);
+        checkNotNull(key);
+        checkNotNull(out);
+        final ByteBufferAccess access = ForwardingKeyValue.capability(keyValue, ByteBufferAccess.class);
+        if (access != null) {
+            return access.get(key, out);
+        }
+        return copyTo(keyValue.getBytes(copyOf(key)), out);
+    }
+
+    public static void scan(@Nonnull KeyValue keyValue,
+                            @Nonnull KeyRange range,
+                            @Nonnull ByteBufferVisitor visitor) {
+        scan(keyValue, range, ScanOptions.DEFAULT, visitor);
+    }
+
+    public static void scan(@Nonnull KeyValue keyValue,
+                            @Nonnull KeyRange range,
+                            @Nonnull ScanOptions options,
+                            @Nonnull final ByteBufferVisitor visitor) {
+        checkNotNull(visitor);
+        Scans.scan(keyValue, range, options, new ScanVisitor() {
+            @Override
+            public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                return visitor.visit(key.asReadOnlyByteBuffer(), value.asReadOnlyByteBuffer());
+            }
+        });
+    }
+
+    /**
+     * Copy of bytes between position and limit, position is not changed
+     */
+    @Nonnull
+    public static ByteString copyOf(@Nonnull ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return ByteString.copyFrom(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return ByteString.copyFrom(buffer.duplicate());
+    }
+
+    /**
+     * View of bytes between position and limit, copied only if buffer is not backed by array.
+     * Only for engines that do not keep passed byte string, e.g. for lookups.
+     */
+    @Nonnull
+    public static ByteString view(@Nonnull ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return ByteUtils.wrap(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return copyOf(buffer);
+    }
+
+    /**
+     * Array with bytes between position and limit, backing array if buffer wraps whole array,
+     * otherwise copy. Only for callers that do not modify returned array, e.g. native calls.
+     */
+    @Nonnull
+    public static byte[] readOnlyArray(@Nonnull ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Copy value to out up to its remaining bytes
+     *
+     * @return size of value
+     */
+    public static int copyTo(@Nonnull ByteString value, @Nonnull ByteBuffer out) {
+        final int size = value.size();
+        if (size <= out.remaining()) {
+            value.copyTo(out);
+        } else {
+            value.substring(0, out.remaining()).copyTo(out);
+        }
+        return size;
+    }
+
+    /**
+     * @see #copyTo(ByteString, ByteBuffer)
+     */
+    public static int copyTo(@Nonnull byte[] value, @Nonnull ByteBuffer out) {
+        out.put(value, 0, Math.min(value.length, out.remaining()));
+        return value.length;
+    }
+}
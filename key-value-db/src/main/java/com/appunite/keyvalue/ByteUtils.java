@@ -17,6 +17,7 @@
 package com.appunite.keyvalue;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.ZeroCopyByteString;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -27,6 +28,28 @@ public class ByteUtils {
 
     private static final char[] HEX_CHARS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A',
             'B', 'C', 'D', 'E', 'F' };
+    // ZeroCopyByteString uses package private classes of protobuf 2.6, with other version or
+    // when package cannot be shared (e.g. signed protobuf jar) bytes are copied instead
+    private static final boolean ZERO_COPY = isZeroCopyAvailable();
+
+    private static boolean isZeroCopyAvailable() {
+        try {
+            final byte[] bytes = {1, 2};
+            return ZeroCopyByteString.readOnlyArray(ZeroCopyByteString.wrap(bytes)) == bytes
+                    && ZeroCopyByteString.wrap(bytes, 1, 1).byteAt(0) == 2;
+        } catch (LinkageError e) {
+            return false;
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * False if protobuf version does not allow wrapping arrays and every wrap copies
+     */
+    public static boolean isZeroCopy() {
+        return ZERO_COPY;
+    }
 
     @Nonnull
     public static String toString(@Nonnull ByteString bytes) {
@@ -51,7 +74,7 @@ public class ByteUtils {
             final byte c2 = toByte(fromString.charAt(i*2+1));
             out[i] = (byte)(c2 + (c1 << 4));
         }
-        return ByteString.copyFrom(out);
+        return wrap(out);
     }
 
     private static byte toByte(char c) {
@@ -70,12 +93,70 @@ public class ByteUtils {
                 arrayOffset + buffer.position());
     }
 
+    /**
+     * Copy of bytes written to buffer, from its start to position
+     */
     @Nonnull
     public static ByteString convertToByteString(@Nonnull ByteBuffer buffer) {
-        final byte[] array = buffer.array();
-        final int arrayOffset = buffer.arrayOffset();
+        return ByteString.copyFrom(buffer.array(), buffer.arrayOffset(), buffer.position());
+    }
+
+    /**
+     * Wrap array in byte string without copying, for arrays that are not modified later, e.g.
+     * freshly returned by native code.
+     */
+    @Nonnull
+    public static ByteString wrap(@Nonnull byte[] bytes) {
+        return ZERO_COPY ? ZeroCopyByteString.wrap(bytes) : ByteString.copyFrom(bytes);
+    }
 
-        return ByteString.copyFrom(array, arrayOffset, arrayOffset + buffer.position());
+    /**
+     * Wrap part of array without copying, whole array is kept in memory by returned byte string
+     *
+     * @see #wrap(byte[])
+     */
+    @Nonnull
+    public static ByteString wrap(@Nonnull byte[] bytes, int offset, int length) {
+        return ZERO_COPY
+                ? ZeroCopyByteString.wrap(bytes, offset, length)
+                : ByteString.copyFrom(bytes, offset, length);
+    }
+
+    /**
+     * Bytes of byte string without copying when it wraps whole array, otherwise copy.
+     * Only for callers that do not modify returned array, e.g. native calls that read it.
+     */
+    @Nonnull
+    public static byte[] readOnlyArray(@Nonnull ByteString bytes) {
+        return ZERO_COPY ? ZeroCopyByteString.readOnlyArray(bytes) : bytes.toByteArray();
     }
 
+    /**
+     * Same as {@link ByteString#startsWith(ByteString)} but does not allocate
+     */
+    public static boolean startsWith(@Nonnull ByteString bytes, @Nonnull ByteString prefix) {
+        final int size = prefix.size();
+        if (bytes.size() < size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (bytes.byteAt(i) != prefix.byteAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean startsWith(@Nonnull byte[] bytes, @Nonnull ByteString prefix) {
+        final int size = prefix.size();
+        if (bytes.length < size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (bytes[i] != prefix.byteAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.appunite.keyvalue.internal.DictionaryTrainer;
+import com.appunite.keyvalue.internal.LzCodec;
+import com.appunite.keyvalue.internal.Varint;
+import com.google.protobuf.ByteString;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Decorator that compresses values with {@link LzCodec}, optionally with dictionary trained
+ * on sampled values.
+ *
+ * Every stored value starts with one byte header, so compressed and raw values coexist:
+ * <pre>
+ *     0 | raw value
+ *     1 | varint length | compressed value
+ *     2 | varint dictionary id | varint length | compressed value
+ * </pre>
+ * Values shorter than {@link Builder#minSize(int)} or that do not compress well enough are stored raw.
+ * Dictionaries are stored in database, so values can be read after reopening, and are never
+ * returned by fetches of this decorator. Dictionaries trained by other instance are loaded when
+ * value compressed with them is read.
+ * Values written without this decorator can not be read through it.
+ */
+public class CompressingKeyValue extends ForwardingKeyValue {
+    private static final byte RAW = 0;
+    private static final byte COMPRESSED = 1;
+    private static final byte COMPRESSED_WITH_DICTIONARY = 2;
+    private static final ByteString DICTIONARY_PREFIX = ByteString.copyFrom(new byte[]{0})
+            .concat(ByteString.copyFromUtf8("codec-dictionary"))
+            .concat(ByteString.copyFrom(new byte[]{KeyGenerator.SEPARATOR}));
+    private static final int HEADER_SIZE = 1 + 2 * Varint.MAX_SIZE;
+
+    public static class Builder {
+        @Nonnull
+        private final KeyValue keyValue;
+        private int minSize = 64;
+        private int minSavingsPercent = 10;
+        private int dictionarySize = 4096;
+        private int samples = 512;
+        private int sampleEvery = 8;
+        private int trainAfter = 0;
+        private boolean retrain = false;
+
+        public Builder(@Nonnull KeyValue keyValue) {
+            this.keyValue = checkNotNull(keyValue);
+        }
+
+        /**
+         * Values shorter than minSize are not compressed, default 64
+         */
+        @Nonnull
+        public Builder minSize(int minSize) {
+            checkArgument(minSize >= 0);
+            this.minSize = minSize;
+            return this;
+        }
+
+        /**
+         * Compressed value is stored only if it is at least that much smaller, default 10
+         */
+        @Nonnull
+        public Builder minSavingsPercent(int minSavingsPercent) {
+            checkArgument(minSavingsPercent >= 0 && minSavingsPercent < 100);
+            this.minSavingsPercent = minSavingsPercent;
+            return this;
+        }
+
+        /**
+         * Maximal size of trained dictionary in bytes, default 4096
+         */
+        @Nonnull
+        public Builder dictionarySize(int dictionarySize) {
+            checkArgument(dictionarySize > 0 && dictionarySize <= 0xffff);
+            this.dictionarySize = dictionarySize;
+            return this;
+        }
+
+        /**
+         * Number of values sampled for training, default 512
+         */
+        @Nonnull
+        public Builder samples(int samples) {
+            checkArgument(samples > 0);
+            this.samples = samples;
+            return this;
+        }
+
+        /**
+         * Only every n-th value of at least {@link #minSize(int)} is considered for sampling,
+         * default 8
+         */
+        @Nonnull
+        public Builder sampleEvery(int sampleEvery) {
+            checkArgument(sampleEvery > 0);
+            this.sampleEvery = sampleEvery;
+            return this;
+        }
+
+        /**
+         * Train dictionary automatically after that many values of at least
+         * {@link #minSize(int)} are written, default 0 - only when {@link #train()} is called
+         */
+        @Nonnull
+        public Builder trainAfter(int trainAfter) {
+            checkArgument(trainAfter >= 0);
+            this.trainAfter = trainAfter;
+            return this;
+        }
+
+        /**
+         * Keep sampling after automatic training, so {@link #train()} can retrain dictionary
+         * on later values, default false - values are not sampled after automatic training
+         */
+        @Nonnull
+        public Builder retrain(boolean retrain) {
+            this.retrain = retrain;
+            return this;
+        }
+
+        @Nonnull
+        public CompressingKeyValue build() {
+            return new CompressingKeyValue(this);
+        }
+    }
+
+    private static class Dictionary {
+        final int id;
+        @Nonnull
+        final LzCodec.Dictionary preset;
+
+        Dictionary(int id, @Nonnull byte[] bytes) {
+            this.id = id;
+            this.preset = new LzCodec.Dictionary(bytes);
+        }
+    }
+
+    private final int minSize;
+    private final int minSavingsPercent;
+    private final int dictionarySize;
+    private final int sampleEvery;
+    private final int trainAfter;
+    private final boolean retrain;
+    @Nonnull
+    private final ConcurrentHashMap<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    @Nullable
+    private volatile Dictionary current;
+    @Nonnull
+    private final byte[][] samples;
+    // guarded by samples, ThreadLocalRandom is not available before Android API 21
+    @Nonnull
+    private final Random random = new Random();
+    // guarded by samples, number of sampled values
+    private long written;
+    // guarded by samples, true after automatic training
+    private boolean trained;
+    // not synchronized, lost updates only shift which values are sampled
+    private int candidates;
+    private volatile boolean sampling = true;
+
+    private CompressingKeyValue(@Nonnull Builder builder) {
+        super(builder.keyValue);
+        minSize = builder.minSize;
+        minSavingsPercent = builder.minSavingsPercent;
+        dictionarySize = builder.dictionarySize;
+        sampleEvery = builder.sampleEvery;
+        trainAfter = builder.trainAfter;
+        retrain = builder.retrain;
+        samples = new byte[builder.samples][];
+        ByteString nextToken = null;
+        do {
+            final Iterator keys = delegate().fetchKeys(DICTIONARY_PREFIX, nextToken, 100);
+            for (ByteString key : keys.keys()) {
+                final int id = key.substring(DICTIONARY_PREFIX.size()).asReadOnlyByteBuffer().getInt();
+                try {
+                    addDictionary(id, delegate().getBytes(key).toByteArray());
+                } catch (NotFoundException ignore) {
+                    // removed in the meantime
+                }
+            }
+            nextToken = keys.nextToken();
+        } while (nextToken != null);
+    }
+
+    @Nonnull
+    private static ByteString dictionaryKey(int id) {
+        return DICTIONARY_PREFIX.concat(ByteString.copyFrom(ByteBuffer.allocate(4).putInt(0, id)));
+    }
+
+    private void addDictionary(int id, @Nonnull byte[] bytes) {
+        synchronized (dictionaries) {
+            dictionaries.put(id, bytes);
+            final Dictionary previous = current;
+            if (previous == null || previous.id < id) {
+                current = new Dictionary(id, bytes);
+            }
+        }
+    }
+
+    /**
+     * Dictionary with id, loaded from database if it was trained by other instance
+     */
+    @Nonnull
+    private byte[] dictionary(int id) {
+        final byte[] dictionary = dictionaries.get(id);
+        if (dictionary != null) {
+            return dictionary;
+        }
+        final byte[] bytes;
+        try {
+            bytes = delegate().getBytes(dictionaryKey(id)).toByteArray();
+        } catch (NotFoundException e) {
+            throw new IllegalStateException("Missing dictionary " + id);
+        }
+        addDictionary(id, bytes);
+        return bytes;
+    }
+
+    /**
+     * True if prefix can match dictionary keys, so results have to be filtered
+     */
+    private static boolean coversDictionaries(@Nonnull ByteString prefix) {
+        return ByteUtils.startsWith(DICTIONARY_PREFIX, prefix) || ByteUtils.startsWith(prefix, DICTIONARY_PREFIX);
+    }
+
+    @Override
+    public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        delegate().put(key, encode(value));
+    }
+
+    @Nonnull
+    @Override
+    public Batch newBatch() {
+        final Batch batch = delegate().newBatch();
+        return new Batch() {
+            @Override
+            public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+                checkNotNull(key);
+                checkNotNull(value);
+                batch.put(key, encode(value));
+            }
+
+            @Override
+            public void del(@Nonnull ByteString key) {
+                batch.del(key);
+            }
+
+            @Override
+            public void clear() {
+                batch.clear();
+            }
+
+            @Override
+            public void write() {
+                batch.write();
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
+        return decode(delegate().getBytes(key));
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public Iterator getKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetchValues(prefix, nextTokenOrNull, batch);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchValues(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        if (coversDictionaries(prefix)) {
+            return fetchWithoutDictionaries(prefix, nextTokenOrNull, batch, true);
+        }
+        return decode(delegate().fetchValues(prefix, nextTokenOrNull, batch));
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        if (coversDictionaries(prefix)) {
+            return fetchWithoutDictionaries(prefix, nextTokenOrNull, batch, false);
+        }
+        return delegate().fetchKeys(prefix, nextTokenOrNull, batch);
+    }
+
+    /**
+     * Page of keys or values that skips dictionary keys, values are read one by one
+     */
+    @Nonnull
+    private Iterator fetchWithoutDictionaries(@Nonnull ByteString prefix,
+                                              @Nullable ByteString nextTokenOrNull,
+                                              int batch,
+                                              boolean values) {
+        checkArgument(batch >= 1);
+        final ArrayList<ByteString> out = new ArrayList<>(Math.min(batch, 64));
+        ByteString nextToken = nextTokenOrNull;
+        do {
+            final Iterator keys = delegate().fetchKeys(prefix, nextToken, batch);
+            for (ByteString key : keys.keys()) {
+                if (ByteUtils.startsWith(key, DICTIONARY_PREFIX)) {
+                    continue;
+                }
+                if (out.size() == batch) {
+                    return new Iterator(out, key);
+                }
+                if (!values) {
+                    out.add(key);
+                    continue;
+                }
+                try {
+                    out.add(getBytes(key));
+                } catch (NotFoundException ignore) {
+                    // removed in the meantime
+                }
+            }
+            nextToken = keys.nextToken();
+        } while (nextToken != null);
+        return new Iterator(out, null);
+    }
+
+    /**
+     * Train new dictionary from sampled values, values written later are compressed with it
+     *
+     * @return true if dictionary was trained, false if samples do not share enough data
+     */
+    public boolean train() {
+        final ArrayList<byte[]> sampled = new ArrayList<>(samples.length);
+        synchronized (samples) {
+            for (byte[] sample : samples) {
+                if (sample != null) {
+                    sampled.add(sample);
+                }
+            }
+        }
+        final byte[] bytes = DictionaryTrainer.train(sampled, dictionarySize);
+        if (bytes.length == 0) {
+            return false;
+        }
+        synchronized (dictionaries) {
+            final Dictionary previous = current;
+            final int id = previous == null ? 1 : previous.id + 1;
+            delegate().put(dictionaryKey(id), ByteString.copyFrom(bytes));
+            addDictionary(id, bytes);
+        }
+        return true;
+    }
+
+    @Nonnull
+    private ByteString encode(@Nonnull ByteString value) {
+        final int size = value.size();
+        if (size >= minSize) {
+            if (sampling && candidates++ % sampleEvery == 0) {
+                sample(value);
+            }
+            final Dictionary dictionary = current;
+            final byte[] src = ByteUtils.readOnlyArray(value);
+            final byte[] out = new byte[HEADER_SIZE + LzCodec.maxCompressedLength(size)];
+            int length;
+            if (dictionary == null) {
+                out[0] = COMPRESSED;
+                length = Varint.write(out, 1, size);
+            } else {
+                out[0] = COMPRESSED_WITH_DICTIONARY;
+                length = Varint.write(out, 1, dictionary.id);
+                length = Varint.write(out, length, size);
+            }
+            length += LzCodec.compress(dictionary == null ? LzCodec.Dictionary.EMPTY : dictionary.preset,
+                    src, 0, size, out, length);
+            if ((long) length * 100 <= (long) size * (100 - minSavingsPercent)) {
+                return ByteString.copyFrom(out, 0, length);
+            }
+        }
+        final byte[] out = new byte[size + 1];
+        out[0] = RAW;
+        value.copyTo(out, 1);
+        return ByteUtils.wrap(out);
+    }
+
+    private void sample(@Nonnull ByteString value) {
+        final boolean train;
+        synchronized (samples) {
+            written++;
+            // reservoir sampling keeps uniform sample of all written values
+            final long slot = written <= samples.length
+                    ? written - 1
+                    : nextLong(random, written);
+            if (slot < samples.length) {
+                // copy, so caller can not change sample
+                samples[(int) slot] = value.toByteArray();
+            }
+            train = !trained && trainAfter > 0 && written * sampleEvery >= trainAfter;
+            if (train) {
+                trained = true;
+                sampling = retrain;
+            }
+        }
+        if (train) {
+            train();
+        }
+    }
+
+    @Nonnull
+    private Iterator decode(@Nonnull Iterator iterator) {
+        final List<ByteString> values = iterator.keys();
+        final ArrayList<ByteString> out = new ArrayList<>(values.size());
+        for (ByteString value : values) {
+            out.add(decode(value));
+        }
+        return new Iterator(out, iterator.nextToken());
+    }
+
+    @Nonnull
+    private ByteString decode(@Nonnull ByteString stored) {
+        final byte format = stored.byteAt(0);
+        if (format == RAW) {
+            return stored.substring(1);
+        }
+        final byte[] bytes = ByteUtils.readOnlyArray(stored);
+        final byte[] dictionary;
+        int offset = 1;
+        if (format == COMPRESSED) {
+            dictionary = LzCodec.Dictionary.EMPTY.bytes();
+        } else if (format == COMPRESSED_WITH_DICTIONARY) {
+            final int id = Varint.read(bytes, offset);
+            offset += Varint.size(id);
+            dictionary = dictionary(id);
+        } else {
+            throw new IllegalStateException("Unknown value format " + format);
+        }
+        final int length = Varint.read(bytes, offset);
+        offset += Varint.size(length);
+        return ByteUtils.wrap(LzCodec.decompress(dictionary, bytes, offset, bytes.length - offset, length));
+    }
+
+    /**
+     * Uniform random number in [0, bound)
+     */
+    private static long nextLong(@Nonnull Random random, long bound) {
+        while (true) {
+            final long bits = random.nextLong() >>> 1;
+            final long value = bits % bound;
+            // reject values from last incomplete range, so result is not biased
+            if (bits - value + (bound - 1) >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * {@link KeyGenerator} that can be shared between threads without locking.
+ *
+ * Every thread builds keys in its own reusable buffer, so building a key does not allocate
+ * anything except the result. Returned {@link KeyGenerator.Builder} is confined to calling thread
+ * and is valid until next key is started on this thread, so it should not be stored or passed to
+ * other threads.
+ * <pre>
+ *     private static final ConcurrentKeyGenerator KEYS = new ConcurrentKeyGenerator();
+ *
+ *     final ByteString key = KEYS.startIndex(MESSAGE).addField(CONVERSATION, id).buildQuery();
+ * </pre>
+ */
+public class ConcurrentKeyGenerator {
+    @Nonnull
+    private final ThreadLocal<KeyGenerator> generators;
+
+    public ConcurrentKeyGenerator() {
+        this(null);
+    }
+
+    /**
+     * @param dictionary dictionary used by key generators of all threads,
+     *                   see {@link KeyGenerator#KeyGenerator(KeyDictionary)}
+     */
+    public ConcurrentKeyGenerator(@Nullable final KeyDictionary dictionary) {
+        generators = new ThreadLocal<KeyGenerator>() {
+            @Override
+            protected KeyGenerator initialValue() {
+                return new KeyGenerator(dictionary);
+            }
+        };
+    }
+
+    /**
+     * Key generator of current thread
+     */
+    @Nonnull
+    public KeyGenerator current() {
+        return generators.get();
+    }
+
+    @Nonnull
+    public KeyGenerator.Builder startIndex(@Nonnull byte[] valueType) {
+        return generators.get().startIndex(valueType);
+    }
+
+    @Nonnull
+    public ByteString singleValue(@Nonnull byte[] valueType) {
+        return generators.get().singleValue(valueType);
+    }
+
+    @Nonnull
+    public ByteString value(@Nonnull byte[] valueType, @Nonnull ByteString id) {
+        return generators.get().value(valueType, id);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Lists distinct values of a {@link KeyGenerator} field without reading every key.
+ *
+ * After a key is found, scan seeks directly past all keys that share the same field value,
+ * so cost is O(distinct values * log n) instead of O(n).
+ *
+ * <pre>
+ * final ByteString query = keyGenerator.startIndex(MESSAGE).buildFieldQuery(CONVERSATION);
+ * final KeyValue.Iterator conversations = DistinctScan.fetch(keyValue, query, null, 100);
+ * </pre>
+ *
+ * Field values are read up to the next separator, so this works only for fields whose values
+ * do not contain separator byte (e.g. strings).
+ */
+public class DistinctScan {
+    private static final ByteString ZERO = ByteString.copyFrom(new byte[]{0});
+
+    /**
+     * @param fieldQuery key prefix ending with field name, see
+     *                   {@link KeyGenerator.Builder#buildFieldQuery(byte[])}
+     * @param nextTokenOrNull token returned from previous page or null
+     * @param batch maximal number of returned values
+     * @return distinct field values in key order
+     */
+    @Nonnull
+    public static KeyValue.Iterator fetch(@Nonnull KeyValue keyValue,
+                                          @Nonnull final ByteString fieldQuery,
+                                          @Nullable ByteString nextTokenOrNull,
+                                          final int batch) {
+        checkNotNull(keyValue);
+        checkNotNull(fieldQuery);
+        checkArgument(batch >= 1);
+        final ByteString start = nextTokenOrNull == null ? fieldQuery : nextTokenOrNull;
+        final ArrayList<ByteString> values = new ArrayList<>();
+        final ByteString[] nextToken = new ByteString[1];
+        Scans.skipScan(keyValue, new KeyRange(start, KeyRange.prefixEnd(fieldQuery)), new SeekVisitor() {
+            @Nullable
+            @Override
+            public ByteString visit(@Nonnull ByteString key) {
+                if (values.size() == batch) {
+                    nextToken[0] = key;
+                    return null;
+                }
+                final int end = indexOfSeparator(key, fieldQuery.size());
+                if (end < 0) {
+                    values.add(key.substring(fieldQuery.size()));
+                    return key.concat(ZERO);
+                }
+                values.add(key.substring(fieldQuery.size(), end));
+                // first key after all keys starting with: query, value, separator
+                return KeyRange.prefixEnd(key.substring(0, end + 1));
+            }
+        });
+        return new KeyValue.Iterator(values, nextToken[0]);
+    }
+
+    @Nonnull
+    public static List<ByteString> fetchAll(@Nonnull KeyValue keyValue, @Nonnull ByteString fieldQuery) {
+        final ArrayList<ByteString> out = new ArrayList<>();
+        ByteString nextToken = null;
+        do {
+            final KeyValue.Iterator iterator = fetch(keyValue, fieldQuery, nextToken, 1000);
+            out.addAll(iterator.keys());
+            nextToken = iterator.nextToken();
+        } while (nextToken != null);
+        return out;
+    }
+
+    private static int indexOfSeparator(@Nonnull ByteString key, int from) {
+        final int size = key.size();
+        for (int i = from; i < size; i++) {
+            if (key.byteAt(i) == KeyGenerator.SEPARATOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
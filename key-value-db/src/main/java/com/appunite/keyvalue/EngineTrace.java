@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkState;
+
+/**
+ * Per thread counters of engine work done by traced operation, see {@link TracingKeyValue}.
+ *
+ * Engines report work with static methods: {@link #seek()} when iterator is positioned,
+ * {@link #steps(int)} for index lookups and {@link #rows(int)} for entries read. When no thread
+ * is tracing reporting is a single volatile read. Loops get trace once with {@link #active()}
+ * and report every row to it, so untraced rows cost only a local null check:
+ * <pre>
+ *     final EngineTrace trace = EngineTrace.active();
+ *     for (...) {
+ *         if (trace != null) {
+ *             trace.addRows(1);
+ *         }
+ *     }
+ * </pre>
+ */
+public class EngineTrace {
+    // number of threads that are inside traced operation
+    private static final AtomicInteger tracing = new AtomicInteger();
+    private static final ThreadLocal<EngineTrace> current = new ThreadLocal<EngineTrace>() {
+        @Override
+        protected EngineTrace initialValue() {
+            return new EngineTrace();
+        }
+    };
+
+    private int depth;
+    private long seeks;
+    private long steps;
+    private long rows;
+
+    private EngineTrace() {
+    }
+
+    /**
+     * Start counting on current thread, nested calls share counters with outermost one
+     */
+    @Nonnull
+    public static EngineTrace begin() {
+        final EngineTrace trace = current.get();
+        if (trace.depth++ == 0) {
+            trace.seeks = 0;
+            trace.steps = 0;
+            trace.rows = 0;
+            tracing.incrementAndGet();
+        }
+        return trace;
+    }
+
+    /**
+     * Stop counting started by {@link #begin()}, counters stay readable until next begin
+     */
+    public void end() {
+        checkState(depth > 0, "Trace not started");
+        if (--depth == 0) {
+            tracing.decrementAndGet();
+        }
+    }
+
+    /**
+     * Trace of current thread if it is inside traced operation, otherwise null
+     */
+    @Nullable
+    public static EngineTrace active() {
+        if (tracing.get() == 0) {
+            return null;
+        }
+        final EngineTrace trace = current.get();
+        return trace.depth > 0 ? trace : null;
+    }
+
+    /**
+     * Iterator was positioned at key
+     */
+    public static void seek() {
+        if (tracing.get() == 0) {
+            return;
+        }
+        final EngineTrace trace = current.get();
+        if (trace.depth > 0) {
+            trace.seeks++;
+        }
+    }
+
+    /**
+     * Index structure (e.g. tree) was searched count times
+     */
+    public static void steps(int count) {
+        if (tracing.get() == 0) {
+            return;
+        }
+        final EngineTrace trace = current.get();
+        if (trace.depth > 0) {
+            trace.steps += count;
+        }
+    }
+
+    /**
+     * Count entries were read, including entries that were filtered out
+     */
+    public static void rows(int count) {
+        if (tracing.get() == 0) {
+            return;
+        }
+        final EngineTrace trace = current.get();
+        if (trace.depth > 0) {
+            trace.rows += count;
+        }
+    }
+
+    public void addSeeks(int count) {
+        seeks += count;
+    }
+
+    public void addSteps(int count) {
+        steps += count;
+    }
+
+    public void addRows(int count) {
+        rows += count;
+    }
+
+    public long seeks() {
+        return seeks;
+    }
+
+    public long steps() {
+        return steps;
+    }
+
+    public long rows() {
+        return rows;
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Hash map from 16 byte ids (see {@link IdGenerator}) to values without per entry objects.
+ *
+ * Ids are stored as two longs in parallel primitive arrays (open addressing, linear probing)
+ * and values are packed into one byte arena, so an entry costs its id, two ints and value bytes
+ * instead of separate key and value objects with headers.
+ */
+public class FixedIdMap {
+    public static final int ID_SIZE = 16;
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int MIN_ARENA = 1024;
+
+    @Nonnull
+    private long[] highs;
+    @Nonnull
+    private long[] lows;
+    @Nonnull
+    private int[] offsets;
+    /**
+     * Length of value + 1, 0 means that slot is empty
+     */
+    @Nonnull
+    private int[] lengths;
+    private int size;
+    private int mask;
+
+    @Nonnull
+    private byte[] arena = new byte[MIN_ARENA];
+    private int arenaSize;
+    private int garbage;
+
+    public FixedIdMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isId(@Nonnull ByteString key) {
+        return key.size() == ID_SIZE;
+    }
+
+    public boolean isId(@Nonnull ByteBuffer key) {
+        return key.remaining() == ID_SIZE;
+    }
+
+    @Nullable
+    public ByteString get(@Nonnull ByteString id) {
+        final int slot = find(high(id), low(id));
+        return slot < 0 ? null : valueAt(slot);
+    }
+
+    /**
+     * Copy value of id into out up to its remaining bytes
+     *
+     * @return size of value or -1 if there is no such id
+     */
+    public int get(@Nonnull ByteBuffer id, @Nonnull ByteBuffer out) {
+        final int slot = find(high(id), low(id));
+        if (slot < 0) {
+            return -1;
+        }
+        final int length = lengths[slot] - 1;
+        out.put(arena, offsets[slot], Math.min(length, out.remaining()));
+        return length;
+    }
+
+    public void put(@Nonnull ByteString id, @Nonnull ByteString value) {
+        checkNotNull(value);
+        final int slot = slotForPut(high(id), low(id));
+        final int length = value.size();
+        final int offset = reserve(length);
+        value.copyTo(arena, offset);
+        offsets[slot] = offset;
+        lengths[slot] = length + 1;
+    }
+
+    /**
+     * Id and value between position and limit of buffers, value is copied straight into arena
+     */
+    public void put(@Nonnull ByteBuffer id, @Nonnull ByteBuffer value) {
+        checkNotNull(value);
+        final int slot = slotForPut(high(id), low(id));
+        final int length = value.remaining();
+        final int offset = reserve(length);
+        value.duplicate().get(arena, offset, length);
+        offsets[slot] = offset;
+        lengths[slot] = length + 1;
+    }
+
+    /**
+     * Slot for new value of id, length of slot is 0 until value is set
+     */
+    private int slotForPut(long high, long low) {
+        int slot = find(high, low);
+        if (slot >= 0) {
+            garbage += lengths[slot] - 1;
+            // old value should not survive compaction that can be triggered by reserve
+            lengths[slot] = 0;
+        } else {
+            if ((size + 1) * 10 > highs.length * 7) {
+                resize(highs.length * 2);
+            }
+            slot = hash(high, low) & mask;
+            while (lengths[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            highs[slot] = high;
+            lows[slot] = low;
+            size++;
+        }
+        return slot;
+    }
+
+    public boolean remove(@Nonnull ByteString id) {
+        final int slot = find(high(id), low(id));
+        if (slot < 0) {
+            return false;
+        }
+        garbage += lengths[slot] - 1;
+        size--;
+        // backward shift deletion, so no tombstones are needed
+        int hole = slot;
+        for (int j = (slot + 1) & mask; lengths[j] != 0; j = (j + 1) & mask) {
+            final int home = hash(highs[j], lows[j]) & mask;
+            final boolean canMove = hole <= j
+                    ? home <= hole || home > j
+                    : home <= hole && home > j;
+            if (canMove) {
+                highs[hole] = highs[j];
+                lows[hole] = lows[j];
+                offsets[hole] = offsets[j];
+                lengths[hole] = lengths[j];
+                hole = j;
+            }
+        }
+        lengths[hole] = 0;
+        return true;
+    }
+
+    int capacity() {
+        return highs.length;
+    }
+
+    boolean isUsed(int slot) {
+        return lengths[slot] != 0;
+    }
+
+    @Nonnull
+    ByteString keyAt(int slot) {
+        final byte[] out = new byte[ID_SIZE];
+        writeKey(slot, out);
+        return ByteUtils.wrap(out);
+    }
+
+    void writeKey(int slot, @Nonnull byte[] out) {
+        writeLong(out, 0, highs[slot]);
+        writeLong(out, 8, lows[slot]);
+    }
+
+    @Nonnull
+    ByteString valueAt(int slot) {
+        return ByteString.copyFrom(arena, offsets[slot], lengths[slot] - 1);
+    }
+
+    void addValueTo(int slot, @Nonnull PageBuffer buffer) {
+        buffer.add(arena, offsets[slot], lengths[slot] - 1);
+    }
+
+    /**
+     * Compare keys in unsigned lexicographic order, same as {@link KeyValueMemory#COMPARATOR}
+     */
+    int compareSlots(int slot1, int slot2) {
+        final int compare = compareUnsigned(highs[slot1], highs[slot2]);
+        return compare != 0 ? compare : compareUnsigned(lows[slot1], lows[slot2]);
+    }
+
+    /**
+     * Compare first {@code min(bytes.length, ID_SIZE)} bytes of key in slot with bytes in
+     * unsigned order, without building the key
+     */
+    int compareKeyPrefix(int slot, @Nonnull byte[] bytes) {
+        final int length = Math.min(bytes.length, ID_SIZE);
+        for (int i = 0; i < length; i++) {
+            final long word = i < 8 ? highs[slot] : lows[slot];
+            final int compare = ((int) (word >>> (56 - 8 * (i & 7))) & 0xff) - (bytes[i] & 0xff);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return 0;
+    }
+
+    private int find(long high, long low) {
+        for (int i = hash(high, low) & mask; lengths[i] != 0; i = (i + 1) & mask) {
+            if (highs[i] == high && lows[i] == low) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reserve space for value at the end of arena
+     *
+     * @return offset of reserved space
+     */
+    private int reserve(int length) {
+        if (arenaSize + length > arena.length) {
+            if (garbage > arenaSize / 2) {
+                compact(length);
+            } else {
+                final byte[] bigger = new byte[Math.max(arena.length * 2, arenaSize + length)];
+                System.arraycopy(arena, 0, bigger, 0, arenaSize);
+                arena = bigger;
+            }
+        }
+        final int offset = arenaSize;
+        arenaSize += length;
+        return offset;
+    }
+
+    private void compact(int extra) {
+        final int live = arenaSize - garbage;
+        final byte[] compacted = new byte[Math.max(MIN_ARENA, Math.max(live + extra, live * 2))];
+        int position = 0;
+        for (int slot = 0; slot < lengths.length; slot++) {
+            if (lengths[slot] == 0) {
+                continue;
+            }
+            final int length = lengths[slot] - 1;
+            System.arraycopy(arena, offsets[slot], compacted, position, length);
+            offsets[slot] = position;
+            position += length;
+        }
+        arena = compacted;
+        arenaSize = position;
+        garbage = 0;
+    }
+
+    private void resize(int capacity) {
+        final long[] oldHighs = highs;
+        final long[] oldLows = lows;
+        final int[] oldOffsets = offsets;
+        final int[] oldLengths = lengths;
+        allocate(capacity);
+        for (int i = 0; i < oldLengths.length; i++) {
+            if (oldLengths[i] == 0) {
+                continue;
+            }
+            int slot = hash(oldHighs[i], oldLows[i]) & mask;
+            while (lengths[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            highs[slot] = oldHighs[i];
+            lows[slot] = oldLows[i];
+            offsets[slot] = oldOffsets[i];
+            lengths[slot] = oldLengths[i];
+            size++;
+        }
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private static int hash(long high, long low) {
+        long h = high * 0x9E3779B97F4A7C15L ^ low;
+        h *= 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long high(@Nonnull ByteString id) {
+        checkArgument(id.size() == ID_SIZE, "Id has to have 16 bytes");
+        return readLong(id, 0);
+    }
+
+    private static long low(@Nonnull ByteString id) {
+        return readLong(id, 8);
+    }
+
+    private static long high(@Nonnull ByteBuffer id) {
+        checkArgument(id.remaining() == ID_SIZE, "Id has to have 16 bytes");
+        return readLong(id, id.position());
+    }
+
+    private static long low(@Nonnull ByteBuffer id) {
+        return readLong(id, id.position() + 8);
+    }
+
+    // byte by byte, so result does not depend on order of buffer
+    private static long readLong(@Nonnull ByteBuffer bytes, int index) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes.get(index + i) & 0xffL);
+        }
+        return value;
+    }
+
+    private static long readLong(@Nonnull ByteString bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes.byteAt(offset + i) & 0xffL);
+        }
+        return value;
+    }
+
+    private static void writeLong(@Nonnull byte[] out, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            out[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static int compareUnsigned(long a, long b) {
+        final long a1 = a ^ Long.MIN_VALUE;
+        final long b1 = b ^ Long.MIN_VALUE;
+        return a1 < b1 ? -1 : (a1 == b1 ? 0 : 1);
+    }
+}
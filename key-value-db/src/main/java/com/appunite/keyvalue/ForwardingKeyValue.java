@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Base class for decorators, forwards every call to delegate.
+ *
+ * Subclasses override methods they change, batches returned by {@link #newBatch()} write directly
+ * to delegate unless subclass overrides it.
+ *
+ * Optional interfaces of delegate ({@link RangeScanner}, {@link PageScanner}, {@link BulkLoadable},
+ * {@link ByteBufferAccess}) are hidden by decorator unless subclass declares with
+ * {@link #preservesEntries()} that they can be used in its place.
+ */
+public abstract class ForwardingKeyValue implements KeyValue {
+    @Nonnull
+    private final KeyValue delegate;
+
+    protected ForwardingKeyValue(@Nonnull KeyValue delegate) {
+        this.delegate = checkNotNull(delegate);
+    }
+
+    @Nonnull
+    protected KeyValue delegate() {
+        return delegate;
+    }
+
+    /**
+     * True if decorator does not change keys nor values, so helpers like {@link Scans},
+     * {@link ByteBuffers} and {@link BulkLoader} may use optional interfaces of delegate in place
+     * of decorator, calls made through them are not seen by decorator. Default false.
+     */
+    protected boolean preservesEntries() {
+        return false;
+    }
+
+    /**
+     * Given optional interface of engine, looked up through decorators that preserve entries
+     *
+     * @return engine or its delegate implementing interface, null if there is none
+     */
+    @Nullable
+    static <T> T capability(@Nonnull KeyValue keyValue, @Nonnull Class<T> type) {
+        for (; ; ) {
+            if (type.isInstance(keyValue)) {
+                return type.cast(keyValue);
+            }
+            if (!(keyValue instanceof ForwardingKeyValue)
+                    || !((ForwardingKeyValue) keyValue).preservesEntries()) {
+                return null;
+            }
+            keyValue = ((ForwardingKeyValue) keyValue).delegate();
+        }
+    }
+
+    @Override
+    public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+        delegate.put(key, value);
+    }
+
+    @Override
+    public void del(@Nonnull ByteString key) {
+        delegate.del(key);
+    }
+
+    @Nonnull
+    @Override
+    public Batch newBatch() {
+        return delegate.newBatch();
+    }
+
+    @Nonnull
+    @Override
+    public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
+        return delegate.getBytes(key);
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public Iterator getKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return delegate.getKeys(prefix, nextTokenOrNull, batch);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchValues(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return delegate.fetchValues(prefix, nextTokenOrNull, batch);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return delegate.fetchKeys(prefix, nextTokenOrNull, batch);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
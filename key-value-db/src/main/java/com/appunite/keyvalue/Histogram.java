@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+
+/**
+ * Lock-free histogram of non negative values with log-linear buckets (like HdrHistogram).
+ *
+ * Values below 64 are recorded exactly, greater values fall into one of 32 buckets per power of
+ * two, so relative error of reported values is below 3%. Recording is a few atomic operations
+ * and never allocates, histogram takes about 15kB.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    @Nonnull
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    @Nonnull
+    private final AtomicLong sum = new AtomicLong();
+    @Nonnull
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(index(value));
+        sum.addAndGet(value);
+        for (long current = max.get(); value > current; current = max.get()) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reset all values, values recorded concurrently with reset may be partially lost
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Copy of current values, values recorded concurrently with snapshot may be partially included
+     */
+    @Nonnull
+    public Snapshot snapshot() {
+        final long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.get(), max.get());
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS * shift + (int) (value >>> shift);
+    }
+
+    static long lowestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    static long highestValue(int index) {
+        return index + 1 == BUCKETS ? Long.MAX_VALUE : lowestValue(index + 1) - 1;
+    }
+
+    public static class Snapshot {
+        @Nonnull
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(@Nonnull long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Number of recorded values
+         */
+        public long count() {
+            return count;
+        }
+
+        public long sum() {
+            return sum;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Value that is greater or equal to given percent of recorded values
+         *
+         * @param percentile from 0 to 100
+         * @return value or 0 if nothing was recorded
+         */
+        public long percentile(double percentile) {
+            checkArgument(percentile >= 0 && percentile <= 100);
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count
+                    + ", mean=" + (long) mean()
+                    + ", p50=" + percentile(50)
+                    + ", p99=" + percentile(99)
+                    + ", p999=" + percentile(99.9)
+                    + ", max=" + max;
+        }
+    }
+}
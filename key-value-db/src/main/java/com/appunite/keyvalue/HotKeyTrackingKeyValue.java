@@ -0,0 +1,418 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.appunite.keyvalue.internal.CountMinSketch;
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Decorator that finds the most frequently read and written keys and key prefixes.
+ *
+ * Sampled operations are counted in {@link CountMinSketch} with top-K candidates per time window,
+ * reports cover last {@link Builder#windows(int)} windows, so old traffic is forgotten.
+ * Reads are gets (by key) and fetches (by prefix), writes are puts and dels including batched ones.
+ *
+ * Prefix of key is its part up to {@link Builder#prefixSegments(int)} separators of
+ * {@link KeyGenerator}, e.g. with 4 segments all index keys of one conversation
+ * {@code index|message|conversation|id|...} share prefix.
+ * <pre>
+ *     for (HotKeyTrackingKeyValue.HotKey hotKey : tracking.hotReadPrefixes(10)) {
+ *         Log.i(TAG, hotKey.toString());
+ *     }
+ * </pre>
+ */
+public class HotKeyTrackingKeyValue extends ForwardingKeyValue {
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 512;
+
+    public static class Builder {
+        @Nonnull
+        private final KeyValue keyValue;
+        private int sampleEvery = 16;
+        private int topK = 32;
+        private long windowMillis = TimeUnit.SECONDS.toMillis(10);
+        private int windows = 6;
+        private int prefixSegments = 4;
+
+        public Builder(@Nonnull KeyValue keyValue) {
+            this.keyValue = checkNotNull(keyValue);
+        }
+
+        /**
+         * Count only every n-th operation on average, reported counts are scaled, default 16
+         */
+        @Nonnull
+        public Builder sampleEvery(int sampleEvery) {
+            checkArgument(sampleEvery >= 1);
+            this.sampleEvery = sampleEvery;
+            return this;
+        }
+
+        /**
+         * Number of hottest keys tracked in every window, default 32
+         */
+        @Nonnull
+        public Builder topK(int topK) {
+            checkArgument(topK >= 1);
+            this.topK = topK;
+            return this;
+        }
+
+        /**
+         * Length of one window, default 10s
+         */
+        @Nonnull
+        public Builder windowLength(long length, @Nonnull TimeUnit unit) {
+            checkArgument(length >= 1);
+            this.windowMillis = Math.max(1, unit.toMillis(length));
+            return this;
+        }
+
+        /**
+         * Number of windows that are reported, default 6
+         */
+        @Nonnull
+        public Builder windows(int windows) {
+            checkArgument(windows >= 1);
+            this.windows = windows;
+            return this;
+        }
+
+        /**
+         * Number of key segments that form prefix, default 4
+         */
+        @Nonnull
+        public Builder prefixSegments(int prefixSegments) {
+            checkArgument(prefixSegments >= 1);
+            this.prefixSegments = prefixSegments;
+            return this;
+        }
+
+        @Nonnull
+        public HotKeyTrackingKeyValue build() {
+            return new HotKeyTrackingKeyValue(this);
+        }
+    }
+
+    public static class HotKey {
+        @Nonnull
+        private final ByteString key;
+        private final long count;
+
+        HotKey(@Nonnull ByteString key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        @Nonnull
+        public ByteString key() {
+            return key;
+        }
+
+        /**
+         * Estimated number of operations in reported windows, may be overestimated
+         */
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return ByteUtils.toString(key) + "=" + count;
+        }
+    }
+
+    private static final Comparator<HotKey> BY_COUNT = new Comparator<HotKey>() {
+        @Override
+        public int compare(HotKey o1, HotKey o2) {
+            return o1.count < o2.count ? 1 : (o1.count > o2.count ? -1 : 0);
+        }
+    };
+
+    private static class Window {
+        @Nonnull
+        final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+        @Nonnull
+        final HashMap<ByteString, Integer> candidates = new HashMap<>();
+        // the lowest candidate count, candidates with lower estimates are not added
+        int minCandidate;
+
+        void clear() {
+            sketch.clear();
+            candidates.clear();
+            minCandidate = 0;
+        }
+    }
+
+    /**
+     * Windows of one kind of counted keys, window index is time / windowMillis modulo windows
+     */
+    private class Tracker {
+        @Nonnull
+        private final Window[] windows;
+        private long currentEpoch = -1;
+
+        Tracker(int windows) {
+            this.windows = new Window[windows];
+            for (int i = 0; i < windows; i++) {
+                this.windows[i] = new Window();
+            }
+        }
+
+        synchronized void add(@Nonnull ByteString key, long epoch) {
+            advance(epoch);
+            final Window window = windows[(int) (epoch % windows.length)];
+            final int estimate = window.sketch.add(key);
+            final HashMap<ByteString, Integer> candidates = window.candidates;
+            if (candidates.containsKey(key)) {
+                candidates.put(key, estimate);
+                return;
+            }
+            if (candidates.size() < topK) {
+                candidates.put(key, estimate);
+                window.minCandidate = candidates.size() == 1 ? estimate : Math.min(window.minCandidate, estimate);
+                return;
+            }
+            if (estimate <= window.minCandidate) {
+                return;
+            }
+            // evict the coldest candidate, counts of candidates only grow so it is found by scan
+            ByteString coldest = null;
+            int coldestCount = Integer.MAX_VALUE;
+            for (Map.Entry<ByteString, Integer> entry : candidates.entrySet()) {
+                if (entry.getValue() < coldestCount) {
+                    coldest = entry.getKey();
+                    coldestCount = entry.getValue();
+                }
+            }
+            candidates.remove(coldest);
+            candidates.put(key, estimate);
+            int min = estimate;
+            for (int count : candidates.values()) {
+                min = Math.min(min, count);
+            }
+            window.minCandidate = min;
+        }
+
+        private void advance(long epoch) {
+            if (epoch <= currentEpoch) {
+                return;
+            }
+            final long from = Math.max(currentEpoch + 1, epoch - windows.length + 1);
+            for (long e = from; e <= epoch; e++) {
+                windows[(int) (e % windows.length)].clear();
+            }
+            currentEpoch = epoch;
+        }
+
+        @Nonnull
+        synchronized List<HotKey> top(int limit, long epoch) {
+            advance(epoch);
+            final Set<ByteString> keys = new HashSet<>();
+            for (Window window : windows) {
+                keys.addAll(window.candidates.keySet());
+            }
+            final ArrayList<HotKey> hotKeys = new ArrayList<>(keys.size());
+            for (ByteString key : keys) {
+                long count = 0;
+                for (Window window : windows) {
+                    count += window.sketch.estimate(key);
+                }
+                hotKeys.add(new HotKey(key, count * sampleEvery));
+            }
+            Collections.sort(hotKeys, BY_COUNT);
+            return hotKeys.size() <= limit ? hotKeys : new ArrayList<>(hotKeys.subList(0, limit));
+        }
+    }
+
+    private final int sampleEvery;
+    private final int topK;
+    private final long windowMillis;
+    private final int prefixSegments;
+    @Nonnull
+    private final Tracker reads;
+    @Nonnull
+    private final Tracker readPrefixes;
+    @Nonnull
+    private final Tracker writes;
+    @Nonnull
+    private final Tracker writePrefixes;
+    // racy on purpose, lost updates only make sampling slightly irregular
+    private int seed = 0x2545F491;
+
+    private HotKeyTrackingKeyValue(@Nonnull Builder builder) {
+        super(builder.keyValue);
+        sampleEvery = builder.sampleEvery;
+        topK = builder.topK;
+        windowMillis = builder.windowMillis;
+        prefixSegments = builder.prefixSegments;
+        reads = new Tracker(builder.windows);
+        readPrefixes = new Tracker(builder.windows);
+        writes = new Tracker(builder.windows);
+        writePrefixes = new Tracker(builder.windows);
+    }
+
+    /**
+     * Most read keys, fetches are counted by their prefix
+     */
+    @Nonnull
+    public List<HotKey> hotReads(int limit) {
+        return reads.top(limit, epoch());
+    }
+
+    @Nonnull
+    public List<HotKey> hotReadPrefixes(int limit) {
+        return readPrefixes.top(limit, epoch());
+    }
+
+    @Nonnull
+    public List<HotKey> hotWrites(int limit) {
+        return writes.top(limit, epoch());
+    }
+
+    @Nonnull
+    public List<HotKey> hotWritePrefixes(int limit) {
+        return writePrefixes.top(limit, epoch());
+    }
+
+    /**
+     * Optional interfaces of engine are forwarded, keys read or written through them are not
+     * tracked
+     */
+    @Override
+    protected boolean preservesEntries() {
+        return true;
+    }
+
+    @Override
+    public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+        delegate().put(key, value);
+        countWrite(key);
+    }
+
+    @Override
+    public void del(@Nonnull ByteString key) {
+        delegate().del(key);
+        countWrite(key);
+    }
+
+    @Nonnull
+    @Override
+    public Batch newBatch() {
+        final Batch batch = delegate().newBatch();
+        return new Batch() {
+            @Override
+            public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+                batch.put(key, value);
+                countWrite(key);
+            }
+
+            @Override
+            public void del(@Nonnull ByteString key) {
+                batch.del(key);
+                countWrite(key);
+            }
+
+            @Override
+            public void clear() {
+                batch.clear();
+            }
+
+            @Override
+            public void write() {
+                batch.write();
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
+        countRead(key);
+        return delegate().getBytes(key);
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public Iterator getKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetchValues(prefix, nextTokenOrNull, batch);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchValues(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        countRead(prefix);
+        return delegate().fetchValues(prefix, nextTokenOrNull, batch);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        countRead(prefix);
+        return delegate().fetchKeys(prefix, nextTokenOrNull, batch);
+    }
+
+    private void countRead(@Nonnull ByteString key) {
+        if (sample()) {
+            final long epoch = epoch();
+            reads.add(key, epoch);
+            readPrefixes.add(KeyGenerator.prefix(key, prefixSegments), epoch);
+        }
+    }
+
+    private void countWrite(@Nonnull ByteString key) {
+        if (sample()) {
+            final long epoch = epoch();
+            writes.add(key, epoch);
+            writePrefixes.add(KeyGenerator.prefix(key, prefixSegments), epoch);
+        }
+    }
+
+    private boolean sample() {
+        if (sampleEvery == 1) {
+            return true;
+        }
+        // xorshift, random sampling does not alias with periodic access patterns
+        int x = seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        seed = x;
+        return (x >>> 1) % sampleEvery == 0;
+    }
+
+    private long epoch() {
+        return System.currentTimeMillis() / windowMillis;
+    }
+}
@@ -35,6 +35,6 @@ public class IdGenerator {
     public ByteString newId() {
         byte[] data = new byte[16];
         secureRandom.nextBytes(data);
-        return ByteString.copyFrom(data);
+        return ByteUtils.wrap(data);
     }
 }
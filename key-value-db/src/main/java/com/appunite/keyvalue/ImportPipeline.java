@@ -0,0 +1,412 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+import static com.appunite.keyvalue.internal.Preconditions.checkState;
+
+/**
+ * Imports serialized records (e.g. protobuf messages received during sync).
+ *
+ * Records are grouped into chunks that are parsed and converted to key value operations by
+ * {@link Encoder} in parallel on given executor, every thread has its own {@link KeyGenerator}.
+ * Operations flow through bounded queue into single writer thread that writes them in batches
+ * flushed by size or time. Engine is accessed only from writer thread.
+ *
+ * Chunks are written in order they are encoded, not in order they were added, so records
+ * should not write the same keys. Records should be added and pipeline finished from one thread.
+ * Pipeline that is abandoned, e.g. because source of records failed, should be closed so writer
+ * thread stops.
+ * <pre>
+ *     final ImportPipeline pipeline = new ImportPipeline.Builder(keyValue, encoder, executor).build();
+ *     try {
+ *         for (ByteString record : records) {
+ *             pipeline.add(record);
+ *         }
+ *         pipeline.finish();
+ *     } finally {
+ *         pipeline.close();
+ *     }
+ * </pre>
+ */
+public class ImportPipeline implements Closeable {
+
+    public interface Encoder {
+        /**
+         * Parse record and write its entries to operations
+         *
+         * @param keyGenerator key generator owned by current thread
+         */
+        void encode(@Nonnull ByteString record,
+                    @Nonnull KeyGenerator keyGenerator,
+                    @Nonnull EditOperations operations) throws Exception;
+    }
+
+    public static class Builder {
+        @Nonnull
+        private final KeyValue keyValue;
+        @Nonnull
+        private final Encoder encoder;
+        @Nonnull
+        private final ExecutorService executor;
+        @Nullable
+        private KeyDictionary dictionary;
+        private int chunkSize = 256;
+        private int queueCapacity = 16;
+        private int flushBytes = 4 * 1024 * 1024;
+        private long flushMillis = 100;
+
+        public Builder(@Nonnull KeyValue keyValue, @Nonnull Encoder encoder, @Nonnull ExecutorService executor) {
+            this.keyValue = checkNotNull(keyValue);
+            this.encoder = checkNotNull(encoder);
+            this.executor = checkNotNull(executor);
+        }
+
+        /**
+         * Dictionary used by key generators of encoding threads, dictionary have to be loaded
+         * from the same database, new tokens are written by writer thread with batches of keys
+         */
+        @Nonnull
+        public Builder dictionary(@Nonnull KeyDictionary dictionary) {
+            this.dictionary = checkNotNull(dictionary);
+            return this;
+        }
+
+        /**
+         * Number of records encoded by one task, default 256
+         */
+        @Nonnull
+        public Builder chunkSize(int chunkSize) {
+            checkArgument(chunkSize >= 1);
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Number of encoded chunks waiting for writer, default 16
+         */
+        @Nonnull
+        public Builder queueCapacity(int queueCapacity) {
+            checkArgument(queueCapacity >= 1);
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Batch is written when it contains that many bytes of keys and values, default 4MB
+         */
+        @Nonnull
+        public Builder flushBytes(int flushBytes) {
+            checkArgument(flushBytes >= 1);
+            this.flushBytes = flushBytes;
+            return this;
+        }
+
+        /**
+         * Batch is written when oldest operation in it waits that long, default 100ms
+         */
+        @Nonnull
+        public Builder flushMillis(long flushMillis) {
+            checkArgument(flushMillis >= 1);
+            this.flushMillis = flushMillis;
+            return this;
+        }
+
+        @Nonnull
+        public ImportPipeline build() {
+            return new ImportPipeline(this);
+        }
+    }
+
+    /**
+     * Encoded operations of one chunk, value is null for delete
+     */
+    private static class Operations implements EditOperations {
+        @Nonnull
+        final ArrayList<ByteString> keys = new ArrayList<>();
+        @Nonnull
+        final ArrayList<ByteString> values = new ArrayList<>();
+        int records;
+
+        @Override
+        public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+            keys.add(checkNotNull(key));
+            values.add(checkNotNull(value));
+        }
+
+        @Override
+        public void del(@Nonnull ByteString key) {
+            keys.add(checkNotNull(key));
+            values.add(null);
+        }
+    }
+
+    private static final Operations END = new Operations();
+
+    @Nonnull
+    private final KeyValue keyValue;
+    @Nonnull
+    private final Encoder encoder;
+    @Nonnull
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final int flushBytes;
+    private final long flushMillis;
+    @Nullable
+    private final KeyDictionary dictionary;
+    @Nonnull
+    private final ConcurrentKeyGenerator keyGenerator;
+    @Nonnull
+    private final BlockingQueue<Operations> queue;
+    // limits chunks that are encoded or waiting for encoding
+    @Nonnull
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    @Nonnull
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    @Nonnull
+    private final Thread writer;
+    @Nonnull
+    private ArrayList<ByteString> chunk;
+    private long written;
+    private boolean finished;
+
+    private ImportPipeline(@Nonnull Builder builder) {
+        keyValue = builder.keyValue;
+        encoder = builder.encoder;
+        executor = builder.executor;
+        chunkSize = builder.chunkSize;
+        flushBytes = builder.flushBytes;
+        flushMillis = builder.flushMillis;
+        dictionary = builder.dictionary;
+        keyGenerator = new ConcurrentKeyGenerator(dictionary);
+        queue = new ArrayBlockingQueue<>(builder.queueCapacity);
+        maxInFlight = builder.queueCapacity;
+        inFlight = new Semaphore(maxInFlight);
+        chunk = new ArrayList<>(chunkSize);
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "import-pipeline-writer");
+        // does not keep process alive if pipeline is abandoned without close
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Add record, blocks if encoding or writing can not keep up
+     */
+    public void add(@Nonnull ByteString record) {
+        checkNotNull(record);
+        checkState(!finished, "Pipeline already finished");
+        checkFailure();
+        chunk.add(record);
+        if (chunk.size() == chunkSize) {
+            submit();
+        }
+    }
+
+    /**
+     * Wait until all added records are written
+     *
+     * @return number of written records
+     * @throws RuntimeException if encoding or writing failed
+     */
+    public long finish() {
+        checkState(!finished, "Pipeline already finished");
+        finished = true;
+        if (!chunk.isEmpty()) {
+            submit();
+        }
+        try {
+            // all permits are back when every chunk is in queue
+            inFlight.acquire(maxInFlight);
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        checkFailure();
+        return written;
+    }
+
+    /**
+     * Stop pipeline without writing remaining records, records that are already written stay
+     * in engine. Waits only for chunks that are being encoded. Does nothing if pipeline is
+     * finished or closed.
+     */
+    @Override
+    public void close() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        chunk = new ArrayList<>();
+        // encoders skip remaining chunks and writer drops them
+        failure.compareAndSet(null, new CancellationException("Pipeline closed"));
+        try {
+            inFlight.acquire(maxInFlight);
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() {
+        final Throwable throwable = failure.get();
+        if (throwable != null) {
+            throw new RuntimeException("Import failed", throwable);
+        }
+    }
+
+    private void submit() {
+        final ArrayList<ByteString> records = chunk;
+        chunk = new ArrayList<>(chunkSize);
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (failure.get() == null) {
+                            queue.put(encode(records));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            failure.compareAndSet(null, e);
+            checkFailure();
+        }
+    }
+
+    @Nonnull
+    private Operations encode(@Nonnull ArrayList<ByteString> records) throws Exception {
+        final KeyGenerator current = keyGenerator.current();
+        final Operations operations = new Operations();
+        for (ByteString record : records) {
+            encoder.encode(record, current, operations);
+        }
+        operations.records = records.size();
+        return operations;
+    }
+
+    private void write() {
+        final KeyValue.Batch batch = dictionary == null
+                ? keyValue.newBatch()
+                : dictionary.wrap(keyValue.newBatch());
+        long batchBytes = 0;
+        long batchRecords = 0;
+        long batchStarted = 0;
+        try {
+            for (; ; ) {
+                final Operations operations;
+                if (batchBytes == 0) {
+                    operations = queue.take();
+                } else {
+                    final long wait = batchStarted + flushMillis - System.currentTimeMillis();
+                    operations = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+                if (operations == END) {
+                    break;
+                }
+                if (failure.get() != null) {
+                    // records are not written after encoding failed or pipeline was closed
+                    drain();
+                    return;
+                }
+                if (operations != null) {
+                    if (batchBytes == 0) {
+                        batchStarted = System.currentTimeMillis();
+                    }
+                    for (int i = 0; i < operations.keys.size(); i++) {
+                        final ByteString key = operations.keys.get(i);
+                        final ByteString value = operations.values.get(i);
+                        if (value == null) {
+                            batch.del(key);
+                        } else {
+                            batch.put(key, value);
+                            batchBytes += value.size();
+                        }
+                        batchBytes += key.size();
+                    }
+                    batchRecords += operations.records;
+                }
+                if (batchBytes >= flushBytes
+                        || (batchBytes > 0 && System.currentTimeMillis() - batchStarted >= flushMillis)) {
+                    batch.write();
+                    batch.clear();
+                    written += batchRecords;
+                    batchBytes = 0;
+                    batchRecords = 0;
+                }
+            }
+            if (batchBytes > 0 || batchRecords > 0) {
+                batch.write();
+                written += batchRecords;
+            }
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+            drain();
+        }
+    }
+
+    /**
+     * Keep taking chunks after failure so encoders and {@link #finish()} are not blocked
+     */
+    private void drain() {
+        try {
+            //noinspection StatementWithEmptyBody
+            while (queue.take() != END) {
+            }
+        } catch (InterruptedException ignore) {
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.appunite.keyvalue.internal.StripedCounters;
+import com.google.protobuf.ByteString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Decorator that measures latency of operations in {@link Histogram}s (in nanoseconds),
+ * number of operations, bytes read and written, sizes of fetched pages and not found gets.
+ *
+ * Metrics are pulled with {@link #latency(Operation)}, {@link #pageSizes()}, {@link #count(Counter)}
+ * or exposed over JMX with {@link KeyValueMetricsJmx}.
+ *
+ * Reading clock costs about as much as get from memory engine, so by default latency is measured
+ * only for every 16th operation, see {@link Builder#sampleEvery(int)}. Counters are always exact
+ * and striped between threads, so concurrent readers do not contend on them.
+ */
+public class InstrumentedKeyValue extends ForwardingKeyValue {
+
+    public enum Operation {
+        GET, PUT, DEL, FETCH_VALUES, FETCH_KEYS, BATCH_WRITE
+    }
+
+    public enum Counter {
+        /**
+         * Number of {@link KeyValue#getBytes(ByteString)} calls
+         */
+        GETS,
+        /**
+         * Number of {@link KeyValue#getBytes(ByteString)} calls that thrown {@link NotFoundException}
+         */
+        MISSES,
+        /**
+         * Number of put and del calls, including batched ones
+         */
+        WRITES,
+        /**
+         * Number of fetchValues and fetchKeys calls
+         */
+        FETCHES,
+        /**
+         * Size of keys and values returned by get and fetch calls
+         */
+        BYTES_READ,
+        /**
+         * Size of keys and values passed to put and del calls, including batched ones
+         */
+        BYTES_WRITTEN
+    }
+
+    public static class Builder {
+        @Nonnull
+        private final KeyValue keyValue;
+        private int sampleEvery = 16;
+
+        public Builder(@Nonnull KeyValue keyValue) {
+            this.keyValue = checkNotNull(keyValue);
+        }
+
+        /**
+         * Measure latency only for every n-th operation, default 16, 1 measures every operation
+         */
+        @Nonnull
+        public Builder sampleEvery(int sampleEvery) {
+            checkArgument(sampleEvery >= 1);
+            this.sampleEvery = sampleEvery;
+            return this;
+        }
+
+        @Nonnull
+        public InstrumentedKeyValue build() {
+            return new InstrumentedKeyValue(this);
+        }
+    }
+
+    @Nonnull
+    private final Histogram[] latencies = new Histogram[Operation.values().length];
+    @Nonnull
+    private final Histogram pageSizes = new Histogram();
+    @Nonnull
+    private final StripedCounters counters = new StripedCounters(Counter.values().length);
+    private final int sampleEvery;
+    // racy on purpose, lost updates only make sampling slightly irregular
+    private int sampleCounter;
+
+    private InstrumentedKeyValue(@Nonnull Builder builder) {
+        super(builder.keyValue);
+        sampleEvery = builder.sampleEvery;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Latency histogram of operation in nanoseconds
+     */
+    @Nonnull
+    public Histogram latency(@Nonnull Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    /**
+     * Histogram of number of items returned by fetchValues and fetchKeys
+     */
+    @Nonnull
+    public Histogram pageSizes() {
+        return pageSizes;
+    }
+
+    public long count(@Nonnull Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    /**
+     * Reset all histograms and counters
+     */
+    public void reset() {
+        for (Histogram latency : latencies) {
+            latency.reset();
+        }
+        pageSizes.reset();
+        counters.reset();
+    }
+
+    /**
+     * Scans, page fetches, bulk loads and ByteBuffer access of engine are forwarded, they are
+     * not measured
+     */
+    @Override
+    protected boolean preservesEntries() {
+        return true;
+    }
+
+    @Override
+    public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+        final long start = start();
+        delegate().put(key, value);
+        stop(Operation.PUT, start);
+        written(key.size() + value.size());
+    }
+
+    @Override
+    public void del(@Nonnull ByteString key) {
+        final long start = start();
+        delegate().del(key);
+        stop(Operation.DEL, start);
+        written(key.size());
+    }
+
+    @Nonnull
+    @Override
+    public Batch newBatch() {
+        final Batch batch = delegate().newBatch();
+        return new Batch() {
+            @Override
+            public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+                batch.put(key, value);
+                written(key.size() + value.size());
+            }
+
+            @Override
+            public void del(@Nonnull ByteString key) {
+                batch.del(key);
+                written(key.size());
+            }
+
+            @Override
+            public void clear() {
+                batch.clear();
+            }
+
+            @Override
+            public void write() {
+                // batches are rare and slow, so always measured
+                final long start = System.nanoTime();
+                batch.write();
+                latency(Operation.BATCH_WRITE).record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
+        final long start = start();
+        counters.increment(Counter.GETS.ordinal());
+        final ByteString value;
+        try {
+            value = delegate().getBytes(key);
+        } catch (NotFoundException e) {
+            counters.increment(Counter.MISSES.ordinal());
+            stop(Operation.GET, start);
+            throw e;
+        }
+        stop(Operation.GET, start);
+        counters.add(Counter.BYTES_READ.ordinal(), value.size());
+        return value;
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public Iterator getKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetchValues(prefix, nextTokenOrNull, batch);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchValues(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        final long start = start();
+        final Iterator iterator = delegate().fetchValues(prefix, nextTokenOrNull, batch);
+        stop(Operation.FETCH_VALUES, start);
+        fetched(iterator);
+        return iterator;
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        final long start = start();
+        final Iterator iterator = delegate().fetchKeys(prefix, nextTokenOrNull, batch);
+        stop(Operation.FETCH_KEYS, start);
+        fetched(iterator);
+        return iterator;
+    }
+
+    /**
+     * @return start time or 0 if operation is not sampled
+     */
+    private long start() {
+        if (sampleEvery > 1) {
+            final int counter = sampleCounter + 1;
+            if (counter < sampleEvery) {
+                sampleCounter = counter;
+                return 0;
+            }
+            sampleCounter = 0;
+        }
+        return System.nanoTime();
+    }
+
+    private void stop(@Nonnull Operation operation, long start) {
+        if (start != 0) {
+            latencies[operation.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    private void written(int bytes) {
+        counters.increment(Counter.WRITES.ordinal());
+        counters.add(Counter.BYTES_WRITTEN.ordinal(), bytes);
+    }
+
+    private void fetched(@Nonnull Iterator iterator) {
+        counters.increment(Counter.FETCHES.ordinal());
+        long bytes = 0;
+        for (ByteString item : iterator.keys()) {
+            bytes += item.size();
+        }
+        counters.add(Counter.BYTES_READ.ordinal(), bytes);
+        pageSizes.record(iterator.keys().size());
+    }
+}
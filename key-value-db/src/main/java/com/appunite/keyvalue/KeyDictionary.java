@@ -0,0 +1,293 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.appunite.keyvalue.internal.Varint;
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Persistent dictionary of type and field names used by {@link KeyGenerator#KeyGenerator(KeyDictionary)}.
+ *
+ * Every name is stored once in database with short varint token, keys built with dictionary
+ * contain tokens instead of names, e.g. index key of message by conversation and created_at is
+ * ~30 bytes shorter. Keys built with dictionary live in different key space than keys built
+ * without it, existing stores can be moved with {@link #migrate(KeyValue, KeyDictionary, byte[], Reindexer)}.
+ *
+ * New tokens are kept in memory until they are written by batch returned from
+ * {@link #wrap(KeyValue.Batch)}, together with keys that use them, so keys built with
+ * dictionary have to be written by such batch.
+ */
+public class KeyDictionary {
+    private static final ByteString PREFIX = ByteString.copyFrom(new byte[]{0})
+            .concat(ByteString.copyFromUtf8("dictionary"))
+            .concat(ByteString.copyFrom(new byte[]{KeyGenerator.SEPARATOR}));
+    private static final int MAX_IDENTITY_CACHE = 1024;
+
+    public interface Reindexer {
+        /**
+         * Write index keys of migrated value
+         *
+         * @param id id of value, as passed to {@link KeyGenerator#value(byte[], ByteString)}
+         * @param value migrated value
+         * @param index index keys of value, written by batch that moves value
+         */
+        void reindex(@Nonnull ByteString id, @Nonnull ByteString value, @Nonnull Index index);
+    }
+
+    /**
+     * Index keys of migrated value
+     */
+    public static class Index {
+        @Nonnull
+        private final KeyValue.Batch batch;
+
+        Index(@Nonnull KeyValue.Batch batch) {
+            this.batch = batch;
+        }
+
+        /**
+         * Write index key built with dictionary in place of legacy index key
+         *
+         * @param legacyKey index key built without dictionary, removed
+         * @param key index key built with dictionary
+         * @param value value of index key
+         */
+        public void replace(@Nonnull ByteString legacyKey, @Nonnull ByteString key, @Nonnull ByteString value) {
+            batch.del(checkNotNull(legacyKey));
+            batch.put(checkNotNull(key), checkNotNull(value));
+        }
+
+        /**
+         * Write index key that had no legacy counterpart
+         */
+        public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+            batch.put(checkNotNull(key), checkNotNull(value));
+        }
+    }
+
+    @Nonnull
+    private final KeyValue keyValue;
+    @Nonnull
+    private final HashMap<ByteString, byte[]> tokens = new HashMap<>();
+    // names are usually static constants, so most lookups do not need to hash name
+    @Nonnull
+    private final IdentityHashMap<byte[], byte[]> tokensByIdentity = new IdentityHashMap<>();
+    // tokens that are not written to database yet
+    @Nonnull
+    private final LinkedHashMap<ByteString, byte[]> pending = new LinkedHashMap<>();
+    private int nextToken = 1;
+
+    /**
+     * Load dictionary stored in database
+     */
+    public KeyDictionary(@Nonnull KeyValue keyValue) {
+        this.keyValue = checkNotNull(keyValue);
+        ByteString nextTokenOrNull = null;
+        do {
+            final KeyValue.Iterator keys = keyValue.fetchKeys(PREFIX, nextTokenOrNull, 1000);
+            for (ByteString key : keys.keys()) {
+                final byte[] token = getToken(key);
+                tokens.put(key.substring(PREFIX.size()), token);
+                nextToken = Math.max(nextToken, Varint.read(token, 0) + 1);
+            }
+            nextTokenOrNull = keys.nextToken();
+        } while (nextTokenOrNull != null);
+    }
+
+    @Nonnull
+    private byte[] getToken(@Nonnull ByteString key) {
+        try {
+            return keyValue.getBytes(key).toByteArray();
+        } catch (NotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Token of name, new token is assigned when name is used first time and written to database
+     * by next batch returned from {@link #wrap(KeyValue.Batch)}
+     */
+    @Nonnull
+    public synchronized byte[] token(@Nonnull byte[] name) {
+        byte[] token = tokensByIdentity.get(name);
+        if (token != null) {
+            return token;
+        }
+        final ByteString key = ByteString.copyFrom(name);
+        token = tokens.get(key);
+        if (token == null) {
+            token = newToken();
+            tokens.put(key, token);
+            pending.put(key, token);
+        }
+        if (tokensByIdentity.size() < MAX_IDENTITY_CACHE) {
+            tokensByIdentity.put(name, token);
+        }
+        return token;
+    }
+
+    // tokens are part of keys so they cannot contain separator, varint sets high bit of every
+    // byte except the last one, so only last byte of e.g. 6 or 768 is equal to separator
+    @Nonnull
+    private byte[] newToken() {
+        for (; ; ) {
+            final byte[] token = new byte[Varint.size(nextToken)];
+            Varint.write(token, 0, nextToken);
+            nextToken++;
+            if (!containsSeparator(token)) {
+                return token;
+            }
+        }
+    }
+
+    private static boolean containsSeparator(@Nonnull byte[] token) {
+        for (byte b : token) {
+            if (b == KeyGenerator.SEPARATOR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of names in dictionary
+     */
+    public synchronized int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Batch that writes new tokens of dictionary together with its operations, batch have to
+     * write to the same database as the one dictionary was loaded from
+     */
+    @Nonnull
+    public KeyValue.Batch wrap(@Nonnull KeyValue.Batch batch) {
+        return new DictionaryBatch(checkNotNull(batch));
+    }
+
+    @Nonnull
+    private synchronized List<Map.Entry<ByteString, byte[]>> pendingTokens() {
+        return new ArrayList<>(pending.entrySet());
+    }
+
+    private synchronized void written(@Nonnull List<Map.Entry<ByteString, byte[]>> written) {
+        for (Map.Entry<ByteString, byte[]> entry : written) {
+            pending.remove(entry.getKey());
+        }
+    }
+
+    private class DictionaryBatch implements KeyValue.Batch {
+        @Nonnull
+        private final KeyValue.Batch batch;
+
+        DictionaryBatch(@Nonnull KeyValue.Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+            batch.put(key, value);
+        }
+
+        @Override
+        public void del(@Nonnull ByteString key) {
+            batch.del(key);
+        }
+
+        @Override
+        public void clear() {
+            batch.clear();
+        }
+
+        @Override
+        public void write() {
+            // tokens used by keys of batch were assigned before write, so they are all pending now
+            final List<Map.Entry<ByteString, byte[]>> tokens = pendingTokens();
+            for (Map.Entry<ByteString, byte[]> entry : tokens) {
+                batch.put(PREFIX.concat(entry.getKey()), ByteString.copyFrom(entry.getValue()));
+            }
+            batch.write();
+            // if write fails tokens stay pending and are written by next batch
+            written(tokens);
+        }
+    }
+
+    /**
+     * Move values of given type from keys built without dictionary to keys built with dictionary.
+     *
+     * Index keys cannot be translated because field values may contain separators, so reindexer
+     * writes new index keys of every moved value and removes legacy index keys it replaces.
+     * Migration is done in batches and can be resumed if interrupted.
+     *
+     * @return number of legacy index keys of type that were not replaced and are left in database
+     */
+    public static long migrate(@Nonnull KeyValue keyValue,
+                               @Nonnull KeyDictionary dictionary,
+                               @Nonnull byte[] type,
+                               @Nonnull Reindexer reindexer) {
+        checkNotNull(keyValue);
+        checkNotNull(dictionary);
+        checkNotNull(type);
+        checkNotNull(reindexer);
+        final KeyGenerator legacy = new KeyGenerator();
+        final KeyGenerator compact = new KeyGenerator(dictionary);
+        final ByteString legacyPrefix = legacy.singleValue(type);
+        final ByteString compactPrefix = compact.singleValue(type);
+        final KeyValue.Batch batch = dictionary.wrap(keyValue.newBatch());
+        final Index index = new Index(batch);
+        for (; ; ) {
+            final List<ByteString> keys = keyValue.fetchKeys(legacyPrefix, null, 1000).keys();
+            if (keys.isEmpty()) {
+                break;
+            }
+            for (ByteString key : keys) {
+                final ByteString value;
+                try {
+                    value = keyValue.getBytes(key);
+                } catch (NotFoundException e) {
+                    throw new RuntimeException(e);
+                }
+                final ByteString idWithSeparator = key.substring(legacyPrefix.size());
+                batch.del(key);
+                batch.put(compactPrefix.concat(idWithSeparator), value);
+                reindexer.reindex(idWithSeparator.substring(0, idWithSeparator.size() - 1), value, index);
+            }
+            batch.write();
+            batch.clear();
+        }
+        final ByteString legacyIndex = legacy.startIndex(type).buildQuery();
+        long left = 0;
+        ByteString nextTokenOrNull = null;
+        do {
+            final KeyValue.Iterator keys = keyValue.fetchKeys(legacyIndex, nextTokenOrNull, 1000);
+            left += keys.keys().size();
+            nextTokenOrNull = keys.nextToken();
+        } while (nextTokenOrNull != null);
+        return left;
+    }
+}
@@ -22,7 +22,12 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+/**
+ * Builds keys in single reusable buffer, so it is not thread safe.
+ * Use {@link ConcurrentKeyGenerator} to share key building between threads.
+ */
 public class KeyGenerator {
     @Nonnull
     private final Builder builder = new Builder();
@@ -31,40 +36,73 @@ public class KeyGenerator {
 
     private static final byte[] INDEX = "index".getBytes();
     private static final byte[] VALUE = "value".getBytes();
-    private static final byte SEPARATOR = (byte) 6;
+    // never first byte of key built without dictionary
+    private static final byte[] COMPACT_INDEX = {1};
+    private static final byte[] COMPACT_VALUE = {2};
+    static final byte SEPARATOR = (byte) 6;
+
+    @Nullable
+    private final KeyDictionary dictionary;
 
     public KeyGenerator() {
+        this(null);
+    }
+
+    /**
+     * @param dictionary if not null type and field names are replaced with short tokens from
+     *                   dictionary, keys are not compatible with keys built without dictionary
+     */
+    public KeyGenerator(@Nullable KeyDictionary dictionary) {
+        this.dictionary = dictionary;
         conversationIndex.order(ByteOrder.BIG_ENDIAN);
     }
 
+    /**
+     * Part of key up to and including given number of separators, or whole key if it has less
+     * segments, e.g. with 2 segments {@code index|message|} for every message index key
+     */
+    @Nonnull
+    static ByteString prefix(@Nonnull ByteString key, int segments) {
+        int found = 0;
+        final int size = key.size();
+        for (int i = 0; i < size; i++) {
+            if (key.byteAt(i) == SEPARATOR && ++found == segments) {
+                return key.substring(0, i + 1);
+            }
+        }
+        return key;
+    }
+
+    private void putName(@Nonnull byte[] name) {
+        conversationIndex.put(dictionary == null ? name : dictionary.token(name));
+        conversationIndex.put(SEPARATOR);
+    }
+
     @Nonnull
     public Builder startIndex(@Nonnull byte[] valueType) {
         conversationIndex.clear();
-        conversationIndex.put(INDEX);
-        conversationIndex.put(SEPARATOR);
-        conversationIndex.put(valueType);
+        conversationIndex.put(dictionary == null ? INDEX : COMPACT_INDEX);
         conversationIndex.put(SEPARATOR);
+        putName(valueType);
         return builder;
     }
 
     @Nonnull
     public ByteString singleValue(@Nonnull byte[] valueType) {
         conversationIndex.clear();
-        conversationIndex.put(VALUE);
-        conversationIndex.put(SEPARATOR);
-        conversationIndex.put(valueType);
+        conversationIndex.put(dictionary == null ? VALUE : COMPACT_VALUE);
         conversationIndex.put(SEPARATOR);
+        putName(valueType);
         return ByteUtils.convertToByteString(conversationIndex);
     }
 
     @Nonnull
     public ByteString value(@Nonnull byte[] valueType, @Nonnull ByteString id) {
         conversationIndex.clear();
-        conversationIndex.put(VALUE);
-        conversationIndex.put(SEPARATOR);
-        conversationIndex.put(valueType);
+        conversationIndex.put(dictionary == null ? VALUE : COMPACT_VALUE);
         conversationIndex.put(SEPARATOR);
-        conversationIndex.put(id.toByteArray());
+        putName(valueType);
+        id.copyTo(conversationIndex);
         conversationIndex.put(SEPARATOR);
         return ByteUtils.convertToByteString(conversationIndex);
     }
@@ -78,26 +116,33 @@ public class KeyGenerator {
             return ByteUtils.convertToByteString(conversationIndex);
         }
 
+        /**
+         * Query for all values of given field, e.g. to list them with {@link DistinctScan}
+         */
+        @Nonnull
+        public ByteString buildFieldQuery(@Nonnull byte[] fieldName) {
+            putName(fieldName);
+            return ByteUtils.convertToByteString(conversationIndex);
+        }
+
         @Nonnull
         public ByteString buildIndex(@Nonnull ByteString id) {
-            conversationIndex.put(id.toByteArray());
+            id.copyTo(conversationIndex);
             conversationIndex.put(SEPARATOR);
             return ByteUtils.convertToByteString(conversationIndex);
         }
 
         @Nonnull
         public Builder addField(@Nonnull byte[] fieldName, @Nonnull ByteString value) {
-            conversationIndex.put(fieldName);
-            conversationIndex.put(SEPARATOR);
-            conversationIndex.put(value.toByteArray());
+            putName(fieldName);
+            value.copyTo(conversationIndex);
             conversationIndex.put(SEPARATOR);
             return this;
         }
 
         @Nonnull
         public Builder addField(@Nonnull byte[] fieldName, long value) {
-            conversationIndex.put(fieldName);
-            conversationIndex.put(SEPARATOR);
+            putName(fieldName);
             conversationIndex.putLong(value);
             conversationIndex.put(SEPARATOR);
             return this;
@@ -105,8 +150,7 @@ public class KeyGenerator {
 
         @Nonnull
         public Builder addFieldReverted(@Nonnull byte[] fieldName, long value) {
-            conversationIndex.put(fieldName);
-            conversationIndex.put(SEPARATOR);
+            putName(fieldName);
             conversationIndex.putLong(Long.MAX_VALUE - value);
             conversationIndex.put(SEPARATOR);
             return this;
@@ -114,8 +158,7 @@ public class KeyGenerator {
 
         @Nonnull
         public Builder addField(@Nonnull byte[] fieldName, boolean value) {
-            conversationIndex.put(fieldName);
-            conversationIndex.put(SEPARATOR);
+            putName(fieldName);
             conversationIndex.putInt(value ? 0 : 1);
             conversationIndex.put(SEPARATOR);
             return this;
@@ -123,8 +166,7 @@ public class KeyGenerator {
 
         @Nonnull
         public Builder addField(@Nonnull byte[] fieldName, @Nonnull String value) {
-            conversationIndex.put(fieldName);
-            conversationIndex.put(SEPARATOR);
+            putName(fieldName);
             conversationIndex.put(value.getBytes());
             conversationIndex.put(SEPARATOR);
             return this;
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.appunite.keyvalue.internal.UnsignedBytes;
+import com.google.protobuf.ByteString;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Range of keys from {@link #start()} (inclusive) to {@link #end()} (exclusive).
+ *
+ * Null end means that range is not bounded from the top.
+ */
+public class KeyRange {
+    @Nonnull
+    private final ByteString start;
+    @Nullable
+    private final ByteString end;
+
+    public KeyRange(@Nonnull ByteString start, @Nullable ByteString end) {
+        checkNotNull(start);
+        checkArgument(end == null || KeyValueMemory.COMPARATOR.compare(start, end) <= 0,
+                "start has to be lower or equal to end");
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Range of all keys starting with given prefix
+     */
+    @Nonnull
+    public static KeyRange prefix(@Nonnull ByteString prefix) {
+        return new KeyRange(prefix, prefixEnd(prefix));
+    }
+
+    /**
+     * First key that is greater than all keys starting with given prefix
+     *
+     * @return key or null if there is no such key (prefix is empty or contains only 0xff bytes)
+     */
+    @Nullable
+    public static ByteString prefixEnd(@Nonnull ByteString prefix) {
+        for (int i = prefix.size() - 1; i >= 0; i--) {
+            final int value = UnsignedBytes.toInt(prefix.byteAt(i));
+            if (value != 0xff) {
+                final byte[] out = prefix.substring(0, i + 1).toByteArray();
+                out[i] = (byte) (value + 1);
+                return ByteUtils.wrap(out);
+            }
+        }
+        return null;
+    }
+
+    @Nonnull
+    public ByteString start() {
+        return start;
+    }
+
+    @Nullable
+    public ByteString end() {
+        return end;
+    }
+
+    public boolean isEmpty() {
+        return end != null && KeyValueMemory.COMPARATOR.compare(start, end) == 0;
+    }
+
+    public boolean contains(@Nonnull ByteString key) {
+        return KeyValueMemory.COMPARATOR.compare(start, key) <= 0 && !isAfter(key);
+    }
+
+    /**
+     * @return true if key is outside of the range from the top
+     */
+    public boolean isAfter(@Nonnull ByteString key) {
+        return end != null && KeyValueMemory.COMPARATOR.compare(key, end) >= 0;
+    }
+
+    /**
+     * Longest prefix shared by all keys in range
+     */
+    @Nonnull
+    public ByteString commonPrefix() {
+        if (end == null) {
+            return ByteString.EMPTY;
+        }
+        final int max = Math.min(start.size(), end.size());
+        int i = 0;
+        while (i < max && start.byteAt(i) == end.byteAt(i)) {
+            i++;
+        }
+        return start.substring(0, i);
+    }
+
+    /**
+     * Split range into sub ranges on given split points.
+     *
+     * @param splitPoints sorted keys, points outside of range or not increasing are ignored
+     * @return sub ranges that together cover exactly this range
+     */
+    @Nonnull
+    public List<KeyRange> split(@Nonnull List<ByteString> splitPoints) {
+        final ArrayList<KeyRange> out = new ArrayList<>(splitPoints.size() + 1);
+        ByteString from = start;
+        for (ByteString point : splitPoints) {
+            if (KeyValueMemory.COMPARATOR.compare(point, from) <= 0 || isAfter(point)) {
+                continue;
+            }
+            out.add(new KeyRange(from, point));
+            from = point;
+        }
+        out.add(new KeyRange(from, end));
+        return out;
+    }
+
+    /**
+     * Evenly distributed points between two keys treating keys as big-endian fractions.
+     *
+     * Useful when engine can cheaply return first and last key of a range but not its size.
+     *
+     * @param from lowest key
+     * @param to highest key or null if not known
+     * @param parts number of parts
+     * @return at most parts - 1 increasing keys that are greater than from and lower than to
+     */
+    @Nonnull
+    public static List<ByteString> interpolate(@Nonnull ByteString from, @Nullable ByteString to, int parts) {
+        checkArgument(parts >= 1);
+        final int length = Math.max(from.size(), to == null ? 0 : to.size()) + 1;
+        final BigInteger low = toNumber(from, length);
+        final BigInteger high = to == null
+                ? BigInteger.ONE.shiftLeft(length * 8)
+                : toNumber(to, length);
+        final BigInteger width = high.subtract(low);
+        final ArrayList<ByteString> points = new ArrayList<>(parts - 1);
+        BigInteger previous = low;
+        for (int i = 1; i < parts; i++) {
+            final BigInteger point = low.add(width.multiply(BigInteger.valueOf(i))
+                    .divide(BigInteger.valueOf(parts)));
+            if (point.compareTo(previous) <= 0 || point.compareTo(high) >= 0) {
+                continue;
+            }
+            points.add(fromNumber(point, length));
+            previous = point;
+        }
+        return points;
+    }
+
+    @Nonnull
+    private static BigInteger toNumber(@Nonnull ByteString key, int length) {
+        final byte[] bytes = new byte[length];
+        key.copyTo(bytes, 0);
+        return new BigInteger(1, bytes);
+    }
+
+    @Nonnull
+    private static ByteString fromNumber(@Nonnull BigInteger number, int length) {
+        final byte[] bytes = number.toByteArray();
+        final byte[] out = new byte[length];
+        final int copy = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copy, out, length - copy, copy);
+        return ByteUtils.wrap(out);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof KeyRange)) return false;
+        final KeyRange keyRange = (KeyRange) o;
+        return start.equals(keyRange.start)
+                && (end == null ? keyRange.end == null : end.equals(keyRange.end));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * start.hashCode() + (end == null ? 0 : end.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return "KeyRange{" + ByteUtils.toString(start) + ", "
+                + (end == null ? "null" : ByteUtils.toString(end)) + "}";
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.appunite.keyvalue.internal.Preconditions;
+import com.google.protobuf.ByteString;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * In memory engine for tables keyed by 16 byte ids, see {@link FixedIdMap}.
+ *
+ * Point operations are O(1) and do not allocate per entry objects. Prefix scans are supported
+ * for compatibility but have to visit all entries, so use {@link KeyValueMemory} for indexes.
+ */
+public class KeyValueFixedId implements KeyValue, ByteBufferAccess {
+    @Nonnull
+    private final FixedIdMap map = new FixedIdMap();
+
+    @Inject
+    public KeyValueFixedId() {
+    }
+
+    @Override
+    public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        map.put(key, value);
+    }
+
+    @Override
+    public void del(@Nonnull ByteString key) {
+        checkNotNull(key);
+        if (map.isId(key)) {
+            map.remove(key);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Batch newBatch() {
+        // Memory implementation does not include real batching
+        return new FakeBatch(this);
+    }
+
+    @Nonnull
+    @Override
+    public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
+        checkNotNull(key);
+        final ByteString value = map.isId(key) ? map.get(key) : null;
+        if (value == null) {
+            throw new NotFoundException();
+        }
+        return value;
+    }
+
+    /**
+     * Value is copied from buffer straight into arena of map
+     */
+    @Override
+    public void put(@Nonnull ByteBuffer key, @Nonnull ByteBuffer value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        map.put(key, value);
+    }
+
+    /**
+     * Value is copied from arena of map straight into out
+     */
+    @Override
+    public int get(@Nonnull ByteBuffer key, @Nonnull ByteBuffer out) throws NotFoundException {
+        checkNotNull(key);
+        checkNotNull(out);
+        final int size = map.isId(key) ? map.get(key, out) : -1;
+        if (size < 0) {
+            throw new NotFoundException();
+        }
+        return size;
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public Iterator getKeys(@Nonnull ByteString prefix, ByteString nextTokenOrNull, int batch) {
+        return fetchValues(prefix, nextTokenOrNull, batch);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchValues(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetch(prefix, nextTokenOrNull, batch, false);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetch(prefix, nextTokenOrNull, batch, true);
+    }
+
+    /**
+     * Visits all slots without building keys and keeps the smallest {@code batch + 1} matching
+     * slots in a heap, the extra slot is the next token
+     */
+    @Nonnull
+    private Iterator fetch(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch, boolean keys) {
+        checkNotNull(prefix);
+        Preconditions.checkArgument(batch >= 1);
+        final PageBuffer page = PageBuffer.forBatch(batch);
+        if (prefix.size() > FixedIdMap.ID_SIZE) {
+            return new Iterator(page.moveToPage(), null);
+        }
+        final byte[] prefixBytes = prefix.toByteArray();
+        final byte[] start = nextTokenOrNull == null ? prefixBytes : nextTokenOrNull.toByteArray();
+        // every key is ID_SIZE bytes, key equal to first bytes of longer start is smaller than it
+        final int equalStart = start.length > FixedIdMap.ID_SIZE ? -1 : 0;
+        final int limit = (int) Math.min((long) batch + 1, map.size());
+        // max heap, root is the greatest of kept slots
+        final int[] heap = new int[limit];
+        int count = 0;
+        final int capacity = map.capacity();
+        for (int slot = 0; slot < capacity; slot++) {
+            if (!map.isUsed(slot) || map.compareKeyPrefix(slot, prefixBytes) != 0) {
+                continue;
+            }
+            final int compareStart = map.compareKeyPrefix(slot, start);
+            if ((compareStart == 0 ? equalStart : compareStart) < 0) {
+                continue;
+            }
+            if (count < limit) {
+                heap[count] = slot;
+                siftUp(heap, count++);
+            } else if (map.compareSlots(slot, heap[0]) < 0) {
+                heap[0] = slot;
+                siftDown(heap, count, 0);
+            }
+        }
+        // heap sort, greatest slot goes to the end
+        for (int end = count - 1; end > 0; end--) {
+            final int greatest = heap[0];
+            heap[0] = heap[end];
+            heap[end] = greatest;
+            siftDown(heap, end, 0);
+        }
+        final int size = Math.min(count, batch);
+        final byte[] key = new byte[FixedIdMap.ID_SIZE];
+        for (int i = 0; i < size; i++) {
+            if (keys) {
+                map.writeKey(heap[i], key);
+                page.add(key);
+            } else {
+                map.addValueTo(heap[i], page);
+            }
+        }
+        return new Iterator(page.moveToPage(), count > batch ? map.keyAt(heap[batch]) : null);
+    }
+
+    private void siftUp(@Nonnull int[] heap, int index) {
+        final int slot = heap[index];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (map.compareSlots(heap[parent], slot) >= 0) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private void siftDown(@Nonnull int[] heap, int size, int index) {
+        final int slot = heap[index];
+        for (; ; ) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && map.compareSlots(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (map.compareSlots(slot, heap[child]) >= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = slot;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.appunite.keyvalue.internal.Preconditions;
+import com.google.protobuf.ByteString;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Compact in-memory engine that keeps most entries in front-coded {@link SortedSegment}.
+ *
+ * Writes go to small sorted buffer (deletes are stored as tombstones) that is merged into
+ * new segment when it grows over fraction of segment size, so merge cost is amortized.
+ * Reads merge buffer and segment.
+ */
+public class KeyValueFrontCoded implements KeyValue, RangeScanner, BulkLoadable {
+    private static final int MIN_BUFFER_SIZE = 4096;
+    private static final ByteString TOMBSTONE = ByteString.copyFromUtf8("tombstone");
+
+    private final int restartInterval;
+    @Nonnull
+    private final TreeMap<ByteString, ByteString> buffer = new TreeMap<>(KeyValueMemory.COMPARATOR);
+    @Nonnull
+    private SortedSegment segment = SortedSegment.empty();
+
+    @Inject
+    public KeyValueFrontCoded() {
+        this(SortedSegment.DEFAULT_RESTART_INTERVAL);
+    }
+
+    /**
+     * @param restartInterval number of entries between full keys, bigger values compress better
+     *                        but seek decodes more entries
+     */
+    public KeyValueFrontCoded(int restartInterval) {
+        checkArgument(restartInterval >= 1);
+        this.restartInterval = restartInterval;
+    }
+
+    @Override
+    public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        buffer.put(key, value);
+        maybeMerge();
+    }
+
+    @Override
+    public void del(@Nonnull ByteString key) {
+        checkNotNull(key);
+        buffer.put(key, TOMBSTONE);
+        maybeMerge();
+    }
+
+    @Nonnull
+    @Override
+    public Batch newBatch() {
+        // Memory implementation does not include real batching
+        return new FakeBatch(this);
+    }
+
+    @Nonnull
+    @Override
+    public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
+        checkNotNull(key);
+        ByteString value = buffer.get(key);
+        if (value == null) {
+            value = segment.get(key);
+        }
+        if (value == null || value == TOMBSTONE) {
+            throw new NotFoundException();
+        }
+        return value;
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public Iterator getKeys(@Nonnull ByteString prefix, ByteString nextTokenOrNull, int batch) {
+        return fetchValues(prefix, nextTokenOrNull, batch);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchValues(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetch(prefix, nextTokenOrNull, batch, false);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetch(prefix, nextTokenOrNull, batch, true);
+    }
+
+    @Nonnull
+    private Iterator fetch(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch, boolean keys) {
+        checkNotNull(prefix);
+        Preconditions.checkArgument(batch >= 1);
+        final PageBuffer page = PageBuffer.forBatch(batch);
+        final Cursor cursor = new Cursor(nextTokenOrNull == null ? prefix : nextTokenOrNull);
+        while (cursor.next()) {
+            if (!cursor.keyStartsWith(prefix)) {
+                break;
+            }
+            if (page.size() == batch) {
+                return new Iterator(page.moveToPage(), cursor.key());
+            }
+            // segment entries are copied from encoded segment straight into page
+            if (keys) {
+                cursor.addKeyTo(page);
+            } else {
+                cursor.addValueTo(page);
+            }
+        }
+        return new Iterator(page.moveToPage(), null);
+    }
+
+    /**
+     * Merge buffered writes into segment
+     */
+    public void compact() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        final SortedSegment.Builder builder = new SortedSegment.Builder(restartInterval);
+        final Cursor cursor = new Cursor(ByteString.EMPTY);
+        while (cursor.next()) {
+            builder.add(cursor.key(), cursor.value());
+        }
+        segment = builder.build();
+        buffer.clear();
+    }
+
+    /**
+     * Entries are merged with existing ones directly into new segment
+     */
+    @Override
+    public void bulkLoad(@Nonnull java.util.Iterator<Map.Entry<ByteString, ByteString>> entries) {
+        checkNotNull(entries);
+        compact();
+        final SortedSegment.Builder builder = new SortedSegment.Builder(restartInterval);
+        final SortedSegment.Cursor stored = segment.seek(ByteString.EMPTY);
+        while (entries.hasNext()) {
+            final Map.Entry<ByteString, ByteString> entry = entries.next();
+            while (stored.isValid() && stored.compareKey(entry.getKey()) < 0) {
+                builder.add(stored.key(), stored.value());
+                stored.next();
+            }
+            if (stored.isValid() && stored.compareKey(entry.getKey()) == 0) {
+                stored.next();
+            }
+            builder.add(entry.getKey(), entry.getValue());
+        }
+        for (; stored.isValid(); stored.next()) {
+            builder.add(stored.key(), stored.value());
+        }
+        segment = builder.build();
+    }
+
+    /**
+     * Encoded size of compacted entries in bytes
+     */
+    public int segmentSizeInBytes() {
+        return segment.sizeInBytes();
+    }
+
+    private void maybeMerge() {
+        if (buffer.size() > Math.max(MIN_BUFFER_SIZE, segment.size() / 8)) {
+            compact();
+        }
+    }
+
+    @Override
+    public void scan(@Nonnull KeyRange range, @Nonnull ScanVisitor visitor) {
+        scan(range, ScanOptions.DEFAULT, visitor);
+    }
+
+    @Override
+    public void scan(@Nonnull KeyRange range, @Nonnull ScanOptions options, @Nonnull ScanVisitor visitor) {
+        checkNotNull(range);
+        checkNotNull(options);
+        checkNotNull(visitor);
+        final Cursor cursor = new Cursor(range.start());
+        while (cursor.next()) {
+            final ByteString key = cursor.key();
+            if (range.isAfter(key)) {
+                return;
+            }
+            if (!options.acceptKey(key) || !options.acceptEntry(key, cursor.value())) {
+                continue;
+            }
+            if (!visitor.visit(key, options.project(key, cursor.value()))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void skipScan(@Nonnull KeyRange range, @Nonnull SeekVisitor visitor) {
+        checkNotNull(range);
+        checkNotNull(visitor);
+        ByteString target = range.start();
+        while (target != null) {
+            final Cursor cursor = new Cursor(target);
+            if (!cursor.next() || range.isAfter(cursor.key())) {
+                return;
+            }
+            target = visitor.visit(cursor.key());
+        }
+    }
+
+    @Nonnull
+    @Override
+    public List<ByteString> splitPoints(@Nonnull KeyRange range, int parts) {
+        checkNotNull(range);
+        Preconditions.checkArgument(parts >= 1);
+        final Cursor cursor = new Cursor(range.start());
+        if (!cursor.next() || range.isAfter(cursor.key())) {
+            return Collections.emptyList();
+        }
+        return KeyRange.interpolate(cursor.key(), range.end(), parts);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Merges buffer with segment, buffer wins on equal keys and tombstones are skipped
+     */
+    private class Cursor {
+        @Nonnull
+        private final java.util.Iterator<Map.Entry<ByteString, ByteString>> buffered;
+        @Nullable
+        private Map.Entry<ByteString, ByteString> bufferEntry;
+        @Nonnull
+        private final SortedSegment.Cursor stored;
+
+        // entry comes from segment, segment cursor is moved on next call so entry is read lazily
+        private boolean fromStored;
+        @Nullable
+        private ByteString key;
+        @Nullable
+        private ByteString value;
+
+        Cursor(@Nonnull ByteString from) {
+            buffered = buffer.tailMap(from, true).entrySet().iterator();
+            bufferEntry = buffered.hasNext() ? buffered.next() : null;
+            stored = segment.seek(from);
+        }
+
+        boolean next() {
+            if (fromStored) {
+                stored.next();
+                fromStored = false;
+            }
+            for (; ; ) {
+                if (bufferEntry == null && !stored.isValid()) {
+                    return false;
+                }
+                final int compare = bufferEntry == null ? 1
+                        : !stored.isValid() ? -1
+                        : -stored.compareKey(bufferEntry.getKey());
+                if (compare > 0) {
+                    fromStored = true;
+                    key = null;
+                    value = null;
+                    return true;
+                }
+                if (compare == 0) {
+                    stored.next();
+                }
+                key = bufferEntry.getKey();
+                value = bufferEntry.getValue();
+                bufferEntry = buffered.hasNext() ? buffered.next() : null;
+                if (value != TOMBSTONE) {
+                    return true;
+                }
+            }
+        }
+
+        @Nonnull
+        ByteString key() {
+            if (key == null) {
+                key = stored.key();
+            }
+            return key;
+        }
+
+        @Nonnull
+        ByteString value() {
+            if (value == null) {
+                value = stored.value();
+            }
+            return value;
+        }
+
+        boolean keyStartsWith(@Nonnull ByteString prefix) {
+            return fromStored ? stored.keyStartsWith(prefix) : ByteUtils.startsWith(key, prefix);
+        }
+
+        void addKeyTo(@Nonnull PageBuffer page) {
+            if (fromStored) {
+                stored.addKeyTo(page);
+            } else {
+                page.add(key);
+            }
+        }
+
+        void addValueTo(@Nonnull PageBuffer page) {
+            if (fromStored) {
+                stored.addValueTo(page);
+            } else {
+                page.add(value);
+            }
+        }
+    }
+}
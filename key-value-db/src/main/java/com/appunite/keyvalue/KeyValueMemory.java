@@ -16,13 +16,23 @@
 
 package com.appunite.keyvalue;
 
+import com.appunite.keyvalue.internal.ByteStringHashIndex;
 import com.appunite.keyvalue.internal.Preconditions;
 import com.appunite.keyvalue.internal.UnsignedBytes;
 import com.google.protobuf.ByteString;
 
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 import javax.annotation.Nonnull;
@@ -31,7 +41,7 @@ import javax.inject.Inject;
 
 import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
 
-public class KeyValueMemory implements KeyValue {
+public class KeyValueMemory implements KeyValue, RangeScanner, BulkLoadable, PageScanner, ByteBufferAccess {
     static final Comparator<ByteString> COMPARATOR = new Comparator<ByteString>() {
         @Override
         public int compare(ByteString o1, ByteString o2) {
@@ -56,9 +66,21 @@ public class KeyValueMemory implements KeyValue {
 
     };
     private final TreeMap<ByteString, ByteString> map = new TreeMap<>(COMPARATOR);
+    @Nullable
+    private final ByteStringHashIndex pointIndex;
 
     @Inject
     public KeyValueMemory() {
+        this(false);
+    }
+
+    /**
+     * @param pointLookupIndex if true, additional hash index is maintained so
+     *                         {@link #getBytes(ByteString)} is O(1) instead of descending the tree,
+     *                         costs additional memory and slightly slower writes
+     */
+    public KeyValueMemory(boolean pointLookupIndex) {
+        pointIndex = pointLookupIndex ? new ByteStringHashIndex() : null;
     }
 
     @Override
@@ -66,12 +88,18 @@ public class KeyValueMemory implements KeyValue {
         checkNotNull(key);
         checkNotNull(value);
         map.put(key, value);
+        if (pointIndex != null) {
+            pointIndex.put(key, value);
+        }
     }
 
     @Override
     public void del(@Nonnull ByteString key) {
         checkNotNull(key);
         map.remove(key);
+        if (pointIndex != null) {
+            pointIndex.remove(key);
+        }
     }
 
     @Nonnull
@@ -85,13 +113,31 @@ public class KeyValueMemory implements KeyValue {
     @Override
     public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
         checkNotNull(key);
-        final ByteString bytes = map.get(key);
+        final ByteString bytes = pointIndex != null ? pointIndex.get(key) : map.get(key);
+        EngineTrace.steps(1);
         if (bytes == null) {
             throw new NotFoundException();
         }
         return bytes;
     }
 
+    /**
+     * Key and value are kept by map, so they are copied
+     */
+    @Override
+    public void put(@Nonnull ByteBuffer key, @Nonnull ByteBuffer value) {
+        put(ByteBuffers.copyOf(key), ByteBuffers.copyOf(value));
+    }
+
+    /**
+     * Key backed by array is looked up without copying
+     */
+    @Override
+    public int get(@Nonnull ByteBuffer key, @Nonnull ByteBuffer out) throws NotFoundException {
+        checkNotNull(out);
+        return ByteBuffers.copyTo(getBytes(ByteBuffers.view(key)), out);
+    }
+
     @Nonnull
     @Override
     public Iterator getKeys(@Nonnull ByteString prefix, ByteString nextTokenOrNull, int batch) {
@@ -106,10 +152,17 @@ public class KeyValueMemory implements KeyValue {
         final ArrayList<ByteString> values = new ArrayList<>();
 
         Map.Entry<ByteString, ByteString> entry = map.ceilingEntry(nextTokenOrNull == null ? prefix : nextTokenOrNull);
+        final EngineTrace trace = EngineTrace.active();
+        if (trace != null) {
+            trace.addSeeks(1);
+        }
         for (; ; ) {
             if (entry == null) {
                 return new Iterator(values, null);
             }
+            if (trace != null) {
+                trace.addRows(1);
+            }
             final ByteString key = entry.getKey();
             if (!key.startsWith(prefix)) {
                 return new Iterator(values, null);
@@ -121,6 +174,9 @@ public class KeyValueMemory implements KeyValue {
 
 
             entry = map.higherEntry(key);
+            if (trace != null) {
+                trace.addSteps(1);
+            }
         }
     }
 
@@ -132,10 +188,17 @@ public class KeyValueMemory implements KeyValue {
         final ArrayList<ByteString> keys = new ArrayList<>();
 
         Map.Entry<ByteString, ByteString> entry = map.ceilingEntry(nextTokenOrNull == null ? prefix : nextTokenOrNull);
+        final EngineTrace trace = EngineTrace.active();
+        if (trace != null) {
+            trace.addSeeks(1);
+        }
         for (; ; ) {
             if (entry == null) {
                 return new Iterator(keys, null);
             }
+            if (trace != null) {
+                trace.addRows(1);
+            }
             final ByteString key = entry.getKey();
             if (!key.startsWith(prefix)) {
                 return new Iterator(keys, null);
@@ -147,6 +210,253 @@ public class KeyValueMemory implements KeyValue {
 
 
             entry = map.higherEntry(key);
+            if (trace != null) {
+                trace.addSteps(1);
+            }
+        }
+    }
+
+    @Override
+    public void fetchValues(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch,
+                            @Nonnull PageBuffer buffer) {
+        fetch(prefix, nextTokenOrNull, batch, buffer, true);
+    }
+
+    @Override
+    public void fetchKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch,
+                          @Nonnull PageBuffer buffer) {
+        fetch(prefix, nextTokenOrNull, batch, buffer, false);
+    }
+
+    /**
+     * Walks tail map iterator instead of {@link TreeMap#higherEntry(Object)}, so there is single
+     * tree descent per page and no entry copies; next token is key owned by map
+     */
+    private void fetch(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch,
+                       @Nonnull PageBuffer buffer, boolean values) {
+        checkNotNull(prefix);
+        checkNotNull(buffer);
+        Preconditions.checkArgument(batch >= 1);
+        buffer.clear();
+        final ByteString start = nextTokenOrNull == null ? prefix : nextTokenOrNull;
+        final EngineTrace trace = EngineTrace.active();
+        if (trace != null) {
+            trace.addSeeks(1);
+        }
+        for (Map.Entry<ByteString, ByteString> entry : map.tailMap(start, true).entrySet()) {
+            if (trace != null) {
+                trace.addRows(1);
+            }
+            final ByteString key = entry.getKey();
+            if (!ByteUtils.startsWith(key, prefix)) {
+                return;
+            }
+            if (buffer.size() == batch) {
+                buffer.nextToken(key);
+                return;
+            }
+            buffer.add(values ? entry.getValue() : key);
+        }
+    }
+
+    @Override
+    public void scan(@Nonnull KeyRange range, @Nonnull ScanVisitor visitor) {
+        scan(range, ScanOptions.DEFAULT, visitor);
+    }
+
+    @Override
+    public void scan(@Nonnull KeyRange range, @Nonnull ScanOptions options, @Nonnull ScanVisitor visitor) {
+        checkNotNull(range);
+        checkNotNull(options);
+        checkNotNull(visitor);
+        final EngineTrace trace = EngineTrace.active();
+        if (trace != null) {
+            trace.addSeeks(1);
+        }
+        for (Map.Entry<ByteString, ByteString> entry : subMap(range).entrySet()) {
+            if (trace != null) {
+                trace.addRows(1);
+            }
+            final ByteString key = entry.getKey();
+            if (!options.acceptKey(key)) {
+                continue;
+            }
+            final ByteString value = entry.getValue();
+            if (!options.acceptEntry(key, value)) {
+                continue;
+            }
+            if (!visitor.visit(key, options.project(key, value))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void skipScan(@Nonnull KeyRange range, @Nonnull SeekVisitor visitor) {
+        checkNotNull(range);
+        checkNotNull(visitor);
+        final EngineTrace trace = EngineTrace.active();
+        ByteString key = map.ceilingKey(range.start());
+        if (trace != null) {
+            trace.addSeeks(1);
+        }
+        while (key != null && !range.isAfter(key)) {
+            if (trace != null) {
+                trace.addRows(1);
+            }
+            final ByteString target = visitor.visit(key);
+            if (target == null) {
+                return;
+            }
+            key = map.ceilingKey(target);
+            if (trace != null) {
+                trace.addSeeks(1);
+            }
+        }
+    }
+
+    @Nonnull
+    @Override
+    public List<ByteString> splitPoints(@Nonnull KeyRange range, int parts) {
+        checkNotNull(range);
+        Preconditions.checkArgument(parts >= 1);
+        final NavigableMap<ByteString, ByteString> subMap = subMap(range);
+        if (subMap.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return KeyRange.interpolate(subMap.firstKey(), subMap.lastKey(), parts);
+    }
+
+    @Nonnull
+    private NavigableMap<ByteString, ByteString> subMap(@Nonnull KeyRange range) {
+        final ByteString end = range.end();
+        return end == null
+                ? map.tailMap(range.start(), true)
+                : map.subMap(range.start(), true, end, false);
+    }
+
+    /**
+     * Into empty engine tree is built in linear time, keys are only compared with previous ones
+     *
+     * @throws IllegalArgumentException if engine is empty and keys are not strictly increasing,
+     *                                  engine is not modified then
+     */
+    @Override
+    public void bulkLoad(@Nonnull java.util.Iterator<Map.Entry<ByteString, ByteString>> entries) {
+        checkNotNull(entries);
+        if (!map.isEmpty()) {
+            while (entries.hasNext()) {
+                final Map.Entry<ByteString, ByteString> entry = entries.next();
+                put(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+        final ArrayList<Map.Entry<ByteString, ByteString>> sorted = new ArrayList<>();
+        ByteString previous = null;
+        while (entries.hasNext()) {
+            final Map.Entry<ByteString, ByteString> entry = entries.next();
+            final ByteString key = entry.getKey();
+            if (previous != null && COMPARATOR.compare(previous, key) >= 0) {
+                throw new IllegalArgumentException("Keys are not strictly increasing at entry " + sorted.size());
+            }
+            sorted.add(entry);
+            previous = key;
+        }
+        // TreeMap.putAll builds balanced tree directly from sorted map with the same comparator
+        map.putAll(new SortedEntries(sorted));
+        if (pointIndex != null) {
+            for (Map.Entry<ByteString, ByteString> entry : sorted) {
+                pointIndex.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Sorted map view of entries with strictly increasing keys, lets {@link TreeMap#putAll(Map)}
+     * build tree directly
+     */
+    private static class SortedEntries extends AbstractMap<ByteString, ByteString>
+            implements SortedMap<ByteString, ByteString> {
+        @Nonnull
+        private final List<Map.Entry<ByteString, ByteString>> entries;
+
+        SortedEntries(@Nonnull List<Map.Entry<ByteString, ByteString>> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public Comparator<? super ByteString> comparator() {
+            return COMPARATOR;
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Nonnull
+        @Override
+        public Set<Entry<ByteString, ByteString>> entrySet() {
+            return new AbstractSet<Entry<ByteString, ByteString>>() {
+                @Override
+                public java.util.Iterator<Entry<ByteString, ByteString>> iterator() {
+                    return entries.iterator();
+                }
+
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
+
+        /**
+         * Index of first entry with key greater or equal to given key
+         */
+        private int lowerBound(@Nonnull ByteString key) {
+            int low = 0;
+            int high = entries.size();
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (COMPARATOR.compare(entries.get(middle).getKey(), key) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public SortedMap<ByteString, ByteString> subMap(ByteString fromKey, ByteString toKey) {
+            Preconditions.checkArgument(COMPARATOR.compare(fromKey, toKey) <= 0, "fromKey > toKey");
+            return new SortedEntries(entries.subList(lowerBound(fromKey), lowerBound(toKey)));
+        }
+
+        @Override
+        public SortedMap<ByteString, ByteString> headMap(ByteString toKey) {
+            return new SortedEntries(entries.subList(0, lowerBound(toKey)));
+        }
+
+        @Override
+        public SortedMap<ByteString, ByteString> tailMap(ByteString fromKey) {
+            return new SortedEntries(entries.subList(lowerBound(fromKey), entries.size()));
+        }
+
+        @Override
+        public ByteString firstKey() {
+            if (entries.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return entries.get(0).getKey();
+        }
+
+        @Override
+        public ByteString lastKey() {
+            if (entries.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return entries.get(entries.size() - 1).getKey();
         }
     }
 
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Exposes metrics of {@link InstrumentedKeyValue} as read only JMX attributes, e.g.
+ * {@code GetP99Nanos}, {@code Fetches} or {@code Misses}.
+ *
+ * Latency attributes are in nanoseconds, page size attributes in number of items.
+ * Latency is measured only for sampled operations, so {@code <Operation>SampledCount} is
+ * number of samples, exact number of operations is in counters like {@code Gets}.
+ *
+ * Kept separately from {@link InstrumentedKeyValue} because javax.management is not available
+ * on Android.
+ * <pre>
+ *     KeyValueMetricsJmx.register(instrumented, "com.appunite.keyvalue:type=KeyValue,name=messages");
+ * </pre>
+ */
+public class KeyValueMetricsJmx implements DynamicMBean {
+    private static final String[] STATISTICS = {"Count", "Mean", "P50", "P99", "P999", "Max"};
+    private static final String NANOS = "Nanos";
+    private static final String SAMPLED_COUNT = "SampledCount";
+
+    @Nonnull
+    private final InstrumentedKeyValue keyValue;
+
+    public KeyValueMetricsJmx(@Nonnull InstrumentedKeyValue keyValue) {
+        this.keyValue = checkNotNull(keyValue);
+    }
+
+    /**
+     * Register metrics in platform MBean server
+     *
+     * @return registered name, that can be used to unregister metrics
+     */
+    @Nonnull
+    public static ObjectName register(@Nonnull InstrumentedKeyValue keyValue, @Nonnull String name) {
+        try {
+            final ObjectName objectName = new ObjectName(checkNotNull(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new KeyValueMetricsJmx(keyValue), objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        for (InstrumentedKeyValue.Counter counter : InstrumentedKeyValue.Counter.values()) {
+            if (attribute.equals(name(counter))) {
+                return keyValue.count(counter);
+            }
+        }
+        if (attribute.startsWith("PageSize")) {
+            return statistic(keyValue.pageSizes().snapshot(), attribute.substring("PageSize".length()));
+        }
+        for (InstrumentedKeyValue.Operation operation : InstrumentedKeyValue.Operation.values()) {
+            final String name = name(operation);
+            if (attribute.startsWith(name)) {
+                final String statistic = attribute.substring(name.length());
+                if (statistic.equals(SAMPLED_COUNT)) {
+                    return keyValue.latency(operation).snapshot().count();
+                }
+                if (!statistic.endsWith(NANOS) || statistic.equals("Count" + NANOS)) {
+                    throw new AttributeNotFoundException(attribute);
+                }
+                return statistic(keyValue.latency(operation).snapshot(),
+                        statistic.substring(0, statistic.length() - NANOS.length()));
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    private static long statistic(@Nonnull Histogram.Snapshot snapshot, @Nonnull String statistic)
+            throws AttributeNotFoundException {
+        switch (statistic) {
+            case "Count":
+                return snapshot.count();
+            case "Mean":
+                return (long) snapshot.mean();
+            case "P50":
+                return snapshot.percentile(50);
+            case "P99":
+                return snapshot.percentile(99);
+            case "P999":
+                return snapshot.percentile(99.9);
+            case "Max":
+                return snapshot.max();
+            default:
+                throw new AttributeNotFoundException(statistic);
+        }
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Attributes are read only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        final AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException ignore) {
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if ("reset".equals(actionName)) {
+            keyValue.reset();
+            return null;
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        final ArrayList<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (InstrumentedKeyValue.Counter counter : InstrumentedKeyValue.Counter.values()) {
+            attributes.add(attribute(name(counter)));
+        }
+        for (InstrumentedKeyValue.Operation operation : InstrumentedKeyValue.Operation.values()) {
+            for (String statistic : STATISTICS) {
+                attributes.add(attribute(name(operation) + ("Count".equals(statistic) ? SAMPLED_COUNT : statistic + NANOS)));
+            }
+        }
+        for (String statistic : STATISTICS) {
+            attributes.add(attribute("PageSize" + statistic));
+        }
+        final MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Reset all metrics",
+                new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+        return new MBeanInfo(getClass().getName(), "Key value metrics",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+                null, new MBeanOperationInfo[]{reset}, null);
+    }
+
+    @Nonnull
+    private static MBeanAttributeInfo attribute(@Nonnull String name) {
+        return new MBeanAttributeInfo(name, "long", name, true, false, false);
+    }
+
+    /**
+     * FETCH_VALUES to FetchValues
+     */
+    @Nonnull
+    private static String name(@Nonnull Enum<?> value) {
+        final StringBuilder builder = new StringBuilder();
+        for (String part : value.name().split("_")) {
+            builder.append(part.charAt(0)).append(part.substring(1).toLowerCase(Locale.US));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.appunite.keyvalue.internal.Preconditions;
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * In memory engine that keeps sizes of subtrees (order statistic treap), so in addition to
+ * {@link KeyValueMemory} features it can answer in O(log n):
+ * <ul>
+ *     <li>{@link #count(ByteString)} - number of keys with prefix</li>
+ *     <li>{@link #rank(ByteString)} - position of a key</li>
+ *     <li>{@link #seekToOffset(ByteString, int)} - token for
+ *     {@link #fetchValues(ByteString, ByteString, int)} that starts at given offset</li>
+ * </ul>
+ */
+public class KeyValueOrderStatistic implements KeyValue, RangeScanner {
+
+    private static class Node {
+        @Nonnull
+        final ByteString key;
+        @Nonnull
+        ByteString value;
+        final int priority;
+        @Nullable
+        Node left;
+        @Nullable
+        Node right;
+        int size = 1;
+
+        Node(@Nonnull ByteString key, @Nonnull ByteString value, int priority) {
+            this.key = key;
+            this.value = value;
+            this.priority = priority;
+        }
+
+        void update() {
+            size = 1 + size(left) + size(right);
+        }
+    }
+
+    @Nullable
+    private Node root;
+    private int seed = 0x2545F491;
+
+    @Inject
+    public KeyValueOrderStatistic() {
+    }
+
+    @Override
+    public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        final Node existing = find(key);
+        if (existing != null) {
+            existing.value = value;
+            return;
+        }
+        final Node[] parts = split(root, key);
+        root = merge(merge(parts[0], new Node(key, value, nextPriority())), parts[1]);
+    }
+
+    @Override
+    public void del(@Nonnull ByteString key) {
+        checkNotNull(key);
+        root = delete(root, key);
+    }
+
+    @Nonnull
+    @Override
+    public Batch newBatch() {
+        // Memory implementation does not include real batching
+        return new FakeBatch(this);
+    }
+
+    @Nonnull
+    @Override
+    public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
+        checkNotNull(key);
+        final Node node = find(key);
+        if (node == null) {
+            throw new NotFoundException();
+        }
+        return node.value;
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public Iterator getKeys(@Nonnull ByteString prefix, ByteString nextTokenOrNull, int batch) {
+        return fetchValues(prefix, nextTokenOrNull, batch);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchValues(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetch(prefix, nextTokenOrNull, batch, false);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetch(prefix, nextTokenOrNull, batch, true);
+    }
+
+    @Nonnull
+    private Iterator fetch(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch, boolean keys) {
+        checkNotNull(prefix);
+        Preconditions.checkArgument(batch >= 1);
+        final ArrayList<ByteString> out = new ArrayList<>();
+        final Cursor cursor = new Cursor(nextTokenOrNull == null ? prefix : nextTokenOrNull);
+        for (Node node = cursor.next(); node != null; node = cursor.next()) {
+            if (!node.key.startsWith(prefix)) {
+                break;
+            }
+            if (out.size() == batch) {
+                return new Iterator(out, node.key);
+            }
+            out.add(keys ? node.key : node.value);
+        }
+        return new Iterator(out, null);
+    }
+
+    /**
+     * Number of all keys
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Number of keys starting with prefix
+     */
+    public int count(@Nonnull ByteString prefix) {
+        return count(KeyRange.prefix(checkNotNull(prefix)));
+    }
+
+    /**
+     * Number of keys in range
+     */
+    public int count(@Nonnull KeyRange range) {
+        checkNotNull(range);
+        final ByteString end = range.end();
+        return (end == null ? size() : rank(end)) - rank(range.start());
+    }
+
+    /**
+     * Number of keys lower than given key, so for existing key it is its position
+     */
+    public int rank(@Nonnull ByteString key) {
+        checkNotNull(key);
+        int rank = 0;
+        Node node = root;
+        while (node != null) {
+            final int compare = KeyValueMemory.COMPARATOR.compare(key, node.key);
+            if (compare <= 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Key at given position
+     *
+     * @return key or null if position is outside of the store
+     */
+    @Nullable
+    public ByteString select(int position) {
+        if (position < 0 || position >= size()) {
+            return null;
+        }
+        Node node = root;
+        while (node != null) {
+            final int leftSize = size(node.left);
+            if (position < leftSize) {
+                node = node.left;
+            } else if (position == leftSize) {
+                return node.key;
+            } else {
+                position -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        throw new IllegalStateException("Tree sizes are broken");
+    }
+
+    /**
+     * Token that can be passed to {@link #fetchValues(ByteString, ByteString, int)} or
+     * {@link #fetchKeys(ByteString, ByteString, int)} to start from given offset within prefix.
+     *
+     * @return token or null if there is no more than offset keys with prefix
+     */
+    @Nullable
+    public ByteString seekToOffset(@Nonnull ByteString prefix, int offset) {
+        checkNotNull(prefix);
+        Preconditions.checkArgument(offset >= 0);
+        if (offset >= count(prefix)) {
+            return null;
+        }
+        return select(rank(prefix) + offset);
+    }
+
+    @Override
+    public void scan(@Nonnull KeyRange range, @Nonnull ScanVisitor visitor) {
+        scan(range, ScanOptions.DEFAULT, visitor);
+    }
+
+    @Override
+    public void scan(@Nonnull KeyRange range, @Nonnull ScanOptions options, @Nonnull ScanVisitor visitor) {
+        checkNotNull(range);
+        checkNotNull(options);
+        checkNotNull(visitor);
+        final Cursor cursor = new Cursor(range.start());
+        for (Node node = cursor.next(); node != null; node = cursor.next()) {
+            final ByteString key = node.key;
+            if (range.isAfter(key)) {
+                return;
+            }
+            if (!options.acceptKey(key) || !options.acceptEntry(key, node.value)) {
+                continue;
+            }
+            if (!visitor.visit(key, options.project(key, node.value))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void skipScan(@Nonnull KeyRange range, @Nonnull SeekVisitor visitor) {
+        checkNotNull(range);
+        checkNotNull(visitor);
+        ByteString target = range.start();
+        while (target != null) {
+            final Node node = new Cursor(target).next();
+            if (node == null || range.isAfter(node.key)) {
+                return;
+            }
+            target = visitor.visit(node.key);
+        }
+    }
+
+    /**
+     * Exact split points, every part contains the same number of keys
+     */
+    @Nonnull
+    @Override
+    public List<ByteString> splitPoints(@Nonnull KeyRange range, int parts) {
+        checkNotNull(range);
+        Preconditions.checkArgument(parts >= 1);
+        final int first = rank(range.start());
+        final int count = count(range);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        final ArrayList<ByteString> points = new ArrayList<>(parts - 1);
+        int previous = 0;
+        for (int i = 1; i < parts; i++) {
+            final int offset = (int) ((long) count * i / parts);
+            if (offset <= previous) {
+                continue;
+            }
+            points.add(select(first + offset));
+            previous = offset;
+        }
+        return points;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * In order iteration starting from first key greater or equal to given key
+     */
+    private class Cursor {
+        @Nonnull
+        private final ArrayDeque<Node> stack = new ArrayDeque<>();
+
+        Cursor(@Nonnull ByteString from) {
+            Node node = root;
+            while (node != null) {
+                if (KeyValueMemory.COMPARATOR.compare(node.key, from) >= 0) {
+                    stack.push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Nullable
+        Node next() {
+            final Node node = stack.poll();
+            if (node == null) {
+                return null;
+            }
+            for (Node child = node.right; child != null; child = child.left) {
+                stack.push(child);
+            }
+            return node;
+        }
+    }
+
+    @Nullable
+    private Node find(@Nonnull ByteString key) {
+        Node node = root;
+        while (node != null) {
+            final int compare = KeyValueMemory.COMPARATOR.compare(key, node.key);
+            if (compare == 0) {
+                return node;
+            }
+            node = compare < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * @return [keys lower than key, keys greater or equal to key]
+     */
+    @Nonnull
+    private static Node[] split(@Nullable Node node, @Nonnull ByteString key) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (KeyValueMemory.COMPARATOR.compare(node.key, key) < 0) {
+            final Node[] parts = split(node.right, key);
+            node.right = parts[0];
+            node.update();
+            parts[0] = node;
+            return parts;
+        } else {
+            final Node[] parts = split(node.left, key);
+            node.left = parts[1];
+            node.update();
+            parts[1] = node;
+            return parts;
+        }
+    }
+
+    @Nullable
+    private static Node merge(@Nullable Node left, @Nullable Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            right.update();
+            return right;
+        }
+    }
+
+    @Nullable
+    private static Node delete(@Nullable Node node, @Nonnull ByteString key) {
+        if (node == null) {
+            return null;
+        }
+        final int compare = KeyValueMemory.COMPARATOR.compare(key, node.key);
+        if (compare == 0) {
+            return merge(node.left, node.right);
+        }
+        if (compare < 0) {
+            node.left = delete(node.left, key);
+        } else {
+            node.right = delete(node.right, key);
+        }
+        node.update();
+        return node;
+    }
+
+    private int nextPriority() {
+        // xorshift, good enough to keep treap balanced
+        int x = seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        seed = x;
+        return x;
+    }
+
+    private static int size(@Nullable Node node) {
+        return node == null ? 0 : node.size;
+    }
+}
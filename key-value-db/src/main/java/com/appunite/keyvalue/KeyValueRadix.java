@@ -0,0 +1,805 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.appunite.keyvalue.internal.Preconditions;
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * In-memory engine based on adaptive radix tree with path compression.
+ *
+ * Keys produced by {@link KeyGenerator} share long structural prefixes, radix tree stores
+ * every shared prefix only once and finds key in O(key length) without comparing whole keys.
+ * Inner nodes grow and shrink between 4, 16, 48 and 256 children depending on fan-out.
+ *
+ * Keys returned by iteration are rebuilt from the path, so values should be preferred over keys
+ * in hot loops.
+ */
+public class KeyValueRadix implements KeyValue, RangeScanner {
+
+    private abstract static class Node {
+        /**
+         * Compressed path between parent's child byte and this node
+         */
+        @Nonnull
+        byte[] prefix;
+        /**
+         * Value of key that ends in this node
+         */
+        @Nullable
+        ByteString value;
+
+        Node(@Nonnull byte[] prefix, @Nullable ByteString value) {
+            this.prefix = prefix;
+            this.value = value;
+        }
+
+        @Nullable
+        abstract Node child(int b);
+
+        /**
+         * @return lowest child byte greater or equal to from, or -1
+         */
+        abstract int nextChild(int from);
+
+        /**
+         * @return highest child byte or -1
+         */
+        abstract int lastChild();
+
+        abstract int childCount();
+
+        abstract void replaceChild(int b, @Nonnull Node child);
+
+        /**
+         * @return this or bigger node that replaces this
+         */
+        @Nonnull
+        abstract Node addChild(int b, @Nonnull Node child);
+
+        /**
+         * @return this or smaller node that replaces this
+         */
+        @Nonnull
+        abstract Node removeChild(int b);
+
+        @Nonnull
+        <T extends Node> T copyChildren(@Nonnull T to) {
+            for (int b = nextChild(0); b >= 0; b = b == 0xff ? -1 : nextChild(b + 1)) {
+                to.addChild(b, child(b));
+            }
+            return to;
+        }
+    }
+
+    private static class Leaf extends Node {
+        Leaf(@Nonnull byte[] prefix, @Nullable ByteString value) {
+            super(prefix, value);
+        }
+
+        @Nullable
+        @Override
+        Node child(int b) {
+            return null;
+        }
+
+        @Override
+        int nextChild(int from) {
+            return -1;
+        }
+
+        @Override
+        int lastChild() {
+            return -1;
+        }
+
+        @Override
+        int childCount() {
+            return 0;
+        }
+
+        @Override
+        void replaceChild(int b, @Nonnull Node child) {
+            throw new IllegalStateException();
+        }
+
+        @Nonnull
+        @Override
+        Node addChild(int b, @Nonnull Node child) {
+            return new ListNode(prefix, value, 4).addChild(b, child);
+        }
+
+        @Nonnull
+        @Override
+        Node removeChild(int b) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Node4 and Node16 - sorted child bytes searched linearly
+     */
+    private static class ListNode extends Node {
+        @Nonnull
+        final byte[] keys;
+        @Nonnull
+        final Node[] children;
+        int count;
+
+        ListNode(@Nonnull byte[] prefix, @Nullable ByteString value, int capacity) {
+            super(prefix, value);
+            keys = new byte[capacity];
+            children = new Node[capacity];
+        }
+
+        private int indexOf(int b) {
+            for (int i = 0; i < count; i++) {
+                if ((keys[i] & 0xff) == b) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Nullable
+        @Override
+        Node child(int b) {
+            final int index = indexOf(b);
+            return index < 0 ? null : children[index];
+        }
+
+        @Override
+        int nextChild(int from) {
+            for (int i = 0; i < count; i++) {
+                final int b = keys[i] & 0xff;
+                if (b >= from) {
+                    return b;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int lastChild() {
+            return count == 0 ? -1 : keys[count - 1] & 0xff;
+        }
+
+        @Override
+        int childCount() {
+            return count;
+        }
+
+        @Override
+        void replaceChild(int b, @Nonnull Node child) {
+            children[indexOf(b)] = child;
+        }
+
+        @Nonnull
+        @Override
+        Node addChild(int b, @Nonnull Node child) {
+            if (count == keys.length) {
+                final Node grown = keys.length == 4
+                        ? copyChildren(new ListNode(prefix, value, 16))
+                        : copyChildren(new Node48(prefix, value));
+                return grown.addChild(b, child);
+            }
+            int index = count;
+            while (index > 0 && (keys[index - 1] & 0xff) > b) {
+                keys[index] = keys[index - 1];
+                children[index] = children[index - 1];
+                index--;
+            }
+            keys[index] = (byte) b;
+            children[index] = child;
+            count++;
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        Node removeChild(int b) {
+            final int index = indexOf(b);
+            System.arraycopy(keys, index + 1, keys, index, count - index - 1);
+            System.arraycopy(children, index + 1, children, index, count - index - 1);
+            count--;
+            children[count] = null;
+            if (count == 0) {
+                return new Leaf(prefix, value);
+            }
+            if (keys.length == 16 && count <= 3) {
+                return copyChildren(new ListNode(prefix, value, 4));
+            }
+            return this;
+        }
+    }
+
+    private static class Node48 extends Node {
+        /**
+         * Child slot + 1 for every byte, 0 if there is no child
+         */
+        @Nonnull
+        final byte[] index = new byte[256];
+        @Nonnull
+        final Node[] children = new Node[48];
+        int count;
+
+        Node48(@Nonnull byte[] prefix, @Nullable ByteString value) {
+            super(prefix, value);
+        }
+
+        @Nullable
+        @Override
+        Node child(int b) {
+            final int slot = index[b];
+            return slot == 0 ? null : children[slot - 1];
+        }
+
+        @Override
+        int nextChild(int from) {
+            for (int b = from; b < 256; b++) {
+                if (index[b] != 0) {
+                    return b;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int lastChild() {
+            return count == 0 ? -1 : previous(255);
+        }
+
+        private int previous(int from) {
+            for (int b = from; b >= 0; b--) {
+                if (index[b] != 0) {
+                    return b;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int childCount() {
+            return count;
+        }
+
+        @Override
+        void replaceChild(int b, @Nonnull Node child) {
+            children[index[b] - 1] = child;
+        }
+
+        @Nonnull
+        @Override
+        Node addChild(int b, @Nonnull Node child) {
+            if (count == children.length) {
+                return copyChildren(new Node256(prefix, value)).addChild(b, child);
+            }
+            children[count] = child;
+            count++;
+            index[b] = (byte) count;
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        Node removeChild(int b) {
+            final int slot = index[b] - 1;
+            index[b] = 0;
+            count--;
+            if (slot != count) {
+                // keep slots dense by moving last child into freed slot
+                for (int other = 0; other < 256; other++) {
+                    if (index[other] == count + 1) {
+                        index[other] = (byte) (slot + 1);
+                        break;
+                    }
+                }
+                children[slot] = children[count];
+            }
+            children[count] = null;
+            if (count <= 12) {
+                return copyChildren(new ListNode(prefix, value, 16));
+            }
+            return this;
+        }
+    }
+
+    private static class Node256 extends Node {
+        @Nonnull
+        final Node[] children = new Node[256];
+        int count;
+
+        Node256(@Nonnull byte[] prefix, @Nullable ByteString value) {
+            super(prefix, value);
+        }
+
+        @Nullable
+        @Override
+        Node child(int b) {
+            return children[b];
+        }
+
+        @Override
+        int nextChild(int from) {
+            for (int b = from; b < 256; b++) {
+                if (children[b] != null) {
+                    return b;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int lastChild() {
+            for (int b = 255; b >= 0; b--) {
+                if (children[b] != null) {
+                    return b;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int childCount() {
+            return count;
+        }
+
+        @Override
+        void replaceChild(int b, @Nonnull Node child) {
+            children[b] = child;
+        }
+
+        @Nonnull
+        @Override
+        Node addChild(int b, @Nonnull Node child) {
+            children[b] = child;
+            count++;
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        Node removeChild(int b) {
+            children[b] = null;
+            count--;
+            if (count <= 36) {
+                return copyChildren(new Node48(prefix, value));
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Receives entries in key order, key is valid only in buffer[0..length)
+     */
+    private interface EntryVisitor {
+        boolean visit(@Nonnull byte[] buffer, int length, @Nonnull ByteString value);
+    }
+
+    @Nullable
+    private Node root;
+    private int size;
+
+    @Inject
+    public KeyValueRadix() {
+    }
+
+    @Override
+    public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        root = insert(root, key, 0, value);
+    }
+
+    @Override
+    public void del(@Nonnull ByteString key) {
+        checkNotNull(key);
+        root = delete(root, key, 0);
+    }
+
+    @Nonnull
+    @Override
+    public Batch newBatch() {
+        // Memory implementation does not include real batching
+        return new FakeBatch(this);
+    }
+
+    @Nonnull
+    @Override
+    public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
+        checkNotNull(key);
+        final int keySize = key.size();
+        Node node = root;
+        int depth = 0;
+        while (node != null) {
+            final byte[] prefix = node.prefix;
+            if (keySize - depth < prefix.length) {
+                break;
+            }
+            for (byte b : prefix) {
+                if (key.byteAt(depth) != b) {
+                    throw new NotFoundException();
+                }
+                depth++;
+            }
+            if (depth == keySize) {
+                if (node.value == null) {
+                    break;
+                }
+                return node.value;
+            }
+            node = node.child(key.byteAt(depth) & 0xff);
+            depth++;
+        }
+        throw new NotFoundException();
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public Iterator getKeys(@Nonnull ByteString prefix, ByteString nextTokenOrNull, int batch) {
+        return fetchValues(prefix, nextTokenOrNull, batch);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchValues(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetch(prefix, nextTokenOrNull, batch, false);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetch(prefix, nextTokenOrNull, batch, true);
+    }
+
+    @Nonnull
+    private Iterator fetch(@Nonnull final ByteString prefix, @Nullable ByteString nextTokenOrNull,
+                           final int batch, final boolean keys) {
+        checkNotNull(prefix);
+        Preconditions.checkArgument(batch >= 1);
+        // keys are rebuilt from path, so they are packed; values are stored byte strings
+        final PageBuffer keyPage = keys ? PageBuffer.forBatch(batch) : null;
+        final ArrayList<ByteString> values = keys ? null : new ArrayList<ByteString>();
+        final ByteString[] nextToken = new ByteString[1];
+        walk(nextTokenOrNull == null ? prefix : nextTokenOrNull, new EntryVisitor() {
+            @Override
+            public boolean visit(@Nonnull byte[] buffer, int length, @Nonnull ByteString value) {
+                if (!startsWith(buffer, length, prefix)) {
+                    return false;
+                }
+                if ((keyPage != null ? keyPage.size() : values.size()) == batch) {
+                    nextToken[0] = ByteString.copyFrom(buffer, 0, length);
+                    return false;
+                }
+                if (keyPage != null) {
+                    keyPage.add(buffer, 0, length);
+                } else {
+                    values.add(value);
+                }
+                return true;
+            }
+        });
+        return new Iterator(keyPage != null ? keyPage.moveToPage() : values, nextToken[0]);
+    }
+
+    /**
+     * Number of all keys
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void scan(@Nonnull KeyRange range, @Nonnull ScanVisitor visitor) {
+        scan(range, ScanOptions.DEFAULT, visitor);
+    }
+
+    @Override
+    public void scan(@Nonnull final KeyRange range, @Nonnull final ScanOptions options,
+                     @Nonnull final ScanVisitor visitor) {
+        checkNotNull(range);
+        checkNotNull(options);
+        checkNotNull(visitor);
+        walk(range.start(), new EntryVisitor() {
+            @Override
+            public boolean visit(@Nonnull byte[] buffer, int length, @Nonnull ByteString value) {
+                final ByteString key = ByteString.copyFrom(buffer, 0, length);
+                if (range.isAfter(key)) {
+                    return false;
+                }
+                if (!options.acceptKey(key) || !options.acceptEntry(key, value)) {
+                    return true;
+                }
+                return visitor.visit(key, options.project(key, value));
+            }
+        });
+    }
+
+    @Override
+    public void skipScan(@Nonnull KeyRange range, @Nonnull SeekVisitor visitor) {
+        checkNotNull(range);
+        checkNotNull(visitor);
+        ByteString target = range.start();
+        while (target != null) {
+            final ByteString key = ceilingKey(target);
+            if (key == null || range.isAfter(key)) {
+                return;
+            }
+            target = visitor.visit(key);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public List<ByteString> splitPoints(@Nonnull KeyRange range, int parts) {
+        checkNotNull(range);
+        Preconditions.checkArgument(parts >= 1);
+        final ByteString first = ceilingKey(range.start());
+        if (first == null || range.isAfter(first)) {
+            return Collections.emptyList();
+        }
+        return KeyRange.interpolate(first, range.end() == null ? lastKey() : range.end(), parts);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Nullable
+    private ByteString ceilingKey(@Nonnull ByteString from) {
+        final ByteString[] out = new ByteString[1];
+        walk(from, new EntryVisitor() {
+            @Override
+            public boolean visit(@Nonnull byte[] buffer, int length, @Nonnull ByteString value) {
+                out[0] = ByteString.copyFrom(buffer, 0, length);
+                return false;
+            }
+        });
+        return out[0];
+    }
+
+    @Nullable
+    private ByteString lastKey() {
+        if (root == null) {
+            return null;
+        }
+        final ByteString.Output out = ByteString.newOutput();
+        Node node = root;
+        for (; ; ) {
+            out.write(node.prefix, 0, node.prefix.length);
+            final int b = node.lastChild();
+            if (b < 0) {
+                return out.toByteString();
+            }
+            out.write(b);
+            node = node.child(b);
+        }
+    }
+
+    private static boolean startsWith(@Nonnull byte[] buffer, int length, @Nonnull ByteString prefix) {
+        final int size = prefix.size();
+        if (length < size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (buffer[i] != prefix.byteAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visit entries with keys greater or equal to from in key order
+     */
+    private void walk(@Nonnull ByteString from, @Nonnull EntryVisitor visitor) {
+        if (root != null) {
+            new Walk(from, visitor).walk(root, 0, true);
+        }
+    }
+
+    private static class Walk {
+        @Nonnull
+        private final ByteString from;
+        @Nonnull
+        private final EntryVisitor visitor;
+        @Nonnull
+        private byte[] buffer = new byte[64];
+
+        Walk(@Nonnull ByteString from, @Nonnull EntryVisitor visitor) {
+            this.from = from;
+            this.visitor = visitor;
+        }
+
+        /**
+         * @param length size of key path before node
+         * @param bounded true if path before node is equal to beginning of from
+         * @return false if visitor stopped
+         */
+        boolean walk(@Nonnull Node node, int length, boolean bounded) {
+            final byte[] prefix = node.prefix;
+            if (bounded) {
+                for (int i = 0; i < prefix.length; i++) {
+                    final int position = length + i;
+                    if (position == from.size()) {
+                        bounded = false;
+                        break;
+                    }
+                    final int compare = (prefix[i] & 0xff) - (from.byteAt(position) & 0xff);
+                    if (compare < 0) {
+                        // whole subtree is lower than from
+                        return true;
+                    }
+                    if (compare > 0) {
+                        bounded = false;
+                        break;
+                    }
+                }
+            }
+            if (buffer.length < length + prefix.length + 1) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + prefix.length + 1));
+            }
+            System.arraycopy(prefix, 0, buffer, length, prefix.length);
+            length += prefix.length;
+
+            int firstChild = 0;
+            if (bounded) {
+                if (length == from.size()) {
+                    bounded = false;
+                } else {
+                    // key of this node is lower than from
+                    firstChild = from.byteAt(length) & 0xff;
+                }
+            }
+            if (!bounded && node.value != null && !visitor.visit(buffer, length, node.value)) {
+                return false;
+            }
+            for (int b = node.nextChild(firstChild); b >= 0; b = b == 0xff ? -1 : node.nextChild(b + 1)) {
+                buffer[length] = (byte) b;
+                if (!walk(node.child(b), length + 1, bounded && b == firstChild)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    @Nonnull
+    private Node insert(@Nullable Node node, @Nonnull ByteString key, int depth, @Nonnull ByteString value) {
+        if (node == null) {
+            size++;
+            return new Leaf(key.substring(depth).toByteArray(), value);
+        }
+        final byte[] prefix = node.prefix;
+        final int keySize = key.size();
+        int matching = 0;
+        while (matching < prefix.length && depth + matching < keySize
+                && prefix[matching] == key.byteAt(depth + matching)) {
+            matching++;
+        }
+        if (matching < prefix.length) {
+            // split compressed path at first different byte
+            final Node split = new ListNode(Arrays.copyOf(prefix, matching), null, 4);
+            final int oldByte = prefix[matching] & 0xff;
+            node.prefix = Arrays.copyOfRange(prefix, matching + 1, prefix.length);
+            split.addChild(oldByte, node);
+            final int position = depth + matching;
+            if (position == keySize) {
+                split.value = value;
+                size++;
+            } else {
+                split.addChild(key.byteAt(position) & 0xff, insert(null, key, position + 1, value));
+            }
+            return split;
+        }
+        depth += prefix.length;
+        if (depth == keySize) {
+            if (node.value == null) {
+                size++;
+            }
+            node.value = value;
+            return node;
+        }
+        final int b = key.byteAt(depth) & 0xff;
+        final Node child = node.child(b);
+        if (child == null) {
+            return node.addChild(b, insert(null, key, depth + 1, value));
+        }
+        final Node newChild = insert(child, key, depth + 1, value);
+        if (newChild != child) {
+            node.replaceChild(b, newChild);
+        }
+        return node;
+    }
+
+    @Nullable
+    private Node delete(@Nullable Node node, @Nonnull ByteString key, int depth) {
+        if (node == null) {
+            return null;
+        }
+        final byte[] prefix = node.prefix;
+        final int keySize = key.size();
+        if (keySize - depth < prefix.length) {
+            return node;
+        }
+        for (byte b : prefix) {
+            if (key.byteAt(depth) != b) {
+                return node;
+            }
+            depth++;
+        }
+        if (depth == keySize) {
+            if (node.value == null) {
+                return node;
+            }
+            node.value = null;
+            size--;
+            return collapse(node);
+        }
+        final int b = key.byteAt(depth) & 0xff;
+        final Node child = node.child(b);
+        if (child == null) {
+            return node;
+        }
+        final Node newChild = delete(child, key, depth + 1);
+        if (newChild == child) {
+            return node;
+        }
+        if (newChild != null) {
+            node.replaceChild(b, newChild);
+            return node;
+        }
+        return collapse(node.removeChild(b));
+    }
+
+    /**
+     * Remove node without value and merge node with single child into that child
+     */
+    @Nullable
+    private static Node collapse(@Nonnull Node node) {
+        if (node.value != null) {
+            return node;
+        }
+        final int count = node.childCount();
+        if (count == 0) {
+            return null;
+        }
+        if (count > 1) {
+            return node;
+        }
+        final int b = node.nextChild(0);
+        final Node child = checkNotNull(node.child(b));
+        final byte[] merged = new byte[node.prefix.length + 1 + child.prefix.length];
+        System.arraycopy(node.prefix, 0, merged, 0, node.prefix.length);
+        merged[node.prefix.length] = (byte) b;
+        System.arraycopy(child.prefix, 0, merged, node.prefix.length + 1, child.prefix.length);
+        child.prefix = merged;
+        return child;
+    }
+}
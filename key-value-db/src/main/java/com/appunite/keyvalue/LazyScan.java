@@ -0,0 +1,245 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Lazy view over entries in a key range.
+ *
+ * Pages are fetched from engine only when iteration reaches them, so stopping early
+ * (e.g. {@link #first()} or {@link Builder#limit(int)}) does not fetch more entries than needed.
+ * Filters and projection are pushed down to engine (see {@link ScanOptions}) so rejected entries
+ * are never collected to pages.
+ *
+ * <pre>
+ * for (Map.Entry&lt;ByteString, ByteString&gt; entry : new LazyScan.Builder(keyValue, KeyRange.prefix(prefix))
+ *         .filter(filter)
+ *         .limit(10)
+ *         .build()) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class LazyScan implements Iterable<Map.Entry<ByteString, ByteString>> {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final ByteString ZERO = ByteString.copyFrom(new byte[]{0});
+
+    @Nonnull
+    private final KeyValue keyValue;
+    @Nonnull
+    private final KeyRange range;
+    @Nonnull
+    private final ScanOptions options;
+    private final int pageSize;
+    private final int limit;
+
+    private LazyScan(@Nonnull Builder builder) {
+        keyValue = builder.keyValue;
+        range = builder.range;
+        options = builder.options.build();
+        pageSize = builder.pageSize;
+        limit = builder.limit;
+    }
+
+    public static class Builder {
+        @Nonnull
+        private final KeyValue keyValue;
+        @Nonnull
+        private final KeyRange range;
+        @Nonnull
+        private final ScanOptions.Builder options = new ScanOptions.Builder();
+        private int pageSize = DEFAULT_PAGE_SIZE;
+        private int limit = Integer.MAX_VALUE;
+
+        public Builder(@Nonnull KeyValue keyValue, @Nonnull KeyRange range) {
+            this.keyValue = checkNotNull(keyValue);
+            this.range = checkNotNull(range);
+        }
+
+        /**
+         * Return only entries accepted by filter
+         */
+        @Nonnull
+        public Builder filter(@Nullable EntryFilter filter) {
+            options.entryFilter(filter);
+            return this;
+        }
+
+        /**
+         * Return only entries with keys accepted by filter, values of rejected entries are not read
+         */
+        @Nonnull
+        public Builder keyFilter(@Nullable KeyFilter filter) {
+            options.keyFilter(filter);
+            return this;
+        }
+
+        /**
+         * Return projected values instead of stored ones
+         */
+        @Nonnull
+        public Builder projection(@Nullable ValueProjection projection) {
+            options.projection(projection);
+            return this;
+        }
+
+        /**
+         * Maximal number of entries fetched from engine at once
+         */
+        @Nonnull
+        public Builder pageSize(int pageSize) {
+            checkArgument(pageSize >= 1);
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Maximal number of returned entries
+         */
+        @Nonnull
+        public Builder limit(int limit) {
+            checkArgument(limit >= 0);
+            this.limit = limit;
+            return this;
+        }
+
+        @Nonnull
+        public LazyScan build() {
+            return new LazyScan(this);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Map.Entry<ByteString, ByteString>> iterator() {
+        return new PageIterator();
+    }
+
+    /**
+     * First matching entry, fetches only one entry from engine
+     */
+    @Nullable
+    public Map.Entry<ByteString, ByteString> first() {
+        final Iterator<Map.Entry<ByteString, ByteString>> iterator = new PageIterator(1);
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Lazy view of values only
+     */
+    @Nonnull
+    public Iterable<ByteString> values() {
+        return new Iterable<ByteString>() {
+            @Override
+            public Iterator<ByteString> iterator() {
+                final PageIterator entries = new PageIterator();
+                return new Iterator<ByteString>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public ByteString next() {
+                        return entries.next().getValue();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private class PageIterator implements Iterator<Map.Entry<ByteString, ByteString>> {
+        @Nonnull
+        private List<Map.Entry<ByteString, ByteString>> page = new ArrayList<>();
+        private int position;
+        @Nullable
+        private ByteString nextStart = range.start();
+        private int remaining;
+
+        PageIterator() {
+            this(limit);
+        }
+
+        PageIterator(int limit) {
+            remaining = limit;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < page.size()) {
+                return true;
+            }
+            fetchPage();
+            return position < page.size();
+        }
+
+        @Override
+        public Map.Entry<ByteString, ByteString> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(position++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void fetchPage() {
+            final ByteString start = nextStart;
+            if (start == null || remaining == 0) {
+                return;
+            }
+            final int size = Math.min(pageSize, remaining);
+            final ArrayList<Map.Entry<ByteString, ByteString>> entries = new ArrayList<>(size);
+            Scans.scan(keyValue, new KeyRange(start, range.end()), options, new ScanVisitor() {
+                @Override
+                public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+                    return entries.size() < size;
+                }
+            });
+            page = entries;
+            position = 0;
+            remaining -= entries.size();
+            nextStart = entries.size() < size
+                    ? null
+                    // smallest key greater than the last one
+                    : entries.get(entries.size() - 1).getKey().concat(ZERO);
+        }
+    }
+}
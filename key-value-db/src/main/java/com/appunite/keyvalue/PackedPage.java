@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Immutable page of entries packed in one {@link ByteString} with offsets array, returned by
+ * engine scans in {@link KeyValue.Iterator#keys()}.
+ *
+ * Page of n entries is three objects instead of n byte strings with n byte arrays. Entries are
+ * zero-copy views of page created on access, so consumers that read only few entries or parse
+ * them with protobuf (which reads view without copying) do not pay for the rest.
+ */
+public class PackedPage extends AbstractList<ByteString> implements RandomAccess {
+    @Nonnull
+    private final ByteString bytes;
+    // end of every entry in bytes, entry starts at end of previous one
+    @Nonnull
+    private final int[] ends;
+
+    PackedPage(@Nonnull ByteString bytes, @Nonnull int[] ends) {
+        this.bytes = bytes;
+        this.ends = ends;
+    }
+
+    /**
+     * View of entry, shares bytes with page
+     */
+    @Override
+    public ByteString get(int index) {
+        return bytes.substring(offset(index), ends[index]);
+    }
+
+    @Override
+    public int size() {
+        return ends.length;
+    }
+
+    /**
+     * All entries one after another
+     */
+    @Nonnull
+    public ByteString bytes() {
+        return bytes;
+    }
+
+    /**
+     * Start of entry in {@link #bytes()}
+     */
+    public int offset(int index) {
+        if (index < 0 || index >= ends.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + ends.length);
+        }
+        return index == 0 ? 0 : ends[index - 1];
+    }
+
+    public int length(int index) {
+        return ends[index] - offset(index);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Reusable page of scan results packed into one byte arena, filled by {@link PageScanner}.
+ *
+ * Entries are stored one after another in {@link #array()} and found by offsets, so paging with
+ * the same buffer does not allocate once arena grew to the size of the biggest page. Entries can
+ * be parsed in place, e.g. with {@code CodedInputStream.newInstance(array, offset, length)}.
+ * <pre>
+ *     final PageBuffer page = new PageBuffer();
+ *     ByteString nextToken = null;
+ *     do {
+ *         Scans.fetchValues(keyValue, prefix, nextToken, 100, page);
+ *         for (int i = 0; i < page.size(); i++) {
+ *             consume(page.array(), page.offset(i), page.length(i));
+ *         }
+ *         nextToken = page.nextToken();
+ *     } while (nextToken != null);
+ * </pre>
+ *
+ * Not thread safe.
+ */
+public class PageBuffer {
+    private static final byte[] EMPTY = new byte[0];
+
+    @Nonnull
+    private byte[] arena;
+    // end of every entry in arena, entry starts at end of previous one
+    @Nonnull
+    private int[] ends;
+    private int size;
+    @Nullable
+    private ByteString nextToken;
+
+    public PageBuffer() {
+        this(4096, 64);
+    }
+
+    /**
+     * @param bytes initial size of arena, it grows when needed
+     * @param entries initial number of entries, grows when needed
+     */
+    public PageBuffer(int bytes, int entries) {
+        checkArgument(bytes >= 0);
+        checkArgument(entries >= 0);
+        arena = new byte[bytes];
+        ends = new int[entries];
+    }
+
+    /**
+     * Buffer for single page of at most batch entries, small pages do not allocate big arena
+     */
+    @Nonnull
+    public static PageBuffer forBatch(int batch) {
+        final int entries = Math.max(1, Math.min(batch, 64));
+        return new PageBuffer(entries * 64, entries);
+    }
+
+    /**
+     * Remove entries and next token, memory is kept for next page
+     */
+    public void clear() {
+        size = 0;
+        nextToken = null;
+    }
+
+    /**
+     * Number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Backing arena of entries, it is replaced when buffer grows so it should not be kept
+     * after next {@link #add(ByteString)} or {@link #clear()}
+     */
+    @Nonnull
+    public byte[] array() {
+        return arena;
+    }
+
+    /**
+     * Start of entry in {@link #array()}
+     */
+    public int offset(int index) {
+        checkIndex(index);
+        return index == 0 ? 0 : ends[index - 1];
+    }
+
+    public int length(int index) {
+        checkIndex(index);
+        return ends[index] - (index == 0 ? 0 : ends[index - 1]);
+    }
+
+    /**
+     * Number of used bytes of arena
+     */
+    public int bytes() {
+        return size == 0 ? 0 : ends[size - 1];
+    }
+
+    /**
+     * Copy of entry
+     */
+    @Nonnull
+    public ByteString get(int index) {
+        return ByteString.copyFrom(arena, offset(index), length(index));
+    }
+
+    /**
+     * Copy entry to target without allocation
+     */
+    public void copyTo(int index, @Nonnull byte[] target, int targetOffset) {
+        System.arraycopy(arena, offset(index), target, targetOffset, length(index));
+    }
+
+    /**
+     * Token of next page, the same as {@link KeyValue.Iterator#nextToken()}
+     */
+    @Nullable
+    public ByteString nextToken() {
+        return nextToken;
+    }
+
+    /**
+     * Used by engines to set token of next page
+     */
+    public void nextToken(@Nullable ByteString nextToken) {
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * Used by engines to append entry
+     */
+    public void add(@Nonnull ByteString entry) {
+        final int length = entry.size();
+        final int start = reserve(length);
+        entry.copyTo(arena, 0, start, length);
+        ends[size++] = start + length;
+    }
+
+    /**
+     * Used by engines to append entry
+     */
+    public void add(@Nonnull byte[] entry) {
+        add(entry, 0, entry.length);
+    }
+
+    /**
+     * Used by engines to append entry
+     */
+    public void add(@Nonnull byte[] bytes, int offset, int length) {
+        final int start = reserve(length);
+        System.arraycopy(bytes, offset, arena, start, length);
+        ends[size++] = start + length;
+    }
+
+    /**
+     * Immutable copy of entries, buffer can be reused afterwards
+     */
+    @Nonnull
+    public PackedPage toPage() {
+        return new PackedPage(ByteString.copyFrom(arena, 0, bytes()), Arrays.copyOf(ends, size));
+    }
+
+    /**
+     * Immutable page of entries that are moved out of buffer, buffer is empty afterwards and
+     * next token is kept. Meant for buffers of single fetch, see {@link #forBatch(int)}.
+     *
+     * If entries fill at least half of arena, page takes arena without copying and buffer
+     * allocates new one on next add, otherwise entries are copied so page does not keep mostly
+     * empty arena.
+     */
+    @Nonnull
+    public PackedPage moveToPage() {
+        final int bytes = bytes();
+        final PackedPage page;
+        if (bytes > 0 && bytes * 2 >= arena.length) {
+            page = new PackedPage(ByteUtils.wrap(arena, 0, bytes), Arrays.copyOf(ends, size));
+            arena = EMPTY;
+        } else {
+            page = toPage();
+        }
+        size = 0;
+        return page;
+    }
+
+    private int reserve(int length) {
+        final int start = bytes();
+        if (start + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(start + length, arena.length * 2));
+        }
+        if (size == ends.length) {
+            ends = Arrays.copyOf(ends, Math.max(8, ends.length * 2));
+        }
+        return start;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+}
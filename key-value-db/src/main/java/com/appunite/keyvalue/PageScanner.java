@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Optional interface of engines that can copy page of results straight into reusable
+ * {@link PageBuffer}, used by {@link Scans#fetchValues(KeyValue, ByteString, ByteString, int, PageBuffer)}.
+ */
+public interface PageScanner {
+    /**
+     * The same as {@link KeyValue#fetchValues(ByteString, ByteString, int)}, buffer is cleared
+     * and filled with values and next token
+     */
+    void fetchValues(@Nonnull ByteString prefix,
+                     @Nullable ByteString nextTokenOrNull,
+                     int batch,
+                     @Nonnull PageBuffer buffer);
+
+    /**
+     * The same as {@link KeyValue#fetchKeys(ByteString, ByteString, int)}, buffer is cleared
+     * and filled with keys and next token
+     */
+    void fetchKeys(@Nonnull ByteString prefix,
+                   @Nullable ByteString nextTokenOrNull,
+                   int batch,
+                   @Nonnull PageBuffer buffer);
+}
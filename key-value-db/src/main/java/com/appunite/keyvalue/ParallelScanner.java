@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Scans key range in parallel.
+ *
+ * Range is divided into parts using engine key distribution hints
+ * (see {@link RangeScanner#splitPoints(KeyRange, int)}) and parts are scanned by workers
+ * submitted to {@link ExecutorService}, every worker takes next part when it finished previous
+ * one. Entries inside one part are visited in key order but parts are visited concurrently,
+ * so visitor has to be thread-safe.
+ *
+ * Engine has to support concurrent reads and should not be modified during the scan.
+ * Scan blocks until all workers finish, so it should not be called from threads of the
+ * executor.
+ */
+public class ParallelScanner {
+    private static final int PARTS_PER_THREAD = 4;
+
+    @Nonnull
+    private final KeyValue keyValue;
+    @Nonnull
+    private final ExecutorService executor;
+    private final int threads;
+
+    /**
+     * @param threads number of workers submitted to executor for every scan, should not be
+     *                greater than number of threads of executor
+     */
+    public ParallelScanner(@Nonnull KeyValue keyValue, @Nonnull ExecutorService executor, int threads) {
+        checkArgument(threads >= 1);
+        this.keyValue = checkNotNull(keyValue);
+        this.executor = checkNotNull(executor);
+        this.threads = threads;
+    }
+
+    /**
+     * Scan range divided into few parts per every thread
+     */
+    public void scan(@Nonnull KeyRange range, @Nonnull ScanVisitor visitor) {
+        scan(range, threads * PARTS_PER_THREAD, visitor);
+    }
+
+    /**
+     * Scan range divided into given number of parts.
+     *
+     * If visitor returns false scanning is stopped in all parts, but entries that are
+     * already being visited on other threads will be delivered. Exception thrown by visitor
+     * stops scanning too and is rethrown.
+     */
+    public void scan(@Nonnull KeyRange range, int parts, @Nonnull ScanVisitor visitor) {
+        checkNotNull(range);
+        checkNotNull(visitor);
+        checkArgument(parts >= 1);
+        final List<KeyRange> ranges = Scans.split(keyValue, range, parts);
+        final ScanTask task = new ScanTask(keyValue, ranges, visitor);
+        final int workers = Math.min(threads, ranges.size());
+        final List<Future<?>> futures = new ArrayList<>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            // stops workers that still run after failure or interruption
+            task.stopped.set(true);
+        }
+    }
+
+    /**
+     * Shared by all workers of one scan, every run scans parts until none are left
+     */
+    private static class ScanTask implements Runnable {
+        @Nonnull
+        private final KeyValue keyValue;
+        @Nonnull
+        private final List<KeyRange> ranges;
+        @Nonnull
+        private final ScanVisitor visitor;
+        @Nonnull
+        private final AtomicInteger next = new AtomicInteger();
+        @Nonnull
+        private final AtomicBoolean stopped = new AtomicBoolean();
+
+        ScanTask(@Nonnull KeyValue keyValue,
+                 @Nonnull List<KeyRange> ranges,
+                 @Nonnull ScanVisitor visitor) {
+            this.keyValue = keyValue;
+            this.ranges = ranges;
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void run() {
+            final ScanVisitor stopping = new ScanVisitor() {
+                @Override
+                public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                    if (stopped.get()) {
+                        return false;
+                    }
+                    if (!visitor.visit(key, value)) {
+                        stopped.set(true);
+                        return false;
+                    }
+                    return true;
+                }
+            };
+            boolean completed = false;
+            try {
+                for (int part = next.getAndIncrement(); part < ranges.size() && !stopped.get();
+                     part = next.getAndIncrement()) {
+                    Scans.scan(keyValue, ranges.get(part), stopping);
+                }
+                completed = true;
+            } finally {
+                if (!completed) {
+                    // failure of one part stops other workers
+                    stopped.set(true);
+                }
+            }
+        }
+    }
+}
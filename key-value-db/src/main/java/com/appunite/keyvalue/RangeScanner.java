@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Implemented by engines that can walk a key range natively instead of paging with
+ * {@link KeyValue#fetchKeys(ByteString, ByteString, int)}.
+ *
+ * Use {@link Scans} so engines without this interface are also supported.
+ */
+public interface RangeScanner {
+
+    /**
+     * Visit all entries in range in key order until visitor returns false
+     */
+    void scan(@Nonnull KeyRange range, @Nonnull ScanVisitor visitor);
+
+    /**
+     * Visit entries in range accepted by options, filters and projection have to be evaluated
+     * inside of the engine loop so rejected entries are not copied
+     */
+    void scan(@Nonnull KeyRange range, @Nonnull ScanOptions options, @Nonnull ScanVisitor visitor);
+
+    /**
+     * Skip-scan keys in range: seek to first key of range and then to keys returned by visitor.
+     *
+     * Every step costs one seek, so visiting k keys is O(k log n) no matter how many keys
+     * are skipped.
+     */
+    void skipScan(@Nonnull KeyRange range, @Nonnull SeekVisitor visitor);
+
+    /**
+     * Hint how to divide range into parts containing similar number of entries.
+     *
+     * @return increasing keys inside of the range, at most parts - 1, can be empty
+     */
+    @Nonnull
+    List<ByteString> splitPoints(@Nonnull KeyRange range, int parts);
+}
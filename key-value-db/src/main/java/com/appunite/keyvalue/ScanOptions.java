@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Filters and projection evaluated by engine inside of its scan loop.
+ *
+ * Order of evaluation: {@link KeyFilter}, then value is read, {@link EntryFilter},
+ * {@link ValueProjection}.
+ */
+public class ScanOptions {
+    public static final ScanOptions DEFAULT = new Builder().build();
+
+    @Nullable
+    private final KeyFilter keyFilter;
+    @Nullable
+    private final EntryFilter entryFilter;
+    @Nullable
+    private final ValueProjection projection;
+
+    private ScanOptions(@Nonnull Builder builder) {
+        keyFilter = builder.keyFilter;
+        entryFilter = builder.entryFilter;
+        projection = builder.projection;
+    }
+
+    public static class Builder {
+        @Nullable
+        private KeyFilter keyFilter;
+        @Nullable
+        private EntryFilter entryFilter;
+        @Nullable
+        private ValueProjection projection;
+
+        @Nonnull
+        public Builder keyFilter(@Nullable KeyFilter keyFilter) {
+            this.keyFilter = keyFilter;
+            return this;
+        }
+
+        @Nonnull
+        public Builder entryFilter(@Nullable EntryFilter entryFilter) {
+            this.entryFilter = entryFilter;
+            return this;
+        }
+
+        @Nonnull
+        public Builder projection(@Nullable ValueProjection projection) {
+            this.projection = projection;
+            return this;
+        }
+
+        @Nonnull
+        public ScanOptions build() {
+            return new ScanOptions(this);
+        }
+    }
+
+    @Nullable
+    public KeyFilter keyFilter() {
+        return keyFilter;
+    }
+
+    @Nullable
+    public EntryFilter entryFilter() {
+        return entryFilter;
+    }
+
+    @Nullable
+    public ValueProjection projection() {
+        return projection;
+    }
+
+    public boolean acceptKey(@Nonnull ByteString key) {
+        return keyFilter == null || keyFilter.accept(key);
+    }
+
+    public boolean acceptEntry(@Nonnull ByteString key, @Nonnull ByteString value) {
+        return entryFilter == null || entryFilter.accept(key, value);
+    }
+
+    @Nonnull
+    public ByteString project(@Nonnull ByteString key, @Nonnull ByteString value) {
+        return projection == null ? value : projection.project(key, value);
+    }
+}
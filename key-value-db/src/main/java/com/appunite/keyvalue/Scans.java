@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Range scans for any {@link KeyValue}.
+ *
+ * Engines implementing {@link RangeScanner} are used directly, other engines are paged
+ * with {@link KeyValue#fetchKeys(ByteString, ByteString, int)}.
+ */
+public class Scans {
+    private static final int FIRST_PAGE_SIZE = 16;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    public static void scan(@Nonnull KeyValue keyValue,
+                            @Nonnull KeyRange range,
+                            @Nonnull ScanVisitor visitor) {
+        scan(keyValue, range, ScanOptions.DEFAULT, visitor);
+    }
+
+    public static void scan(@Nonnull KeyValue keyValue,
+                            @Nonnull KeyRange range,
+                            @Nonnull ScanOptions options,
+                            @Nonnull ScanVisitor visitor) {
+        checkNotNull(keyValue);
+        checkNotNull(range);
+        checkNotNull(options);
+        checkNotNull(visitor);
+        if (range.isEmpty()) {
+            return;
+        }
+        final RangeScanner scanner = ForwardingKeyValue.capability(keyValue, RangeScanner.class);
+        if (scanner != null) {
+            scanner.scan(range, options, visitor);
+            return;
+        }
+        final ByteString prefix = range.commonPrefix();
+        ByteString nextToken = range.start();
+        // Start with small pages so visitors that stop early do not fetch too many keys
+        int pageSize = FIRST_PAGE_SIZE;
+        while (nextToken != null) {
+            final KeyValue.Iterator iterator = keyValue.fetchKeys(prefix, nextToken, pageSize);
+            pageSize = Math.min(pageSize * 2, MAX_PAGE_SIZE);
+            for (ByteString key : iterator.keys()) {
+                if (range.isAfter(key)) {
+                    return;
+                }
+                if (!options.acceptKey(key)) {
+                    continue;
+                }
+                final ByteString value;
+                try {
+                    value = keyValue.getBytes(key);
+                } catch (NotFoundException ignore) {
+                    // removed in the meantime
+                    continue;
+                }
+                if (!options.acceptEntry(key, value)) {
+                    continue;
+                }
+                if (!visitor.visit(key, options.project(key, value))) {
+                    return;
+                }
+            }
+            nextToken = iterator.nextToken();
+        }
+    }
+
+    public static void skipScan(@Nonnull KeyValue keyValue,
+                                @Nonnull KeyRange range,
+                                @Nonnull SeekVisitor visitor) {
+        checkNotNull(keyValue);
+        checkNotNull(range);
+        checkNotNull(visitor);
+        if (range.isEmpty()) {
+            return;
+        }
+        final RangeScanner scanner = ForwardingKeyValue.capability(keyValue, RangeScanner.class);
+        if (scanner != null) {
+            scanner.skipScan(range, visitor);
+            return;
+        }
+        final ByteString prefix = range.commonPrefix();
+        ByteString target = range.start();
+        while (target != null) {
+            final List<ByteString> keys = keyValue.fetchKeys(prefix, target, 1).keys();
+            if (keys.isEmpty() || range.isAfter(keys.get(0))) {
+                return;
+            }
+            target = visitor.visit(keys.get(0));
+        }
+    }
+
+    @Nonnull
+    public static List<ByteString> splitPoints(@Nonnull KeyValue keyValue,
+                                               @Nonnull KeyRange range,
+                                               int parts) {
+        checkNotNull(keyValue);
+        checkNotNull(range);
+        checkArgument(parts >= 1);
+        if (parts == 1 || range.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final RangeScanner scanner = ForwardingKeyValue.capability(keyValue, RangeScanner.class);
+        if (scanner != null) {
+            return scanner.splitPoints(range, parts);
+        }
+        final List<ByteString> first = keyValue.fetchKeys(range.commonPrefix(), range.start(), 1).keys();
+        if (first.isEmpty() || range.isAfter(first.get(0))) {
+            return Collections.emptyList();
+        }
+        return KeyRange.interpolate(first.get(0), range.end(), parts);
+    }
+
+    @Nonnull
+    public static List<KeyRange> split(@Nonnull KeyValue keyValue,
+                                       @Nonnull KeyRange range,
+                                       int parts) {
+        return range.split(splitPoints(keyValue, range, parts));
+    }
+
+    /**
+     * Page of values in reusable buffer, engines implementing {@link PageScanner} fill it
+     * directly, results of other engines are copied
+     */
+    public static void fetchValues(@Nonnull KeyValue keyValue,
+                                   @Nonnull ByteString prefix,
+                                   @Nullable ByteString nextTokenOrNull,
+                                   int batch,
+                                   @Nonnull PageBuffer buffer) {
+        checkNotNull(keyValue);
+        checkNotNull(buffer);
+        final PageScanner scanner = ForwardingKeyValue.capability(keyValue, PageScanner.class);
+        if (scanner != null) {
+            scanner.fetchValues(prefix, nextTokenOrNull, batch, buffer);
+            return;
+        }
+        copy(keyValue.fetchValues(prefix, nextTokenOrNull, batch), buffer);
+    }
+
+    /**
+     * Page of keys in reusable buffer, see {@link #fetchValues(KeyValue, ByteString, ByteString, int, PageBuffer)}
+     */
+    public static void fetchKeys(@Nonnull KeyValue keyValue,
+                                 @Nonnull ByteString prefix,
+                                 @Nullable ByteString nextTokenOrNull,
+                                 int batch,
+                                 @Nonnull PageBuffer buffer) {
+        checkNotNull(keyValue);
+        checkNotNull(buffer);
+        final PageScanner scanner = ForwardingKeyValue.capability(keyValue, PageScanner.class);
+        if (scanner != null) {
+            scanner.fetchKeys(prefix, nextTokenOrNull, batch, buffer);
+            return;
+        }
+        copy(keyValue.fetchKeys(prefix, nextTokenOrNull, batch), buffer);
+    }
+
+    private static void copy(@Nonnull KeyValue.Iterator iterator, @Nonnull PageBuffer buffer) {
+        buffer.clear();
+        for (ByteString entry : iterator.keys()) {
+            buffer.add(entry);
+        }
+        buffer.nextToken(iterator.nextToken());
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.appunite.keyvalue.internal.UnsignedBytes;
+import com.appunite.keyvalue.internal.Varint;
+import com.google.protobuf.ByteString;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+import static com.appunite.keyvalue.internal.Preconditions.checkState;
+
+/**
+ * Immutable sorted entries with front-coded (prefix compressed) keys.
+ *
+ * Every entry stores only bytes that differ from previous key:
+ * <pre>
+ *     varint shared | varint unshared | varint valueLength | unshared key bytes | value bytes
+ * </pre>
+ * Every {@link Builder#Builder(int) restartInterval} entries key is stored in full (shared = 0),
+ * offsets of these restart points are kept so seek does binary search over restart points
+ * and then decodes at most restartInterval entries.
+ */
+public class SortedSegment {
+    public static final int DEFAULT_RESTART_INTERVAL = 16;
+
+    @Nonnull
+    private final byte[] data;
+    @Nonnull
+    private final int[] restarts;
+    private final int size;
+
+    private SortedSegment(@Nonnull byte[] data, @Nonnull int[] restarts, int size) {
+        this.data = data;
+        this.restarts = restarts;
+        this.size = size;
+    }
+
+    @Nonnull
+    public static SortedSegment empty() {
+        return new Builder().build();
+    }
+
+    public static class Builder {
+        private final int restartInterval;
+        @Nonnull
+        private byte[] data = new byte[256];
+        private int length;
+        @Nonnull
+        private int[] restarts = new int[16];
+        private int restartCount;
+        private int size;
+        @Nullable
+        private ByteString lastKey;
+
+        public Builder() {
+            this(DEFAULT_RESTART_INTERVAL);
+        }
+
+        public Builder(int restartInterval) {
+            checkArgument(restartInterval >= 1);
+            this.restartInterval = restartInterval;
+        }
+
+        /**
+         * @param key has to be greater than previously added key
+         */
+        @Nonnull
+        public Builder add(@Nonnull ByteString key, @Nonnull ByteString value) {
+            checkNotNull(key);
+            checkNotNull(value);
+            int shared = 0;
+            if (lastKey != null) {
+                final int max = Math.min(lastKey.size(), key.size());
+                while (shared < max && lastKey.byteAt(shared) == key.byteAt(shared)) {
+                    shared++;
+                }
+                checkArgument(shared < max
+                                ? UnsignedBytes.compare(lastKey.byteAt(shared), key.byteAt(shared)) < 0
+                                : lastKey.size() < key.size(),
+                        "keys have to be added in increasing order");
+            }
+            if (size % restartInterval == 0) {
+                if (restartCount == restarts.length) {
+                    restarts = Arrays.copyOf(restarts, restartCount * 2);
+                }
+                restarts[restartCount++] = length;
+                shared = 0;
+            }
+            final int unshared = key.size() - shared;
+            ensureCapacity(3 * Varint.MAX_SIZE + unshared + value.size());
+            length = Varint.write(data, length, shared);
+            length = Varint.write(data, length, unshared);
+            length = Varint.write(data, length, value.size());
+            key.copyTo(data, shared, length, unshared);
+            length += unshared;
+            value.copyTo(data, length);
+            length += value.size();
+            lastKey = key;
+            size++;
+            return this;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        @Nonnull
+        public SortedSegment build() {
+            return new SortedSegment(Arrays.copyOf(data, length),
+                    Arrays.copyOf(restarts, restartCount), size);
+        }
+    }
+
+    /**
+     * Number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Encoded size in bytes
+     */
+    public int sizeInBytes() {
+        return data.length + restarts.length * 4;
+    }
+
+    @Nullable
+    public ByteString get(@Nonnull ByteString key) {
+        final Cursor cursor = seek(key);
+        return cursor.isValid() && cursor.compareKey(key) == 0 ? cursor.value() : null;
+    }
+
+    /**
+     * Cursor at first entry with key greater or equal to given key
+     */
+    @Nonnull
+    public Cursor seek(@Nonnull ByteString key) {
+        checkNotNull(key);
+        // last restart point with key lower or equal to searched key
+        int low = 0;
+        int high = restarts.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (compareRestartKey(middle, key) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        final Cursor cursor = new Cursor();
+        if (restarts.length == 0) {
+            return cursor;
+        }
+        cursor.offset = restarts[low];
+        cursor.next();
+        while (cursor.isValid() && cursor.compareKey(key) < 0) {
+            cursor.next();
+        }
+        return cursor;
+    }
+
+    private int compareRestartKey(int restart, @Nonnull ByteString key) {
+        int offset = restarts[restart];
+        // shared is always 0 at restart point
+        offset++;
+        final int keyLength = Varint.read(data, offset);
+        offset += Varint.size(keyLength);
+        final int valueLength = Varint.read(data, offset);
+        offset += Varint.size(valueLength);
+        return compare(data, offset, keyLength, key);
+    }
+
+    private static int compare(@Nonnull byte[] bytes, int offset, int length, @Nonnull ByteString key) {
+        final int max = Math.min(length, key.size());
+        for (int i = 0; i < max; i++) {
+            final int compare = UnsignedBytes.compare(bytes[offset + i], key.byteAt(i));
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return length - key.size();
+    }
+
+    /**
+     * Forward iterator over entries, keys are decoded into reused buffer
+     */
+    public class Cursor {
+        private int offset;
+        @Nonnull
+        private byte[] key = new byte[64];
+        private int keyLength;
+        private int valueOffset;
+        private int valueLength;
+        private boolean valid;
+
+        private Cursor() {
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        public void next() {
+            if (offset >= data.length) {
+                valid = false;
+                return;
+            }
+            final int shared = Varint.read(data, offset);
+            offset += Varint.size(shared);
+            final int unshared = Varint.read(data, offset);
+            offset += Varint.size(unshared);
+            valueLength = Varint.read(data, offset);
+            offset += Varint.size(valueLength);
+            keyLength = shared + unshared;
+            if (key.length < keyLength) {
+                key = Arrays.copyOf(key, Math.max(key.length * 2, keyLength));
+            }
+            System.arraycopy(data, offset, key, shared, unshared);
+            valueOffset = offset + unshared;
+            offset = valueOffset + valueLength;
+            valid = true;
+        }
+
+        public int compareKey(@Nonnull ByteString other) {
+            checkState(valid);
+            return compare(key, 0, keyLength, other);
+        }
+
+        public boolean keyStartsWith(@Nonnull ByteString prefix) {
+            checkState(valid);
+            return keyLength >= prefix.size() && compare(key, 0, prefix.size(), prefix) == 0;
+        }
+
+        @Nonnull
+        public ByteString key() {
+            checkState(valid);
+            return ByteString.copyFrom(key, 0, keyLength);
+        }
+
+        /**
+         * Value is view of segment data, it keeps segment in memory
+         */
+        @Nonnull
+        public ByteString value() {
+            checkState(valid);
+            return ByteUtils.wrap(data, valueOffset, valueLength);
+        }
+
+        /**
+         * Append key to page without creating byte string
+         */
+        public void addKeyTo(@Nonnull PageBuffer page) {
+            checkState(valid);
+            page.add(key, 0, keyLength);
+        }
+
+        /**
+         * Append value to page without creating byte string
+         */
+        public void addValueTo(@Nonnull PageBuffer page) {
+            checkState(valid);
+            page.add(data, valueOffset, valueLength);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Distribution of stored data: number of entries and bytes per key prefix and histograms of key
+ * and value sizes, collected by scan of any {@link RangeScanner}.
+ *
+ * Every key is counted, but only every n-th value is read ({@link Builder#sampleEvery(int)}).
+ * Engines do not load values of keys rejected by {@link KeyFilter}, so sampled scan of
+ * {@code KeyValueLevel} does not copy most of values through JNI. Value bytes of prefixes are
+ * extrapolated from sampled values.
+ * <pre>
+ *     final StorageStatistics statistics = new StorageStatistics.Builder(keyValue)
+ *             .prefixSegments(4)
+ *             .sampleEvery(16)
+ *             .collect();
+ *     for (StorageStatistics.Prefix prefix : statistics.largestPrefixes(10)) {
+ *         Log.i(TAG, prefix.toString());
+ *     }
+ * </pre>
+ */
+public class StorageStatistics {
+
+    public static class Builder {
+        @Nonnull
+        private final RangeScanner scanner;
+        @Nonnull
+        private KeyRange range = KeyRange.prefix(ByteString.EMPTY);
+        private int prefixSegments = 2;
+        private int sampleEvery = 1;
+        private int maxPrefixes = 10000;
+
+        public Builder(@Nonnull RangeScanner scanner) {
+            this.scanner = checkNotNull(scanner);
+        }
+
+        /**
+         * Scanned range, default whole database
+         */
+        @Nonnull
+        public Builder range(@Nonnull KeyRange range) {
+            this.range = checkNotNull(range);
+            return this;
+        }
+
+        /**
+         * Number of {@link KeyGenerator} key segments that form prefix, default 2 - so index
+         * entries and values of every type are counted separately
+         */
+        @Nonnull
+        public Builder prefixSegments(int prefixSegments) {
+            checkArgument(prefixSegments >= 1);
+            this.prefixSegments = prefixSegments;
+            return this;
+        }
+
+        /**
+         * Read only every n-th value, default 1 - every value
+         */
+        @Nonnull
+        public Builder sampleEvery(int sampleEvery) {
+            checkArgument(sampleEvery >= 1);
+            this.sampleEvery = sampleEvery;
+            return this;
+        }
+
+        /**
+         * Maximal number of counted prefixes, entries with other prefixes are counted only in
+         * totals, default 10000
+         */
+        @Nonnull
+        public Builder maxPrefixes(int maxPrefixes) {
+            checkArgument(maxPrefixes >= 0);
+            this.maxPrefixes = maxPrefixes;
+            return this;
+        }
+
+        /**
+         * Scan range and collect statistics
+         */
+        @Nonnull
+        public StorageStatistics collect() {
+            final StorageStatistics statistics = new StorageStatistics(maxPrefixes);
+            final int sampleEvery = this.sampleEvery;
+            final int prefixSegments = this.prefixSegments;
+            final ScanOptions options = new ScanOptions.Builder()
+                    .keyFilter(new KeyFilter() {
+                        private long keys;
+
+                        @Override
+                        public boolean accept(@Nonnull ByteString key) {
+                            statistics.addKey(KeyGenerator.prefix(key, prefixSegments), key.size());
+                            return keys++ % sampleEvery == 0;
+                        }
+                    })
+                    .entryFilter(new EntryFilter() {
+                        @Override
+                        public boolean accept(@Nonnull ByteString key, @Nonnull ByteString value) {
+                            statistics.addValue(KeyGenerator.prefix(key, prefixSegments), value.size());
+                            return false;
+                        }
+                    })
+                    .build();
+            scanner.scan(range, options, new ScanVisitor() {
+                @Override
+                public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                    return true;
+                }
+            });
+            return statistics;
+        }
+    }
+
+    public static class Prefix {
+        @Nonnull
+        private final ByteString prefix;
+        private long count;
+        private long keyBytes;
+        private long sampledValues;
+        private long sampledValueBytes;
+
+        Prefix(@Nonnull ByteString prefix) {
+            this.prefix = prefix;
+        }
+
+        @Nonnull
+        public ByteString prefix() {
+            return prefix;
+        }
+
+        /**
+         * Number of entries
+         */
+        public long count() {
+            return count;
+        }
+
+        public long keyBytes() {
+            return keyBytes;
+        }
+
+        /**
+         * Size of values, estimated if values were sampled
+         */
+        public long valueBytes() {
+            return sampledValues == 0 ? 0 : Math.round((double) sampledValueBytes * count / sampledValues);
+        }
+
+        public long bytes() {
+            return keyBytes + valueBytes();
+        }
+
+        @Override
+        public String toString() {
+            return ByteUtils.toString(prefix)
+                    + " count=" + count
+                    + " keyBytes=" + keyBytes
+                    + " valueBytes=" + valueBytes();
+        }
+    }
+
+    private static final Comparator<Prefix> BY_BYTES = new Comparator<Prefix>() {
+        @Override
+        public int compare(Prefix o1, Prefix o2) {
+            final long bytes1 = o1.bytes();
+            final long bytes2 = o2.bytes();
+            return bytes1 < bytes2 ? 1 : (bytes1 > bytes2 ? -1 : 0);
+        }
+    };
+
+    private final int maxPrefixes;
+    @Nonnull
+    private final HashMap<ByteString, Prefix> prefixes = new HashMap<>();
+    @Nonnull
+    private final Prefix total = new Prefix(ByteString.EMPTY);
+    @Nonnull
+    private final Histogram keySizes = new Histogram();
+    @Nonnull
+    private final Histogram valueSizes = new Histogram();
+    // the last prefix, scan returns keys with the same prefix one after another
+    @Nullable
+    private Prefix last;
+
+    private StorageStatistics(int maxPrefixes) {
+        this.maxPrefixes = maxPrefixes;
+    }
+
+    private void addKey(@Nonnull ByteString keyPrefix, int keySize) {
+        total.count++;
+        total.keyBytes += keySize;
+        keySizes.record(keySize);
+        final Prefix prefix = prefix(keyPrefix);
+        if (prefix != null) {
+            prefix.count++;
+            prefix.keyBytes += keySize;
+        }
+    }
+
+    private void addValue(@Nonnull ByteString keyPrefix, int valueSize) {
+        total.sampledValues++;
+        total.sampledValueBytes += valueSize;
+        valueSizes.record(valueSize);
+        final Prefix prefix = prefix(keyPrefix);
+        if (prefix != null) {
+            prefix.sampledValues++;
+            prefix.sampledValueBytes += valueSize;
+        }
+    }
+
+    @Nullable
+    private Prefix prefix(@Nonnull ByteString keyPrefix) {
+        if (last != null && last.prefix.equals(keyPrefix)) {
+            return last;
+        }
+        Prefix prefix = prefixes.get(keyPrefix);
+        if (prefix == null) {
+            if (prefixes.size() >= maxPrefixes) {
+                return null;
+            }
+            // copy, so statistics do not keep whole scanned key
+            final ByteString copy = ByteString.copyFrom(keyPrefix.toByteArray());
+            prefix = new Prefix(copy);
+            prefixes.put(copy, prefix);
+        }
+        last = prefix;
+        return prefix;
+    }
+
+    /**
+     * Statistics of all scanned entries, prefix of total is empty
+     */
+    @Nonnull
+    public Prefix total() {
+        return total;
+    }
+
+    /**
+     * Statistics of entries with prefix
+     *
+     * @param prefix prefix of given number of segments, e.g. built with
+     *               {@link KeyGenerator.Builder#buildQuery()}
+     * @return statistics or null if there is no such prefix or limit of prefixes was reached
+     */
+    @Nullable
+    public Prefix get(@Nonnull ByteString prefix) {
+        return prefixes.get(checkNotNull(prefix));
+    }
+
+    /**
+     * Prefixes that take the most bytes
+     */
+    @Nonnull
+    public List<Prefix> largestPrefixes(int limit) {
+        checkArgument(limit >= 0);
+        final ArrayList<Prefix> list = new ArrayList<>(prefixes.values());
+        Collections.sort(list, BY_BYTES);
+        return list.size() <= limit ? list : new ArrayList<>(list.subList(0, limit));
+    }
+
+    /**
+     * Number of counted prefixes
+     */
+    public int prefixCount() {
+        return prefixes.size();
+    }
+
+    @Nonnull
+    public Histogram keySizes() {
+        return keySizes;
+    }
+
+    /**
+     * Histogram of sampled value sizes
+     */
+    @Nonnull
+    public Histogram valueSizes() {
+        return valueSizes;
+    }
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.appunite.keyvalue.internal.Preconditions.checkArgument;
+import static com.appunite.keyvalue.internal.Preconditions.checkNotNull;
+
+/**
+ * Decorator that keeps the most recent slow operations in bounded ring buffer.
+ *
+ * Sampled operations that take at least {@link Builder#threshold(long, TimeUnit)} are recorded
+ * with key prefix, requested and returned page size and engine work counted by
+ * {@link EngineTrace} (seeks, index steps and rows touched), so pathological scans can be found:
+ * <pre>
+ *     for (TracingKeyValue.Trace trace : tracing.traces()) {
+ *         Log.w(TAG, trace.toString());
+ *     }
+ * </pre>
+ */
+public class TracingKeyValue extends ForwardingKeyValue {
+
+    public static class Builder {
+        @Nonnull
+        private final KeyValue keyValue;
+        private long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        private int capacity = 128;
+        private int sampleEvery = 1;
+        private int prefixLength = 16;
+        private boolean captureCallers;
+
+        public Builder(@Nonnull KeyValue keyValue) {
+            this.keyValue = checkNotNull(keyValue);
+        }
+
+        /**
+         * Operations slower than threshold are recorded, default 10ms
+         */
+        @Nonnull
+        public Builder threshold(long threshold, @Nonnull TimeUnit unit) {
+            checkArgument(threshold >= 0);
+            this.thresholdNanos = unit.toNanos(threshold);
+            return this;
+        }
+
+        /**
+         * Number of kept traces, older are overwritten, default 128
+         */
+        @Nonnull
+        public Builder capacity(int capacity) {
+            checkArgument(capacity >= 1);
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Trace only every n-th operation, default 1 - every operation
+         */
+        @Nonnull
+        public Builder sampleEvery(int sampleEvery) {
+            checkArgument(sampleEvery >= 1);
+            this.sampleEvery = sampleEvery;
+            return this;
+        }
+
+        /**
+         * Number of key bytes kept in trace, default 16, keys are also identified by hash
+         */
+        @Nonnull
+        public Builder prefixLength(int prefixLength) {
+            checkArgument(prefixLength >= 0);
+            this.prefixLength = prefixLength;
+            return this;
+        }
+
+        /**
+         * Record stack trace of caller of slow operation, default false
+         */
+        @Nonnull
+        public Builder captureCallers(boolean captureCallers) {
+            this.captureCallers = captureCallers;
+            return this;
+        }
+
+        @Nonnull
+        public TracingKeyValue build() {
+            return new TracingKeyValue(this);
+        }
+    }
+
+    public static class Trace {
+        @Nonnull
+        private final InstrumentedKeyValue.Operation operation;
+        @Nonnull
+        private final ByteString keyPrefix;
+        private final int keyHash;
+        private final int keySize;
+        private final int pageSize;
+        private final int returned;
+        private final long seeks;
+        private final long steps;
+        private final long rows;
+        private final long nanos;
+        private final long timestampMillis;
+        @Nonnull
+        private final String thread;
+        @Nullable
+        private final StackTraceElement[] caller;
+
+        Trace(@Nonnull InstrumentedKeyValue.Operation operation, @Nonnull ByteString keyPrefix, int keyHash,
+              int keySize, int pageSize, int returned, @Nonnull EngineTrace engineTrace, long nanos,
+              @Nullable StackTraceElement[] caller) {
+            this.operation = operation;
+            this.keyPrefix = keyPrefix;
+            this.keyHash = keyHash;
+            this.keySize = keySize;
+            this.pageSize = pageSize;
+            this.returned = returned;
+            this.seeks = engineTrace.seeks();
+            this.steps = engineTrace.steps();
+            this.rows = engineTrace.rows();
+            this.nanos = nanos;
+            this.timestampMillis = System.currentTimeMillis();
+            this.thread = Thread.currentThread().getName();
+            this.caller = caller;
+        }
+
+        @Nonnull
+        public InstrumentedKeyValue.Operation operation() {
+            return operation;
+        }
+
+        /**
+         * First bytes of key or prefix
+         */
+        @Nonnull
+        public ByteString keyPrefix() {
+            return keyPrefix;
+        }
+
+        /**
+         * Hash of whole key or prefix, distinguishes keys with the same truncated prefix
+         */
+        public int keyHash() {
+            return keyHash;
+        }
+
+        public int keySize() {
+            return keySize;
+        }
+
+        /**
+         * Requested batch size of fetch, number of operations in written batch, 1 for get
+         * and 0 for put and del
+         */
+        public int pageSize() {
+            return pageSize;
+        }
+
+        /**
+         * Number of returned items
+         */
+        public int returned() {
+            return returned;
+        }
+
+        public long seeks() {
+            return seeks;
+        }
+
+        public long steps() {
+            return steps;
+        }
+
+        /**
+         * Entries read by engine, more than {@link #returned()} means filtered or skipped entries
+         */
+        public long rows() {
+            return rows;
+        }
+
+        public long nanos() {
+            return nanos;
+        }
+
+        public long timestampMillis() {
+            return timestampMillis;
+        }
+
+        @Nonnull
+        public String thread() {
+            return thread;
+        }
+
+        /**
+         * Stack trace of caller if {@link Builder#captureCallers(boolean)} is enabled
+         */
+        @Nullable
+        public StackTraceElement[] caller() {
+            return caller;
+        }
+
+        @Override
+        public String toString() {
+            return operation
+                    + " " + TimeUnit.NANOSECONDS.toMicros(nanos) + "us"
+                    + " key=" + ByteUtils.toString(keyPrefix) + (keyPrefix.size() < keySize ? "..." : "")
+                    + "#" + Integer.toHexString(keyHash)
+                    + " page=" + pageSize
+                    + " returned=" + returned
+                    + " rows=" + rows
+                    + " seeks=" + seeks
+                    + " steps=" + steps
+                    + " thread=" + thread
+                    + (caller == null ? "" : " caller=" + Arrays.toString(caller));
+        }
+    }
+
+    private final long thresholdNanos;
+    private final int sampleEvery;
+    private final int prefixLength;
+    private final boolean captureCallers;
+    @Nonnull
+    private final Trace[] traces;
+    private int next;
+    private boolean full;
+    // racy on purpose, lost updates only make sampling slightly irregular
+    private int sampleCounter;
+
+    private TracingKeyValue(@Nonnull Builder builder) {
+        super(builder.keyValue);
+        thresholdNanos = builder.thresholdNanos;
+        sampleEvery = builder.sampleEvery;
+        prefixLength = builder.prefixLength;
+        captureCallers = builder.captureCallers;
+        traces = new Trace[builder.capacity];
+    }
+
+    /**
+     * Recorded traces, oldest first
+     */
+    @Nonnull
+    public synchronized List<Trace> traces() {
+        final ArrayList<Trace> out = new ArrayList<>(traces.length);
+        if (full) {
+            out.addAll(Arrays.asList(traces).subList(next, traces.length));
+        }
+        out.addAll(Arrays.asList(traces).subList(0, next));
+        return out;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(traces, null);
+        next = 0;
+        full = false;
+    }
+
+    /**
+     * Optional interfaces of engine are forwarded, operations made through them are not traced
+     */
+    @Override
+    protected boolean preservesEntries() {
+        return true;
+    }
+
+    @Override
+    public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+        if (!sample()) {
+            delegate().put(key, value);
+            return;
+        }
+        final EngineTrace engineTrace = EngineTrace.begin();
+        final long start = System.nanoTime();
+        try {
+            delegate().put(key, value);
+        } finally {
+            engineTrace.end();
+            record(InstrumentedKeyValue.Operation.PUT, key, 0, 0, engineTrace, start);
+        }
+    }
+
+    @Override
+    public void del(@Nonnull ByteString key) {
+        if (!sample()) {
+            delegate().del(key);
+            return;
+        }
+        final EngineTrace engineTrace = EngineTrace.begin();
+        final long start = System.nanoTime();
+        try {
+            delegate().del(key);
+        } finally {
+            engineTrace.end();
+            record(InstrumentedKeyValue.Operation.DEL, key, 0, 0, engineTrace, start);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Batch newBatch() {
+        final Batch batch = delegate().newBatch();
+        return new Batch() {
+            private int operations;
+
+            @Override
+            public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+                batch.put(key, value);
+                operations++;
+            }
+
+            @Override
+            public void del(@Nonnull ByteString key) {
+                batch.del(key);
+                operations++;
+            }
+
+            @Override
+            public void clear() {
+                batch.clear();
+                operations = 0;
+            }
+
+            @Override
+            public void write() {
+                if (!sample()) {
+                    batch.write();
+                    return;
+                }
+                final EngineTrace engineTrace = EngineTrace.begin();
+                final long start = System.nanoTime();
+                try {
+                    batch.write();
+                } finally {
+                    engineTrace.end();
+                    record(InstrumentedKeyValue.Operation.BATCH_WRITE, ByteString.EMPTY, operations, 0,
+                            engineTrace, start);
+                }
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public ByteString getBytes(@Nonnull ByteString key) throws NotFoundException {
+        if (!sample()) {
+            return delegate().getBytes(key);
+        }
+        final EngineTrace engineTrace = EngineTrace.begin();
+        final long start = System.nanoTime();
+        int returned = 0;
+        try {
+            final ByteString value = delegate().getBytes(key);
+            returned = 1;
+            return value;
+        } finally {
+            engineTrace.end();
+            record(InstrumentedKeyValue.Operation.GET, key, 1, returned, engineTrace, start);
+        }
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public Iterator getKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        return fetchValues(prefix, nextTokenOrNull, batch);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchValues(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        if (!sample()) {
+            return delegate().fetchValues(prefix, nextTokenOrNull, batch);
+        }
+        final EngineTrace engineTrace = EngineTrace.begin();
+        final long start = System.nanoTime();
+        int returned = 0;
+        try {
+            final Iterator iterator = delegate().fetchValues(prefix, nextTokenOrNull, batch);
+            returned = iterator.keys().size();
+            return iterator;
+        } finally {
+            engineTrace.end();
+            record(InstrumentedKeyValue.Operation.FETCH_VALUES, prefix, batch, returned, engineTrace, start);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Iterator fetchKeys(@Nonnull ByteString prefix, @Nullable ByteString nextTokenOrNull, int batch) {
+        if (!sample()) {
+            return delegate().fetchKeys(prefix, nextTokenOrNull, batch);
+        }
+        final EngineTrace engineTrace = EngineTrace.begin();
+        final long start = System.nanoTime();
+        int returned = 0;
+        try {
+            final Iterator iterator = delegate().fetchKeys(prefix, nextTokenOrNull, batch);
+            returned = iterator.keys().size();
+            return iterator;
+        } finally {
+            engineTrace.end();
+            record(InstrumentedKeyValue.Operation.FETCH_KEYS, prefix, batch, returned, engineTrace, start);
+        }
+    }
+
+    private boolean sample() {
+        if (sampleEvery == 1) {
+            return true;
+        }
+        final int counter = sampleCounter + 1;
+        if (counter < sampleEvery) {
+            sampleCounter = counter;
+            return false;
+        }
+        sampleCounter = 0;
+        return true;
+    }
+
+    private void record(@Nonnull InstrumentedKeyValue.Operation operation, @Nonnull ByteString key,
+                        int pageSize, int returned, @Nonnull EngineTrace engineTrace, long start) {
+        final long nanos = System.nanoTime() - start;
+        if (nanos < thresholdNanos) {
+            return;
+        }
+        final ByteString keyPrefix = key.size() <= prefixLength
+                ? key
+                : ByteString.copyFrom(key.substring(0, prefixLength).toByteArray());
+        final StackTraceElement[] caller = captureCallers ? callerStackTrace() : null;
+        final Trace trace = new Trace(operation, keyPrefix, key.hashCode(), key.size(), pageSize, returned,
+                engineTrace, nanos, caller);
+        synchronized (this) {
+            traces[next] = trace;
+            next++;
+            if (next == traces.length) {
+                next = 0;
+                full = true;
+            }
+        }
+    }
+
+    @Nonnull
+    private static StackTraceElement[] callerStackTrace() {
+        final StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+        int first = 0;
+        final String name = TracingKeyValue.class.getName();
+        while (first < stackTrace.length
+                && (stackTrace[first].getClassName().equals(name)
+                || stackTrace[first].getClassName().startsWith(name + "$"))) {
+            first++;
+        }
+        return Arrays.copyOfRange(stackTrace, first, stackTrace.length);
+    }
+}
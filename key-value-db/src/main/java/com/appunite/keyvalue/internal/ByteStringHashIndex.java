@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.internal;
+
+import com.google.protobuf.ByteString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Open addressing (linear probing) hash map from key to value used as point lookup index.
+ *
+ * Hash codes are cached next to keys so probing compares ints before comparing bytes.
+ */
+public class ByteStringHashIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    @Nonnull
+    private ByteString[] keys;
+    @Nonnull
+    private ByteString[] values;
+    @Nonnull
+    private int[] hashes;
+    private int size;
+    private int mask;
+
+    public ByteStringHashIndex() {
+        allocate(MIN_CAPACITY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Nullable
+    public ByteString get(@Nonnull ByteString key) {
+        final int hash = hash(key);
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            final ByteString candidate = keys[i];
+            if (candidate == null) {
+                return null;
+            }
+            if (hashes[i] == hash && candidate.equals(key)) {
+                return values[i];
+            }
+        }
+    }
+
+    public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+        final int hash = hash(key);
+        int i = hash & mask;
+        for (; keys[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && keys[i].equals(key)) {
+                values[i] = value;
+                return;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        hashes[i] = hash;
+        size++;
+        // keep load factor under 0.5 so probe sequences stay short
+        if (size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+    }
+
+    public void remove(@Nonnull ByteString key) {
+        final int hash = hash(key);
+        int i = hash & mask;
+        for (; ; i = (i + 1) & mask) {
+            if (keys[i] == null) {
+                return;
+            }
+            if (hashes[i] == hash && keys[i].equals(key)) {
+                break;
+            }
+        }
+        size--;
+        // backward shift deletion, so no tombstones are needed
+        int hole = i;
+        for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            final int home = hashes[j] & mask;
+            final boolean canMove = hole <= j
+                    ? home <= hole || home > j
+                    : home <= hole && home > j;
+            if (canMove) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hashes[hole] = hashes[j];
+                hole = j;
+            }
+        }
+        keys[hole] = null;
+        values[hole] = null;
+        hashes[hole] = 0;
+    }
+
+    public void clear() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void resize(int capacity) {
+        final ByteString[] oldKeys = keys;
+        final ByteString[] oldValues = values;
+        final int[] oldHashes = hashes;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            final ByteString key = oldKeys[i];
+            if (key == null) {
+                continue;
+            }
+            int j = oldHashes[i] & mask;
+            while (keys[j] != null) {
+                j = (j + 1) & mask;
+            }
+            keys[j] = key;
+            values[j] = oldValues[i];
+            hashes[j] = oldHashes[i];
+            size++;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new ByteString[capacity];
+        values = new ByteString[capacity];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private static int hash(@Nonnull ByteString key) {
+        // ByteString caches its hash code, mix it so similar keys do not cluster
+        final int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
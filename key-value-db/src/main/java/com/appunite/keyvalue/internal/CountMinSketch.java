@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.internal;
+
+import com.google.protobuf.ByteString;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Count-min sketch of key frequencies, estimates are never lower than real counts and exceed
+ * them by at most e/width of all counted keys with probability 1 - e^-depth.
+ *
+ * Not thread safe.
+ */
+public class CountMinSketch {
+    private final int depth;
+    private final int mask;
+    @Nonnull
+    private final int[] counts;
+
+    /**
+     * @param width number of counters in every row, power of two
+     */
+    public CountMinSketch(int depth, int width) {
+        Preconditions.checkArgument(depth >= 1);
+        Preconditions.checkArgument(width >= 1 && Integer.bitCount(width) == 1);
+        this.depth = depth;
+        this.mask = width - 1;
+        this.counts = new int[depth * width];
+    }
+
+    /**
+     * Count key and return its new estimate
+     */
+    public int add(@Nonnull ByteString key) {
+        final int hash1 = key.hashCode() * 0x9E3779B9;
+        final int hash2 = Integer.reverse(hash1) | 1;
+        int min = Integer.MAX_VALUE;
+        for (int row = 0, hash = hash1; row < depth; row++, hash += hash2) {
+            final int index = row * (mask + 1) + ((hash ^ (hash >>> 16)) & mask);
+            final int count = ++counts[index];
+            if (count < min) {
+                min = count;
+            }
+        }
+        return min;
+    }
+
+    public int estimate(@Nonnull ByteString key) {
+        final int hash1 = key.hashCode() * 0x9E3779B9;
+        final int hash2 = Integer.reverse(hash1) | 1;
+        int min = Integer.MAX_VALUE;
+        for (int row = 0, hash = hash1; row < depth; row++, hash += hash2) {
+            final int count = counts[row * (mask + 1) + ((hash ^ (hash >>> 16)) & mask)];
+            if (count < min) {
+                min = count;
+            }
+        }
+        return min;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+    }
+}
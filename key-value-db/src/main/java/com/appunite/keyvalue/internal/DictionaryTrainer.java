@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Builds preset dictionary for {@link LzCodec} from sample values.
+ *
+ * Simplified cover algorithm: segments of samples are scored by how many samples share their
+ * 8 byte grams and best segments are picked greedily, grams of picked segment stop counting
+ * so dictionary does not repeat itself.
+ */
+public class DictionaryTrainer {
+    private static final int GRAM = 8;
+    private static final int SEGMENT = 64;
+    private static final int STEP = 16;
+
+    private static class Segment implements Comparable<Segment> {
+        @Nonnull
+        final byte[] sample;
+        final int offset;
+        final int length;
+        int score;
+
+        Segment(@Nonnull byte[] sample, int offset, int length) {
+            this.sample = sample;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(@Nonnull Segment other) {
+            return other.score < score ? -1 : other.score == score ? 0 : 1;
+        }
+    }
+
+    /**
+     * @param samples sample values
+     * @param maxSize maximal size of dictionary in bytes
+     * @return dictionary, empty if samples do not share anything
+     */
+    @Nonnull
+    public static byte[] train(@Nonnull List<byte[]> samples, int maxSize) {
+        Preconditions.checkArgument(maxSize >= 0 && maxSize <= 0xffff);
+        final HashMap<Long, Integer> counts = new HashMap<>();
+        for (byte[] sample : samples) {
+            for (long gram : grams(sample, 0, sample.length)) {
+                final Integer count = counts.get(gram);
+                counts.put(gram, count == null ? 1 : count + 1);
+            }
+        }
+
+        final PriorityQueue<Segment> queue = new PriorityQueue<>();
+        for (byte[] sample : samples) {
+            for (int offset = 0; offset < sample.length; offset += STEP) {
+                final Segment segment = new Segment(sample, offset, Math.min(SEGMENT, sample.length - offset));
+                segment.score = score(segment, counts);
+                if (segment.score > 0) {
+                    queue.add(segment);
+                }
+                if (offset + SEGMENT >= sample.length) {
+                    break;
+                }
+            }
+        }
+
+        final ArrayList<Segment> picked = new ArrayList<>();
+        int size = 0;
+        while (!queue.isEmpty() && size < maxSize) {
+            final Segment segment = queue.poll();
+            // scores only decrease, so segment is best if its fresh score is still on top
+            final int score = score(segment, counts);
+            if (score <= 0) {
+                continue;
+            }
+            if (!queue.isEmpty() && score < queue.peek().score) {
+                segment.score = score;
+                queue.add(segment);
+                continue;
+            }
+            final int length = Math.min(segment.length, maxSize - size);
+            picked.add(new Segment(segment.sample, segment.offset, length));
+            size += length;
+            for (long gram : grams(segment.sample, segment.offset, segment.length)) {
+                counts.put(gram, 0);
+            }
+        }
+
+        // most valuable segments go to the end, closest to compressed data
+        final byte[] dictionary = new byte[size];
+        int position = size;
+        for (Segment segment : picked) {
+            position -= segment.length;
+            System.arraycopy(segment.sample, segment.offset, dictionary, position, segment.length);
+        }
+        return dictionary;
+    }
+
+    private static int score(@Nonnull Segment segment, @Nonnull HashMap<Long, Integer> counts) {
+        int score = 0;
+        for (long gram : grams(segment.sample, segment.offset, segment.length)) {
+            final int count = counts.get(gram);
+            // gram used by single sample is not worth storing
+            if (count > 1) {
+                score += count;
+            }
+        }
+        return score;
+    }
+
+    @Nonnull
+    private static HashSet<Long> grams(@Nonnull byte[] bytes, int offset, int length) {
+        final HashSet<Long> grams = new HashSet<>();
+        long gram = 0;
+        for (int i = 0; i < length; i++) {
+            gram = gram << 8 | (bytes[offset + i] & 0xff);
+            if (i >= GRAM - 1) {
+                grams.add(gram);
+            }
+        }
+        return grams;
+    }
+}
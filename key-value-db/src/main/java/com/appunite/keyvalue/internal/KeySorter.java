@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.internal;
+
+import com.google.protobuf.ByteString;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Sorts keys in unsigned lexicographical order without comparing whole keys.
+ *
+ * Keys are skipped past common prefix and sorted by next 8 bytes packed into long with LSD
+ * radix sort, groups of keys with equal 8 bytes are sorted recursively by following bytes.
+ * Keys with long shared prefixes (like keys from KeyGenerator) are sorted much faster than
+ * with comparator.
+ */
+public class KeySorter {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    @Nonnull
+    private final ByteString[] keys;
+    @Nonnull
+    private final int[] order;
+    @Nonnull
+    private long[] digits;
+    @Nonnull
+    private long[] digitsBuffer;
+    @Nonnull
+    private int[] orderBuffer;
+
+    private KeySorter(@Nonnull ByteString[] keys, int size) {
+        this.keys = keys;
+        order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        digits = new long[size];
+        digitsBuffer = new long[size];
+        orderBuffer = new int[size];
+    }
+
+    /**
+     * @return indexes of first size keys in sorted order, equal keys are ordered by index
+     */
+    @Nonnull
+    public static int[] sort(@Nonnull ByteString[] keys, int size) {
+        final KeySorter sorter = new KeySorter(keys, size);
+        sorter.sort(0, size, 0);
+        return sorter.order;
+    }
+
+    private void sort(int from, int to, int depth) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            depth = commonPrefix(from, to, depth);
+            // keys that end before next 8 bytes are prefixes of other keys in range, they go first
+            int longer = from;
+            for (int i = from; i < to; i++) {
+                if (keys[order[i]].size() <= depth) {
+                    final int swap = order[longer];
+                    order[longer] = order[i];
+                    order[i] = swap;
+                    longer++;
+                }
+            }
+            insertionSort(from, longer, depth);
+            from = longer;
+            if (to - from <= INSERTION_SORT_THRESHOLD) {
+                break;
+            }
+            for (int i = from; i < to; i++) {
+                digits[i] = digit(keys[order[i]], depth);
+            }
+            radixSort(from, to);
+            depth += 8;
+            // sort groups with equal digits by following bytes, last group in this loop
+            int groupStart = from;
+            for (int i = from + 1; i <= to; i++) {
+                if (i == to || digits[i] != digits[groupStart]) {
+                    if (i == to) {
+                        from = groupStart;
+                        break;
+                    }
+                    if (i - groupStart > 1) {
+                        sort(groupStart, i, depth);
+                    }
+                    groupStart = i;
+                }
+            }
+        }
+        insertionSort(from, to, depth);
+    }
+
+    private int commonPrefix(int from, int to, int depth) {
+        final ByteString first = keys[order[from]];
+        int prefix = first.size();
+        for (int i = from + 1; i < to && prefix > depth; i++) {
+            final ByteString key = keys[order[i]];
+            int j = depth;
+            final int max = Math.min(prefix, key.size());
+            while (j < max && key.byteAt(j) == first.byteAt(j)) {
+                j++;
+            }
+            prefix = j;
+        }
+        return prefix;
+    }
+
+    private static long digit(@Nonnull ByteString key, int depth) {
+        long digit = 0;
+        final int size = key.size();
+        for (int i = depth; i < depth + 8; i++) {
+            digit = digit << 8 | (i < size ? key.byteAt(i) & 0xff : 0);
+        }
+        return digit;
+    }
+
+    private void radixSort(int from, int to) {
+        final int[] counts = new int[257];
+        for (int shift = 0; shift < 64; shift += 8) {
+            final int first = (int) (digits[from] >>> shift) & 0xff;
+            boolean same = true;
+            Arrays.fill(counts, 0);
+            for (int i = from; i < to; i++) {
+                final int b = (int) (digits[i] >>> shift) & 0xff;
+                counts[b + 1]++;
+                same &= b == first;
+            }
+            if (same) {
+                continue;
+            }
+            for (int i = 0; i < 256; i++) {
+                counts[i + 1] += counts[i];
+            }
+            for (int i = from; i < to; i++) {
+                final int position = from + counts[(int) (digits[i] >>> shift) & 0xff]++;
+                digitsBuffer[position] = digits[i];
+                orderBuffer[position] = order[i];
+            }
+            System.arraycopy(digitsBuffer, from, digits, from, to - from);
+            System.arraycopy(orderBuffer, from, order, from, to - from);
+        }
+    }
+
+    private void insertionSort(int from, int to, int depth) {
+        for (int i = from + 1; i < to; i++) {
+            final int index = order[i];
+            int j = i;
+            while (j > from && compare(order[j - 1], index, depth) > 0) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = index;
+        }
+    }
+
+    private int compare(int index1, int index2, int depth) {
+        final ByteString key1 = keys[index1];
+        final ByteString key2 = keys[index2];
+        final int size1 = key1.size();
+        final int size2 = key2.size();
+        final int max = Math.min(size1, size2);
+        for (int i = depth; i < max; i++) {
+            final int compare = UnsignedBytes.compare(key1.byteAt(i), key2.byteAt(i));
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        if (size1 != size2) {
+            return size1 - size2;
+        }
+        return index1 - index2;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.internal;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Byte oriented LZ77 codec in LZ4 block layout with optional preset dictionary.
+ *
+ * Every sequence is: token (literal length << 4 | match length - 4), extra literal length bytes,
+ * literals, 2 bytes little endian offset, extra match length bytes. Last sequence has literals only.
+ * Dictionary acts as history preceding input, so matches can point into it.
+ */
+public class LzCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xffff;
+    private static final int MAX_HASH_BITS = 14;
+
+    /**
+     * Preset dictionary with precomputed match table, prepare once and reuse for every value
+     */
+    public static class Dictionary {
+        public static final Dictionary EMPTY = new Dictionary(new byte[0]);
+
+        @Nonnull
+        private final byte[] bytes;
+        @Nonnull
+        private final int[] table = new int[1 << MAX_HASH_BITS];
+
+        public Dictionary(@Nonnull byte[] bytes) {
+            this.bytes = bytes;
+            Arrays.fill(table, -1);
+            for (int i = Math.max(0, bytes.length - MAX_OFFSET); i + MIN_MATCH <= bytes.length; i++) {
+                table[hash(read(bytes, bytes, 0, bytes.length, i), MAX_HASH_BITS)] = i;
+            }
+        }
+
+        @Nonnull
+        public byte[] bytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * Upper bound of compressed size
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * @return number of bytes written to out
+     */
+    public static int compress(@Nonnull Dictionary preset, @Nonnull byte[] src, int srcOffset, int srcLength,
+                               @Nonnull byte[] out, int outOffset) {
+        // dictionary and input are addressed as one window, input starts at dictionary.length
+        final byte[] dictionary = preset.bytes;
+        final int base = dictionary.length;
+        final int end = base + srcLength;
+        // small values do not need big table, so it is cheap to allocate it for every call
+        int hashBits = 8;
+        while (hashBits < MAX_HASH_BITS && 1 << hashBits < srcLength) {
+            hashBits++;
+        }
+        final int[] table = new int[1 << hashBits];
+        Arrays.fill(table, -1);
+
+        int op = outOffset;
+        int anchor = base;
+        int ip = base;
+        final int matchLimit = end - MIN_MATCH;
+        while (ip <= matchLimit) {
+            final int sequence = read(dictionary, src, srcOffset, base, ip);
+            final int h = hash(sequence, hashBits);
+            int candidate = table[h];
+            table[h] = ip;
+            if (candidate < 0 || read(dictionary, src, srcOffset, base, candidate) != sequence) {
+                candidate = preset.table[hash(sequence, MAX_HASH_BITS)];
+            }
+            if (candidate < 0 || ip - candidate > MAX_OFFSET
+                    || read(dictionary, src, srcOffset, base, candidate) != sequence) {
+                ip++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < end
+                    && at(dictionary, src, srcOffset, base, candidate + matchLength)
+                    == at(dictionary, src, srcOffset, base, ip + matchLength)) {
+                matchLength++;
+            }
+            op = writeSequence(src, srcOffset + anchor - base, ip - anchor, ip - candidate, matchLength, out, op);
+            ip += matchLength;
+            anchor = ip;
+        }
+        op = writeSequence(src, srcOffset + anchor - base, end - anchor, 0, 0, out, op);
+        return op - outOffset;
+    }
+
+    /**
+     * @param originalLength length of uncompressed data
+     */
+    @Nonnull
+    public static byte[] decompress(@Nonnull byte[] dictionary, @Nonnull byte[] src, int srcOffset, int srcLength,
+                                    int originalLength) {
+        final byte[] out = new byte[originalLength];
+        final int end = srcOffset + srcLength;
+        int ip = srcOffset;
+        int op = 0;
+        while (ip < end) {
+            final int token = src[ip++] & 0xff;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xff;
+                    literals += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, ip, out, op, literals);
+            ip += literals;
+            op += literals;
+            if (ip >= end) {
+                break;
+            }
+            final int offset = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+            ip += 2;
+            int matchLength = (token & 0x0f) + MIN_MATCH;
+            if ((token & 0x0f) == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            int from = op - offset;
+            for (int i = 0; i < matchLength; i++, from++) {
+                out[op++] = from < 0 ? dictionary[dictionary.length + from] : out[from];
+            }
+        }
+        if (op != originalLength) {
+            throw new IllegalArgumentException("Corrupted data");
+        }
+        return out;
+    }
+
+    private static int writeSequence(@Nonnull byte[] src, int literalOffset, int literals, int offset,
+                                     int matchLength, @Nonnull byte[] out, int op) {
+        final int tokenPosition = op++;
+        int token = Math.min(literals, 15) << 4;
+        if (literals >= 15) {
+            op = writeLength(literals - 15, out, op);
+        }
+        System.arraycopy(src, literalOffset, out, op, literals);
+        op += literals;
+        if (matchLength > 0) {
+            out[op++] = (byte) offset;
+            out[op++] = (byte) (offset >>> 8);
+            final int length = matchLength - MIN_MATCH;
+            token |= Math.min(length, 15);
+            if (length >= 15) {
+                op = writeLength(length - 15, out, op);
+            }
+        }
+        out[tokenPosition] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(int length, @Nonnull byte[] out, int op) {
+        while (length >= 255) {
+            out[op++] = (byte) 255;
+            length -= 255;
+        }
+        out[op++] = (byte) length;
+        return op;
+    }
+
+    private static byte at(@Nonnull byte[] dictionary, @Nonnull byte[] src, int srcOffset, int base, int position) {
+        return position < base ? dictionary[position] : src[srcOffset + position - base];
+    }
+
+    private static int read(@Nonnull byte[] dictionary, @Nonnull byte[] src, int srcOffset, int base, int position) {
+        return (at(dictionary, src, srcOffset, base, position) & 0xff)
+                | (at(dictionary, src, srcOffset, base, position + 1) & 0xff) << 8
+                | (at(dictionary, src, srcOffset, base, position + 2) & 0xff) << 16
+                | (at(dictionary, src, srcOffset, base, position + 3) & 0xff) << 24;
+    }
+
+    private static int hash(int sequence, int bits) {
+        return (sequence * -1640531535) >>> (32 - bits);
+    }
+}
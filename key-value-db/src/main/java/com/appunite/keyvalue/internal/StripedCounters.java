@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.keyvalue.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Fixed number of long counters updated by many threads.
+ *
+ * Every counter is split into cells chosen by thread id and every cell has its own cache line,
+ * so threads updating the same or neighbouring counters rarely contend. {@link #get(int)} sums
+ * cells, it is not atomic with concurrent updates.
+ */
+public class StripedCounters {
+    // 128 bytes between cells, also covers adjacent line prefetch
+    private static final int PAD = 16;
+    private static final int MAX_STRIPES = 16;
+
+    private final int counters;
+    private final int stripeMask;
+    @Nonnull
+    private final AtomicLongArray cells;
+
+    public StripedCounters(int counters) {
+        this(counters, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes expected number of concurrently updating threads, rounded up to power of
+     *                two and capped at 16
+     */
+    public StripedCounters(int counters, int stripes) {
+        Preconditions.checkArgument(counters >= 1);
+        Preconditions.checkArgument(stripes >= 1);
+        this.counters = counters;
+        final int rounded = Integer.highestOneBit(Math.min(stripes, MAX_STRIPES) * 2 - 1);
+        stripeMask = rounded - 1;
+        cells = new AtomicLongArray(rounded * counters * PAD);
+    }
+
+    public void increment(int counter) {
+        add(counter, 1);
+    }
+
+    public void add(int counter, long delta) {
+        cells.getAndAdd(index(stripe(), counter), delta);
+    }
+
+    public long get(int counter) {
+        long sum = 0;
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            sum += cells.get(index(stripe, counter));
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            for (int counter = 0; counter < counters; counter++) {
+                cells.set(index(stripe, counter), 0);
+            }
+        }
+    }
+
+    private int stripe() {
+        final int hash = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & stripeMask;
+    }
+
+    private int index(int stripe, int counter) {
+        return (stripe * counters + counter) * PAD;
+    }
+}
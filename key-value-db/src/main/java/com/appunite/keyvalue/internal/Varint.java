@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue.internal;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Unsigned base 128 varints, the same encoding as protobuf uses for int32 fields
+ */
+public class Varint {
+    public static final int MAX_SIZE = 5;
+
+    public static int size(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * @return offset after written value
+     */
+    public static int write(@Nonnull byte[] buffer, int offset, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Read value at offset, its length is {@link #size(int)} of returned value
+     */
+    public static int read(@Nonnull byte[] buffer, int offset) {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer[offset++];
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.protobuf;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Access to package private {@link LiteralByteString}, so arrays can be wrapped in
+ * {@link ByteString} and read from it without copying.
+ *
+ * Depends on internals of protobuf 2.6.x, use {@code com.appunite.keyvalue.ByteUtils} instead of
+ * this class, it falls back to copying when these internals are not available.
+ */
+public final class ZeroCopyByteString {
+
+    private ZeroCopyByteString() {
+    }
+
+    /**
+     * Wrap array without copying, array must not be modified later
+     */
+    @Nonnull
+    public static ByteString wrap(@Nonnull byte[] bytes) {
+        return bytes.length == 0 ? ByteString.EMPTY : new LiteralByteString(bytes);
+    }
+
+    /**
+     * Wrap part of array without copying, whole array must not be modified later and is kept in
+     * memory as long as returned byte string
+     */
+    @Nonnull
+    public static ByteString wrap(@Nonnull byte[] bytes, int offset, int length) {
+        if (offset == 0 && length == bytes.length) {
+            return wrap(bytes);
+        }
+        if (length == 0) {
+            return ByteString.EMPTY;
+        }
+        return new BoundedByteString(bytes, offset, length);
+    }
+
+    /**
+     * Array that backs byte string if it is backed by whole array, otherwise copy.
+     * Returned array must not be modified.
+     */
+    @Nonnull
+    public static byte[] readOnlyArray(@Nonnull ByteString bytes) {
+        if (bytes.getClass() == LiteralByteString.class) {
+            return ((LiteralByteString) bytes).bytes;
+        }
+        return bytes.toByteArray();
+    }
+}
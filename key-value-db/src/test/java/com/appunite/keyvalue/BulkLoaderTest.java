@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class BulkLoaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private int load(KeyValue keyValue, KeyValue expected, long memoryLimit, File directory) {
+        final BulkLoader loader = new BulkLoader.Builder(keyValue)
+                .memoryLimit(memoryLimit)
+                .tempDirectory(directory)
+                .build();
+        final Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            // keys repeat, so duplicates land in different runs
+            final ByteString key = ByteString.copyFromUtf8("key" + random.nextInt(10000));
+            final ByteString value = ByteString.copyFromUtf8("value" + i);
+            loader.add(key, value);
+            expected.put(key, value);
+        }
+        return loader.finish();
+    }
+
+    private static void assertSame(KeyValue keyValue, KeyValue expected) {
+        assert_().that(keyValue.fetchKeys(ByteString.EMPTY, null, 100000).keys())
+                .isEqualTo(expected.fetchKeys(ByteString.EMPTY, null, 100000).keys());
+        assert_().that(keyValue.fetchValues(ByteString.EMPTY, null, 100000).keys())
+                .isEqualTo(expected.fetchValues(ByteString.EMPTY, null, 100000).keys());
+    }
+
+    @Test
+    public void testLoadWithSpills_lastValueWins() throws Exception {
+        final File directory = temporaryFolder.newFolder();
+        final KeyValueMemory keyValue = new KeyValueMemory();
+        final KeyValueMemory expected = new KeyValueMemory();
+
+        final int count = load(keyValue, expected, 64 * 1024, directory);
+
+        assertSame(keyValue, expected);
+        assert_().that(count).isEqualTo(expected.fetchKeys(ByteString.EMPTY, null, 100000).keys().size());
+        assert_().that(directory.list()).isEmpty();
+    }
+
+    @Test
+    public void testLoadIntoNotEmptyEngine_keepsExistingEntries() throws Exception {
+        final KeyValueMemory keyValue = new KeyValueMemory(true);
+        final KeyValueMemory expected = new KeyValueMemory();
+        keyValue.put(ByteString.copyFromUtf8("existing"), ByteString.copyFromUtf8("value"));
+        expected.put(ByteString.copyFromUtf8("existing"), ByteString.copyFromUtf8("value"));
+
+        load(keyValue, expected, 1024 * 1024, temporaryFolder.newFolder());
+
+        assertSame(keyValue, expected);
+        assert_().that(keyValue.getBytes(ByteString.copyFromUtf8("key1"))).isEqualTo(expected.getBytes(ByteString.copyFromUtf8("key1")));
+    }
+
+    @Test
+    public void testLoadIntoFrontCodedEngine_mergesWithExistingEntries() throws Exception {
+        final KeyValueFrontCoded keyValue = new KeyValueFrontCoded();
+        final KeyValueMemory expected = new KeyValueMemory();
+        keyValue.put(ByteString.copyFromUtf8("key1"), ByteString.copyFromUtf8("old"));
+        keyValue.put(ByteString.copyFromUtf8("zzz"), ByteString.copyFromUtf8("value"));
+        expected.put(ByteString.copyFromUtf8("zzz"), ByteString.copyFromUtf8("value"));
+
+        load(keyValue, expected, 64 * 1024, temporaryFolder.newFolder());
+
+        assertSame(keyValue, expected);
+    }
+
+    @Test
+    public void testLoadIntoEngineWithoutBulkLoad_usesBatches() throws Exception {
+        final KeyValueRadix keyValue = new KeyValueRadix();
+        final KeyValueMemory expected = new KeyValueMemory();
+
+        load(keyValue, expected, 64 * 1024, temporaryFolder.newFolder());
+
+        assertSame(keyValue, expected);
+    }
+
+    @Test
+    public void testWriteFailsDuringMerge_runsAreRemoved() throws Exception {
+        final File directory = temporaryFolder.newFolder();
+        final KeyValue failing = new ForwardingKeyValue(new KeyValueRadix()) {
+            @Nonnull
+            @Override
+            public Batch newBatch() {
+                return new Batch() {
+                    @Override
+                    public void put(@Nonnull ByteString key, @Nonnull ByteString value) {
+                    }
+
+                    @Override
+                    public void del(@Nonnull ByteString key) {
+                    }
+
+                    @Override
+                    public void clear() {
+                    }
+
+                    @Override
+                    public void write() {
+                        throw new IllegalStateException("Disk full");
+                    }
+                };
+            }
+        };
+
+        try {
+            load(failing, new KeyValueMemory(), 64 * 1024, directory);
+            assert_().fail("Expected exception");
+        } catch (IllegalStateException expected) {
+        }
+
+        assert_().that(directory.list()).isEmpty();
+    }
+
+    @Test
+    public void testKeysThatArePrefixesOfEachOther_areSortedLikeComparator() throws Exception {
+        final KeyValueMemory keyValue = new KeyValueMemory();
+        final KeyValueMemory expected = new KeyValueMemory();
+        final BulkLoader loader = new BulkLoader.Builder(keyValue).build();
+        final Random random = new Random(0);
+        final byte[] alphabet = {0, 1, (byte) 0xff};
+        for (int i = 0; i < 5000; i++) {
+            final byte[] bytes = new byte[10 + random.nextInt(10)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = j < 10 ? 7 : alphabet[random.nextInt(alphabet.length)];
+            }
+            final ByteString value = ByteString.copyFromUtf8("value" + i);
+            loader.add(ByteString.copyFrom(bytes), value);
+            expected.put(ByteString.copyFrom(bytes), value);
+        }
+        loader.finish();
+
+        assertSame(keyValue, expected);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class ByteBuffersTest {
+
+    @Test
+    public void testPutDirectBuffers_valueCanBeRetrieved() throws Exception {
+        final KeyValueMemory keyValue = new KeyValueMemory();
+        final ByteBuffer key = direct("key");
+        final ByteBuffer value = direct("value");
+
+        ByteBuffers.put(keyValue, key, value);
+        key.put(0, (byte) 'x');
+        value.put(0, (byte) 'x');
+
+        assert_().that(keyValue.getBytes(ByteString.copyFromUtf8("key"))).isEqualTo(ByteString.copyFromUtf8("value"));
+        assert_().that(value.position()).isEqualTo(0);
+    }
+
+    @Test
+    public void testGet_copiesValueIntoOut() throws Exception {
+        final KeyValueMemory keyValue = new KeyValueMemory();
+        keyValue.put(ByteString.copyFromUtf8("key"), ByteString.copyFromUtf8("value"));
+        final ByteBuffer out = ByteBuffer.allocateDirect(16);
+
+        final int size = ByteBuffers.get(keyValue, heap("key"), out);
+
+        assert_().that(size).isEqualTo(5);
+        assert_().that(out.position()).isEqualTo(5);
+        out.flip();
+        assert_().that(ByteString.copyFrom(out)).isEqualTo(ByteString.copyFromUtf8("value"));
+    }
+
+    @Test
+    public void testGetIntoSmallBuffer_valueIsTruncated() throws Exception {
+        final KeyValueMemory keyValue = new KeyValueMemory();
+        keyValue.put(ByteString.copyFromUtf8("key"), ByteString.copyFromUtf8("value"));
+        final ByteBuffer out = ByteBuffer.allocate(3);
+
+        final int size = ByteBuffers.get(keyValue, direct("key"), out);
+
+        assert_().that(size).isEqualTo(5);
+        assert_().that(out.array()).isEqualTo("val".getBytes());
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testGetMissingKey_throwsException() throws Exception {
+        ByteBuffers.get(new KeyValueMemory(), heap("key"), ByteBuffer.allocate(16));
+    }
+
+    @Test
+    public void testEngineWithoutBufferAccess_valuesAreCopied() throws Exception {
+        final KeyValueFrontCoded keyValue = new KeyValueFrontCoded();
+        final ByteBuffer key = heap("key");
+        final ByteBuffer value = heap("value");
+
+        ByteBuffers.put(keyValue, key, value);
+        value.put(0, (byte) 'x');
+        final ByteBuffer out = ByteBuffer.allocate(16);
+        ByteBuffers.get(keyValue, key, out);
+
+        out.flip();
+        assert_().that(ByteString.copyFrom(out)).isEqualTo(ByteString.copyFromUtf8("value"));
+    }
+
+    @Test
+    public void testFixedId_valuesAreStoredAndRead() throws Exception {
+        final KeyValueFixedId keyValue = new KeyValueFixedId();
+        final ByteString id = new IdGenerator().newId();
+        final ByteBuffer key = ByteBuffer.allocateDirect(FixedIdMap.ID_SIZE);
+        id.copyTo(key);
+        key.flip();
+
+        ByteBuffers.put(keyValue, key, direct("value"));
+        ByteBuffers.put(keyValue, key, direct("other"));
+        final ByteBuffer out = ByteBuffer.allocate(16);
+        final int size = ByteBuffers.get(keyValue, key, out);
+
+        assert_().that(size).isEqualTo(5);
+        assert_().that(keyValue.getBytes(id)).isEqualTo(ByteString.copyFromUtf8("other"));
+        out.flip();
+        assert_().that(ByteString.copyFrom(out)).isEqualTo(ByteString.copyFromUtf8("other"));
+    }
+
+    @Test
+    public void testScan_visitsReadOnlyViews() throws Exception {
+        final KeyValueMemory keyValue = new KeyValueMemory();
+        keyValue.put(ByteString.copyFromUtf8("a1"), ByteString.copyFromUtf8("value1"));
+        keyValue.put(ByteString.copyFromUtf8("a2"), ByteString.copyFromUtf8("value2"));
+        keyValue.put(ByteString.copyFromUtf8("b"), ByteString.copyFromUtf8("other"));
+        final List<ByteString> values = new ArrayList<>();
+
+        ByteBuffers.scan(keyValue, KeyRange.prefix(ByteString.copyFromUtf8("a")), new ByteBufferVisitor() {
+            @Override
+            public boolean visit(@Nonnull ByteBuffer key, @Nonnull ByteBuffer value) {
+                assert_().that(value.isReadOnly()).isTrue();
+                values.add(ByteString.copyFrom(value));
+                return true;
+            }
+        });
+
+        assert_().that(values).containsExactly(ByteString.copyFromUtf8("value1"), ByteString.copyFromUtf8("value2"))
+                .inOrder();
+    }
+
+    @Nonnull
+    private static ByteBuffer direct(@Nonnull String value) {
+        final byte[] bytes = value.getBytes();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Nonnull
+    private static ByteBuffer heap(@Nonnull String value) {
+        return ByteBuffer.wrap(value.getBytes());
+    }
+}
@@ -52,4 +52,54 @@ public class ByteUtilsTest extends TestCase {
         assert_().that(out).isEqualTo(bytes);
     }
 
-}
\ No newline at end of file
+    public void testStartsWith_comparesPrefix() throws Exception {
+        final ByteString bytes = ByteString.copyFromUtf8("abc");
+
+        assert_().that(ByteUtils.startsWith(bytes, ByteString.copyFromUtf8("ab"))).isTrue();
+        assert_().that(ByteUtils.startsWith(bytes, ByteString.EMPTY)).isTrue();
+        assert_().that(ByteUtils.startsWith(bytes, ByteString.copyFromUtf8("ac"))).isFalse();
+        assert_().that(ByteUtils.startsWith(bytes, ByteString.copyFromUtf8("abcd"))).isFalse();
+    }
+
+    public void testStartsWithArray_comparesPrefix() throws Exception {
+        final byte[] bytes = {'a', 'b', 'c'};
+
+        assert_().that(ByteUtils.startsWith(bytes, ByteString.copyFromUtf8("abc"))).isTrue();
+        assert_().that(ByteUtils.startsWith(bytes, ByteString.copyFromUtf8("b"))).isFalse();
+        assert_().that(ByteUtils.startsWith(bytes, ByteString.copyFromUtf8("abcd"))).isFalse();
+    }
+
+    public void testConvertToByteStringOfSlicedBuffer_containsWrittenBytes() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.position(2);
+        final ByteBuffer slice = buffer.slice();
+        slice.put(new byte[]{1, 2, 3});
+
+        final ByteString out = ByteUtils.convertToByteString(slice);
+
+        assert_().that(out).isEqualTo(ByteString.copyFrom(new byte[]{1, 2, 3}));
+    }
+
+    public void testWrap_doesNotCopyArray() throws Exception {
+        final byte[] bytes = {1, 2, 3, 4};
+
+        final ByteString whole = ByteUtils.wrap(bytes);
+        final ByteString part = ByteUtils.wrap(bytes, 1, 2);
+        bytes[2] = 9;
+
+        assert_().that(whole).isEqualTo(ByteString.copyFrom(new byte[]{1, 2, 9, 4}));
+        assert_().that(part).isEqualTo(ByteString.copyFrom(new byte[]{2, 9}));
+        assert_().that(ByteUtils.wrap(bytes, 4, 0)).isEqualTo(ByteString.EMPTY);
+    }
+
+    public void testReadOnlyArray_returnsWrappedArray() throws Exception {
+        final byte[] bytes = {1, 2, 3};
+
+        assert_().that(ByteUtils.readOnlyArray(ByteUtils.wrap(bytes))).isSameAs(bytes);
+        assert_().that(ByteUtils.readOnlyArray(ByteUtils.wrap(bytes, 1, 2))).isEqualTo(new byte[]{2, 3});
+    }
+
+    public void testPinnedProtobufVersion_wrapsWithoutCopying() throws Exception {
+        assert_().that(ByteUtils.isZeroCopy()).isTrue();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class CompressingKeyValueTest {
+
+    private KeyValueMemory memory;
+    private CompressingKeyValue keyValue;
+
+    @Before
+    public void setUp() throws Exception {
+        memory = new KeyValueMemory();
+        keyValue = new CompressingKeyValue.Builder(memory).build();
+    }
+
+    private static ByteString message(int i) {
+        return ByteString.copyFromUtf8("{\"conversation_id\":\"conversation" + (i % 10)
+                + "\",\"message\":\"Hello, how are you doing today? Message number " + i
+                + "\",\"created_at_millis\":" + (1420070400000L + i) + "}");
+    }
+
+    @Test
+    public void testRepetitiveValue_isStoredCompressed() throws Exception {
+        final ByteString value = ByteString.copyFromUtf8(new String(new char[1000]).replace('\0', 'a'));
+        keyValue.put(ByteString.copyFromUtf8("key"), value);
+
+        assert_().that(keyValue.getBytes(ByteString.copyFromUtf8("key"))).isEqualTo(value);
+        assert_().that(memory.getBytes(ByteString.copyFromUtf8("key")).size()).isLessThan(50);
+    }
+
+    @Test
+    public void testSmallValue_isStoredRaw() throws Exception {
+        keyValue.put(ByteString.copyFromUtf8("key"), ByteString.copyFromUtf8("aaaaaaaa"));
+
+        assert_().that(keyValue.getBytes(ByteString.copyFromUtf8("key"))).isEqualTo(ByteString.copyFromUtf8("aaaaaaaa"));
+        assert_().that(memory.getBytes(ByteString.copyFromUtf8("key")).size()).isEqualTo(9);
+    }
+
+    @Test
+    public void testScanThroughHelpers_valuesAreDecompressed() throws Exception {
+        keyValue.put(ByteString.copyFromUtf8("key"), message(1));
+        final List<ByteString> values = new ArrayList<>();
+
+        Scans.scan(new InstrumentedKeyValue.Builder(keyValue).build(), KeyRange.prefix(ByteString.copyFromUtf8("key")),
+                new ScanVisitor() {
+                    @Override
+                    public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                        values.add(value);
+                        return true;
+                    }
+                });
+
+        assert_().that(ForwardingKeyValue.capability(keyValue, RangeScanner.class)).isNull();
+        assert_().that(values).containsExactly(message(1));
+    }
+
+    @Test
+    public void testRandomValues_roundTrip() throws Exception {
+        final Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            final byte[] bytes = new byte[random.nextInt(2000)];
+            // mix of random bytes and repeated runs
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = random.nextInt(4) == 0 ? (byte) random.nextInt() : j > 10 ? bytes[j - 7] : 1;
+            }
+            final ByteString key = ByteString.copyFromUtf8("key" + i);
+            keyValue.put(key, ByteString.copyFrom(bytes));
+
+            assert_().that(keyValue.getBytes(key)).isEqualTo(ByteString.copyFrom(bytes));
+        }
+    }
+
+    @Test
+    public void testTrainedDictionary_compressesBetterAndIsPersisted() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            keyValue.put(ByteString.copyFromUtf8("before" + i), message(i));
+        }
+        final int before = memory.getBytes(ByteString.copyFromUtf8("before1")).size();
+
+        assert_().that(keyValue.train()).isTrue();
+        keyValue.put(ByteString.copyFromUtf8("after"), message(1));
+        final int after = memory.getBytes(ByteString.copyFromUtf8("after")).size();
+        final CompressingKeyValue reopened = new CompressingKeyValue.Builder(memory).build();
+
+        assert_().that(after).isLessThan(before);
+        assert_().that(reopened.getBytes(ByteString.copyFromUtf8("after"))).isEqualTo(message(1));
+        assert_().that(reopened.getBytes(ByteString.copyFromUtf8("before1"))).isEqualTo(message(1));
+    }
+
+    @Test
+    public void testTrainAfter_onlyValuesOfMinSizeAreCounted() throws Exception {
+        final CompressingKeyValue training = new CompressingKeyValue.Builder(memory)
+                .trainAfter(400)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            training.put(ByteString.copyFromUtf8("small" + i), ByteString.copyFromUtf8("small value " + i));
+        }
+        training.put(ByteString.copyFromUtf8("before"), message(1));
+        for (int i = 0; i < 400; i++) {
+            training.put(ByteString.copyFromUtf8("message" + i), message(i));
+        }
+        training.put(ByteString.copyFromUtf8("after"), message(1));
+
+        assert_().that(memory.getBytes(ByteString.copyFromUtf8("before")).byteAt(0)).isNotEqualTo((byte) 2);
+        assert_().that(memory.getBytes(ByteString.copyFromUtf8("after")).byteAt(0)).isEqualTo((byte) 2);
+        assert_().that(training.getBytes(ByteString.copyFromUtf8("after"))).isEqualTo(message(1));
+    }
+
+    @Test
+    public void testBatchAndFetchValues_decodeValues() throws Exception {
+        final KeyValue.Batch batch = keyValue.newBatch();
+        for (int i = 0; i < 10; i++) {
+            batch.put(ByteString.copyFromUtf8("message" + i), message(i));
+        }
+        batch.write();
+
+        final KeyValue.Iterator values = keyValue.fetchValues(ByteString.copyFromUtf8("message"), null, 100);
+
+        assert_().that(values.keys()).hasSize(10);
+        assert_().that(values.keys().get(3)).isEqualTo(message(3));
+    }
+
+    @Test
+    public void testFetchWithEmptyPrefix_doesNotReturnDictionaries() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            keyValue.put(ByteString.copyFromUtf8("message" + i), message(i));
+        }
+        assert_().that(keyValue.train()).isTrue();
+
+        final List<ByteString> values = new ArrayList<>();
+        final List<ByteString> keys = new ArrayList<>();
+        ByteString nextToken = null;
+        do {
+            final KeyValue.Iterator page = keyValue.fetchValues(ByteString.EMPTY, nextToken, 7);
+            values.addAll(page.keys());
+            nextToken = page.nextToken();
+        } while (nextToken != null);
+        do {
+            final KeyValue.Iterator page = keyValue.fetchKeys(ByteString.EMPTY, nextToken, 7);
+            keys.addAll(page.keys());
+            nextToken = page.nextToken();
+        } while (nextToken != null);
+
+        assert_().that(values).hasSize(500);
+        assert_().that(values).contains(message(42));
+        assert_().that(keys).hasSize(500);
+    }
+
+    @Test
+    public void testDictionaryTrainedByOtherInstance_isLoaded() throws Exception {
+        final CompressingKeyValue other = new CompressingKeyValue.Builder(memory).build();
+        for (int i = 0; i < 500; i++) {
+            other.put(ByteString.copyFromUtf8("message" + i), message(i));
+        }
+        assert_().that(other.train()).isTrue();
+        other.put(ByteString.copyFromUtf8("after"), message(1));
+
+        assert_().that(keyValue.getBytes(ByteString.copyFromUtf8("after"))).isEqualTo(message(1));
+    }
+}
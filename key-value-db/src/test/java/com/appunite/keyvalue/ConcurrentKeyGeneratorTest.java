@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class ConcurrentKeyGeneratorTest {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+    private static final byte[] CREATED_AT = "created_at".getBytes();
+
+    private final ConcurrentKeyGenerator concurrentKeyGenerator = new ConcurrentKeyGenerator();
+
+    @Test
+    public void testBuildKeys_sameAsKeyGenerator() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final ByteString id = ByteString.copyFromUtf8("id");
+
+        assert_().that(concurrentKeyGenerator.value(MESSAGE, id)).isEqualTo(keyGenerator.value(MESSAGE, id));
+        assert_().that(concurrentKeyGenerator.singleValue(MESSAGE)).isEqualTo(keyGenerator.singleValue(MESSAGE));
+        assert_().that(concurrentKeyGenerator.startIndex(MESSAGE).addField(CONVERSATION, "c").buildIndex(id))
+                .isEqualTo(keyGenerator.startIndex(MESSAGE).addField(CONVERSATION, "c").buildIndex(id));
+    }
+
+    @Test
+    public void testBuildKeysFromManyThreads_keysAreNotCorrupted() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                final String conversation = "conversation" + thread;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        final KeyGenerator expected = new KeyGenerator();
+                        for (int i = 0; i < 10000; i++) {
+                            final ByteString id = ByteString.copyFromUtf8("id" + i);
+                            final ByteString key = concurrentKeyGenerator.startIndex(MESSAGE)
+                                    .addField(CONVERSATION, conversation)
+                                    .addField(CREATED_AT, i)
+                                    .buildIndex(id);
+                            if (!key.equals(expected.startIndex(MESSAGE)
+                                    .addField(CONVERSATION, conversation)
+                                    .addField(CREATED_AT, i)
+                                    .buildIndex(id))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assert_().that(result.get()).isTrue();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
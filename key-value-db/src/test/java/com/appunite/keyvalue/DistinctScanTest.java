@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class DistinctScanTest {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+    private static final byte[] CREATED_AT = "created_at".getBytes();
+
+    private KeyValueMemory keyValue;
+    private KeyGenerator keyGenerator;
+    private int seeks;
+
+    @Before
+    public void setUp() throws Exception {
+        seeks = 0;
+        keyValue = new KeyValueMemory() {
+            @Override
+            public void skipScan(@Nonnull KeyRange range, @Nonnull final SeekVisitor visitor) {
+                super.skipScan(range, new SeekVisitor() {
+                    @Nullable
+                    @Override
+                    public ByteString visit(@Nonnull ByteString key) {
+                        seeks++;
+                        return visitor.visit(key);
+                    }
+                });
+            }
+        };
+        keyGenerator = new KeyGenerator();
+        final IdGenerator idGenerator = new IdGenerator();
+        for (String conversation : new String[]{"c1", "c2", "c3"}) {
+            for (int i = 0; i < 100; i++) {
+                keyValue.put(keyGenerator.startIndex(MESSAGE)
+                        .addField(CONVERSATION, conversation)
+                        .addField(CREATED_AT, i)
+                        .buildIndex(idGenerator.newId()), ByteString.EMPTY);
+            }
+        }
+        keyValue.put(keyGenerator.value(MESSAGE, idGenerator.newId()), ByteString.EMPTY);
+    }
+
+    @Test
+    public void testFetchAll_returnsDistinctValuesInOrder() throws Exception {
+        final List<ByteString> conversations = DistinctScan.fetchAll(keyValue, query());
+
+        assert_().that(conversations).containsExactly(
+                ByteString.copyFromUtf8("c1"),
+                ByteString.copyFromUtf8("c2"),
+                ByteString.copyFromUtf8("c3")).inOrder();
+    }
+
+    @Test
+    public void testFetch_seeksOncePerDistinctValue() throws Exception {
+        DistinctScan.fetchAll(keyValue, query());
+
+        assert_().that(seeks).isEqualTo(3);
+    }
+
+    @Test
+    public void testFetchInPages_returnsAllValues() throws Exception {
+        final KeyValue.Iterator first = DistinctScan.fetch(keyValue, query(), null, 2);
+        final KeyValue.Iterator second = DistinctScan.fetch(keyValue, query(), first.nextToken(), 2);
+
+        assert_().that(first.keys()).containsExactly(
+                ByteString.copyFromUtf8("c1"),
+                ByteString.copyFromUtf8("c2")).inOrder();
+        assert_().that(first.nextToken()).isNotNull();
+        assert_().that(second.keys()).containsExactly(ByteString.copyFromUtf8("c3"));
+        assert_().that(second.nextToken()).isNull();
+    }
+
+    @Test
+    public void testFetchFromEmptyField_returnsNothing() throws Exception {
+        final ByteString query = keyGenerator.startIndex(MESSAGE).buildFieldQuery("unknown".getBytes());
+
+        assert_().that(DistinctScan.fetchAll(keyValue, query)).isEmpty();
+    }
+
+    @Nonnull
+    private ByteString query() {
+        return keyGenerator.startIndex(MESSAGE).buildFieldQuery(CONVERSATION);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.common.collect.Range;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class HistogramTest {
+
+    @Test
+    public void testBucketBoundaries_areContinuous() throws Exception {
+        for (long value = 0; value < 100000; value++) {
+            final int index = Histogram.index(value);
+            assert_().that(Histogram.lowestValue(index)).isAtMost(value);
+            assert_().that(Histogram.highestValue(index)).isAtLeast(value);
+        }
+        assert_().that(Histogram.highestValue(Histogram.index(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testSmallValues_areExact() throws Exception {
+        final Histogram histogram = new Histogram();
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assert_().that(snapshot.count()).isEqualTo(50L);
+        assert_().that(snapshot.percentile(50)).isEqualTo(25L);
+        assert_().that(snapshot.percentile(100)).isEqualTo(50L);
+        assert_().that(snapshot.max()).isEqualTo(50L);
+        assert_().that(snapshot.mean()).isEqualTo(25.5);
+    }
+
+    @Test
+    public void testLargeValues_percentilesWithinRelativeError() throws Exception {
+        final Histogram histogram = new Histogram();
+        final Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            histogram.record(1000 + random.nextInt(1000000));
+        }
+
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assert_().that(snapshot.percentile(50)).isIn(Range.closed(480000L, 520000L));
+        assert_().that(snapshot.percentile(99)).isIn(Range.closed(950000L, 1030000L));
+    }
+
+    @Test
+    public void testReset_removesValues() throws Exception {
+        final Histogram histogram = new Histogram();
+        histogram.record(1000);
+        histogram.reset();
+
+        assert_().that(histogram.snapshot().count()).isEqualTo(0L);
+        assert_().that(histogram.snapshot().percentile(99)).isEqualTo(0L);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class HotKeyTrackingKeyValueTest {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+    private static final ByteString VALUE = ByteString.copyFrom(new byte[]{1, 2, 3});
+
+    private final KeyGenerator keyGenerator = new KeyGenerator();
+    private HotKeyTrackingKeyValue keyValue;
+
+    @Before
+    public void setUp() throws Exception {
+        keyValue = new HotKeyTrackingKeyValue.Builder(new KeyValueMemory())
+                .sampleEvery(1)
+                .topK(8)
+                .build();
+    }
+
+    @Test
+    public void testSkewedReads_hottestKeysAreReported() throws Exception {
+        final Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            final int id = random.nextInt(10) < 5 ? random.nextInt(3) : 3 + random.nextInt(5000);
+            try {
+                keyValue.getBytes(messageKey(id));
+            } catch (NotFoundException ignore) {
+            }
+        }
+
+        final List<HotKeyTrackingKeyValue.HotKey> hotKeys = keyValue.hotReads(3);
+        assert_().that(hotKeys.size()).isEqualTo(3);
+        final List<ByteString> keys = new ArrayList<>();
+        for (HotKeyTrackingKeyValue.HotKey hotKey : hotKeys) {
+            keys.add(hotKey.key());
+            assert_().that(hotKey.count()).isAtLeast(3000L);
+        }
+        assert_().that(keys).containsExactly(messageKey(0), messageKey(1), messageKey(2));
+    }
+
+    @Test
+    public void testWritesToConversation_prefixIsReported() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            final String conversation = i % 2 == 0 ? "hot" : "conversation" + i;
+            keyValue.put(keyGenerator.startIndex(MESSAGE)
+                    .addField(CONVERSATION, conversation)
+                    .buildIndex(ByteString.copyFromUtf8("id" + i)), VALUE);
+        }
+
+        final List<HotKeyTrackingKeyValue.HotKey> hotPrefixes = keyValue.hotWritePrefixes(1);
+        assert_().that(hotPrefixes.get(0).key())
+                .isEqualTo(keyGenerator.startIndex(MESSAGE).addField(CONVERSATION, "hot").buildQuery());
+        assert_().that(hotPrefixes.get(0).count()).isAtLeast(500L);
+        assert_().that(keyValue.hotReads(1)).isEmpty();
+    }
+
+    @Test
+    public void testSampling_countsAreScaled() throws Exception {
+        keyValue = new HotKeyTrackingKeyValue.Builder(new KeyValueMemory())
+                .sampleEvery(10)
+                .build();
+        final ByteString prefix = keyGenerator.startIndex(MESSAGE).addField(CONVERSATION, "hot").buildQuery();
+        for (int i = 0; i < 10000; i++) {
+            keyValue.fetchValues(prefix, null, 10);
+        }
+
+        final long count = keyValue.hotReads(1).get(0).count();
+        assert_().that(count).isAtLeast(8000L);
+        assert_().that(count).isAtMost(12000L);
+    }
+
+    @Test
+    public void testOldWindows_areForgotten() throws Exception {
+        keyValue = new HotKeyTrackingKeyValue.Builder(new KeyValueMemory())
+                .sampleEvery(1)
+                .windowLength(20, TimeUnit.MILLISECONDS)
+                .windows(2)
+                .build();
+        keyValue.put(messageKey(1), VALUE);
+
+        Thread.sleep(100);
+
+        assert_().that(keyValue.hotWrites(10)).isEmpty();
+    }
+
+    private ByteString messageKey(int id) {
+        return keyGenerator.value(MESSAGE, ByteString.copyFromUtf8("id" + id));
+    }
+}
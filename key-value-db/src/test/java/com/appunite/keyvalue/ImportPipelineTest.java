@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class ImportPipelineTest {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+
+    private ExecutorService executor;
+    private KeyValueMemory keyValue;
+
+    private final ImportPipeline.Encoder encoder = new ImportPipeline.Encoder() {
+        @Override
+        public void encode(@Nonnull ByteString record,
+                           @Nonnull KeyGenerator keyGenerator,
+                           @Nonnull EditOperations operations) throws Exception {
+            final String[] parts = record.toStringUtf8().split(":");
+            final ByteString id = ByteString.copyFromUtf8(parts[0]);
+            if (parts[1].equals("fail")) {
+                throw new IllegalArgumentException("Broken record");
+            }
+            operations.put(keyGenerator.value(MESSAGE, id), record);
+            operations.put(keyGenerator.startIndex(MESSAGE)
+                    .addField(CONVERSATION, parts[1])
+                    .buildIndex(id), record);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        keyValue = new KeyValueMemory();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testImportRecords_allRecordsAndIndexesAreWritten() throws Exception {
+        final ImportPipeline pipeline = new ImportPipeline.Builder(keyValue, encoder, executor)
+                .chunkSize(7)
+                .queueCapacity(2)
+                .flushBytes(100)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            pipeline.add(ByteString.copyFromUtf8("id" + i + ":c" + (i % 10)));
+        }
+
+        assert_().that(pipeline.finish()).isEqualTo(1000L);
+
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        assert_().that(keyValue.getBytes(keyGenerator.value(MESSAGE, ByteString.copyFromUtf8("id123"))))
+                .isEqualTo(ByteString.copyFromUtf8("id123:c3"));
+        final ByteString query = keyGenerator.startIndex(MESSAGE).addField(CONVERSATION, "c3").buildQuery();
+        assert_().that(keyValue.fetchKeys(query, null, 1000).keys().size()).isEqualTo(100);
+    }
+
+    @Test
+    public void testImportWithDictionary_keysUseDictionary() throws Exception {
+        final KeyDictionary dictionary = new KeyDictionary(keyValue);
+        final ImportPipeline pipeline = new ImportPipeline.Builder(keyValue, encoder, executor)
+                .dictionary(dictionary)
+                .build();
+        pipeline.add(ByteString.copyFromUtf8("id1:c1"));
+        pipeline.finish();
+
+        final KeyDictionary reloaded = new KeyDictionary(keyValue);
+        final ByteString key = new KeyGenerator(reloaded).value(MESSAGE, ByteString.copyFromUtf8("id1"));
+        assert_().that(keyValue.getBytes(key)).isEqualTo(ByteString.copyFromUtf8("id1:c1"));
+    }
+
+    @Test
+    public void testEncoderFails_finishThrows() throws Exception {
+        final ImportPipeline pipeline = new ImportPipeline.Builder(keyValue, encoder, executor)
+                .chunkSize(3)
+                .queueCapacity(1)
+                .build();
+        try {
+            for (int i = 0; i < 100; i++) {
+                pipeline.add(ByteString.copyFromUtf8("id" + i + (i == 50 ? ":fail" : ":c")));
+            }
+            pipeline.finish();
+            assert_().fail("Expected exception");
+        } catch (RuntimeException e) {
+            assert_().that(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void testExecutorRejects_addThrows() throws Exception {
+        final ExecutorService shutDown = Executors.newSingleThreadExecutor();
+        shutDown.shutdown();
+        final ImportPipeline pipeline = new ImportPipeline.Builder(keyValue, encoder, shutDown)
+                .chunkSize(1)
+                .queueCapacity(1)
+                .build();
+        try {
+            pipeline.add(ByteString.copyFromUtf8("id1:c"));
+            assert_().fail("Expected exception");
+        } catch (RuntimeException e) {
+            assert_().that(e.getCause()).isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            pipeline.close();
+        }
+        assert_().that(isWriterAlive()).isFalse();
+    }
+
+    @Test
+    public void testClose_writerStopsAndAddThrows() throws Exception {
+        final ImportPipeline pipeline = new ImportPipeline.Builder(keyValue, encoder, executor)
+                .chunkSize(3)
+                .queueCapacity(2)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            pipeline.add(ByteString.copyFromUtf8("id" + i + ":c"));
+        }
+        pipeline.close();
+
+        assert_().that(isWriterAlive()).isFalse();
+        try {
+            pipeline.add(ByteString.copyFromUtf8("id100:c"));
+            assert_().fail("Expected exception");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testCloseAfterFinish_recordsStayWritten() throws Exception {
+        final ImportPipeline pipeline = new ImportPipeline.Builder(keyValue, encoder, executor)
+                .build();
+        pipeline.add(ByteString.copyFromUtf8("id1:c"));
+        pipeline.finish();
+        pipeline.close();
+
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        assert_().that(keyValue.getBytes(keyGenerator.value(MESSAGE, ByteString.copyFromUtf8("id1"))))
+                .isEqualTo(ByteString.copyFromUtf8("id1:c"));
+    }
+
+    private static boolean isWriterAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("import-pipeline-writer") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
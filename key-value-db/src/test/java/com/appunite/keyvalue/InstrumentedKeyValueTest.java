@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class InstrumentedKeyValueTest {
+    private static final ByteString KEY1 = ByteString.copyFrom(new byte[]{0, 1});
+    private static final ByteString KEY2 = ByteString.copyFrom(new byte[]{0, 2});
+    private static final ByteString VALUE = ByteString.copyFrom(new byte[]{1, 2, 3});
+
+    private InstrumentedKeyValue keyValue;
+
+    @Before
+    public void setUp() throws Exception {
+        keyValue = new InstrumentedKeyValue.Builder(new KeyValueMemory()).sampleEvery(1).build();
+    }
+
+    @Test
+    public void testOperations_areCounted() throws Exception {
+        keyValue.put(KEY1, VALUE);
+        keyValue.getBytes(KEY1);
+        try {
+            keyValue.getBytes(KEY2);
+        } catch (NotFoundException ignore) {
+        }
+        keyValue.del(KEY1);
+
+        assert_().that(keyValue.latency(InstrumentedKeyValue.Operation.GET).snapshot().count()).isEqualTo(2L);
+        assert_().that(keyValue.latency(InstrumentedKeyValue.Operation.PUT).snapshot().count()).isEqualTo(1L);
+        assert_().that(keyValue.latency(InstrumentedKeyValue.Operation.DEL).snapshot().count()).isEqualTo(1L);
+        assert_().that(keyValue.count(InstrumentedKeyValue.Counter.GETS)).isEqualTo(2L);
+        assert_().that(keyValue.count(InstrumentedKeyValue.Counter.MISSES)).isEqualTo(1L);
+        assert_().that(keyValue.count(InstrumentedKeyValue.Counter.BYTES_READ)).isEqualTo(3L);
+        assert_().that(keyValue.count(InstrumentedKeyValue.Counter.BYTES_WRITTEN)).isEqualTo(7L);
+    }
+
+    @Test
+    public void testOptionalInterfacesOfEngine_areForwarded() throws Exception {
+        final KeyValueMemory memory = new KeyValueMemory();
+        final KeyValue decorated = new TracingKeyValue.Builder(new InstrumentedKeyValue.Builder(memory).build()).build();
+        memory.put(KEY1, VALUE);
+
+        assert_().that(ForwardingKeyValue.capability(decorated, RangeScanner.class)).isSameAs(memory);
+        assert_().that(ForwardingKeyValue.capability(decorated, BulkLoadable.class)).isSameAs(memory);
+        assert_().that(ForwardingKeyValue.capability(decorated, ByteBufferAccess.class)).isSameAs(memory);
+        assert_().that(ForwardingKeyValue.capability(decorated, PageScanner.class)).isSameAs(memory);
+        assert_().that(Scans.splitPoints(decorated, KeyRange.prefix(ByteString.EMPTY), 2))
+                .isEqualTo(memory.splitPoints(KeyRange.prefix(ByteString.EMPTY), 2));
+    }
+
+    @Test
+    public void testBatchAndFetch_areMeasured() throws Exception {
+        final KeyValue.Batch batch = keyValue.newBatch();
+        batch.put(KEY1, VALUE);
+        batch.put(KEY2, VALUE);
+        batch.write();
+
+        final KeyValue.Iterator iterator = keyValue.fetchValues(ByteString.copyFrom(new byte[]{0}), null, 10);
+
+        assert_().that(iterator.keys()).containsExactly(VALUE, VALUE);
+        assert_().that(keyValue.latency(InstrumentedKeyValue.Operation.BATCH_WRITE).snapshot().count()).isEqualTo(1L);
+        assert_().that(keyValue.count(InstrumentedKeyValue.Counter.WRITES)).isEqualTo(2L);
+        assert_().that(keyValue.pageSizes().snapshot().max()).isEqualTo(2L);
+        assert_().that(keyValue.count(InstrumentedKeyValue.Counter.FETCHES)).isEqualTo(1L);
+    }
+
+    @Test
+    public void testSampling_latencyMeasuredForEveryNthOperation() throws Exception {
+        keyValue = new InstrumentedKeyValue.Builder(new KeyValueMemory()).sampleEvery(10).build();
+        for (int i = 0; i < 100; i++) {
+            keyValue.put(KEY1, VALUE);
+        }
+
+        assert_().that(keyValue.latency(InstrumentedKeyValue.Operation.PUT).snapshot().count()).isEqualTo(10L);
+        assert_().that(keyValue.count(InstrumentedKeyValue.Counter.WRITES)).isEqualTo(100L);
+    }
+
+    @Test
+    public void testDefaultBuilder_latencyIsSampled() throws Exception {
+        keyValue = new InstrumentedKeyValue.Builder(new KeyValueMemory()).build();
+        for (int i = 0; i < 160; i++) {
+            keyValue.put(KEY1, VALUE);
+        }
+
+        assert_().that(keyValue.latency(InstrumentedKeyValue.Operation.PUT).snapshot().count()).isEqualTo(10L);
+        assert_().that(keyValue.count(InstrumentedKeyValue.Counter.WRITES)).isEqualTo(160L);
+    }
+
+    @Test
+    public void testConcurrentOperations_countersAreExact() throws Exception {
+        keyValue.put(KEY1, VALUE);
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        try {
+                            keyValue.getBytes(KEY1);
+                        } catch (NotFoundException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assert_().that(keyValue.count(InstrumentedKeyValue.Counter.GETS)).isEqualTo(40000L);
+        assert_().that(keyValue.count(InstrumentedKeyValue.Counter.BYTES_READ)).isEqualTo(120000L);
+        keyValue.reset();
+        assert_().that(keyValue.count(InstrumentedKeyValue.Counter.GETS)).isEqualTo(0L);
+    }
+
+    @Test
+    public void testRegisterJmx_attributesAreReadable() throws Exception {
+        final ObjectName name = KeyValueMetricsJmx.register(keyValue, "com.appunite.keyvalue:type=Test");
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            keyValue.put(KEY1, VALUE);
+            keyValue.getBytes(KEY1);
+
+            assert_().that(server.getAttribute(name, "GetSampledCount")).isEqualTo(1L);
+            try {
+                server.getAttribute(name, "GetCount");
+                assert_().fail("Expected exception");
+            } catch (AttributeNotFoundException expected) {
+            }
+            assert_().that(server.getAttribute(name, "Gets")).isEqualTo(1L);
+            assert_().that((Long) server.getAttribute(name, "PutMaxNanos")).isAtLeast(0L);
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assert_().that(server.getAttribute(name, "Gets")).isEqualTo(0L);
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class KeyDictionaryTest {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+    private static final byte[] CREATED_AT = "created_at".getBytes();
+
+    private KeyValueMemory keyValue;
+
+    @Before
+    public void setUp() throws Exception {
+        keyValue = new KeyValueMemory();
+    }
+
+    private static ByteString indexKey(@Nonnull KeyGenerator keyGenerator, @Nonnull ByteString id) {
+        return keyGenerator.startIndex(MESSAGE)
+                .addField(CONVERSATION, "conversation1")
+                .addField(CREATED_AT, 123L)
+                .buildIndex(id);
+    }
+
+    @Test
+    public void testKeysWithDictionary_areShorter() throws Exception {
+        final ByteString id = new IdGenerator().newId();
+
+        final ByteString legacy = indexKey(new KeyGenerator(), id);
+        final ByteString compact = indexKey(new KeyGenerator(new KeyDictionary(keyValue)), id);
+
+        assert_().that(legacy.size() - compact.size()).isEqualTo(5 + 7 + 12 + 10 - 4);
+    }
+
+    private void writeIndex(@Nonnull KeyDictionary dictionary, @Nonnull ByteString key, @Nonnull ByteString id) {
+        final KeyValue.Batch batch = dictionary.wrap(keyValue.newBatch());
+        batch.put(key, id);
+        batch.write();
+    }
+
+    @Test
+    public void testReloadedDictionary_buildsSameKeys() throws Exception {
+        final ByteString id = new IdGenerator().newId();
+        final KeyDictionary dictionary = new KeyDictionary(keyValue);
+        final ByteString first = indexKey(new KeyGenerator(dictionary), id);
+        writeIndex(dictionary, first, id);
+
+        final KeyDictionary reloaded = new KeyDictionary(keyValue);
+
+        assert_().that(reloaded.size()).isEqualTo(3);
+        assert_().that(indexKey(new KeyGenerator(reloaded), id)).isEqualTo(first);
+    }
+
+    @Test
+    public void testNewName_getsNewToken() throws Exception {
+        final KeyDictionary dictionary = new KeyDictionary(keyValue);
+        dictionary.token(MESSAGE);
+        dictionary.wrap(keyValue.newBatch()).write();
+
+        final KeyDictionary reloaded = new KeyDictionary(keyValue);
+
+        assert_().that(reloaded.token(CONVERSATION)).isNotEqualTo(reloaded.token(MESSAGE));
+        assert_().that(reloaded.token("message".getBytes())).isEqualTo(dictionary.token(MESSAGE));
+    }
+
+    @Test
+    public void testNewToken_isNotWrittenUntilBatchIsWritten() throws Exception {
+        final KeyDictionary dictionary = new KeyDictionary(keyValue);
+        final ByteString id = new IdGenerator().newId();
+        final ByteString key = indexKey(new KeyGenerator(dictionary), id);
+
+        assert_().that(new KeyDictionary(keyValue).size()).isEqualTo(0);
+
+        writeIndex(dictionary, key, id);
+
+        assert_().that(new KeyDictionary(keyValue).size()).isEqualTo(3);
+    }
+
+    @Test
+    public void testFailedBatch_tokensAreWrittenByNextBatch() throws Exception {
+        final KeyDictionary dictionary = new KeyDictionary(keyValue);
+        dictionary.token(MESSAGE);
+        final KeyValue.Batch failing = dictionary.wrap(new KeyValue.FakeBatch(keyValue) {
+            @Override
+            public void write() {
+                throw new RuntimeException("failed");
+            }
+        });
+        try {
+            failing.write();
+            assert_().fail();
+        } catch (RuntimeException ignore) {
+        }
+
+        dictionary.wrap(keyValue.newBatch()).write();
+
+        assert_().that(new KeyDictionary(keyValue).token(MESSAGE)).isEqualTo(dictionary.token(MESSAGE));
+    }
+
+    @Test
+    public void testManyNames_tokensDoNotContainSeparator() throws Exception {
+        final KeyDictionary dictionary = new KeyDictionary(keyValue);
+        final Set<ByteString> tokens = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            final byte[] token = dictionary.token(("field" + i).getBytes());
+            for (byte b : token) {
+                assert_().that(b).isNotEqualTo(KeyGenerator.SEPARATOR);
+            }
+            tokens.add(ByteString.copyFrom(token));
+        }
+        dictionary.wrap(keyValue.newBatch()).write();
+
+        assert_().that(tokens).hasSize(1000);
+        final KeyDictionary reloaded = new KeyDictionary(keyValue);
+        assert_().that(reloaded.size()).isEqualTo(1000);
+        final byte[] next = reloaded.token("other".getBytes());
+        assert_().that(tokens).doesNotContain(ByteString.copyFrom(next));
+        for (byte b : next) {
+            assert_().that(b).isNotEqualTo(KeyGenerator.SEPARATOR);
+        }
+    }
+
+    @Test
+    public void testMigrate_movesValuesAndRebuildsIndexes() throws Exception {
+        final KeyGenerator legacy = new KeyGenerator();
+        final IdGenerator idGenerator = new IdGenerator();
+        for (int i = 0; i < 2500; i++) {
+            final ByteString id = idGenerator.newId();
+            keyValue.put(legacy.value(MESSAGE, id), ByteString.copyFromUtf8("message" + i));
+            keyValue.put(indexKey(legacy, id), id);
+        }
+        final KeyDictionary dictionary = new KeyDictionary(keyValue);
+        final KeyGenerator compact = new KeyGenerator(dictionary);
+
+        final long left = KeyDictionary.migrate(keyValue, dictionary, MESSAGE, new KeyDictionary.Reindexer() {
+            @Override
+            public void reindex(@Nonnull ByteString id, @Nonnull ByteString value, @Nonnull KeyDictionary.Index index) {
+                index.replace(indexKey(legacy, id), indexKey(compact, id), id);
+            }
+        });
+
+        assert_().that(left).isEqualTo(0L);
+        assert_().that(keyValue.fetchKeys(legacy.singleValue(MESSAGE), null, 10).keys()).isEmpty();
+        assert_().that(keyValue.fetchKeys(legacy.startIndex(MESSAGE).buildQuery(), null, 10).keys()).isEmpty();
+        final KeyValue.Iterator index = keyValue.fetchValues(compact.startIndex(MESSAGE).buildQuery(), null, 10000);
+        assert_().that(index.keys()).hasSize(2500);
+        for (ByteString id : index.keys()) {
+            assert_().that(keyValue.getBytes(compact.value(MESSAGE, id)).toStringUtf8()).startsWith("message");
+        }
+    }
+
+    @Test
+    public void testMigrate_keepsIndexKeysThatWereNotReplaced() throws Exception {
+        final KeyGenerator legacy = new KeyGenerator();
+        final ByteString id = new IdGenerator().newId();
+        keyValue.put(legacy.value(MESSAGE, id), ByteString.copyFromUtf8("message"));
+        keyValue.put(indexKey(legacy, id), id);
+        final ByteString other = legacy.startIndex(MESSAGE).addField(CONVERSATION, "conversation1").buildIndex(id);
+        keyValue.put(other, id);
+        final KeyDictionary dictionary = new KeyDictionary(keyValue);
+        final KeyGenerator compact = new KeyGenerator(dictionary);
+
+        final long left = KeyDictionary.migrate(keyValue, dictionary, MESSAGE, new KeyDictionary.Reindexer() {
+            @Override
+            public void reindex(@Nonnull ByteString id, @Nonnull ByteString value, @Nonnull KeyDictionary.Index index) {
+                index.replace(indexKey(legacy, id), indexKey(compact, id), id);
+            }
+        });
+
+        assert_().that(left).isEqualTo(1L);
+        assert_().that(keyValue.getBytes(other)).isEqualTo(id);
+        assert_().that(new KeyDictionary(keyValue).size()).isEqualTo(3);
+    }
+}
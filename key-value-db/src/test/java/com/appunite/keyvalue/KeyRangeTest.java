@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class KeyRangeTest {
+
+    @Test
+    public void testPrefixRange_containsOnlyKeysWithPrefix() throws Exception {
+        final KeyRange range = KeyRange.prefix(ByteString.copyFrom(new byte[]{1, 2}));
+
+        assert_().that(range.contains(ByteString.copyFrom(new byte[]{1, 2}))).isTrue();
+        assert_().that(range.contains(ByteString.copyFrom(new byte[]{1, 2, (byte) 255}))).isTrue();
+        assert_().that(range.contains(ByteString.copyFrom(new byte[]{1, 3}))).isFalse();
+        assert_().that(range.contains(ByteString.copyFrom(new byte[]{1}))).isFalse();
+    }
+
+    @Test
+    public void testPrefixEndWithMaxBytes_isIncrementedBeforeThem() throws Exception {
+        final ByteString end = KeyRange.prefixEnd(ByteString.copyFrom(new byte[]{1, (byte) 255}));
+
+        assert_().that(end).isEqualTo(ByteString.copyFrom(new byte[]{2}));
+    }
+
+    @Test
+    public void testPrefixEndOfMaxBytes_isNull() throws Exception {
+        assert_().that(KeyRange.prefixEnd(ByteString.copyFrom(new byte[]{(byte) 255}))).isNull();
+        assert_().that(KeyRange.prefixEnd(ByteString.EMPTY)).isNull();
+    }
+
+    @Test
+    public void testCommonPrefix_isSharedByStartAndEnd() throws Exception {
+        final KeyRange range = new KeyRange(ByteString.copyFrom(new byte[]{1, 2, 3}),
+                ByteString.copyFrom(new byte[]{1, 2, 5}));
+
+        assert_().that(range.commonPrefix()).isEqualTo(ByteString.copyFrom(new byte[]{1, 2}));
+    }
+
+    @Test
+    public void testInterpolate_returnsIncreasingPointsInsideRange() throws Exception {
+        final ByteString from = ByteString.copyFrom(new byte[]{1, 0});
+        final ByteString to = ByteString.copyFrom(new byte[]{1, 8});
+
+        final List<ByteString> points = KeyRange.interpolate(from, to, 4);
+
+        assert_().that(points).hasSize(3);
+        ByteString previous = from;
+        for (ByteString point : points) {
+            assert_().that(KeyValueMemory.COMPARATOR.compare(previous, point)).isLessThan(0);
+            previous = point;
+        }
+        assert_().that(KeyValueMemory.COMPARATOR.compare(previous, to)).isLessThan(0);
+    }
+
+    @Test
+    public void testSplit_coversWholeRange() throws Exception {
+        final KeyRange range = KeyRange.prefix(ByteString.copyFrom(new byte[]{1}));
+        final ByteString point1 = ByteString.copyFrom(new byte[]{1, 10});
+        final ByteString point2 = ByteString.copyFrom(new byte[]{1, 20});
+
+        final List<KeyRange> ranges = range.split(ImmutableList.of(point1, point2));
+
+        assert_().that(ranges).containsExactly(
+                new KeyRange(range.start(), point1),
+                new KeyRange(point1, point2),
+                new KeyRange(point2, range.end())).inOrder();
+    }
+
+    @Test
+    public void testSplitWithPointsOutsideOfRange_ignoresThem() throws Exception {
+        final KeyRange range = KeyRange.prefix(ByteString.copyFrom(new byte[]{1}));
+
+        final List<KeyRange> ranges = range.split(ImmutableList.of(
+                ByteString.copyFrom(new byte[]{0}),
+                ByteString.copyFrom(new byte[]{2})));
+
+        assert_().that(ranges).containsExactly(range);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class KeyValueFixedIdTest {
+
+    private KeyValueFixedId keyValue;
+    private IdGenerator idGenerator;
+
+    @Before
+    public void setUp() throws Exception {
+        keyValue = new KeyValueFixedId();
+        idGenerator = new IdGenerator();
+    }
+
+    @Test
+    public void testAfterSettingValue_itCanBeRetrieved() throws Exception {
+        final ByteString id = idGenerator.newId();
+        keyValue.put(id, ByteString.copyFromUtf8("value"));
+
+        assert_().that(keyValue.getBytes(id)).isEqualTo(ByteString.copyFromUtf8("value"));
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testAfterDeletingValue_itCanNotBeRetrieved() throws Exception {
+        final ByteString id = idGenerator.newId();
+        keyValue.put(id, ByteString.copyFromUtf8("value"));
+        keyValue.del(id);
+
+        keyValue.getBytes(id);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutNotAnId_throwsException() throws Exception {
+        keyValue.put(ByteString.copyFromUtf8("short"), ByteString.EMPTY);
+    }
+
+    @Test
+    public void testManyOverrides_keepLatestValues() throws Exception {
+        final List<ByteString> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ids.add(idGenerator.newId());
+        }
+        for (int round = 0; round < 50; round++) {
+            for (ByteString id : ids) {
+                keyValue.put(id, ByteString.copyFromUtf8("value" + round));
+            }
+        }
+
+        for (ByteString id : ids) {
+            assert_().that(keyValue.getBytes(id)).isEqualTo(ByteString.copyFromUtf8("value49"));
+        }
+    }
+
+    @Test
+    public void testRandomOperations_behaveLikeMemoryEngine() throws Exception {
+        final KeyValueMemory expected = new KeyValueMemory();
+        final List<ByteString> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ids.add(idGenerator.newId());
+        }
+        final Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            final ByteString id = ids.get(random.nextInt(ids.size()));
+            if (random.nextInt(3) == 0) {
+                expected.del(id);
+                keyValue.del(id);
+            } else {
+                final ByteString value = ByteString.copyFrom(new byte[random.nextInt(50)]);
+                expected.put(id, value);
+                keyValue.put(id, value);
+            }
+        }
+
+        assert_().that(keyValue.fetchKeys(ByteString.EMPTY, null, 1000).keys())
+                .isEqualTo(expected.fetchKeys(ByteString.EMPTY, null, 1000).keys());
+        assert_().that(keyValue.fetchValues(ByteString.EMPTY, null, 1000).keys())
+                .isEqualTo(expected.fetchValues(ByteString.EMPTY, null, 1000).keys());
+    }
+
+    @Test
+    public void testGetValuesInPages_returnsAllInOrder() throws Exception {
+        final ByteString first = ByteString.copyFrom(new byte[]{1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        final ByteString second = ByteString.copyFrom(new byte[]{1, (byte) 200, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        final ByteString other = ByteString.copyFrom(new byte[]{2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        keyValue.put(second, ByteString.copyFromUtf8("2"));
+        keyValue.put(other, ByteString.copyFromUtf8("3"));
+        keyValue.put(first, ByteString.copyFromUtf8("1"));
+
+        final KeyValue.Iterator page1 = keyValue.fetchValues(ByteString.copyFrom(new byte[]{1}), null, 1);
+        final KeyValue.Iterator page2 = keyValue.fetchValues(ByteString.copyFrom(new byte[]{1}), page1.nextToken(), 1);
+
+        assert_().that(page1.keys()).containsExactly(ByteString.copyFromUtf8("1"));
+        assert_().that(page1.nextToken()).isEqualTo(second);
+        assert_().that(page2.keys()).containsExactly(ByteString.copyFromUtf8("2"));
+        assert_().that(page2.nextToken()).isNull();
+    }
+
+    @Test
+    public void testPagesWithPrefixesAndTokens_behaveLikeMemoryEngine() throws Exception {
+        final KeyValueMemory expected = new KeyValueMemory();
+        final Random random = new Random(0);
+        for (int i = 0; i < 2000; i++) {
+            final byte[] id = new byte[FixedIdMap.ID_SIZE];
+            random.nextBytes(id);
+            // few distinct first bytes so prefixes match many keys
+            id[0] = (byte) random.nextInt(4);
+            final ByteString key = ByteString.copyFrom(id);
+            final ByteString value = ByteString.copyFromUtf8("value" + i);
+            expected.put(key, value);
+            keyValue.put(key, value);
+        }
+        final ByteString[] prefixes = {
+                ByteString.EMPTY,
+                ByteString.copyFrom(new byte[]{1}),
+                ByteString.copyFrom(new byte[]{(byte) 2, (byte) 128}),
+                ByteString.copyFrom(new byte[17]),
+        };
+        for (ByteString prefix : prefixes) {
+            for (int batch : new int[]{1, 7, 100, 5000}) {
+                ByteString token = null;
+                do {
+                    final KeyValue.Iterator actualPage = keyValue.fetchKeys(prefix, token, batch);
+                    final KeyValue.Iterator expectedPage = expected.fetchKeys(prefix, token, batch);
+                    assert_().that(actualPage.keys()).isEqualTo(expectedPage.keys());
+                    assert_().that(actualPage.nextToken()).isEqualTo(expectedPage.nextToken());
+                    token = actualPage.nextToken();
+                } while (token != null);
+            }
+        }
+    }
+
+    @Test
+    public void testTokenLongerThanId_startsAfterKeyItBeginsWith() throws Exception {
+        final ByteString id = idGenerator.newId();
+        keyValue.put(id, ByteString.copyFromUtf8("value"));
+
+        assert_().that(keyValue.fetchKeys(ByteString.EMPTY, id, 10).keys()).containsExactly(id);
+        assert_().that(keyValue.fetchKeys(ByteString.EMPTY, id.concat(ByteString.copyFrom(new byte[1])), 10).keys())
+                .isEmpty();
+    }
+}
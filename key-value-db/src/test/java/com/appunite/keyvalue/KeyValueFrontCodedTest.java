@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class KeyValueFrontCodedTest {
+
+    public static final ByteString OBJECT1 = ByteString.copyFrom(new byte[]{123});
+    public static final ByteString OBJECT2 = ByteString.copyFrom(new byte[]{124});
+
+    private KeyValueFrontCoded keyValue;
+
+    @Before
+    public void setUp() throws Exception {
+        keyValue = new KeyValueFrontCoded();
+    }
+
+    @Test
+    public void testAfterSettingValue_itCanBeRetrievedBeforeAndAfterCompaction() throws Exception {
+        keyValue.put(ByteString.copyFrom(new byte[]{0}), OBJECT1);
+        assert_().that(keyValue.getBytes(ByteString.copyFrom(new byte[]{0}))).isEqualTo(OBJECT1);
+
+        keyValue.compact();
+
+        assert_().that(keyValue.getBytes(ByteString.copyFrom(new byte[]{0}))).isEqualTo(OBJECT1);
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testAfterDeletingCompactedValue_itCanNotBeRetrieved() throws Exception {
+        keyValue.put(ByteString.copyFrom(new byte[]{0}), OBJECT1);
+        keyValue.compact();
+        keyValue.del(ByteString.copyFrom(new byte[]{0}));
+
+        keyValue.getBytes(ByteString.copyFrom(new byte[]{0}));
+    }
+
+    @Test
+    public void testGetValueByPrefixWithMoreElements_returnThatHasMoreElements() throws Exception {
+        keyValue.put(ByteString.copyFrom(new byte[]{0, 0}), OBJECT1);
+        keyValue.compact();
+        keyValue.put(ByteString.copyFrom(new byte[]{0, 1}), OBJECT2);
+        keyValue.put(ByteString.copyFrom(new byte[]{1, 1}), OBJECT2);
+
+        final KeyValue.Iterator keys = keyValue.fetchValues(ByteString.copyFrom(new byte[]{0}), null, 1);
+        final KeyValue.Iterator keys2 = keyValue.fetchValues(ByteString.copyFrom(new byte[]{0}), keys.nextToken(), 1);
+
+        assert_().that(keys.keys()).containsExactly(OBJECT1);
+        assert_().that(keys.nextToken()).isEqualTo(ByteString.copyFrom(new byte[]{0, 1}));
+        assert_().that(keys2.keys()).containsExactly(OBJECT2);
+        assert_().that(keys2.nextToken()).isNull();
+    }
+
+    @Test
+    public void testRandomOperations_behaveLikeMemoryEngine() throws Exception {
+        final KeyValueMemory expected = new KeyValueMemory();
+        final Random random = new Random(0);
+        // enough writes to merge buffer into segment several times
+        for (int i = 0; i < 50000; i++) {
+            final ByteString key = ByteString.copyFrom(new byte[]{
+                    (byte) random.nextInt(4), (byte) random.nextInt(64), (byte) random.nextInt(64)});
+            if (random.nextInt(3) == 0) {
+                expected.del(key);
+                keyValue.del(key);
+            } else {
+                final ByteString value = ByteString.copyFrom(new byte[]{(byte) i});
+                expected.put(key, value);
+                keyValue.put(key, value);
+            }
+        }
+
+        for (int prefix = 0; prefix < 4; prefix++) {
+            final ByteString bytes = ByteString.copyFrom(new byte[]{(byte) prefix});
+            final List<ByteString> expectedKeys = expected.fetchKeys(bytes, null, 100000).keys();
+            assert_().that(keyValue.fetchKeys(bytes, null, 100000).keys()).isEqualTo(expectedKeys);
+            assert_().that(keyValue.fetchValues(bytes, null, 100000).keys())
+                    .isEqualTo(expected.fetchValues(bytes, null, 100000).keys());
+            for (ByteString key : expectedKeys) {
+                assert_().that(keyValue.getBytes(key)).isEqualTo(expected.getBytes(key));
+            }
+        }
+    }
+}
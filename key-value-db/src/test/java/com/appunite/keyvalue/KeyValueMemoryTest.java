@@ -21,6 +21,11 @@ import com.google.protobuf.ByteString;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
 import static com.google.common.truth.Truth.assert_;
 
 public class KeyValueMemoryTest {
@@ -192,6 +197,94 @@ public class KeyValueMemoryTest {
         assert_().that(keys2.nextToken()).isNull();
     }
 
+    @Test
+    public void testWithPointLookupIndex_valuesCanBeRetrieved() throws Exception {
+        keyValue = new KeyValueMemory(true);
+        keyValue.put(ByteString.copyFrom(new byte[]{0}), OBJECT1);
+        keyValue.put(ByteString.copyFrom(new byte[]{0}), OBJECT2);
+
+        assert_().that(keyValue.getBytes(ByteString.copyFrom(new byte[]{0}))).isEqualTo(OBJECT2);
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testWithPointLookupIndexAfterDelete_valueCanNotBeRetrieved() throws Exception {
+        keyValue = new KeyValueMemory(true);
+        keyValue.put(ByteString.copyFrom(new byte[]{0}), OBJECT1);
+        keyValue.del(ByteString.copyFrom(new byte[]{0}));
+
+        keyValue.getBytes(ByteString.copyFrom(new byte[]{0}));
+    }
+
+    @Test
+    public void testWithPointLookupIndexRandomOperations_behavesLikeTree() throws Exception {
+        final KeyValue indexed = new KeyValueMemory(true);
+        final Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            final ByteString key = ByteString.copyFrom(new byte[]{(byte) random.nextInt(8), (byte) random.nextInt(256)});
+            if (random.nextInt(3) == 0) {
+                keyValue.del(key);
+                indexed.del(key);
+            } else {
+                final ByteString value = ByteString.copyFrom(new byte[]{(byte) i});
+                keyValue.put(key, value);
+                indexed.put(key, value);
+            }
+        }
+        for (int i = 0; i < 8 * 256; i++) {
+            final ByteString key = ByteString.copyFrom(new byte[]{(byte) (i >> 8), (byte) i});
+            assert_().that(getOrNull(indexed, key)).isEqualTo(getOrNull(keyValue, key));
+        }
+    }
+
+    private static ByteString getOrNull(KeyValue keyValue, ByteString key) {
+        try {
+            return keyValue.getBytes(key);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static java.util.Iterator<Map.Entry<ByteString, ByteString>> entries(String... keys) {
+        final Map.Entry<ByteString, ByteString>[] entries = new Map.Entry[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            entries[i] = new AbstractMap.SimpleEntry<>(ByteString.copyFromUtf8(keys[i]), OBJECT1);
+        }
+        return Arrays.asList(entries).iterator();
+    }
+
+    @Test
+    public void testBulkLoadSorted_allKeysAreReadable() throws Exception {
+        final KeyValueMemory memory = new KeyValueMemory();
+
+        memory.bulkLoad(entries("a", "b", "c"));
+
+        assert_().that(memory.fetchKeys(ByteString.EMPTY, null, 10).keys()).containsExactly(
+                ByteString.copyFromUtf8("a"), ByteString.copyFromUtf8("b"), ByteString.copyFromUtf8("c")).inOrder();
+        assert_().that(memory.getBytes(ByteString.copyFromUtf8("b"))).isEqualTo(OBJECT1);
+    }
+
+    @Test
+    public void testBulkLoadNotSorted_throwsAndKeepsEngineEmpty() throws Exception {
+        final KeyValueMemory memory = new KeyValueMemory();
+
+        try {
+            memory.bulkLoad(entries("a", "c", "b"));
+            assert_().fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        assert_().that(memory.fetchKeys(ByteString.EMPTY, null, 10).keys()).isEmpty();
+    }
+
+    @Test
+    public void testBulkLoadDuplicatedKeys_throws() throws Exception {
+        try {
+            new KeyValueMemory().bulkLoad(entries("a", "a"));
+            assert_().fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
 
     @Test
     public void testCanClose_withoutIssue() throws Exception {
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class KeyValueOrderStatisticTest {
+
+    public static final ByteString OBJECT1 = ByteString.copyFrom(new byte[]{123});
+    public static final ByteString OBJECT2 = ByteString.copyFrom(new byte[]{124});
+
+    private KeyValueOrderStatistic keyValue;
+
+    @Before
+    public void setUp() throws Exception {
+        keyValue = new KeyValueOrderStatistic();
+    }
+
+    @Test
+    public void testAfterSettingValue_itCanBeRetrieved() throws Exception {
+        keyValue.put(ByteString.copyFrom(new byte[]{0}), OBJECT1);
+
+        assert_().that(keyValue.getBytes(ByteString.copyFrom(new byte[]{0}))).isEqualTo(OBJECT1);
+    }
+
+    @Test
+    public void testAfterOverridingValue_sizeDoesNotChange() throws Exception {
+        keyValue.put(ByteString.copyFrom(new byte[]{0}), OBJECT1);
+        keyValue.put(ByteString.copyFrom(new byte[]{0}), OBJECT2);
+
+        assert_().that(keyValue.getBytes(ByteString.copyFrom(new byte[]{0}))).isEqualTo(OBJECT2);
+        assert_().that(keyValue.size()).isEqualTo(1);
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testAfterDeletingValue_itCanNotBeRetrieved() throws Exception {
+        keyValue.put(ByteString.copyFrom(new byte[]{0}), OBJECT1);
+        keyValue.del(ByteString.copyFrom(new byte[]{0}));
+
+        keyValue.getBytes(ByteString.copyFrom(new byte[]{0}));
+    }
+
+    @Test
+    public void testGetValueByPrefixWithMoreElements_returnThatHasMoreElements() throws Exception {
+        keyValue.put(ByteString.copyFrom(new byte[]{0, 0}), OBJECT1);
+        keyValue.put(ByteString.copyFrom(new byte[]{0, 1}), OBJECT2);
+        keyValue.put(ByteString.copyFrom(new byte[]{1, 1}), OBJECT2);
+
+        final KeyValue.Iterator keys = keyValue.fetchValues(ByteString.copyFrom(new byte[]{0}), null, 1);
+        final KeyValue.Iterator keys2 = keyValue.fetchValues(ByteString.copyFrom(new byte[]{0}), keys.nextToken(), 1);
+
+        assert_().that(keys.keys()).containsExactly(OBJECT1);
+        assert_().that(keys.nextToken()).isNotNull();
+        assert_().that(keys2.keys()).containsExactly(OBJECT2);
+        assert_().that(keys2.nextToken()).isNull();
+    }
+
+    @Test
+    public void testCount_returnsNumberOfKeysWithPrefix() throws Exception {
+        putEntries(0, 10);
+        putEntries(1, 300);
+        putEntries(2, 20);
+
+        assert_().that(keyValue.count(ByteString.copyFrom(new byte[]{1}))).isEqualTo(300);
+        assert_().that(keyValue.count(ByteString.copyFrom(new byte[]{3}))).isEqualTo(0);
+        assert_().that(keyValue.count(ByteString.EMPTY)).isEqualTo(330);
+    }
+
+    @Test
+    public void testRank_returnsPositionOfKey() throws Exception {
+        putEntries(0, 10);
+        putEntries(1, 300);
+
+        assert_().that(keyValue.rank(ByteString.copyFrom(new byte[]{1, 0, 5}))).isEqualTo(15);
+        assert_().that(keyValue.select(15)).isEqualTo(ByteString.copyFrom(new byte[]{1, 0, 5}));
+    }
+
+    @Test
+    public void testSeekToOffset_fetchStartsAtOffset() throws Exception {
+        putEntries(0, 10);
+        putEntries(1, 300);
+        final ByteString prefix = ByteString.copyFrom(new byte[]{1});
+
+        final ByteString token = keyValue.seekToOffset(prefix, 256);
+        final KeyValue.Iterator keys = keyValue.fetchKeys(prefix, token, 2);
+
+        assert_().that(keys.keys()).containsExactly(
+                ByteString.copyFrom(new byte[]{1, 1, 0}),
+                ByteString.copyFrom(new byte[]{1, 1, 1})).inOrder();
+        assert_().that(keyValue.seekToOffset(prefix, 300)).isNull();
+    }
+
+    @Test
+    public void testRandomOperations_behaveLikeMemoryEngine() throws Exception {
+        final KeyValueMemory expected = new KeyValueMemory();
+        final Random random = new Random(0);
+        for (int i = 0; i < 5000; i++) {
+            final ByteString key = ByteString.copyFrom(new byte[]{(byte) random.nextInt(4), (byte) random.nextInt(256)});
+            if (random.nextInt(3) == 0) {
+                expected.del(key);
+                keyValue.del(key);
+            } else {
+                final ByteString value = ByteString.copyFrom(new byte[]{(byte) i});
+                expected.put(key, value);
+                keyValue.put(key, value);
+            }
+        }
+        for (int prefix = 0; prefix < 4; prefix++) {
+            final ByteString bytes = ByteString.copyFrom(new byte[]{(byte) prefix});
+            final KeyValue.Iterator expectedKeys = expected.fetchKeys(bytes, null, 1000);
+            assert_().that(keyValue.fetchKeys(bytes, null, 1000).keys()).isEqualTo(expectedKeys.keys());
+            assert_().that(keyValue.fetchValues(bytes, null, 1000).keys())
+                    .isEqualTo(expected.fetchValues(bytes, null, 1000).keys());
+            assert_().that(keyValue.count(bytes)).isEqualTo(expectedKeys.keys().size());
+        }
+    }
+
+    private void putEntries(int prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            keyValue.put(ByteString.copyFrom(new byte[]{(byte) prefix, (byte) (i >> 8), (byte) i}), OBJECT1);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class KeyValueRadixTest {
+
+    public static final ByteString OBJECT1 = ByteString.copyFrom(new byte[]{123});
+    public static final ByteString OBJECT2 = ByteString.copyFrom(new byte[]{124});
+
+    private KeyValueRadix keyValue;
+
+    @Before
+    public void setUp() throws Exception {
+        keyValue = new KeyValueRadix();
+    }
+
+    @Test
+    public void testAfterSettingValue_itCanBeRetrieved() throws Exception {
+        keyValue.put(ByteString.copyFromUtf8("index"), OBJECT1);
+
+        assert_().that(keyValue.getBytes(ByteString.copyFromUtf8("index"))).isEqualTo(OBJECT1);
+    }
+
+    @Test
+    public void testKeysThatArePrefixesOfEachOther_canBeRetrieved() throws Exception {
+        keyValue.put(ByteString.copyFromUtf8("index"), OBJECT1);
+        keyValue.put(ByteString.copyFromUtf8("ind"), OBJECT2);
+        keyValue.put(ByteString.EMPTY, OBJECT2);
+
+        assert_().that(keyValue.getBytes(ByteString.copyFromUtf8("index"))).isEqualTo(OBJECT1);
+        assert_().that(keyValue.getBytes(ByteString.copyFromUtf8("ind"))).isEqualTo(OBJECT2);
+        assert_().that(keyValue.getBytes(ByteString.EMPTY)).isEqualTo(OBJECT2);
+        assert_().that(keyValue.size()).isEqualTo(3);
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testGetPrefixOfExistingKey_throwsNotFound() throws Exception {
+        keyValue.put(ByteString.copyFromUtf8("index"), OBJECT1);
+
+        keyValue.getBytes(ByteString.copyFromUtf8("ind"));
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testAfterDeletingValue_itCanNotBeRetrieved() throws Exception {
+        keyValue.put(ByteString.copyFromUtf8("index"), OBJECT1);
+        keyValue.put(ByteString.copyFromUtf8("indey"), OBJECT1);
+        keyValue.del(ByteString.copyFromUtf8("index"));
+
+        keyValue.getBytes(ByteString.copyFromUtf8("index"));
+    }
+
+    @Test
+    public void testRemovingAllChildren_shrinksToEmptyTree() throws Exception {
+        for (int i = 0; i < 256; i++) {
+            keyValue.put(ByteString.copyFrom(new byte[]{1, (byte) i, 2}), OBJECT1);
+        }
+        for (int i = 255; i >= 0; i--) {
+            keyValue.del(ByteString.copyFrom(new byte[]{1, (byte) i, 2}));
+            if (i > 0) {
+                assert_().that(keyValue.getBytes(ByteString.copyFrom(new byte[]{1, 0, 2}))).isEqualTo(OBJECT1);
+            }
+        }
+
+        assert_().that(keyValue.size()).isEqualTo(0);
+        assert_().that(keyValue.fetchKeys(ByteString.EMPTY, null, 10).keys()).isEmpty();
+    }
+
+    @Test
+    public void testGetValueByPrefixWithMoreElements_returnThatHasMoreElements() throws Exception {
+        keyValue.put(ByteString.copyFrom(new byte[]{0, 0}), OBJECT1);
+        keyValue.put(ByteString.copyFrom(new byte[]{0, 1}), OBJECT2);
+        keyValue.put(ByteString.copyFrom(new byte[]{1, 1}), OBJECT2);
+
+        final KeyValue.Iterator keys = keyValue.fetchValues(ByteString.copyFrom(new byte[]{0}), null, 1);
+        final KeyValue.Iterator keys2 = keyValue.fetchValues(ByteString.copyFrom(new byte[]{0}), keys.nextToken(), 1);
+
+        assert_().that(keys.keys()).containsExactly(OBJECT1);
+        assert_().that(keys.nextToken()).isEqualTo(ByteString.copyFrom(new byte[]{0, 1}));
+        assert_().that(keys2.keys()).containsExactly(OBJECT2);
+        assert_().that(keys2.nextToken()).isNull();
+    }
+
+    @Test
+    public void testScanRange_returnsKeysInRange() throws Exception {
+        for (int i = 0; i < 256; i++) {
+            keyValue.put(ByteString.copyFrom(new byte[]{1, (byte) i}), OBJECT1);
+        }
+        final List<ByteString> keys = new ArrayList<>();
+
+        keyValue.scan(new KeyRange(ByteString.copyFrom(new byte[]{1, 10}), ByteString.copyFrom(new byte[]{1, 13})),
+                new ScanVisitor() {
+                    @Override
+                    public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                        keys.add(key);
+                        return true;
+                    }
+                });
+
+        assert_().that(keys).containsExactly(
+                ByteString.copyFrom(new byte[]{1, 10}),
+                ByteString.copyFrom(new byte[]{1, 11}),
+                ByteString.copyFrom(new byte[]{1, 12})).inOrder();
+    }
+
+    @Test
+    public void testRandomOperations_behaveLikeMemoryEngine() throws Exception {
+        final KeyValueMemory expected = new KeyValueMemory();
+        final Random random = new Random(0);
+        // growing fan-out makes nodes grow to 256 children and then shrink back on deletes
+        for (int i = 0; i < 50000; i++) {
+            final int fanOut = i < 25000 ? 1 + i / 100 : 256;
+            final byte[] bytes = new byte[random.nextInt(4)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = (byte) random.nextInt(j == 1 ? Math.min(fanOut, 256) : 3);
+            }
+            final ByteString key = ByteString.copyFrom(bytes);
+            if (random.nextInt(i < 25000 ? 3 : 2) == 0) {
+                expected.del(key);
+                keyValue.del(key);
+            } else {
+                final ByteString value = ByteString.copyFrom(new byte[]{(byte) i});
+                expected.put(key, value);
+                keyValue.put(key, value);
+            }
+        }
+
+        final List<ByteString> expectedKeys = expected.fetchKeys(ByteString.EMPTY, null, 100000).keys();
+        assert_().that(keyValue.fetchKeys(ByteString.EMPTY, null, 100000).keys()).isEqualTo(expectedKeys);
+        assert_().that(keyValue.size()).isEqualTo(expectedKeys.size());
+        for (ByteString key : expectedKeys) {
+            assert_().that(keyValue.getBytes(key)).isEqualTo(expected.getBytes(key));
+        }
+        for (int prefix = 0; prefix < 3; prefix++) {
+            final ByteString bytes = ByteString.copyFrom(new byte[]{(byte) prefix});
+            assert_().that(keyValue.fetchValues(bytes, null, 100000).keys())
+                    .isEqualTo(expected.fetchValues(bytes, null, 100000).keys());
+            final KeyValue.Iterator page = keyValue.fetchKeys(bytes, null, 7);
+            final KeyValue.Iterator expectedPage = expected.fetchKeys(bytes, null, 7);
+            assert_().that(page.keys()).isEqualTo(expectedPage.keys());
+            assert_().that(page.nextToken()).isEqualTo(expectedPage.nextToken());
+        }
+    }
+}
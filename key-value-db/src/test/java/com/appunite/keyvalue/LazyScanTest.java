@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class LazyScanTest {
+
+    private static final ByteString PREFIX = ByteString.copyFrom(new byte[]{1});
+
+    private KeyValueMemory keyValue;
+    private int visited;
+
+    @Before
+    public void setUp() throws Exception {
+        visited = 0;
+        keyValue = new KeyValueMemory() {
+            @Override
+            public void scan(@Nonnull KeyRange range, @Nonnull ScanOptions options, @Nonnull final ScanVisitor visitor) {
+                super.scan(range, options, new ScanVisitor() {
+                    @Override
+                    public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                        visited++;
+                        return visitor.visit(key, value);
+                    }
+                });
+            }
+        };
+        keyValue.put(ByteString.copyFrom(new byte[]{0, 0}), ByteString.copyFrom(new byte[]{100}));
+        for (int i = 0; i < 10; i++) {
+            keyValue.put(ByteString.copyFrom(new byte[]{1, (byte) i}), ByteString.copyFrom(new byte[]{(byte) i}));
+        }
+        keyValue.put(ByteString.copyFrom(new byte[]{2, 0}), ByteString.copyFrom(new byte[]{100}));
+    }
+
+    @Test
+    public void testIterateWithSmallPages_returnAllValuesInOrder() throws Exception {
+        final LazyScan scan = new LazyScan.Builder(keyValue, KeyRange.prefix(PREFIX))
+                .pageSize(3)
+                .build();
+
+        assert_().that(collectValues(scan)).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9).inOrder();
+    }
+
+    @Test
+    public void testFirst_visitsOnlyOneEntry() throws Exception {
+        final Map.Entry<ByteString, ByteString> first = new LazyScan.Builder(keyValue, KeyRange.prefix(PREFIX))
+                .build()
+                .first();
+
+        assert_().that(first).isNotNull();
+        assert_().that(first.getKey()).isEqualTo(ByteString.copyFrom(new byte[]{1, 0}));
+        assert_().that(visited).isEqualTo(1);
+    }
+
+    @Test
+    public void testLimit_doesNotVisitMoreEntries() throws Exception {
+        final LazyScan scan = new LazyScan.Builder(keyValue, KeyRange.prefix(PREFIX))
+                .limit(4)
+                .build();
+
+        assert_().that(collectValues(scan)).containsExactly(0, 1, 2, 3).inOrder();
+        assert_().that(visited).isEqualTo(4);
+    }
+
+    @Test
+    public void testFilter_returnsOnlyAcceptedEntries() throws Exception {
+        final LazyScan scan = new LazyScan.Builder(keyValue, KeyRange.prefix(PREFIX))
+                .filter(new EntryFilter() {
+                    @Override
+                    public boolean accept(@Nonnull ByteString key, @Nonnull ByteString value) {
+                        return value.byteAt(0) % 2 == 0;
+                    }
+                })
+                .pageSize(2)
+                .limit(3)
+                .build();
+
+        assert_().that(collectValues(scan)).containsExactly(0, 2, 4).inOrder();
+    }
+
+    @Test
+    public void testKeyFilter_returnsOnlyAcceptedEntries() throws Exception {
+        final LazyScan scan = new LazyScan.Builder(keyValue, KeyRange.prefix(PREFIX))
+                .keyFilter(new KeyFilter() {
+                    @Override
+                    public boolean accept(@Nonnull ByteString key) {
+                        return key.byteAt(1) >= 7;
+                    }
+                })
+                .build();
+
+        assert_().that(collectValues(scan)).containsExactly(7, 8, 9).inOrder();
+    }
+
+    @Test
+    public void testProjection_returnsProjectedValues() throws Exception {
+        final LazyScan scan = new LazyScan.Builder(keyValue, KeyRange.prefix(PREFIX))
+                .projection(new ValueProjection() {
+                    @Nonnull
+                    @Override
+                    public ByteString project(@Nonnull ByteString key, @Nonnull ByteString value) {
+                        return ByteString.copyFrom(new byte[]{(byte) (value.byteAt(0) * 10)});
+                    }
+                })
+                .limit(3)
+                .build();
+
+        assert_().that(collectValues(scan)).containsExactly(0, 10, 20).inOrder();
+    }
+
+    @Test
+    public void testIteratingTwice_returnsSameValues() throws Exception {
+        final LazyScan scan = new LazyScan.Builder(keyValue, KeyRange.prefix(PREFIX))
+                .limit(2)
+                .build();
+
+        assert_().that(collectValues(scan)).isEqualTo(collectValues(scan));
+    }
+
+    @Test
+    public void testEmptyRange_returnsNothing() throws Exception {
+        final LazyScan scan = new LazyScan.Builder(keyValue, KeyRange.prefix(ByteString.copyFrom(new byte[]{3})))
+                .build();
+
+        assert_().that(scan.values().iterator().hasNext()).isFalse();
+        assert_().that(scan.first()).isNull();
+    }
+
+    @Nonnull
+    private List<Integer> collectValues(@Nonnull LazyScan scan) {
+        final List<Integer> out = new ArrayList<>();
+        for (ByteString value : scan.values()) {
+            out.add((int) value.byteAt(0));
+        }
+        return out;
+    }
+}
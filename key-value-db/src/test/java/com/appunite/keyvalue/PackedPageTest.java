@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class PackedPageTest {
+
+    @Test
+    public void testToPage_entriesAreViewsOfPage() throws Exception {
+        final PageBuffer buffer = new PageBuffer(0, 0);
+        buffer.add(ByteString.copyFromUtf8("abc"));
+        buffer.add(ByteString.EMPTY);
+        buffer.add(new byte[]{1, 2});
+
+        final PackedPage page = buffer.toPage();
+
+        assert_().that(page).containsExactly(ByteString.copyFromUtf8("abc"), ByteString.EMPTY,
+                ByteString.copyFrom(new byte[]{1, 2})).inOrder();
+        assert_().that(page.bytes()).isEqualTo(ByteString.copyFrom(new byte[]{'a', 'b', 'c', 1, 2}));
+        assert_().that(page.offset(2)).isEqualTo(3);
+        assert_().that(page.length(2)).isEqualTo(2);
+        assert_().that(page.length(1)).isEqualTo(0);
+    }
+
+    @Test
+    public void testClearBuffer_pageIsNotChanged() throws Exception {
+        final PageBuffer buffer = new PageBuffer();
+        buffer.add(ByteString.copyFromUtf8("abc"));
+        final PackedPage page = buffer.toPage();
+
+        buffer.clear();
+        buffer.add(ByteString.copyFromUtf8("xyz"));
+
+        assert_().that(page).containsExactly(ByteString.copyFromUtf8("abc"));
+    }
+
+    @Test
+    public void testToPage_bufferKeepsEntries() throws Exception {
+        final PageBuffer buffer = new PageBuffer(0, 0);
+        buffer.add(ByteString.copyFromUtf8("abc"));
+        buffer.nextToken(ByteString.copyFromUtf8("next"));
+
+        buffer.toPage();
+
+        assert_().that(buffer.size()).isEqualTo(1);
+        assert_().that(buffer.get(0)).isEqualTo(ByteString.copyFromUtf8("abc"));
+        assert_().that(buffer.nextToken()).isEqualTo(ByteString.copyFromUtf8("next"));
+    }
+
+    @Test
+    public void testMoveToPage_bufferIsEmptyAndReusable() throws Exception {
+        final PageBuffer buffer = new PageBuffer(0, 0);
+        buffer.add(ByteString.copyFromUtf8("abc"));
+        buffer.nextToken(ByteString.copyFromUtf8("next"));
+
+        final PackedPage page = buffer.moveToPage();
+        buffer.add(ByteString.copyFromUtf8("xyz"));
+
+        assert_().that(page).containsExactly(ByteString.copyFromUtf8("abc"));
+        assert_().that(buffer.size()).isEqualTo(1);
+        assert_().that(buffer.get(0)).isEqualTo(ByteString.copyFromUtf8("xyz"));
+        assert_().that(buffer.nextToken()).isEqualTo(ByteString.copyFromUtf8("next"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfPage_throwsException() throws Exception {
+        final PageBuffer buffer = new PageBuffer();
+        buffer.add(ByteString.copyFromUtf8("abc"));
+
+        buffer.toPage().get(1);
+    }
+
+    @Test
+    public void testFrontCodedFetch_returnsPackedPage() throws Exception {
+        final KeyValueFrontCoded keyValue = new KeyValueFrontCoded();
+        for (int i = 0; i < 10; i++) {
+            keyValue.put(ByteString.copyFromUtf8("a" + i), ByteString.copyFromUtf8("value" + i));
+        }
+
+        final List<ByteString> values = keyValue.fetchValues(ByteString.copyFromUtf8("a"), null, 5).keys();
+
+        assert_().that(values).isInstanceOf(PackedPage.class);
+        assert_().that(values).containsExactly(ByteString.copyFromUtf8("value0"), ByteString.copyFromUtf8("value1"),
+                ByteString.copyFromUtf8("value2"), ByteString.copyFromUtf8("value3"),
+                ByteString.copyFromUtf8("value4")).inOrder();
+    }
+
+    @Test
+    public void testRadixFetchKeys_returnsPackedPage() throws Exception {
+        final KeyValueRadix keyValue = new KeyValueRadix();
+        keyValue.put(ByteString.copyFromUtf8("a1"), ByteString.copyFromUtf8("value1"));
+        keyValue.put(ByteString.copyFromUtf8("a2"), ByteString.copyFromUtf8("value2"));
+
+        final List<ByteString> keys = keyValue.fetchKeys(ByteString.copyFromUtf8("a"), null, 10).keys();
+
+        assert_().that(keys).isInstanceOf(PackedPage.class);
+        assert_().that(keys).containsExactly(ByteString.copyFromUtf8("a1"), ByteString.copyFromUtf8("a2")).inOrder();
+    }
+
+    @Test
+    public void testFixedIdFetch_returnsPackedPage() throws Exception {
+        final KeyValueFixedId keyValue = new KeyValueFixedId();
+        final ByteString id = new IdGenerator().newId();
+        keyValue.put(id, ByteString.copyFromUtf8("value"));
+
+        final List<ByteString> values = keyValue.fetchValues(ByteString.EMPTY, null, 10).keys();
+
+        assert_().that(values).isInstanceOf(PackedPage.class);
+        assert_().that(values).containsExactly(ByteString.copyFromUtf8("value"));
+    }
+}
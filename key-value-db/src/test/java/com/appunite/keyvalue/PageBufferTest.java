@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class PageBufferTest {
+    private static final ByteString PREFIX = ByteString.copyFromUtf8("a");
+
+    private KeyValueMemory keyValue;
+
+    @Before
+    public void setUp() throws Exception {
+        keyValue = new KeyValueMemory();
+        for (int i = 0; i < 25; i++) {
+            keyValue.put(ByteString.copyFromUtf8(String.format("a%02d", i)), ByteString.copyFromUtf8("value" + i));
+        }
+        keyValue.put(ByteString.copyFromUtf8("b"), ByteString.copyFromUtf8("other"));
+    }
+
+    @Test
+    public void testAdd_entriesArePacked() throws Exception {
+        final PageBuffer buffer = new PageBuffer(0, 0);
+
+        buffer.add(ByteString.copyFromUtf8("abc"));
+        buffer.add(new byte[]{1, 2});
+        buffer.add(ByteString.EMPTY);
+
+        assert_().that(buffer.size()).isEqualTo(3);
+        assert_().that(buffer.bytes()).isEqualTo(5);
+        assert_().that(buffer.offset(1)).isEqualTo(3);
+        assert_().that(buffer.length(1)).isEqualTo(2);
+        assert_().that(buffer.get(0)).isEqualTo(ByteString.copyFromUtf8("abc"));
+        assert_().that(buffer.get(1)).isEqualTo(ByteString.copyFrom(new byte[]{1, 2}));
+        assert_().that(buffer.get(2)).isEqualTo(ByteString.EMPTY);
+    }
+
+    @Test
+    public void testCopyTo_copiesEntry() throws Exception {
+        final PageBuffer buffer = new PageBuffer();
+        buffer.add(ByteString.copyFromUtf8("abc"));
+        buffer.add(ByteString.copyFromUtf8("de"));
+        final byte[] target = new byte[4];
+
+        buffer.copyTo(1, target, 1);
+
+        assert_().that(target).isEqualTo(new byte[]{0, 'd', 'e', 0});
+    }
+
+    @Test
+    public void testClear_arenaIsReused() throws Exception {
+        final PageBuffer buffer = new PageBuffer(4, 1);
+        buffer.add(ByteString.copyFromUtf8("abcdefgh"));
+        buffer.add(ByteString.copyFromUtf8("ijk"));
+        final byte[] arena = buffer.array();
+
+        buffer.clear();
+        buffer.add(ByteString.copyFromUtf8("xyz"));
+
+        assert_().that(buffer.array()).isSameAs(arena);
+        assert_().that(buffer.size()).isEqualTo(1);
+        assert_().that(buffer.get(0)).isEqualTo(ByteString.copyFromUtf8("xyz"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetAfterClear_fails() throws Exception {
+        final PageBuffer buffer = new PageBuffer();
+        buffer.add(ByteString.copyFromUtf8("abc"));
+        buffer.clear();
+
+        buffer.get(0);
+    }
+
+    @Test
+    public void testMemoryFetchValues_returnsSamePagesAsIterator() throws Exception {
+        assert_().that(pages(keyValue, true)).isEqualTo(iteratorPages(true));
+    }
+
+    @Test
+    public void testMemoryFetchKeys_returnsSamePagesAsIterator() throws Exception {
+        assert_().that(pages(keyValue, false)).isEqualTo(iteratorPages(false));
+    }
+
+    @Test
+    public void testEngineWithoutPageScanner_resultsAreCopied() throws Exception {
+        final KeyValue forwarding = new ForwardingKeyValue(keyValue) {
+        };
+
+        assert_().that(pages(forwarding, true)).isEqualTo(iteratorPages(true));
+        assert_().that(pages(forwarding, false)).isEqualTo(iteratorPages(false));
+    }
+
+    @Test
+    public void testNoEntries_emptyPageWithoutToken() throws Exception {
+        final PageBuffer buffer = new PageBuffer();
+        buffer.add(ByteString.copyFromUtf8("old"));
+
+        Scans.fetchValues(keyValue, ByteString.copyFromUtf8("c"), null, 10, buffer);
+
+        assert_().that(buffer.size()).isEqualTo(0);
+        assert_().that(buffer.nextToken()).isNull();
+    }
+
+    @Nonnull
+    private static List<List<ByteString>> pages(@Nonnull KeyValue keyValue, boolean values) {
+        final List<List<ByteString>> pages = new ArrayList<>();
+        final PageBuffer buffer = new PageBuffer(8, 2);
+        ByteString nextToken = null;
+        do {
+            if (values) {
+                Scans.fetchValues(keyValue, PREFIX, nextToken, 10, buffer);
+            } else {
+                Scans.fetchKeys(keyValue, PREFIX, nextToken, 10, buffer);
+            }
+            final List<ByteString> page = new ArrayList<>();
+            for (int i = 0; i < buffer.size(); i++) {
+                page.add(buffer.get(i));
+            }
+            pages.add(page);
+            nextToken = buffer.nextToken();
+        } while (nextToken != null);
+        return pages;
+    }
+
+    @Nonnull
+    private List<List<ByteString>> iteratorPages(boolean values) {
+        final List<List<ByteString>> pages = new ArrayList<>();
+        ByteString nextToken = null;
+        do {
+            final KeyValue.Iterator iterator = values
+                    ? keyValue.fetchValues(PREFIX, nextToken, 10)
+                    : keyValue.fetchKeys(PREFIX, nextToken, 10);
+            pages.add(iterator.keys());
+            nextToken = iterator.nextToken();
+        } while (nextToken != null);
+        return pages;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class ParallelScannerTest {
+
+    private KeyValueMemory keyValue;
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() throws Exception {
+        keyValue = new KeyValueMemory();
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdown();
+    }
+
+    private void putEntries(int prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            keyValue.put(ByteString.copyFrom(new byte[]{(byte) prefix, (byte) (i >> 8), (byte) i}),
+                    ByteString.copyFrom(new byte[]{(byte) i}));
+        }
+    }
+
+    @Test
+    public void testScanPrefix_visitsEveryEntryOnce() throws Exception {
+        putEntries(0, 100);
+        putEntries(1, 1000);
+        putEntries(2, 100);
+        final Set<ByteString> visited = collect(KeyRange.prefix(ByteString.copyFrom(new byte[]{1})), 16);
+
+        assert_().that(visited).hasSize(1000);
+        for (ByteString key : visited) {
+            assert_().that(key.byteAt(0)).isEqualTo((byte) 1);
+        }
+    }
+
+    @Test
+    public void testScanWithSinglePart_visitsEveryEntry() throws Exception {
+        putEntries(1, 100);
+
+        assert_().that(collect(KeyRange.prefix(ByteString.copyFrom(new byte[]{1})), 1)).hasSize(100);
+    }
+
+    @Test
+    public void testScanEmptyRange_visitsNothing() throws Exception {
+        putEntries(0, 100);
+
+        assert_().that(collect(KeyRange.prefix(ByteString.copyFrom(new byte[]{1})), 8)).isEmpty();
+    }
+
+    @Test
+    public void testSplitPoints_divideMemoryRange() throws Exception {
+        putEntries(1, 1000);
+
+        assert_().that(keyValue.splitPoints(KeyRange.prefix(ByteString.copyFrom(new byte[]{1})), 4))
+                .hasSize(3);
+    }
+
+    @Test
+    public void testWhenVisitorStops_scanningIsFinished() throws Exception {
+        putEntries(1, 1000);
+        final AtomicInteger counter = new AtomicInteger();
+
+        new ParallelScanner(keyValue, pool, 4).scan(KeyRange.prefix(ByteString.copyFrom(new byte[]{1})), 1,
+                new ScanVisitor() {
+                    @Override
+                    public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                        return counter.incrementAndGet() < 10;
+                    }
+                });
+
+        assert_().that(counter.get()).isEqualTo(10);
+    }
+
+    @Test
+    public void testVisitorThrows_exceptionIsRethrown() throws Exception {
+        putEntries(1, 1000);
+
+        try {
+            new ParallelScanner(keyValue, pool, 4).scan(KeyRange.prefix(ByteString.copyFrom(new byte[]{1})), 8,
+                    new ScanVisitor() {
+                        @Override
+                        public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                            throw new IllegalStateException("failed");
+                        }
+                    });
+            assert_().fail();
+        } catch (IllegalStateException e) {
+            assert_().that(e.getMessage()).isEqualTo("failed");
+        }
+    }
+
+    @Test
+    public void testEngineWithoutRangeScanner_visitsEveryEntryOnce() throws Exception {
+        final KeyValueFixedId fixedId = new KeyValueFixedId();
+        final IdGenerator idGenerator = new IdGenerator();
+        for (int i = 0; i < 1000; i++) {
+            fixedId.put(idGenerator.newId(), ByteString.copyFrom(new byte[]{(byte) i}));
+        }
+        final Set<ByteString> visited = Collections.newSetFromMap(new ConcurrentHashMap<ByteString, Boolean>());
+        final AtomicInteger duplicates = new AtomicInteger();
+
+        new ParallelScanner(fixedId, pool, 4).scan(KeyRange.prefix(ByteString.EMPTY), 8, new ScanVisitor() {
+            @Override
+            public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                if (!visited.add(key)) {
+                    duplicates.incrementAndGet();
+                }
+                return true;
+            }
+        });
+
+        assert_().that(visited).hasSize(1000);
+        assert_().that(duplicates.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSplitPointsWithoutRangeScanner_areInterpolatedInsideRange() throws Exception {
+        final KeyValueFixedId fixedId = new KeyValueFixedId();
+        final IdGenerator idGenerator = new IdGenerator();
+        for (int i = 0; i < 100; i++) {
+            fixedId.put(idGenerator.newId(), ByteString.copyFrom(new byte[]{(byte) i}));
+        }
+        final KeyRange range = KeyRange.prefix(ByteString.EMPTY);
+
+        final List<ByteString> points = Scans.splitPoints(fixedId, range, 4);
+
+        assert_().that(points).hasSize(3);
+        for (ByteString point : points) {
+            assert_().that(range.contains(point)).isTrue();
+        }
+        assert_().that(Scans.splitPoints(new KeyValueFixedId(), range, 4)).isEmpty();
+    }
+
+    @Test
+    public void testScanWithoutRangeScanner_stopsAtEndOfRangeAndOnVisitorRequest() throws Exception {
+        final KeyValueFixedId fixedId = new KeyValueFixedId();
+        for (int i = 0; i < 200; i++) {
+            final byte[] id = new byte[FixedIdMap.ID_SIZE];
+            id[0] = (byte) (i % 4);
+            id[1] = (byte) i;
+            fixedId.put(ByteString.copyFrom(id), ByteString.copyFrom(new byte[]{(byte) i}));
+        }
+        final List<ByteString> inRange = new ArrayList<>();
+        Scans.scan(fixedId, KeyRange.prefix(ByteString.copyFrom(new byte[]{1})), new ScanVisitor() {
+            @Override
+            public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                inRange.add(key);
+                return true;
+            }
+        });
+        final AtomicInteger counter = new AtomicInteger();
+        Scans.scan(fixedId, KeyRange.prefix(ByteString.EMPTY), new ScanVisitor() {
+            @Override
+            public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                return counter.incrementAndGet() < 5;
+            }
+        });
+
+        assert_().that(inRange).hasSize(50);
+        for (ByteString key : inRange) {
+            assert_().that(key.byteAt(0)).isEqualTo((byte) 1);
+        }
+        assert_().that(counter.get()).isEqualTo(5);
+    }
+
+    @Nonnull
+    private Set<ByteString> collect(@Nonnull KeyRange range, int parts) {
+        final Set<ByteString> visited = Collections.newSetFromMap(new ConcurrentHashMap<ByteString, Boolean>());
+        final AtomicInteger duplicates = new AtomicInteger();
+        new ParallelScanner(keyValue, pool, 4).scan(range, parts, new ScanVisitor() {
+            @Override
+            public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                if (!visited.add(key)) {
+                    duplicates.incrementAndGet();
+                }
+                return true;
+            }
+        });
+        assert_().that(duplicates.get()).isEqualTo(0);
+        return visited;
+    }
+}
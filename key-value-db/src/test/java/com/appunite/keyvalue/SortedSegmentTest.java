@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class SortedSegmentTest {
+
+    private static ByteString key(int i) {
+        return ByteString.copyFromUtf8(String.format("index\u0006message\u0006%05d", i));
+    }
+
+    private static SortedSegment segment(int count, int restartInterval) {
+        final SortedSegment.Builder builder = new SortedSegment.Builder(restartInterval);
+        for (int i = 0; i < count; i++) {
+            builder.add(key(i * 2), ByteString.copyFromUtf8("value" + i));
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testGet_returnsEveryValue() throws Exception {
+        final SortedSegment segment = segment(1000, 16);
+
+        for (int i = 0; i < 1000; i++) {
+            assert_().that(segment.get(key(i * 2))).isEqualTo(ByteString.copyFromUtf8("value" + i));
+            assert_().that(segment.get(key(i * 2 + 1))).isNull();
+        }
+    }
+
+    @Test
+    public void testSeek_positionsAtFirstGreaterOrEqualKey() throws Exception {
+        final SortedSegment segment = segment(100, 7);
+
+        final SortedSegment.Cursor cursor = segment.seek(key(33));
+        assert_().that(cursor.key()).isEqualTo(key(34));
+        cursor.next();
+        assert_().that(cursor.key()).isEqualTo(key(36));
+        assert_().that(segment.seek(ByteString.EMPTY).key()).isEqualTo(key(0));
+        assert_().that(segment.seek(key(199)).isValid()).isFalse();
+    }
+
+    @Test
+    public void testSharedPrefixes_areStoredOnce() throws Exception {
+        final SortedSegment segment = segment(1000, 16);
+
+        // 18 bytes long keys, only restart points store them in full
+        assert_().that(segment.sizeInBytes()).isLessThan(1000 * 18);
+    }
+
+    @Test
+    public void testEmptySegment_hasNoEntries() throws Exception {
+        final SortedSegment segment = SortedSegment.empty();
+
+        assert_().that(segment.size()).isEqualTo(0);
+        assert_().that(segment.get(key(0))).isNull();
+        assert_().that(segment.seek(key(0)).isValid()).isFalse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddingKeysNotInOrder_throwsException() throws Exception {
+        new SortedSegment.Builder()
+                .add(key(2), ByteString.EMPTY)
+                .add(key(1), ByteString.EMPTY);
+    }
+}
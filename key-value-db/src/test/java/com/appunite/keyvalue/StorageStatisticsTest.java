@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class StorageStatisticsTest {
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final byte[] CONVERSATION = "conversation".getBytes();
+
+    private final KeyGenerator keyGenerator = new KeyGenerator();
+    private KeyValueMemory keyValue;
+
+    @Before
+    public void setUp() throws Exception {
+        keyValue = new KeyValueMemory();
+        for (int i = 0; i < 1000; i++) {
+            final ByteString id = ByteString.copyFromUtf8(String.format("id%04d", i));
+            final String conversation = i < 900 ? "big" : "small" + i;
+            keyValue.put(keyGenerator.value(MESSAGE, id), ByteString.copyFrom(new byte[100]));
+            keyValue.put(keyGenerator.startIndex(MESSAGE)
+                    .addField(CONVERSATION, conversation)
+                    .buildIndex(id), id);
+        }
+    }
+
+    @Test
+    public void testDefaultSegments_indexesAndValuesAreCountedSeparately() throws Exception {
+        final StorageStatistics statistics = new StorageStatistics.Builder(keyValue).collect();
+
+        final StorageStatistics.Prefix values = statistics.get(keyGenerator.singleValue(MESSAGE));
+        final StorageStatistics.Prefix indexes = statistics.get(keyGenerator.startIndex(MESSAGE).buildQuery());
+        assert_().that(values.count()).isEqualTo(1000L);
+        assert_().that(values.valueBytes()).isEqualTo(100000L);
+        assert_().that(indexes.count()).isEqualTo(1000L);
+        assert_().that(indexes.valueBytes()).isEqualTo(6000L);
+        assert_().that(statistics.total().count()).isEqualTo(2000L);
+        assert_().that(statistics.largestPrefixes(1).get(0)).isSameAs(values);
+        assert_().that(statistics.valueSizes().snapshot().max()).isEqualTo(100L);
+    }
+
+    @Test
+    public void testConversationSegments_largestConversationIsFirst() throws Exception {
+        final StorageStatistics statistics = new StorageStatistics.Builder(keyValue)
+                .range(KeyRange.prefix(keyGenerator.startIndex(MESSAGE).buildQuery()))
+                .prefixSegments(4)
+                .collect();
+
+        final List<StorageStatistics.Prefix> largest = statistics.largestPrefixes(2);
+        assert_().that(largest.get(0).prefix())
+                .isEqualTo(keyGenerator.startIndex(MESSAGE).addField(CONVERSATION, "big").buildQuery());
+        assert_().that(largest.get(0).count()).isEqualTo(900L);
+        assert_().that(largest.get(1).count()).isEqualTo(1L);
+        assert_().that(statistics.prefixCount()).isEqualTo(101);
+    }
+
+    @Test
+    public void testSampledValues_sizesAreExtrapolated() throws Exception {
+        final StorageStatistics statistics = new StorageStatistics.Builder(keyValue)
+                .sampleEvery(10)
+                .collect();
+
+        final StorageStatistics.Prefix values = statistics.get(keyGenerator.singleValue(MESSAGE));
+        assert_().that(values.count()).isEqualTo(1000L);
+        assert_().that(values.valueBytes()).isEqualTo(100000L);
+        assert_().that(statistics.valueSizes().snapshot().count()).isEqualTo(200L);
+    }
+
+    @Test
+    public void testPrefixLimit_otherEntriesCountedInTotal() throws Exception {
+        final StorageStatistics statistics = new StorageStatistics.Builder(keyValue)
+                .prefixSegments(4)
+                .maxPrefixes(10)
+                .collect();
+
+        assert_().that(statistics.prefixCount()).isEqualTo(10);
+        assert_().that(statistics.total().count()).isEqualTo(2000L);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.keyvalue;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import static com.google.common.truth.Truth.assert_;
+
+public class TracingKeyValueTest {
+    private static final ByteString VALUE = ByteString.copyFrom(new byte[]{1, 2, 3});
+
+    private KeyValueMemory memory;
+
+    @Before
+    public void setUp() throws Exception {
+        memory = new KeyValueMemory();
+        for (int i = 0; i < 10; i++) {
+            memory.put(ByteString.copyFrom(new byte[]{0, (byte) i}), VALUE);
+        }
+    }
+
+    @Test
+    public void testFetch_recordsEngineWork() throws Exception {
+        final TracingKeyValue keyValue = new TracingKeyValue.Builder(memory)
+                .threshold(0, TimeUnit.NANOSECONDS)
+                .build();
+
+        keyValue.fetchValues(ByteString.copyFrom(new byte[]{0}), null, 4);
+
+        final List<TracingKeyValue.Trace> traces = keyValue.traces();
+        assert_().that(traces.size()).isEqualTo(1);
+        final TracingKeyValue.Trace trace = traces.get(0);
+        assert_().that(trace.operation()).isEqualTo(InstrumentedKeyValue.Operation.FETCH_VALUES);
+        assert_().that(trace.pageSize()).isEqualTo(4);
+        assert_().that(trace.returned()).isEqualTo(4);
+        assert_().that(trace.rows()).isEqualTo(5L);
+        assert_().that(trace.seeks()).isEqualTo(1L);
+        assert_().that(trace.steps()).isEqualTo(4L);
+    }
+
+    @Test
+    public void testFastOperations_areNotRecorded() throws Exception {
+        final TracingKeyValue keyValue = new TracingKeyValue.Builder(memory)
+                .threshold(1, TimeUnit.HOURS)
+                .build();
+
+        keyValue.getBytes(ByteString.copyFrom(new byte[]{0, 1}));
+
+        assert_().that(keyValue.traces()).isEmpty();
+    }
+
+    @Test
+    public void testMoreTracesThanCapacity_oldestAreOverwritten() throws Exception {
+        final TracingKeyValue keyValue = new TracingKeyValue.Builder(memory)
+                .threshold(0, TimeUnit.NANOSECONDS)
+                .capacity(3)
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            keyValue.put(ByteString.copyFrom(new byte[]{1, (byte) i}), VALUE);
+        }
+
+        final List<TracingKeyValue.Trace> traces = keyValue.traces();
+        assert_().that(traces.size()).isEqualTo(3);
+        assert_().that(traces.get(0).keyPrefix()).isEqualTo(ByteString.copyFrom(new byte[]{1, 2}));
+        assert_().that(traces.get(2).keyPrefix()).isEqualTo(ByteString.copyFrom(new byte[]{1, 4}));
+    }
+
+    @Test
+    public void testLongKey_prefixIsTruncated() throws Exception {
+        final TracingKeyValue keyValue = new TracingKeyValue.Builder(memory)
+                .threshold(0, TimeUnit.NANOSECONDS)
+                .prefixLength(2)
+                .captureCallers(true)
+                .build();
+        final ByteString key = ByteString.copyFrom(new byte[]{5, 6, 7, 8});
+
+        keyValue.put(key, VALUE);
+
+        final TracingKeyValue.Trace trace = keyValue.traces().get(0);
+        assert_().that(trace.keyPrefix()).isEqualTo(ByteString.copyFrom(new byte[]{5, 6}));
+        assert_().that(trace.keyHash()).isEqualTo(key.hashCode());
+        assert_().that(trace.keySize()).isEqualTo(4);
+        assert_().that(trace.caller()[0].getMethodName()).isEqualTo("testLongKey_prefixIsTruncated");
+    }
+
+    @Test
+    public void testSampling_onlyEveryNthOperationIsTraced() throws Exception {
+        final TracingKeyValue keyValue = new TracingKeyValue.Builder(memory)
+                .threshold(0, TimeUnit.NANOSECONDS)
+                .sampleEvery(5)
+                .build();
+
+        for (int i = 0; i < 10; i++) {
+            keyValue.put(ByteString.copyFrom(new byte[]{1, (byte) i}), VALUE);
+        }
+
+        assert_().that(keyValue.traces().size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSampling_batchWritesAreSampled() throws Exception {
+        final TracingKeyValue keyValue = new TracingKeyValue.Builder(memory)
+                .threshold(0, TimeUnit.NANOSECONDS)
+                .sampleEvery(5)
+                .build();
+
+        for (int i = 0; i < 10; i++) {
+            final KeyValue.Batch batch = keyValue.newBatch();
+            batch.put(ByteString.copyFrom(new byte[]{1, (byte) i}), VALUE);
+            batch.write();
+        }
+
+        assert_().that(keyValue.traces().size()).isEqualTo(2);
+        assert_().that(keyValue.traces().get(0).operation()).isEqualTo(InstrumentedKeyValue.Operation.BATCH_WRITE);
+    }
+
+    @Test
+    public void testTracedScan_rowsAreCountedOnlyInsideTrace() throws Exception {
+        assert_().that(EngineTrace.active()).isNull();
+
+        final EngineTrace trace = EngineTrace.begin();
+        try {
+            memory.scan(KeyRange.prefix(ByteString.copyFrom(new byte[]{0})), new ScanVisitor() {
+                @Override
+                public boolean visit(@Nonnull ByteString key, @Nonnull ByteString value) {
+                    return true;
+                }
+            });
+        } finally {
+            trace.end();
+        }
+
+        assert_().that(EngineTrace.active()).isNull();
+        assert_().that(trace.rows()).isEqualTo(10L);
+        assert_().that(trace.seeks()).isEqualTo(1L);
+    }
+}